@@ -0,0 +1,34 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation used to aggregate the samples of a numeric measure attribute over a time window. Instead of sending every
+ * single value to the cloud, the endpoint sends one message per window containing the last value, the number of
+ * samples and their minimum, maximum and mean. The local value of the attribute and its listeners are updated with
+ * every sample.
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * class VibrationSensor extends ch.hevs.cloudio.endpoint.CloudioObject {
+ *    {@literal @}Measure
+ *    {@literal @}Aggregation(10000)
+ *     public CloudioAttribute&lt;Double&gt; acceleration;
+ * }
+ * </pre>
+ *
+ * @see CloudioAttribute#setAggregationWindow(long)
+ */
+@Retention(value = RetentionPolicy.RUNTIME)
+@Target(value = ElementType.FIELD)
+public @interface Aggregation {
+    /**
+     * Length of the aggregation window in milliseconds.
+     *
+     * @return Window length in milliseconds.
+     */
+    long value();
+}
@@ -0,0 +1,90 @@
+package ch.hevs.cloudio.endpoint;
+
+/**
+ * Summary of all samples of an attribute during one aggregation window.
+ */
+class AttributeAggregate {
+    /*** Attributes ***************************************************************************************************/
+    private final long start;
+    private final long end;
+    private final long count;
+    private final double min;
+    private final double max;
+    private final double mean;
+    private final Object last;
+
+    /*** API **********************************************************************************************************/
+    AttributeAggregate(final long start, final long end, final long count, final double min, final double max,
+                       final double mean, final Object last) {
+        this.start = start;
+        this.end = end;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.last = last;
+    }
+
+    /**
+     * Returns the start of the window.
+     *
+     * @return  Start timestamp in milliseconds since epoch (inclusive).
+     */
+    long getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the end of the window.
+     *
+     * @return  End timestamp in milliseconds since epoch (exclusive).
+     */
+    long getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the number of samples in the window.
+     *
+     * @return  Number of samples, at least 1.
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the smallest sample of the window.
+     *
+     * @return  Minimum.
+     */
+    double getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest sample of the window.
+     *
+     * @return  Maximum.
+     */
+    double getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the arithmetic mean of all samples of the window.
+     *
+     * @return  Mean.
+     */
+    double getMean() {
+        return mean;
+    }
+
+    /**
+     * Returns the last sample of the window, using the attribute's own data type.
+     *
+     * @return  Last value.
+     */
+    Object getLast() {
+        return last;
+    }
+}
@@ -0,0 +1,225 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accumulates the samples of a numeric attribute over consecutive time windows. The windows are aligned to multiples
+ * of the window length since epoch and are determined by the timestamps of the samples. A window is completed as soon
+ * as the first sample belonging to a later window arrives, so the running values are kept in primitive fields and
+ * adding a sample never allocates any memory, only completing a window creates a new {@link AttributeAggregate}.
+ *
+ * If the aggregator has been started with a timer, a window is also completed once the attribute's clock has passed
+ * its end, so the last window is sent even if no further sample arrives. The endpoint does this when the attribute is
+ * added.
+ */
+class AttributeAggregator {
+    /**
+     * Sends the windows completed by the timer.
+     */
+    interface Sink {
+        /**
+         * Returns the actual time of the attribute's clock.
+         *
+         * @return  Time in milliseconds since epoch.
+         */
+        long currentTimeMillis();
+
+        /**
+         * Sends the aggregate of a completed window to the cloud.
+         *
+         * @param aggregate Aggregate of the window.
+         */
+        void windowCompleted(AttributeAggregate aggregate);
+    }
+
+    /*** Attributes ***************************************************************************************************/
+    private final long window;
+    private final boolean integer;
+    private long start = 0;
+    private long count = 0;
+    private double min = 0;
+    private double max = 0;
+    private double sum = 0;
+    private double lastNumber = 0;
+    private long lastInteger = 0;
+    private ScheduledExecutorService timer = null;
+    private Sink sink = null;
+    private ScheduledFuture<?> expiryTask = null;
+
+    private final Runnable expiry = new Runnable() {
+        @Override
+        public void run() {
+            Sink target;
+            AttributeAggregate completed;
+            synchronized (AttributeAggregator.this) {
+                expiryTask = null;
+                target = sink;
+                if (target == null || count == 0) {
+                    return;
+                }
+
+                // The window may have been replaced by a later one in the meantime.
+                long remaining = start + window - target.currentTimeMillis();
+                if (remaining > 0) {
+                    expiryTask = schedule(remaining);
+                    return;
+                }
+                completed = complete();
+            }
+            target.windowCompleted(completed);
+        }
+    };
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates a new aggregator.
+     *
+     * @param window    Length of the aggregation windows in milliseconds.
+     * @param integer   True if the attribute is of type Integer, false if it is of type Number.
+     */
+    AttributeAggregator(final long window, final boolean integer) {
+        if (window <= 0) {
+            throw new InvalidCloudioAttributeException("The aggregation window of an attribute has to be positive!");
+        }
+        this.window = window;
+        this.integer = integer;
+    }
+
+    /**
+     * Returns the length of the aggregation windows.
+     *
+     * @return  Window length in milliseconds.
+     */
+    long getWindow() {
+        return window;
+    }
+
+    /**
+     * Starts completing expired windows on the given timer.
+     *
+     * @param timer Timer completing the windows.
+     * @param sink  Sink sending the completed windows.
+     */
+    synchronized void start(final ScheduledExecutorService timer, final Sink sink) {
+        this.timer = timer;
+        this.sink = sink;
+        if (count > 0 && expiryTask == null) {
+            expiryTask = schedule(start + window - sink.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Stops completing expired windows, the actual window is kept.
+     */
+    synchronized void stop() {
+        if (expiryTask != null) {
+            expiryTask.cancel(false);
+            expiryTask = null;
+        }
+        timer = null;
+        sink = null;
+    }
+
+    /**
+     * Completes the actual window immediately even if it has not expired yet and sends it.
+     */
+    void flush() {
+        Sink target;
+        AttributeAggregate completed;
+        synchronized (this) {
+            target = sink;
+            if (target == null || count == 0) {
+                return;
+            }
+            completed = complete();
+        }
+        target.windowCompleted(completed);
+    }
+
+    /**
+     * Adds the given sample to the actual window.
+     *
+     * @param value     Sample to add.
+     * @param timestamp Timestamp of the sample in milliseconds since epoch.
+     * @return          The aggregate of the previous window if the sample starts a new window, null otherwise.
+     */
+    AttributeAggregate add(final Number value, final long timestamp) {
+        if (integer) {
+            return add(value.longValue(), timestamp);
+        } else {
+            return add(value.doubleValue(), timestamp);
+        }
+    }
+
+    /**
+     * Adds the given sample to the actual window.
+     *
+     * @param value     Sample to add.
+     * @param timestamp Timestamp of the sample in milliseconds since epoch.
+     * @return          The aggregate of the previous window if the sample starts a new window, null otherwise.
+     */
+    synchronized AttributeAggregate add(final double value, final long timestamp) {
+        AttributeAggregate completed = accumulate(value, timestamp);
+        lastNumber = value;
+        return completed;
+    }
+
+    /**
+     * Adds the given sample to the actual window.
+     *
+     * @param value     Sample to add.
+     * @param timestamp Timestamp of the sample in milliseconds since epoch.
+     * @return          The aggregate of the previous window if the sample starts a new window, null otherwise.
+     */
+    synchronized AttributeAggregate add(final long value, final long timestamp) {
+        AttributeAggregate completed = accumulate(value, timestamp);
+        lastInteger = value;
+        return completed;
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private AttributeAggregate accumulate(final double sample, final long timestamp) {
+        AttributeAggregate completed = null;
+        if (count > 0 && (timestamp >= start + window || timestamp < start)) {
+            completed = complete();
+        }
+
+        if (count == 0) {
+            start = timestamp - (timestamp % window + window) % window;
+            min = sample;
+            max = sample;
+            sum = 0;
+            if (sink != null && expiryTask == null) {
+                expiryTask = schedule(start + window - sink.currentTimeMillis());
+            }
+        } else {
+            min = Math.min(min, sample);
+            max = Math.max(max, sample);
+        }
+        sum += sample;
+        ++count;
+
+        return completed;
+    }
+    private AttributeAggregate complete() {
+        AttributeAggregate completed = new AttributeAggregate(start, start + window, count, min, max, sum / count,
+            integer ? (Object)lastInteger : (Object)lastNumber);
+        count = 0;
+        return completed;
+    }
+
+    private ScheduledFuture<?> schedule(final long delay) {
+        if (timer == null) {
+            return null;
+        }
+        try {
+            return timer.schedule(expiry, Math.max(0, delay), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException exception) {
+            // The endpoint is closing.
+            return null;
+        }
+    }
+}
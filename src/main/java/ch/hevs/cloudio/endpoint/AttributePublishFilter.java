@@ -0,0 +1,298 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a change of an attribute done by the endpoint has to be sent to the cloud (report by exception). A
+ * change is suppressed if it stays inside the deadband around the last value sent. A change that happens less than the
+ * minimal interval after the last value sent is held back and the latest held change is sent once the interval has
+ * expired, so the cloud always ends up with the last value. Once the last value sent is older than the heartbeat
+ * interval, the next change is sent regardless of the deadband. All intervals are measured using the timestamps of the
+ * values. A heartbeat sent by the filter itself re-affirms the unchanged value at the actual time, so it is stamped
+ * with the attribute's clock and not with the timestamp of the value.
+ *
+ * The held changes and the heartbeat are only sent on their own if the filter has been started with a timer, the
+ * endpoint does this when the attribute is added. Without a timer, the heartbeat is only checked on the next change.
+ */
+class AttributePublishFilter {
+    /**
+     * Sends the values the filter decides to send on its own.
+     */
+    interface Sink {
+        /**
+         * Returns the actual time of the attribute's clock.
+         *
+         * @return  Time in milliseconds since epoch.
+         */
+        long currentTimeMillis();
+
+        /**
+         * Sends the actual value of the attribute to the cloud.
+         */
+        void republish();
+
+        /**
+         * Sends the actual value of the attribute to the cloud with the given timestamp instead of the value's own.
+         *
+         * @param timestamp Timestamp of the heartbeat in milliseconds since epoch.
+         */
+        void heartbeat(long timestamp);
+    }
+
+    /*** Attributes ***************************************************************************************************/
+    private double deadband = 0;
+    private boolean percent = false;
+    private long minInterval = 0;
+    private long heartbeat = 0;
+    private boolean published = false;
+    private double lastValue = 0;
+    private long lastTimestamp = 0;
+    private double latestValue = 0;
+    private boolean held = false;
+    private boolean heldNumeric = false;
+    private long sentAt = 0;
+    private ScheduledExecutorService timer = null;
+    private Sink sink = null;
+    private ScheduledFuture<?> releaseTask = null;
+    private ScheduledFuture<?> heartbeatTask = null;
+
+    private final Runnable release = new Runnable() {
+        @Override
+        public void run() {
+            Sink target;
+            synchronized (AttributePublishFilter.this) {
+                releaseTask = null;
+                target = sink;
+                if (target == null || !release()) {
+                    return;
+                }
+            }
+            target.republish();
+        }
+    };
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            Sink target;
+            long timestamp;
+            synchronized (AttributePublishFilter.this) {
+                heartbeatTask = null;
+                target = sink;
+                if (target == null) {
+                    return;
+                }
+
+                // Wait for the rest of the interval if a value has been sent in the meantime.
+                long elapsed = target.currentTimeMillis() - sentAt;
+                if (elapsed < heartbeat) {
+                    heartbeatTask = schedule(this, heartbeat - elapsed);
+                    return;
+                }
+
+                held = false;
+                lastValue = latestValue;
+                lastTimestamp = Math.max(lastTimestamp, target.currentTimeMillis());
+                timestamp = lastTimestamp;
+                sent();
+            }
+            target.heartbeat(timestamp);
+        }
+    };
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Sets the deadband, a deadband of 0 disables the deadband.
+     *
+     * @param deadband  Width of the deadband on either side of the last value sent.
+     * @param percent   True if the deadband is given in percent of the last value sent, false if it is absolute.
+     */
+    void setDeadband(final double deadband, final boolean percent) {
+        if (deadband < 0 || Double.isNaN(deadband)) {
+            throw new InvalidCloudioAttributeException("The deadband of an attribute can not be negative!");
+        }
+        this.deadband = deadband;
+        this.percent = percent;
+    }
+
+    /**
+     * Sets the minimal interval and the heartbeat interval, 0 disables the respective interval.
+     *
+     * @param minInterval   Minimal interval in milliseconds between two values sent.
+     * @param heartbeat     Maximal age in milliseconds of the last value sent before the value is sent again.
+     */
+    void setIntervals(final long minInterval, final long heartbeat) {
+        if (minInterval < 0 || heartbeat < 0) {
+            throw new InvalidCloudioAttributeException("The publish intervals of an attribute can not be negative!");
+        }
+        this.minInterval = minInterval;
+        this.heartbeat = heartbeat;
+    }
+
+    /**
+     * Returns true if a deadband is configured.
+     *
+     * @return  True if the filter has a deadband, false otherwise.
+     */
+    boolean hasDeadband() {
+        return deadband > 0;
+    }
+
+    /**
+     * Starts sending held changes and heartbeats on the given timer.
+     *
+     * @param timer Timer executing the delayed sends.
+     * @param sink  Sink sending the actual value of the attribute.
+     */
+    synchronized void start(final ScheduledExecutorService timer, final Sink sink) {
+        this.timer = timer;
+        this.sink = sink;
+        if (published) {
+            sentAt = sink.currentTimeMillis();
+            scheduleHeartbeat();
+        }
+    }
+
+    /**
+     * Stops sending held changes and heartbeats, a held change is discarded.
+     */
+    synchronized void stop() {
+        if (releaseTask != null) {
+            releaseTask.cancel(false);
+            releaseTask = null;
+        }
+        if (heartbeatTask != null) {
+            heartbeatTask.cancel(false);
+            heartbeatTask = null;
+        }
+        held = false;
+        timer = null;
+        sink = null;
+    }
+
+    /**
+     * Sends the held change immediately if there is one.
+     */
+    void flush() {
+        release.run();
+    }
+
+    /**
+     * Checks if the given new value of the attribute has to be sent to the cloud. If so, the value and timestamp are
+     * remembered as the last values sent.
+     *
+     * @param value     New value of the attribute.
+     * @param timestamp Timestamp of the new value in milliseconds since epoch.
+     * @return          True if the change has to be sent to the cloud, false if it can be suppressed.
+     */
+    synchronized boolean accept(final Object value, final long timestamp) {
+        if (value instanceof Number) {
+            return accept(((Number)value).doubleValue(), timestamp);
+        }
+
+        // Only the intervals apply to non numeric values.
+        if (published && !isHeartbeatDue(timestamp) && timestamp - lastTimestamp < minInterval) {
+            hold(false, timestamp);
+            return false;
+        }
+        published = true;
+        lastTimestamp = timestamp;
+        sent();
+        return true;
+    }
+
+    /**
+     * Checks if the given new numeric value of the attribute has to be sent to the cloud. If so, the value and
+     * timestamp are remembered as the last values sent.
+     *
+     * @param value     New value of the attribute.
+     * @param timestamp Timestamp of the new value in milliseconds since epoch.
+     * @return          True if the change has to be sent to the cloud, false if it can be suppressed.
+     */
+    synchronized boolean accept(final double value, final long timestamp) {
+        latestValue = value;
+        if (published && !isHeartbeatDue(timestamp)) {
+            if (timestamp - lastTimestamp < minInterval) {
+                hold(true, timestamp);
+                return false;
+            }
+
+            // The change replaces any held change, as it is the actual value.
+            if (isInsideDeadband(value)) {
+                held = false;
+                return false;
+            }
+        }
+
+        published = true;
+        lastValue = value;
+        lastTimestamp = timestamp;
+        sent();
+        return true;
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private boolean isHeartbeatDue(final long timestamp) {
+        return heartbeat > 0 && timestamp - lastTimestamp >= heartbeat;
+    }
+
+    private boolean isInsideDeadband(final double value) {
+        double band = percent ? Math.abs(lastValue) * deadband / 100 : deadband;
+        return deadband > 0 && Math.abs(value - lastValue) <= band;
+    }
+
+    private void hold(final boolean numeric, final long timestamp) {
+        held = true;
+        heldNumeric = numeric;
+        if (releaseTask == null) {
+            releaseTask = schedule(release, lastTimestamp + minInterval - timestamp);
+        }
+    }
+
+    private boolean release() {
+        if (!held) {
+            return false;
+        }
+        held = false;
+
+        // The held value may have returned into the deadband.
+        if (heldNumeric && isInsideDeadband(latestValue)) {
+            return false;
+        }
+        if (heldNumeric) {
+            lastValue = latestValue;
+        }
+        lastTimestamp += minInterval;
+        sent();
+        return true;
+    }
+
+    private void sent() {
+        held = false;
+        if (sink != null) {
+            sentAt = sink.currentTimeMillis();
+            scheduleHeartbeat();
+        }
+    }
+
+    private void scheduleHeartbeat() {
+        if (heartbeat > 0 && heartbeatTask == null) {
+            heartbeatTask = schedule(refresh, heartbeat);
+        }
+    }
+
+    private ScheduledFuture<?> schedule(final Runnable task, final long delay) {
+        if (timer == null) {
+            return null;
+        }
+        try {
+            return timer.schedule(task, Math.max(0, delay), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException exception) {
+            // The endpoint is closing.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves the processing of inbound @set messages (deserialization, constraint checks and the attribute listeners) away
+ * from the MQTT client's callback thread. The messages are distributed onto a fixed number of stripes, each with its
+ * own bounded queue and worker thread. All messages for the same attribute are processed by the same stripe, so they
+ * are applied in the order they arrived, while messages for different attributes are processed in parallel.
+ *
+ * The thread dispatching the messages never waits, so a slow attribute listener can never stall the MQTT client's
+ * callback thread and its keep-alive handling. If the queue of a stripe is full, the messages are conflated per
+ * attribute: a new message replaces the newest message for the same attribute still waiting in the queue, at that
+ * message's position. The older values of an attribute are skipped, but its latest value is always applied and the
+ * order of the messages of every attribute is preserved. A message for an attribute without a waiting message is
+ * queued even if the queue is full, so a queue never holds more than its capacity plus one message per attribute.
+ * Only messages arriving after the dispatcher has been closed are dropped.
+ */
+class AttributeSetDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(AttributeSetDispatcher.class);
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Processes the messages taken from the stripes' queues.
+     */
+    interface Handler {
+        /**
+         * Called by the worker thread of a stripe for every message in the stripe's queue.
+         *
+         * @param attribute     Attribute targeted by the message.
+         * @param messageFormat Format of the message.
+         * @param data          Payload of the message.
+         * @throws Exception    If the attribute could not be updated.
+         */
+        void handle(CloudioAttribute.InternalAttribute attribute, CloudioMessageFormat messageFormat, byte[] data)
+            throws Exception;
+    }
+
+    /*** Attributes ***************************************************************************************************/
+    private final Stripe[] stripes;
+    private final Handler handler;
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong conflatedMessages = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates a new dispatcher and starts the worker threads of all stripes.
+     *
+     * @param stripeCount   Number of stripes (worker threads).
+     * @param queueSize     Capacity of the queue of every stripe.
+     * @param handler       Processes the messages.
+     */
+    AttributeSetDispatcher(final int stripeCount, final int queueSize, final Handler handler) {
+        this.handler = handler;
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; ++i) {
+            stripes[i] = new Stripe(queueSize, "cloudio-set-dispatcher-" + i);
+        }
+    }
+
+    /**
+     * Adds the given message to the queue of the attribute's stripe without waiting. If the queue is full, the message
+     * replaces the newest message for the same attribute waiting in the queue. If the dispatcher has been closed, the
+     * message is dropped.
+     *
+     * @param attribute     Attribute targeted by the message.
+     * @param messageFormat Format of the message.
+     * @param data          Payload of the message.
+     * @return              True if the message has been queued, false if it has been dropped.
+     */
+    boolean dispatch(final CloudioAttribute.InternalAttribute attribute, final CloudioMessageFormat messageFormat,
+                     final byte[] data) {
+        if (!closed) {
+            Stripe stripe = stripes[stripeOf(attribute)];
+            synchronized (stripe) {
+                Message newest = stripe.newest.get(attribute);
+                if (newest != null && stripe.queue.size() >= stripe.capacity) {
+                    newest.messageFormat = messageFormat;
+                    newest.data = data;
+                    conflatedMessages.incrementAndGet();
+                } else {
+                    Message message = new Message(attribute, messageFormat, data);
+                    stripe.queue.addLast(message);
+                    stripe.newest.put(attribute, message);
+                    stripe.notifyAll();
+                }
+            }
+            return true;
+        }
+
+        droppedMessages.incrementAndGet();
+        log.error("@set message for attribute \"" + attribute.getName() + "\" dropped, dispatcher is closed");
+        return false;
+    }
+
+    /**
+     * Returns the number of messages dropped because the dispatcher was closed.
+     *
+     * @return  Number of dropped messages.
+     */
+    long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    /**
+     * Returns the number of messages which have been replaced by a newer message for the same attribute before they
+     * were processed, because the queue of their stripe was full.
+     *
+     * @return  Number of conflated messages.
+     */
+    long getConflatedMessages() {
+        return conflatedMessages.get();
+    }
+
+    /**
+     * Returns the number of messages waiting in the queue of every stripe.
+     *
+     * @return  Approximate queue depth per stripe.
+     */
+    int[] getQueueDepths() {
+        int[] depths = new int[stripes.length];
+        for (int i = 0; i < stripes.length; ++i) {
+            synchronized (stripes[i]) {
+                depths[i] = stripes[i].queue.size();
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * Stops the worker threads once all messages in the queues have been processed.
+     */
+    void close() {
+        closed = true;
+        for (Stripe stripe: stripes) {
+            try {
+                stripe.thread.join(CLOSE_TIMEOUT_MILLIS);
+            } catch (InterruptedException exception) {
+                log.error("Exception: " + exception.getMessage());
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private int stripeOf(final CloudioAttribute.InternalAttribute attribute) {
+        // Spread the bits of the identity hash code, so attributes allocated next to each other use different stripes.
+        int hash = System.identityHashCode(attribute);
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return (hash & Integer.MAX_VALUE) % stripes.length;
+    }
+
+    private static class Message {
+        final CloudioAttribute.InternalAttribute attribute;
+        CloudioMessageFormat messageFormat;
+        byte[] data;
+
+        Message(final CloudioAttribute.InternalAttribute attribute, final CloudioMessageFormat messageFormat,
+                final byte[] data) {
+            this.attribute = attribute;
+            this.messageFormat = messageFormat;
+            this.data = data;
+        }
+    }
+
+    private class Stripe implements Runnable {
+        final int capacity;
+        final Deque<Message> queue = new ArrayDeque<Message>();
+        final Map<CloudioAttribute.InternalAttribute, Message> newest =
+            new HashMap<CloudioAttribute.InternalAttribute, Message>();
+        final Thread thread;
+
+        Stripe(final int queueSize, final String name) {
+            capacity = queueSize;
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Message message;
+                CloudioMessageFormat messageFormat = null;
+                byte[] data = null;
+                synchronized (this) {
+                    try {
+                        if (queue.isEmpty()) {
+                            wait(IDLE_POLL_MILLIS);
+                        }
+                    } catch (InterruptedException exception) {
+                        log.error("Exception: " + exception.getMessage());
+                        exception.printStackTrace();
+                        return;
+                    }
+
+                    // Take the message's content while holding the lock, as it is replaced by conflated messages.
+                    message = queue.pollFirst();
+                    if (message != null) {
+                        if (newest.get(message.attribute) == message) {
+                            newest.remove(message.attribute);
+                        }
+                        messageFormat = message.messageFormat;
+                        data = message.data;
+                    }
+                }
+
+                if (message != null) {
+                    try {
+                        handler.handle(message.attribute, messageFormat, data);
+                    } catch (Exception exception) {
+                        log.error("Exception: " + exception.getMessage());
+                        exception.printStackTrace();
+                    }
+                } else if (closed) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ch.hevs.cloudio.endpoint;
+
+/**
+ * Snapshot of an attribute's value and timestamp at the moment the attribute did change. Updates are captured this way
+ * whenever they can not be sent immediately (for example if they are batched into a single message), as the attribute
+ * itself might change again before the update is actually serialized.
+ */
+class AttributeUpdate {
+    /*** Attributes ***************************************************************************************************/
+    private final CloudioAttribute.InternalAttribute attribute;
+    private final Long timestamp;
+    private final Object value;
+    private final AttributeAggregate aggregate;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Captures the actual value and timestamp of the given attribute.
+     *
+     * @param attribute Attribute to capture.
+     */
+    AttributeUpdate(final CloudioAttribute.InternalAttribute attribute) {
+        this.attribute = attribute;
+        this.aggregate = null;
+        this.timestamp = attribute.getTimestamp();
+        this.value = attribute.getValue();
+    }
+
+    /**
+     * Captures the actual value of the given attribute with another timestamp, used to send a heartbeat for a value
+     * which did not change.
+     *
+     * @param attribute Attribute to capture.
+     * @param timestamp Timestamp of the update in milliseconds since epoch.
+     */
+    AttributeUpdate(final CloudioAttribute.InternalAttribute attribute, final long timestamp) {
+        this.attribute = attribute;
+        this.aggregate = null;
+        this.timestamp = timestamp;
+        this.value = attribute.getValue();
+    }
+
+    /**
+     * Creates the update of a completed aggregation window, the update carries the aggregate's last value and end
+     * timestamp.
+     *
+     * @param attribute Aggregated attribute.
+     * @param aggregate Aggregate of the completed window.
+     */
+    AttributeUpdate(final CloudioAttribute.InternalAttribute attribute, final AttributeAggregate aggregate) {
+        this.attribute = attribute;
+        this.aggregate = aggregate;
+        this.timestamp = aggregate.getEnd();
+        this.value = aggregate.getLast();
+    }
+
+    /**
+     * Returns the attribute which has changed.
+     *
+     * @return  Attribute.
+     */
+    CloudioAttribute.InternalAttribute getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * Returns the timestamp of the attribute at the moment the update was captured.
+     *
+     * @return  Timestamp in milliseconds since epoch or null if the attribute did not have a timestamp.
+     */
+    Long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the value of the attribute at the moment the update was captured.
+     *
+     * @return  Value of the attribute.
+     */
+    Object getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the aggregate of the window the update summarizes.
+     *
+     * @return  Aggregate or null if the attribute is not aggregated.
+     */
+    AttributeAggregate getAggregate() {
+        return aggregate;
+    }
+}
@@ -0,0 +1,136 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects attribute updates over a time window and hands them over as a single batch once either the window has
+ * elapsed or the maximal number of updates per batch has been reached. The time window starts with the first update
+ * added to an empty batch, so an idle endpoint does not produce any messages at all.
+ */
+class AttributeUpdateBatcher implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(AttributeUpdateBatcher.class);
+
+    /**
+     * Receives the batches of updates.
+     */
+    interface Sink {
+        /**
+         * Called with a complete batch of updates. Note that this method is called either from the thread adding the
+         * update that completed the batch or from the batcher's own thread when the time window has elapsed.
+         *
+         * @param updates   Updates in the order they were added to the batcher, never empty.
+         */
+        void updatesReady(List<AttributeUpdate> updates);
+    }
+
+    /*** Attributes ***************************************************************************************************/
+    private final long window;
+    private final int maxSize;
+    private final Sink sink;
+    private final Thread thread;
+    private List<AttributeUpdate> updates;
+    private long deadline = 0;
+    private boolean closed = false;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates a new batcher and starts its background thread.
+     *
+     * @param window    Maximal time in milliseconds an update is held back before the batch is handed over.
+     * @param maxSize   Maximal number of updates per batch.
+     * @param sink      Receiver of the batches.
+     */
+    AttributeUpdateBatcher(final long window, final int maxSize, final Sink sink) {
+        this.window = window;
+        this.maxSize = maxSize;
+        this.sink = sink;
+        updates = new ArrayList<AttributeUpdate>();
+
+        thread = new Thread(this, "cloudio-update-batcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Adds the given update to the actual batch. If the batch is full afterwards, it is handed over to the sink
+     * immediately using the calling thread.
+     *
+     * @param update    Update to add.
+     */
+    void add(final AttributeUpdate update) {
+        List<AttributeUpdate> completed = null;
+        synchronized (this) {
+            if (updates.isEmpty()) {
+                deadline = System.currentTimeMillis() + window;
+                notifyAll();
+            }
+            updates.add(update);
+            if (updates.size() >= maxSize || closed) {
+                completed = swap();
+            }
+        }
+
+        if (completed != null) {
+            sink.updatesReady(completed);
+        }
+    }
+
+    /**
+     * Hands over all pending updates to the sink and stops the background thread.
+     */
+    void close() {
+        List<AttributeUpdate> completed;
+        synchronized (this) {
+            closed = true;
+            completed = swap();
+            notifyAll();
+        }
+
+        if (!completed.isEmpty()) {
+            sink.updatesReady(completed);
+        }
+    }
+
+    /*** Runnable implementation **************************************************************************************/
+    @Override
+    public void run() {
+        while (true) {
+            List<AttributeUpdate> completed;
+            synchronized (this) {
+                try {
+                    // Wait for the first update of a batch and then until the window of the batch has elapsed.
+                    while (!closed && (updates.isEmpty() || System.currentTimeMillis() < deadline)) {
+                        if (updates.isEmpty()) {
+                            wait();
+                        } else {
+                            wait(Math.max(1, deadline - System.currentTimeMillis()));
+                        }
+                    }
+                } catch (InterruptedException exception) {
+                    log.error("Exception: " + exception.getMessage());
+                    exception.printStackTrace();
+                }
+
+                if (closed) {
+                    return;
+                }
+                completed = swap();
+            }
+
+            if (!completed.isEmpty()) {
+                sink.updatesReady(completed);
+            }
+        }
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private List<AttributeUpdate> swap() {
+        List<AttributeUpdate> completed = updates;
+        updates = new ArrayList<AttributeUpdate>();
+        return completed;
+    }
+}
@@ -0,0 +1,257 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decouples the threads changing attribute values from the serialization and the transmission of the updates. The
+ * calling thread only captures the value and the timestamp of the attribute and adds it to a bounded lock-free queue,
+ * a dedicated sender thread takes the updates from the queue and hands them over to the sink (the endpoint) which
+ * serializes and publishes them.
+ */
+class AttributeUpdatePublisher implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(AttributeUpdatePublisher.class);
+    private static final long BLOCK_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long CONGESTION_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Defines what happens if an attribute changes while the queue is full.
+     */
+    enum OverflowPolicy {
+        /**
+         * The thread changing the attribute waits until the sender thread has made space in the queue.
+         */
+        Block,
+
+        /**
+         * The oldest update in the queue is discarded in order to make space for the new one.
+         */
+        DropOldest,
+
+        /**
+         * Every attribute has at most one update in the queue. If an attribute changes while its previous update has
+         * not been sent yet, the pending update is replaced in place by the new value and timestamp. If the queue is
+         * too small to hold one update per attribute, the thread changing the attribute waits like with Block.
+         */
+        Conflate;
+
+        /**
+         * Returns the policy matching the given configuration value.
+         *
+         * @param value Configuration value ("block", "dropOldest" or "conflate").
+         * @return      Overflow policy or null if the value does not match any policy.
+         */
+        static OverflowPolicy fromString(final String value) {
+            if ("block".equals(value)) {
+                return Block;
+            } else if ("dropOldest".equals(value)) {
+                return DropOldest;
+            } else if ("conflate".equals(value)) {
+                return Conflate;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Receives the updates taken from the queue.
+     */
+    interface Sink {
+        /**
+         * Called by the sender thread for every update taken from the queue. If the update is conflated, the sink can
+         * refuse the update if the transport is congested, the publisher will retry later with the update or with a
+         * newer value of the same attribute if the attribute has changed in the meantime.
+         *
+         * @param update    Update to serialize and publish.
+         * @param mayDefer  True if the sink is allowed to refuse the update.
+         * @return          True if the update was sent or stored, false if it should be retried later.
+         */
+        boolean updateReady(AttributeUpdate update, boolean mayDefer);
+    }
+
+    /*** Attributes ***************************************************************************************************/
+    private final AttributeUpdateQueue queue;
+    private final OverflowPolicy policy;
+    private final Set<CloudioAttributeConstraint> conflatedConstraints;
+    private final Sink sink;
+    private final Thread thread;
+    private volatile boolean waiting = false;
+    private volatile boolean closed = false;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates a new publisher and starts its sender thread.
+     *
+     * @param capacity              Capacity of the queue.
+     * @param policy                Behaviour if the queue is full.
+     * @param conflatedConstraints  Constraints of the attributes to conflate if the attribute itself does not select
+     *                              the conflation mode.
+     * @param sink                  Receiver of the updates.
+     */
+    AttributeUpdatePublisher(final int capacity, final OverflowPolicy policy,
+                             final Set<CloudioAttributeConstraint> conflatedConstraints, final Sink sink) {
+        queue = new AttributeUpdateQueue(capacity);
+        this.policy = policy;
+        this.conflatedConstraints = conflatedConstraints;
+        this.sink = sink;
+
+        thread = new Thread(this, "cloudio-update-sender");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Captures the actual value and timestamp of the given attribute and adds the update to the queue.
+     *
+     * @param attribute Attribute which has changed.
+     */
+    void publish(final CloudioAttribute.InternalAttribute attribute) {
+        publish(new AttributeUpdate(attribute));
+    }
+
+    /**
+     * Adds the given update to the queue.
+     *
+     * @param update    Update captured when the attribute changed.
+     */
+    void publish(final AttributeUpdate update) {
+        CloudioAttribute.InternalAttribute attribute = update.getAttribute();
+
+        // If the attribute has already an update pending, replacing the update is enough.
+        if (isConflated(attribute) && attribute.getPendingUpdate().getAndSet(update) != null) {
+            return;
+        }
+
+        // The sender thread may have stopped already, send the update from the calling thread.
+        if (closed) {
+            deliver(update);
+            return;
+        }
+
+        while (!queue.offer(update)) {
+            if (closed) {
+                deliver(update);
+                return;
+            }
+
+            if (policy == OverflowPolicy.DropOldest) {
+                discard(queue.poll());
+            } else {
+                LockSupport.unpark(thread);
+                LockSupport.parkNanos(this, BLOCK_BACKOFF_NANOS);
+            }
+        }
+
+        if (closed) {
+            // The publisher was closed while the update was added, the sender thread may have ended without it.
+            drain();
+        } else if (waiting) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Returns the number of updates waiting to be sent.
+     *
+     * @return  Approximate number of updates in the queue.
+     */
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the sender thread once all updates in the queue have been handed over to the sink. Updates published
+     * afterwards are handed over to the sink by the calling thread.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException exception) {
+            log.error("Exception: " + exception.getMessage());
+            exception.printStackTrace();
+        }
+    }
+
+    /*** Runnable implementation **************************************************************************************/
+    @Override
+    public void run() {
+        while (true) {
+            AttributeUpdate update = queue.poll();
+            if (update != null) {
+                deliver(update);
+            } else if (closed) {
+                // An update may have been added between the poll and the check.
+                if (queue.isEmpty()) {
+                    return;
+                }
+            } else {
+                waiting = true;
+                if (queue.isEmpty() && !closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                waiting = false;
+            }
+        }
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private boolean isConflated(final CloudioAttribute.InternalAttribute attribute) {
+        Boolean conflated = attribute.getConflated();
+        if (conflated != null) {
+            return conflated;
+        }
+        return policy == OverflowPolicy.Conflate || conflatedConstraints.contains(attribute.getConstraint());
+    }
+
+    private void deliver(AttributeUpdate update) {
+        // For conflated attributes the queue only marks that there is an update pending, send the latest value.
+        CloudioAttribute.InternalAttribute attribute = update.getAttribute();
+        boolean conflated = isConflated(attribute);
+        if (conflated) {
+            update = (AttributeUpdate)attribute.getPendingUpdate().getAndSet(null);
+            if (update == null) {
+                return;
+            }
+        }
+
+        try {
+            // While the transport is congested, retry with the latest value of the attribute.
+            while (!sink.updateReady(update, conflated && !closed)) {
+                LockSupport.parkNanos(this, CONGESTION_BACKOFF_NANOS);
+                AttributeUpdate newer = (AttributeUpdate)attribute.getPendingUpdate().getAndSet(null);
+                if (newer != null) {
+                    update = newer;
+                }
+            }
+        } catch (RuntimeException exception) {
+            log.error("Exception: " + exception.getMessage());
+            exception.printStackTrace();
+        }
+    }
+
+    private void drain() {
+        AttributeUpdate update;
+        while ((update = queue.poll()) != null) {
+            deliver(update);
+        }
+    }
+
+    private void discard(final AttributeUpdate update) {
+        if (update != null) {
+            CloudioAttribute.InternalAttribute attribute = update.getAttribute();
+            if (isConflated(attribute)) {
+                attribute.getPendingUpdate().set(null);
+            }
+            log.debug("Publish queue full, dropped update of " + attribute.getUuid());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue of attribute updates. Every slot of the ring buffer carries a sequence number which tells
+ * producers and consumers whether the slot is free or holds a published update, so neither offering nor polling ever
+ * takes a lock. Any number of threads can offer and poll concurrently, the endpoint uses it with many producers (the
+ * threads changing attribute values) and a single consumer (the sender thread).
+ */
+class AttributeUpdateQueue {
+    /*** Attributes ***************************************************************************************************/
+    private final int mask;
+    private final AtomicReferenceArray<AttributeUpdate> updates;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates a new queue. The capacity is rounded up to the next power of two.
+     *
+     * @param capacity  Minimal number of updates the queue can hold.
+     */
+    AttributeUpdateQueue(final int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        mask = size - 1;
+        updates = new AtomicReferenceArray<AttributeUpdate>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds the given update to the tail of the queue if the queue is not full.
+     *
+     * @param update    Update to add.
+     * @return          True if the update was added, false if the queue is full.
+     */
+    boolean offer(final AttributeUpdate update) {
+        long position = tail.get();
+        while (true) {
+            int index = (int)position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    updates.lazySet(index, update);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the update at the head of the queue.
+     *
+     * @return  The oldest update of the queue or null if the queue is empty.
+     */
+    AttributeUpdate poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int)position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    AttributeUpdate update = updates.get(index);
+                    updates.lazySet(index, null);
+                    sequences.lazySet(index, position + mask + 1);
+                    return update;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of updates in the queue. As producers and consumers may be active while the size is
+     * calculated, the result is only an estimation.
+     *
+     * @return  Approximate number of updates in the queue.
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int)Math.max(0, Math.min(size, mask + 1));
+    }
+
+    /**
+     * Returns true if the queue does not contain any updates.
+     *
+     * @return  True if empty, false otherwise.
+     */
+    boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    /**
+     * Returns the maximal number of updates the queue can hold.
+     *
+     * @return  Capacity of the queue.
+     */
+    int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,87 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Base of the decoders used by the binary message formats. A decoder reads a single message from a byte array and
+ * returns its content as a tree of maps (with string keys), lists, strings, longs, doubles, booleans and nulls.
+ */
+abstract class BinaryDecoder {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /*** Attributes ***************************************************************************************************/
+    private final byte[] data;
+    private int position;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates a decoder reading the given data starting at the given offset.
+     *
+     * @param data      Message to decode.
+     * @param offset    Position of the first value, after the prefix identifying the format.
+     */
+    BinaryDecoder(byte[] data, int offset) {
+        this.data = data;
+        this.position = offset;
+    }
+
+    /**
+     * Reads the next value including all its children.
+     *
+     * @return              Map, List, String, Long, Double, Boolean or null.
+     * @throws IOException  If the data is not valid or the message is truncated.
+     */
+    abstract Object readValue() throws IOException;
+
+    /*** Package private methods **************************************************************************************/
+    int readByte() throws IOException {
+        if (position >= data.length) {
+            throw new IOException("Unexpected end of message");
+        }
+        return data[position++] & 0xFF;
+    }
+
+    int readShort() throws IOException {
+        return (readByte() << 8) | readByte();
+    }
+
+    int readInt() throws IOException {
+        return (readShort() << 16) | readShort();
+    }
+
+    long readLong64() throws IOException {
+        return ((long)readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    String readUtf8(long length) throws IOException {
+        if (length < 0 || length > data.length - position) {
+            throw new IOException("Invalid string length " + length);
+        }
+        String value = new String(data, position, (int)length, UTF8);
+        position += (int)length;
+        return value;
+    }
+
+    void skip(long length) throws IOException {
+        if (length < 0 || length > data.length - position) {
+            throw new IOException("Invalid length " + length);
+        }
+        position += (int)length;
+    }
+
+    /**
+     * Returns the given length as an int if it is a valid number of elements for the remaining data, as every element
+     * takes at least one byte.
+     *
+     * @param length        Length read from the message.
+     * @return              Length.
+     * @throws IOException  If the length can not be valid.
+     */
+    int checkLength(long length) throws IOException {
+        if (length < 0 || length > data.length - position) {
+            throw new IOException("Invalid length " + length);
+        }
+        return (int)length;
+    }
+}
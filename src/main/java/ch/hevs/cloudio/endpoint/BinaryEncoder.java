@@ -0,0 +1,191 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.util.Arrays;
+
+/**
+ * Base of the encoders used by the binary message formats. The encoder writes into a growable buffer which is reused
+ * for all messages encoded by the same thread, subclasses implement the actual encoding of the values. Strings are
+ * encoded to UTF-8 directly into the buffer, so encoding a message only allocates the resulting byte array.
+ */
+abstract class BinaryEncoder {
+    private static final int INITIAL_CAPACITY = 256;
+
+    /*** Attributes ***************************************************************************************************/
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int size = 0;
+    boolean busy = false;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Clears the buffer and writes the prefix identifying the message format.
+     */
+    void begin() {
+        size = 0;
+        writePrefix();
+    }
+
+    /**
+     * Returns a copy of the bytes written since the last call to {@link #begin()}.
+     *
+     * @return  Encoded message.
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Writes the header of a map with the given number of entries, the entries have to follow as key/value pairs.
+     *
+     * @param entries   Number of entries in the map.
+     */
+    abstract void writeMapHeader(int entries);
+
+    /**
+     * Writes the header of an array with the given number of elements, the elements have to follow.
+     *
+     * @param elements  Number of elements in the array.
+     */
+    abstract void writeArrayHeader(int elements);
+
+    /**
+     * Writes the given string.
+     *
+     * @param value String to write, null writes a null value.
+     */
+    void writeString(String value) {
+        if (value != null) {
+            writeText(value);
+        } else {
+            writeNull();
+        }
+    }
+
+    /**
+     * Writes the given integer using the most compact representation of the format.
+     *
+     * @param value Integer to write.
+     */
+    abstract void writeLong(long value);
+
+    /**
+     * Writes the given floating point number.
+     *
+     * @param value Number to write.
+     */
+    abstract void writeDouble(double value);
+
+    /**
+     * Writes the given boolean.
+     *
+     * @param value Boolean to write.
+     */
+    abstract void writeBoolean(boolean value);
+
+    /**
+     * Writes a null value.
+     */
+    abstract void writeNull();
+
+    /*** Package private methods **************************************************************************************/
+    /**
+     * Writes the bytes every message of the format starts with.
+     */
+    abstract void writePrefix();
+
+    /**
+     * Writes the given non-null string.
+     *
+     * @param value String to write.
+     */
+    abstract void writeText(String value);
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte)value;
+    }
+
+    void writeShort(int value) {
+        ensureCapacity(2);
+        buffer[size++] = (byte)(value >>> 8);
+        buffer[size++] = (byte)value;
+    }
+
+    void writeInt(int value) {
+        ensureCapacity(4);
+        buffer[size++] = (byte)(value >>> 24);
+        buffer[size++] = (byte)(value >>> 16);
+        buffer[size++] = (byte)(value >>> 8);
+        buffer[size++] = (byte)value;
+    }
+
+    void writeLong64(long value) {
+        writeInt((int)(value >>> 32));
+        writeInt((int)value);
+    }
+
+    /**
+     * Returns the number of bytes the given string takes when encoded using UTF-8. Unpaired surrogates are counted as
+     * a single byte, as they are replaced by '?' by {@link #writeUtf8(String)}.
+     *
+     * @param value String to measure.
+     * @return      Length in bytes.
+     */
+    static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() &&
+                Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                ++i;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the UTF-8 representation of the given string without any header.
+     *
+     * @param value String to write.
+     */
+    void writeUtf8(String value) {
+        ensureCapacity(value.length() * 3);
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[size++] = (byte)c;
+            } else if (c < 0x800) {
+                buffer[size++] = (byte)(0xC0 | (c >> 6));
+                buffer[size++] = (byte)(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() &&
+                Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[size++] = (byte)(0xF0 | (codePoint >> 18));
+                buffer[size++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[size++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[size++] = (byte)(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[size++] = '?';
+            } else {
+                buffer[size++] = (byte)(0xE0 | (c >> 12));
+                buffer[size++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                buffer[size++] = (byte)(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base of the binary message formats. The messages have the very same structure as the messages of the JSON format
+ * ({@link JsonMessageFormat}), but numbers are encoded in their native binary form and timestamps are sent as
+ * integer milliseconds since epoch instead of floating point seconds. Subclasses only provide the encoder and the
+ * decoder of the actual binary representation.
+ *
+ * Every thread uses its own encoder whose buffer is reused for all messages the thread serializes.
+ */
+abstract class BinaryMessageFormat implements CloudioMessageFormat {
+    private static final String NODES = "nodes";
+    private static final String IMPLEMENTS = "implements";
+    private static final String OBJECTS = "objects";
+    private static final String CONFORMS = "conforms";
+    private static final String ATTRIBUTES = "attributes";
+    private static final String UPDATES = "updates";
+    private static final String UUID = "uuid";
+    private static final String ID = "id";
+    private static final String TYPE = "type";
+    private static final String CONSTRAINT = "constraint";
+    private static final String TIMESTAMP = "timestamp";
+    private static final String VALUE = "value";
+    private static final String AGGREGATE = "aggregate";
+
+    private final ThreadLocal<BinaryEncoder> encoders = new ThreadLocal<BinaryEncoder>();
+
+    @Override
+    public byte[] serializeEndpoint(CloudioEndpoint.InternalEndpoint endpoint) {
+        BinaryEncoder encoder = acquireEncoder();
+        try {
+            List<CloudioNode.InternalNode> nodes = endpoint.getNodes();
+            encoder.writeMapHeader(1);
+            encoder.writeString(NODES);
+            encoder.writeMapHeader(nodes.size());
+            for (CloudioNode.InternalNode node: nodes) {
+                encoder.writeString(node.getName());
+                serializeNode(node, encoder);
+            }
+            return encoder.toByteArray();
+        } finally {
+            encoder.busy = false;
+        }
+    }
+
+    @Override
+    public byte[] serializeNode(CloudioNode.InternalNode node) {
+        BinaryEncoder encoder = acquireEncoder();
+        try {
+            serializeNode(node, encoder);
+            return encoder.toByteArray();
+        } finally {
+            encoder.busy = false;
+        }
+    }
+
+    @Override
+    public byte[] serializeAttribute(CloudioAttribute.InternalAttribute attribute) {
+        BinaryEncoder encoder = acquireEncoder();
+        try {
+            serializeAttribute(attribute, encoder);
+            return encoder.toByteArray();
+        } finally {
+            encoder.busy = false;
+        }
+    }
+
+    @Override
+    public byte[] serializeAttributeUpdate(AttributeUpdate update) {
+        BinaryEncoder encoder = acquireEncoder();
+        try {
+            serializeUpdate(update, false, false, encoder);
+            return encoder.toByteArray();
+        } finally {
+            encoder.busy = false;
+        }
+    }
+
+    @Override
+    public byte[] serializeAttributeUpdates(List<AttributeUpdate> updates, boolean withIds) {
+        BinaryEncoder encoder = acquireEncoder();
+        try {
+            encoder.writeMapHeader(1);
+            encoder.writeString(UPDATES);
+            encoder.writeArrayHeader(updates.size());
+            for (AttributeUpdate update: updates) {
+                serializeUpdate(update, true, withIds, encoder);
+            }
+            return encoder.toByteArray();
+        } finally {
+            encoder.busy = false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public byte[] combineAttributeUpdates(List<String> uuids, List<byte[]> messages) {
+        // Decode all messages first, as the number of updates has to be known in advance.
+        List<Object> updates = new ArrayList<Object>();
+        try {
+            for (int i = 0; i < messages.size(); ++i) {
+                Object message = createDecoder(messages.get(i)).readValue();
+                if (!(message instanceof Map)) {
+                    return null;
+                }
+                String uuid = uuids.get(i);
+                if (uuid != null) {
+                    Map<String, Object> update = new LinkedHashMap<String, Object>();
+                    update.put(UUID, uuid);
+                    update.putAll((Map<String, Object>)message);
+                    updates.add(update);
+                } else {
+                    Object entries = ((Map)message).get(UPDATES);
+                    if (!(entries instanceof List)) {
+                        return null;
+                    }
+                    updates.addAll((List<Object>)entries);
+                }
+            }
+        } catch (IOException exception) {
+            return null;
+        }
+
+        BinaryEncoder encoder = acquireEncoder();
+        try {
+            encoder.writeMapHeader(1);
+            encoder.writeString(UPDATES);
+            encoder.writeArrayHeader(updates.size());
+            for (Object update: updates) {
+                writeValue(update, encoder);
+            }
+            return encoder.toByteArray();
+        } finally {
+            encoder.busy = false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void deserializeAttribute(byte[] data, CloudioAttribute.InternalAttribute attribute)
+        throws CloudioAttributeConstraintException, NumberFormatException, IOException {
+        Object message = createDecoder(data).readValue();
+        if (message instanceof Map) {
+            Object timestamp = ((Map)message).get(TIMESTAMP);
+            Object value = ((Map)message).get(VALUE);
+            if (timestamp instanceof Number && ((Number)timestamp).longValue() != 0 && value != null) {
+                value = convert(value, attribute.getExternalAttribute().getType());
+                if (value != null) {
+                    attribute.setValueFromCloud(value, ((Number)timestamp).longValue());
+                }
+            }
+        }
+    }
+
+    /*** Package private methods **************************************************************************************/
+    /**
+     * Creates a new encoder, called once per thread.
+     *
+     * @return  Encoder.
+     */
+    abstract BinaryEncoder createEncoder();
+
+    /**
+     * Creates a decoder for the given message. The decoder has to skip the prefix identifying the format.
+     *
+     * @param data          Message to decode.
+     * @return              Decoder positioned on the first value.
+     * @throws IOException  If the message does not start with the prefix of the format.
+     */
+    abstract BinaryDecoder createDecoder(byte[] data) throws IOException;
+
+    /**
+     * Converts a value decoded from a message to the Java type of an attribute.
+     *
+     * @param value                     Decoded value.
+     * @param type                      Java type of the attribute.
+     * @return                          Converted value or null if the attribute type is not supported.
+     * @throws NumberFormatException    If the value can not be converted.
+     */
+    static Object convert(Object value, Type type) throws NumberFormatException {
+        if (type == Boolean.class) {
+            if (value instanceof Boolean) {
+                return value;
+            }
+            return Boolean.parseBoolean(value.toString());
+        } else if (type == Short.class || type == Integer.class || type == Long.class) {
+            long integer;
+            if (value instanceof Long) {
+                integer = (Long)value;
+            } else if (value instanceof Double && (Double)value == Math.rint((Double)value)) {
+                integer = ((Double)value).longValue();
+            } else {
+                integer = Long.decode(value.toString());
+            }
+            if (type == Long.class) {
+                return integer;
+            } else if (type == Integer.class && integer == (int)integer) {
+                return (int)integer;
+            } else if (type == Short.class && integer == (short)integer) {
+                return (short)integer;
+            }
+            throw new NumberFormatException("Value out of range: " + integer);
+        } else if (type == Float.class || type == Double.class) {
+            double number;
+            if (value instanceof Number) {
+                number = ((Number)value).doubleValue();
+            } else {
+                number = Double.parseDouble(value.toString());
+            }
+            return type == Float.class ? (Object)(float)number : (Object)number;
+        } else if (type == String.class) {
+            return value.toString();
+        }
+        return null;
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private BinaryEncoder acquireEncoder() {
+        BinaryEncoder encoder = encoders.get();
+        if (encoder == null) {
+            encoder = createEncoder();
+            encoders.set(encoder);
+        } else if (encoder.busy) {
+            // The thread is already serializing another message, use a new encoder.
+            encoder = createEncoder();
+        }
+        encoder.busy = true;
+        encoder.begin();
+        return encoder;
+    }
+
+    private void serializeNode(CloudioNode.InternalNode node, BinaryEncoder encoder) {
+        encoder.writeMapHeader(2);
+
+        Set<String> interfaces = node.getInterfaces();
+        encoder.writeString(IMPLEMENTS);
+        encoder.writeArrayHeader(interfaces.size());
+        for (String interface_: interfaces) {
+            encoder.writeString(interface_);
+        }
+
+        List<CloudioObject.InternalObject> objects = node.getObjects().toList();
+        encoder.writeString(OBJECTS);
+        encoder.writeMapHeader(objects.size());
+        for (CloudioObject.InternalObject object: objects) {
+            encoder.writeString(object.getName());
+            serializeObject(object, encoder);
+        }
+    }
+
+    private void serializeObject(CloudioObject.InternalObject object, BinaryEncoder encoder) {
+        String conforms = object.getConforms();
+        encoder.writeMapHeader(conforms != null ? 3 : 2);
+
+        if (conforms != null) {
+            encoder.writeString(CONFORMS);
+            encoder.writeString(conforms);
+        }
+
+        List<CloudioObject.InternalObject> objects = object.getObjects().toList();
+        encoder.writeString(OBJECTS);
+        encoder.writeMapHeader(objects.size());
+        for (CloudioObject.InternalObject childObject: objects) {
+            encoder.writeString(childObject.getName());
+            serializeObject(childObject, encoder);
+        }
+
+        List<CloudioAttribute.InternalAttribute> attributes = object.getAttributes().toList();
+        encoder.writeString(ATTRIBUTES);
+        encoder.writeMapHeader(attributes.size());
+        for (CloudioAttribute.InternalAttribute attribute: attributes) {
+            encoder.writeString(attribute.getName());
+            serializeAttribute(attribute, encoder);
+        }
+    }
+
+    private void serializeAttribute(CloudioAttribute.InternalAttribute attribute, BinaryEncoder encoder) {
+        CloudioAttributeConstraint constraint = attribute.getConstraint();
+        boolean timestamped = constraint != CloudioAttributeConstraint.Static && attribute.hasTimestamp();
+        boolean hasValue = hasValue(attribute);
+        boolean hasId = attribute.getId() != CloudioAttribute.InternalAttribute.NO_ID;
+        encoder.writeMapHeader(2 + (hasId ? 1 : 0) + (timestamped ? 1 : 0) + (hasValue ? 1 : 0));
+
+        if (hasId) {
+            encoder.writeString(ID);
+            encoder.writeLong(attribute.getId());
+        }
+
+        encoder.writeString(TYPE);
+        encoder.writeString(attribute.getType().toString());
+        encoder.writeString(CONSTRAINT);
+        encoder.writeString(constraint.toString());
+
+        if (timestamped) {
+            encoder.writeString(TIMESTAMP);
+            encoder.writeLong(attribute.getTimestampMillis());
+        }
+
+        if (hasValue) {
+            encoder.writeString(VALUE);
+            writeAttributeValue(attribute, encoder);
+        }
+    }
+
+    private void serializeUpdate(AttributeUpdate update, boolean withUuid, boolean withIds, BinaryEncoder encoder) {
+        CloudioAttribute.InternalAttribute attribute = update.getAttribute();
+        CloudioAttributeConstraint constraint = attribute.getConstraint();
+        boolean timestamped = constraint != CloudioAttributeConstraint.Static && update.getTimestamp() != null;
+        Object value = update.getValue();
+        AttributeAggregate aggregate = update.getAggregate();
+
+        // Updates referencing the attribute by its identifier omit the type and constraint known from the data model.
+        boolean withId = withUuid && withIds && attribute.getId() != CloudioAttribute.InternalAttribute.NO_ID;
+        encoder.writeMapHeader((withId ? 1 : withUuid ? 3 : 2) + (timestamped ? 1 : 0) + (value != null ? 1 : 0) +
+            (aggregate != null ? 1 : 0));
+
+        if (withId) {
+            encoder.writeString(ID);
+            encoder.writeLong(attribute.getId());
+        } else {
+            if (withUuid) {
+                encoder.writeString(UUID);
+                encoder.writeString(attribute.getUuid().toString());
+            }
+
+            encoder.writeString(TYPE);
+            encoder.writeString(attribute.getType().toString());
+            encoder.writeString(CONSTRAINT);
+            encoder.writeString(constraint.toString());
+        }
+
+        if (timestamped) {
+            encoder.writeString(TIMESTAMP);
+            encoder.writeLong(update.getTimestamp());
+        }
+
+        if (value != null) {
+            encoder.writeString(VALUE);
+            writeValue(value, encoder);
+        }
+
+        if (aggregate != null) {
+            encoder.writeString(AGGREGATE);
+            encoder.writeMapHeader(6);
+            encoder.writeString("start");
+            encoder.writeLong(aggregate.getStart());
+            encoder.writeString("end");
+            encoder.writeLong(aggregate.getEnd());
+            encoder.writeString("count");
+            encoder.writeLong(aggregate.getCount());
+            encoder.writeString("min");
+            encoder.writeDouble(aggregate.getMin());
+            encoder.writeString("max");
+            encoder.writeDouble(aggregate.getMax());
+            encoder.writeString("mean");
+            encoder.writeDouble(aggregate.getMean());
+        }
+    }
+
+    private static boolean hasValue(CloudioAttribute.InternalAttribute attribute) {
+        CloudioAttribute external = attribute.getExternalAttribute();
+        if (external instanceof CloudioDoubleAttribute) {
+            return ((CloudioDoubleAttribute)external).hasValue();
+        } else if (external instanceof CloudioLongAttribute) {
+            return ((CloudioLongAttribute)external).hasValue();
+        } else if (external instanceof CloudioBooleanAttribute) {
+            return ((CloudioBooleanAttribute)external).hasValue();
+        }
+        return attribute.getValue() != null;
+    }
+
+    private static void writeAttributeValue(CloudioAttribute.InternalAttribute attribute, BinaryEncoder encoder) {
+        // Primitive attributes are written without boxing their value.
+        CloudioAttribute external = attribute.getExternalAttribute();
+        if (external instanceof CloudioDoubleAttribute) {
+            encoder.writeDouble(((CloudioDoubleAttribute)external).getDoubleValue());
+        } else if (external instanceof CloudioLongAttribute) {
+            encoder.writeLong(((CloudioLongAttribute)external).getLongValue());
+        } else if (external instanceof CloudioBooleanAttribute) {
+            encoder.writeBoolean(((CloudioBooleanAttribute)external).getBooleanValue());
+        } else {
+            writeValue(attribute.getValue(), encoder);
+        }
+    }
+
+    private static void writeValue(Object value, BinaryEncoder encoder) {
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>)value;
+            encoder.writeMapHeader(map.size());
+            for (Map.Entry<?, ?> entry: map.entrySet()) {
+                encoder.writeString(entry.getKey().toString());
+                writeValue(entry.getValue(), encoder);
+            }
+        } else if (value instanceof List) {
+            List<?> list = (List<?>)value;
+            encoder.writeArrayHeader(list.size());
+            for (Object element: list) {
+                writeValue(element, encoder);
+            }
+        } else if (value instanceof Double || value instanceof Float) {
+            encoder.writeDouble(((Number)value).doubleValue());
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short) {
+            encoder.writeLong(((Number)value).longValue());
+        } else if (value instanceof Boolean) {
+            encoder.writeBoolean((Boolean)value);
+        } else if (value != null) {
+            encoder.writeString(value.toString());
+        } else {
+            encoder.writeNull();
+        }
+    }
+}
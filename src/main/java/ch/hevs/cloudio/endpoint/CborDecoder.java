@@ -0,0 +1,141 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes values encoded using CBOR (Concise Binary Object Representation, RFC 7049). Definite and indefinite length
+ * maps and arrays are supported, tags are ignored. Byte strings and indefinite length text strings are not used by
+ * cloud.iO and rejected.
+ */
+class CborDecoder extends BinaryDecoder {
+    private static final int BREAK = 0xFF;
+
+    CborDecoder(byte[] data, int offset) {
+        super(data, offset);
+    }
+
+    @Override
+    Object readValue() throws IOException {
+        return readValue(readByte());
+    }
+
+    private Object readValue(int initial) throws IOException {
+        int major = initial >>> 5;
+        int info = initial & 0x1F;
+        switch (major) {
+            case 0:
+                return readUnsigned(readArgument(info));
+
+            case 1:
+                return -1 - readUnsigned(readArgument(info));
+
+            case 3:
+                if (info == 31) {
+                    throw new IOException("Indefinite length strings are not supported");
+                }
+                return readUtf8(readArgument(info));
+
+            case 4: {
+                List<Object> list = new ArrayList<Object>();
+                if (info == 31) {
+                    for (int next = readByte(); next != BREAK; next = readByte()) {
+                        list.add(readValue(next));
+                    }
+                } else {
+                    for (int i = checkLength(readArgument(info)); i > 0; --i) {
+                        list.add(readValue());
+                    }
+                }
+                return list;
+            }
+
+            case 5: {
+                Map<String, Object> map = new LinkedHashMap<String, Object>();
+                if (info == 31) {
+                    for (int next = readByte(); next != BREAK; next = readByte()) {
+                        map.put(String.valueOf(readValue(next)), readValue());
+                    }
+                } else {
+                    for (int i = checkLength(readArgument(info)); i > 0; --i) {
+                        map.put(String.valueOf(readValue()), readValue());
+                    }
+                }
+                return map;
+            }
+
+            case 6:
+                // Tags only add semantics to the following value, ignore them.
+                readArgument(info);
+                return readValue();
+
+            case 7:
+                return readSimple(info);
+
+            default:
+                throw new IOException("Unsupported CBOR major type " + major);
+        }
+    }
+
+    private long readArgument(int info) throws IOException {
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24:
+                return readByte();
+            case 25:
+                return readShort();
+            case 26:
+                return readInt() & 0xFFFFFFFFL;
+            case 27:
+                return readLong64();
+            default:
+                throw new IOException("Invalid CBOR argument " + info);
+        }
+    }
+
+    private static long readUnsigned(long value) throws IOException {
+        if (value < 0) {
+            throw new IOException("CBOR integer out of range");
+        }
+        return value;
+    }
+
+    private Object readSimple(int info) throws IOException {
+        switch (info) {
+            case 20:
+                return Boolean.FALSE;
+            case 21:
+                return Boolean.TRUE;
+            case 22:
+            case 23:
+                return null;
+            case 25:
+                return halfToDouble(readShort());
+            case 26:
+                return (double)Float.intBitsToFloat(readInt());
+            case 27:
+                return Double.longBitsToDouble(readLong64());
+            default:
+                throw new IOException("Unsupported CBOR simple value " + info);
+        }
+    }
+
+    private static double halfToDouble(int half) {
+        int exponent = (half >> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        double value;
+        if (exponent == 0) {
+            value = mantissa * Math.pow(2, -24);
+        } else if (exponent != 31) {
+            value = (mantissa + 1024) * Math.pow(2, exponent - 25);
+        } else {
+            value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+        }
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+}
@@ -0,0 +1,87 @@
+package ch.hevs.cloudio.endpoint;
+
+/**
+ * Encodes values using CBOR (Concise Binary Object Representation, RFC 7049). Every message starts with the
+ * self-describe tag 55799 (0xD9 0xD9 0xF7), which identifies the message as CBOR without changing its meaning.
+ */
+class CborEncoder extends BinaryEncoder {
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+
+    @Override
+    void writePrefix() {
+        writeByte(0xD9);
+        writeByte(0xD9);
+        writeByte(0xF7);
+    }
+
+    @Override
+    void writeMapHeader(int entries) {
+        writeHeader(MAJOR_MAP, entries);
+    }
+
+    @Override
+    void writeArrayHeader(int elements) {
+        writeHeader(MAJOR_ARRAY, elements);
+    }
+
+    @Override
+    void writeText(String value) {
+        writeHeader(MAJOR_TEXT, utf8Length(value));
+        writeUtf8(value);
+    }
+
+    @Override
+    void writeLong(long value) {
+        if (value >= 0) {
+            writeHeader(MAJOR_UNSIGNED, value);
+        } else {
+            writeHeader(MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    @Override
+    void writeDouble(double value) {
+        // Use single precision whenever it represents the value exactly.
+        float single = (float)value;
+        if (single == value || Double.isNaN(value)) {
+            writeByte(0xFA);
+            writeInt(Float.floatToIntBits(single));
+        } else {
+            writeByte(0xFB);
+            writeLong64(Double.doubleToLongBits(value));
+        }
+    }
+
+    @Override
+    void writeBoolean(boolean value) {
+        writeByte(value ? 0xF5 : 0xF4);
+    }
+
+    @Override
+    void writeNull() {
+        writeByte(0xF6);
+    }
+
+    private void writeHeader(int major, long argument) {
+        int type = major << 5;
+        if (argument < 24) {
+            writeByte(type | (int)argument);
+        } else if (argument <= 0xFF) {
+            writeByte(type | 24);
+            writeByte((int)argument);
+        } else if (argument <= 0xFFFF) {
+            writeByte(type | 25);
+            writeShort((int)argument);
+        } else if (argument <= 0xFFFFFFFFL) {
+            writeByte(type | 26);
+            writeInt((int)argument);
+        } else {
+            writeByte(type | 27);
+            writeLong64(argument);
+        }
+    }
+}
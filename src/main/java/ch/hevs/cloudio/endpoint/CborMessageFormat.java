@@ -0,0 +1,33 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.io.IOException;
+
+/**
+ * Encodes messages using CBOR (Concise Binary Object Representation, RFC 7049). The messages have the same structure as
+ * the JSON messages, but numbers are sent in binary form and timestamps as integer milliseconds since epoch. All
+ * messages start with the CBOR self-describe tag (0xD9 0xD9 0xF7), so the identifier of this format is 0xD9.
+ */
+class CborMessageFormat extends BinaryMessageFormat {
+    @Override
+    public int getIdentifier() {
+        return 0xD9;
+    }
+
+    @Override
+    public String getName() {
+        return "cbor";
+    }
+
+    @Override
+    BinaryEncoder createEncoder() {
+        return new CborEncoder();
+    }
+
+    @Override
+    BinaryDecoder createDecoder(byte[] data) throws IOException {
+        if (data.length < 3 || (data[0] & 0xFF) != 0xD9 || (data[1] & 0xFF) != 0xD9 || (data[2] & 0xFF) != 0xF7) {
+            throw new IOException("Message does not start with the CBOR self-describe tag");
+        }
+        return new CborDecoder(data, 3);
+    }
+}
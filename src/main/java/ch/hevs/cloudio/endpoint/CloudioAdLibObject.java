@@ -273,6 +273,50 @@ public class CloudioAdLibObject extends CloudioObject {
             return this;
         }
 
+        /**
+         * Sets a deadband for the attribute with the given name. Changes that stay inside the deadband around the last
+         * value sent to the cloud are not sent to the cloud.
+         *
+         * @param name                              Name of the attribute.
+         * @param deadband                          Width of the deadband on either side of the last value sent.
+         * @param percent                           True if the deadband is given in percent, false if absolute.
+         * @return                                  Returns a reference to the builder in order to chain method calls.
+         * @throws InvalidCloudioAttributeException If there is no such attribute or the attribute is not numeric.
+         */
+        public Builder deadband(final String name, final double deadband, final boolean percent)
+            throws InvalidCloudioAttributeException {
+            object.findAttribute(name).setDeadband(deadband, percent);
+            return this;
+        }
+
+        /**
+         * Limits how often changes of the attribute with the given name are sent to the cloud.
+         *
+         * @param name                              Name of the attribute.
+         * @param minInterval                       Minimal interval in milliseconds between two values sent.
+         * @param heartbeat                         Heartbeat interval in milliseconds, 0 disables the heartbeat.
+         * @return                                  Returns a reference to the builder in order to chain method calls.
+         * @throws InvalidCloudioAttributeException If there is no such attribute or an interval is negative.
+         */
+        public Builder publishInterval(final String name, final long minInterval, final long heartbeat)
+            throws InvalidCloudioAttributeException {
+            object.findAttribute(name).setPublishInterval(minInterval, heartbeat);
+            return this;
+        }
+
+        /**
+         * Aggregates the values of the measure attribute with the given name over windows of the given length.
+         *
+         * @param name                              Name of the attribute.
+         * @param window                            Length of the aggregation window in milliseconds.
+         * @return                                  Returns a reference to the builder in order to chain method calls.
+         * @throws InvalidCloudioAttributeException If there is no such attribute or it can not be aggregated.
+         */
+        public Builder aggregation(final String name, final long window) throws InvalidCloudioAttributeException {
+            object.findAttribute(name).setAggregationWindow(window);
+            return this;
+        }
+
         /**
          * Declares conformance of the object for a given data class. Note that a cloud.io objects can only declare
          * conformance for exactly one data class, it you try to declare a second conformance , a runtime exception will
@@ -297,6 +341,14 @@ public class CloudioAdLibObject extends CloudioObject {
     }
 
     /*** Internal API *************************************************************************************************/
+    private CloudioAttribute findAttribute(final String name) throws InvalidCloudioAttributeException {
+        CloudioAttribute.InternalAttribute attribute = ((InternalCustomObject)internal).dynamicAttributes.getItem(name);
+        if (attribute == null) {
+            throw new InvalidCloudioAttributeException("No attribute named " + name + " in object!");
+        }
+        return attribute.getExternalAttribute();
+    }
+
     class InternalCustomObject extends CloudioObject.InternalObject {
         private final NamedItemSet<CloudioObject.InternalObject> dynamicObjects = new NamedItemSet<CloudioObject.InternalObject>();
         private final NamedItemSet<CloudioAttribute.InternalAttribute> dynamicAttributes =
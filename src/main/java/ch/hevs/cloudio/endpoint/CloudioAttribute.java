@@ -1,9 +1,10 @@
 package ch.hevs.cloudio.endpoint;
 
 import java.lang.reflect.Type;
-import java.util.Calendar;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The leafs of a cloud.io data model consists of attributes. Attributes carry the actual information (not the
@@ -16,6 +17,8 @@ import java.util.List;
  *     <li>Numbers (Float, Double)</li>
  *     <li>String</li>
  * </ul>
+ * For attributes changing at a high rate, {@link CloudioDoubleAttribute}, {@link CloudioLongAttribute} and
+ * {@link CloudioBooleanAttribute} store their value as a primitive and avoid boxing the value and the timestamp.
  *
  * <h3>Example:</h3>
  * <pre>
@@ -46,6 +49,8 @@ import java.util.List;
  * @param <T>   Data type of the attribute, must be one of the supported data types!
  */
 public class CloudioAttribute<T> {
+    private static final CloudioClock DEFAULT_CLOCK = new CloudioWallClock();
+
     final InternalAttribute internal = new InternalAttribute();
 
     /*** Public API ***************************************************************************************************/
@@ -55,7 +60,7 @@ public class CloudioAttribute<T> {
      * @return  Attributes current value.
      */
     public T getValue() {
-        return internal.value;
+        return loadValue();
     }
 
     /**
@@ -66,7 +71,7 @@ public class CloudioAttribute<T> {
      * @throws CloudioAttributeConstraintException If the endpoint can not change the attribute.
      */
     public void setValue(final T value) throws CloudioAttributeConstraintException {
-        setValue(value, Calendar.getInstance().getTimeInMillis());
+        setValue(value, internal.clock.currentTimeMillis());
     }
 
     /**
@@ -82,21 +87,20 @@ public class CloudioAttribute<T> {
         internal.constraint.endpointWillChange();
 
         // Update value.
-        internal.timestamp = timestamp;
-        internal.value = value;
-
-        // Send change to cloud.
-        if (internal.parent != null) {
-            internal.parent.attributeHasChangedByEndpoint(this.internal);
+        internal.setTimestamp(timestamp);
+        storeValue(value);
+
+        // Aggregate or filter the change.
+        boolean publish = true;
+        long time = timestamp != null ? timestamp : internal.clock.currentTimeMillis();
+        if (internal.aggregator != null) {
+            publish = value != null && internal.aggregated(internal.aggregator.add((Number)value, time));
+        } else if (internal.filter != null && value != null) {
+            publish = internal.filter.accept(value, time);
         }
 
-        // Inform all registered listeners.
-        if (internal.listeners != null) {
-            for (CloudioAttributeListener listener : internal.listeners) {
-                //noinspection unchecked
-                listener.attributeHasChanged(this);
-            }
-        }
+        // Send change to cloud and inform all registered listeners.
+        internal.changedByEndpoint(publish);
     }
 
     /**
@@ -113,7 +117,7 @@ public class CloudioAttribute<T> {
         internal.constraint.endpointWillInitialize();
 
         // Check that the value was not set before.
-        if (internal.value != null) {
+        if (loadValue() != null) {
             throw new CloudioAttributeInitializationException("Attribute has already been initialized, an attribute can " +
                     "only be initialized once!");
         }
@@ -125,7 +129,7 @@ public class CloudioAttribute<T> {
         }
 
         // Initialize value.
-        internal.value = initialValue;
+        storeValue(initialValue);
     }
 
     /**
@@ -140,7 +144,7 @@ public class CloudioAttribute<T> {
         internal.constraint.endpointWillInitializeAdLib();
 
         // Check that the value was not set before.
-        if (internal.value != null) {
+        if (loadValue() != null) {
             throw new CloudioAttributeInitializationException("Attribute has already been initialized, an attribute can " +
                 "only be initialized once!");
         }
@@ -152,7 +156,7 @@ public class CloudioAttribute<T> {
         }
 
         // Initialize value.
-        internal.value = initialValue;
+        storeValue(initialValue);
     }
 
     /**
@@ -164,7 +168,7 @@ public class CloudioAttribute<T> {
      * @throws CloudioAttributeConstraintException If the endpoint can not change the attribute.
      */
     public void setStringValue(final String value) throws NumberFormatException, CloudioAttributeConstraintException {
-        setStringValue(value, Calendar.getInstance().getTimeInMillis());
+        setStringValue(value, internal.clock.currentTimeMillis());
     }
 
     /**
@@ -245,19 +249,146 @@ public class CloudioAttribute<T> {
         }
     }
 
+    /**
+     * Selects whether updates of this attribute are conflated or not. If an attribute is conflated, an update that has
+     * not been sent yet is replaced by a newer value of the same attribute instead of sending every intermediate value.
+     * If this method is never called, the endpoint decides depending on the attribute's constraint. Note that the mode
+     * can only be changed before the node is registered within the endpoint.
+     *
+     * @param conflated True to conflate the updates of the attribute, false to send every single update.
+     */
+    public void setConflated(final boolean conflated) {
+        if (internal.parent != null && internal.parent.isNodeRegisteredWithinEndpoint()) {
+            throw new CloudioModificationException("The conflation mode of an attribute can only be changed before " +
+                "the node is registered within the endpoint!");
+        }
+
+        internal.conflated = conflated;
+    }
+
+    /**
+     * Sets a deadband for the attribute. Changes that stay inside the deadband around the last value sent to the cloud
+     * update the attribute and inform the listeners, but are not sent to the cloud. Only attributes of type Integer or
+     * Number can have a deadband and the deadband can only be changed before the node is registered within the
+     * endpoint.
+     *
+     * @param deadband  Width of the deadband on either side of the last value sent, 0 disables the deadband.
+     * @param percent   True if the deadband is given in percent of the last value sent, false if it is absolute.
+     * @throws InvalidCloudioAttributeException If the attribute is not numeric or the deadband is negative.
+     */
+    public void setDeadband(final double deadband, final boolean percent) {
+        if (internal.parent != null && internal.parent.isNodeRegisteredWithinEndpoint()) {
+            throw new CloudioModificationException("The deadband of an attribute can only be changed before the " +
+                "node is registered within the endpoint!");
+        }
+
+        CloudioAttributeType type = internal.getType();
+        if (type != CloudioAttributeType.Integer && type != CloudioAttributeType.Number) {
+            throw new InvalidCloudioAttributeException("Only attributes of type Integer or Number can have a " +
+                "deadband!");
+        }
+
+        internal.getFilter().setDeadband(deadband, percent);
+    }
+
+    /**
+     * Limits how often changes of the attribute are sent to the cloud. Changes that happen less than the minimal
+     * interval after the last value sent update the attribute and inform the listeners immediately, but only the latest
+     * of them is sent to the cloud once the interval has expired. Once the last value sent is older than the heartbeat
+     * interval, the actual value is sent again even if it has not changed or only changed inside the deadband. The
+     * intervals are measured using the timestamps of the values and can only be changed before the node is registered
+     * within the endpoint.
+     *
+     * @param minInterval   Minimal interval in milliseconds between two values sent, 0 for no limitation.
+     * @param heartbeat     Heartbeat interval in milliseconds, 0 disables the heartbeat.
+     * @throws InvalidCloudioAttributeException If one of the intervals is negative.
+     */
+    public void setPublishInterval(final long minInterval, final long heartbeat) {
+        if (internal.parent != null && internal.parent.isNodeRegisteredWithinEndpoint()) {
+            throw new CloudioModificationException("The publish interval of an attribute can only be changed before " +
+                "the node is registered within the endpoint!");
+        }
+
+        internal.getFilter().setIntervals(minInterval, heartbeat);
+    }
+
+    /**
+     * Aggregates the values of the attribute over windows of the given length. Instead of every single value, the
+     * endpoint sends one message per window to the cloud containing the last value of the window together with the
+     * number of values and their minimum, maximum and mean. A window is sent as soon as the first value of a later
+     * window is set or the endpoint's clock has passed the end of the window, the actual window is sent when the
+     * endpoint is closed. The values set still update the attribute and inform the listeners immediately. Only measure
+     * attributes of type Integer or Number can be aggregated, the aggregation takes precedence over the publish
+     * filters and can only be changed before the node is registered within the endpoint.
+     *
+     * @param window    Length of the aggregation window in milliseconds, 0 disables the aggregation.
+     * @throws InvalidCloudioAttributeException If the attribute can not be aggregated or the window is negative.
+     */
+    public void setAggregationWindow(final long window) {
+        if (internal.parent != null && internal.parent.isNodeRegisteredWithinEndpoint()) {
+            throw new CloudioModificationException("The aggregation window of an attribute can only be changed " +
+                "before the node is registered within the endpoint!");
+        }
+
+        CloudioAttributeType type = internal.getType();
+        if (internal.constraint != CloudioAttributeConstraint.Measure ||
+            (type != CloudioAttributeType.Integer && type != CloudioAttributeType.Number)) {
+            throw new InvalidCloudioAttributeException("Only measure attributes of type Integer or Number can be " +
+                "aggregated!");
+        }
+
+        internal.aggregator = window != 0 ?
+            new AttributeAggregator(window, type == CloudioAttributeType.Integer) : null;
+    }
+
     /*** Internal API *************************************************************************************************/
     CloudioAttribute() {}
 
+    /**
+     * Returns the value of the attribute. Attributes storing their value as a primitive override this method and box
+     * the value only if it is requested using the generic API.
+     *
+     * @return  Value or null if the attribute does not have a value.
+     */
+    T loadValue() {
+        return internal.value;
+    }
+
+    /**
+     * Changes the value of the attribute. Attributes storing their value as a primitive override this method.
+     *
+     * @param value Value to store, null clears the value.
+     */
+    void storeValue(final T value) {
+        internal.value = value;
+    }
+
     class InternalAttribute implements UniqueIdentifiable {
+        /**
+         * Identifier of attributes which have not been assigned a numeric identifier by the endpoint.
+         */
+        static final int NO_ID = -1;
+
         /*** Attributes ***********************************************************************************************/
         private String name = null;
         private CloudioAttributeContainer parent = null;
         private TopicUuid uuid = null;
         private CloudioAttributeConstraint constraint = null;
         private Type rawType = null;
-        private Long timestamp = null;
+        private JsonValueCodec valueCodec = null;
+        private long timestamp = 0;
+        private boolean timestamped = false;
         private T value = null;
         private List<CloudioAttributeListener> listeners = null;
+        private Boolean conflated = null;
+        private AttributePublishFilter filter = null;
+        private AttributeAggregator aggregator = null;
+        private CloudioClock clock = DEFAULT_CLOCK;
+        private String updateTopic = null;
+        private String setTopic = null;
+        private String pendingUpdateKeyPrefix = null;
+        private int id = NO_ID;
+        private final AtomicReference<AttributeUpdate> pendingUpdate = new AtomicReference<AttributeUpdate>();
 
         /*** UniqueIdentifiable Implementation ************************************************************************/
         @Override
@@ -282,7 +413,7 @@ public class CloudioAttribute<T> {
          * @return  Attributes current value.
          */
         T getValue() {
-            return value;
+            return loadValue();
         }
 
         /**
@@ -299,14 +430,14 @@ public class CloudioAttribute<T> {
             constraint.cloudWillChange();
 
             // Check if the value from the cloud is older than the actual one and do nothing if that is the case.
-            if (this.timestamp != null && this.timestamp >= timestamp)
+            if (timestamped && this.timestamp >= timestamp)
                 return false;
 
             // TODO: Maybe we should check that the timestamp is not older than a given number of seconds.
 
             // Update the value.
-            this.timestamp = timestamp;
-            this.value = value;
+            setTimestamp(timestamp);
+            storeValue(value);
 
             // Notify the cloud.
             if (parent != null) {
@@ -337,7 +468,7 @@ public class CloudioAttribute<T> {
             constraint.endpointWillChangeStatic();
 
             // Set value.
-            this.value = value;
+            storeValue(value);
         }
 
         /**
@@ -438,12 +569,329 @@ public class CloudioAttribute<T> {
             }
 
             rawType = type;
+            valueCodec = JsonValueCodec.forRawType(type);
+        }
+
+        /**
+         * Returns the codec reading values of the attribute's Java type from JSON messages.
+         *
+         * @return  Codec or null if the attribute does not have a type yet.
+         */
+        JsonValueCodec getValueCodec() {
+            return valueCodec;
         }
 
+        /**
+         * Returns the timestamp of the attribute's value.
+         *
+         * @return  Timestamp in milliseconds since epoch or null if the value does not have a timestamp.
+         */
         Long getTimestamp() {
+            return timestamped ? timestamp : null;
+        }
+
+        /**
+         * Returns true if the attribute's value has a timestamp.
+         *
+         * @return  True if the value has a timestamp, false otherwise.
+         */
+        boolean hasTimestamp() {
+            return timestamped;
+        }
+
+        /**
+         * Returns the timestamp of the attribute's value without boxing it.
+         *
+         * @return  Timestamp in milliseconds since epoch, only valid if {@link #hasTimestamp()} returns true.
+         */
+        long getTimestampMillis() {
             return timestamp;
         }
 
+        /**
+         * Changes the timestamp of the attribute's value.
+         *
+         * @param timestamp Timestamp in milliseconds since epoch or null to clear the timestamp.
+         */
+        void setTimestamp(final Long timestamp) {
+            if (timestamp != null) {
+                setTimestamp(timestamp.longValue());
+            } else {
+                timestamped = false;
+            }
+        }
+
+        /**
+         * Changes the timestamp of the attribute's value.
+         *
+         * @param timestamp Timestamp in milliseconds since epoch.
+         */
+        void setTimestamp(final long timestamp) {
+            this.timestamp = timestamp;
+            timestamped = true;
+        }
+
+        /**
+         * Applies the publish filter to a numeric value changed by the endpoint, or adds the value to the aggregation
+         * window if the attribute is aggregated.
+         *
+         * @param value     New value.
+         * @param timestamp Timestamp of the new value in milliseconds since epoch.
+         * @return          True if the change has to be sent to the cloud.
+         */
+        boolean accept(final double value, final long timestamp) {
+            if (aggregator != null) {
+                return aggregated(aggregator.add(value, timestamp));
+            }
+            return filter == null || filter.accept(value, timestamp);
+        }
+
+        /**
+         * Applies the publish filter to a value changed by the endpoint, or adds the value to the aggregation window if
+         * the attribute is aggregated.
+         *
+         * @param value     New value.
+         * @param timestamp Timestamp of the new value in milliseconds since epoch.
+         * @return          True if the change has to be sent to the cloud.
+         */
+        boolean accept(final long value, final long timestamp) {
+            if (aggregator != null) {
+                return aggregated(aggregator.add(value, timestamp));
+            }
+            return filter == null || filter.accept((double)value, timestamp);
+        }
+
+        /**
+         * Sends the change to the cloud if required and informs all registered listeners.
+         *
+         * @param publish   True if the change has to be sent to the cloud.
+         */
+        void changedByEndpoint(final boolean publish) {
+            // Send change to cloud.
+            if (publish && parent != null) {
+                parent.attributeHasChangedByEndpoint(this);
+            }
+
+            // Inform all registered listeners.
+            if (listeners != null) {
+                for (CloudioAttributeListener listener : listeners) {
+                    //noinspection unchecked
+                    listener.attributeHasChanged(CloudioAttribute.this);
+                }
+            }
+        }
+
+        /**
+         * Returns whether the updates of the attribute have to be conflated.
+         *
+         * @return  True or false if the conflation mode was explicitly selected for the attribute, null if not.
+         */
+        Boolean getConflated() {
+            return conflated;
+        }
+
+        /**
+         * Returns the slot holding the update of the attribute that is waiting to be sent if the attribute's updates
+         * are conflated.
+         *
+         * @return  Pending update slot.
+         */
+        AtomicReference<AttributeUpdate> getPendingUpdate() {
+            return pendingUpdate;
+        }
+
+        /**
+         * Returns the publish filter of the attribute, creates the filter if the attribute does not have one yet.
+         *
+         * @return  Publish filter.
+         */
+        AttributePublishFilter getFilter() {
+            // Lazy initialization of the filter.
+            if (filter == null) {
+                filter = new AttributePublishFilter();
+            }
+            return filter;
+        }
+
+        /**
+         * Called by the endpoint when the node containing the attribute is added to the endpoint. Computes the UUID,
+         * the MQTT topics used to send updates and to receive new values and the prefix of the persistence key for
+         * updates that could not be sent, so they do not have to be built again for every single message. The publish
+         * filter uses the given timer to send held changes and heartbeats, the aggregator to send expired windows.
+         *
+         * @param clock Clock of the endpoint.
+         * @param timer Timer of the endpoint.
+         */
+        void attach(final CloudioClock clock, final ScheduledExecutorService timer) {
+            setClock(clock);
+            uuid = new TopicUuid(this);
+            updateTopic = "@update/" + uuid.toString();
+            setTopic = "@set/" + uuid.toString();
+            pendingUpdateKeyPrefix = "PendingUpdate-" + uuid.toString().replace("/", ";") + "-";
+
+            if (filter != null && timer != null) {
+                filter.start(timer, new AttributePublishFilter.Sink() {
+                    @Override
+                    public long currentTimeMillis() {
+                        return getClock().currentTimeMillis();
+                    }
+
+                    @Override
+                    public void republish() {
+                        if (parent != null) {
+                            parent.attributeHasChangedByEndpoint(InternalAttribute.this);
+                        }
+                    }
+
+                    @Override
+                    public void heartbeat(long timestamp) {
+                        if (parent != null) {
+                            AttributeUpdate update = new AttributeUpdate(InternalAttribute.this, timestamp);
+                            parent.attributeHasChangedByEndpoint(update);
+                        }
+                    }
+                });
+            }
+            if (aggregator != null && timer != null) {
+                aggregator.start(timer, new AttributeAggregator.Sink() {
+                    @Override
+                    public long currentTimeMillis() {
+                        return getClock().currentTimeMillis();
+                    }
+
+                    @Override
+                    public void windowCompleted(AttributeAggregate aggregate) {
+                        aggregated(aggregate);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Sends the change held back by the publish filter and the actual aggregation window immediately, called by the
+         * endpoint before it is closed.
+         */
+        void flush() {
+            if (filter != null) {
+                filter.flush();
+            }
+            if (aggregator != null) {
+                aggregator.flush();
+            }
+        }
+
+        /**
+         * Called by the endpoint when the node containing the attribute is removed from the endpoint. Invalidates the
+         * cached UUID and topics and stops the timers of the publish filter and the aggregator.
+         */
+        void detach() {
+            if (filter != null) {
+                filter.stop();
+            }
+            if (aggregator != null) {
+                aggregator.stop();
+            }
+            setClock(null);
+            uuid = null;
+            updateTopic = null;
+            setTopic = null;
+            pendingUpdateKeyPrefix = null;
+            id = NO_ID;
+        }
+
+        /**
+         * Returns the numeric identifier the endpoint has assigned to the attribute. The identifier is announced in the
+         * data model sent to the cloud and replaces the UUID in update messages.
+         *
+         * @return  Identifier or {@link #NO_ID} if the endpoint does not use numeric identifiers.
+         */
+        int getId() {
+            return id;
+        }
+
+        /**
+         * Called by the endpoint to assign a numeric identifier to the attribute once the attribute has been attached.
+         *
+         * @param id    Identifier of the attribute, unique within the endpoint.
+         */
+        void setId(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Returns the MQTT topic used to send updates of the attribute.
+         *
+         * @return  Update topic.
+         */
+        String getUpdateTopic() {
+            if (updateTopic != null) {
+                return updateTopic;
+            }
+            return "@update/" + getUuid().toString();
+        }
+
+        /**
+         * Returns the MQTT topic the cloud uses to change the value of the attribute.
+         *
+         * @return  Set topic.
+         */
+        String getSetTopic() {
+            if (setTopic != null) {
+                return setTopic;
+            }
+            return "@set/" + getUuid().toString();
+        }
+
+        /**
+         * Returns the prefix of the persistence key used to store updates of the attribute that could not be sent,
+         * the key is completed by the time the update was stored.
+         *
+         * @return  Persistence key prefix.
+         */
+        String getPendingUpdateKeyPrefix() {
+            if (pendingUpdateKeyPrefix != null) {
+                return pendingUpdateKeyPrefix;
+            }
+            return "PendingUpdate-" + getUuid().toString().replace("/", ";") + "-";
+        }
+
+        /**
+         * Returns the clock used to timestamp values set without an explicit timestamp.
+         *
+         * @return  Clock of the attribute.
+         */
+        CloudioClock getClock() {
+            return clock;
+        }
+
+        /**
+         * Sets the clock used to timestamp values set without an explicit timestamp. The endpoint sets its own clock
+         * on all attributes of a node when the node is added.
+         *
+         * @param clock Clock to use, null to use the system's wall clock.
+         */
+        void setClock(final CloudioClock clock) {
+            this.clock = clock != null ? clock : DEFAULT_CLOCK;
+        }
+
+        /**
+         * Returns the publish filter of the attribute without creating it.
+         *
+         * @return  Publish filter or null if the attribute is not filtered.
+         */
+        AttributePublishFilter getFilterIfPresent() {
+            return filter;
+        }
+
+        private boolean aggregated(final AttributeAggregate aggregate) {
+            // The completed window travels with its update, as the attribute may complete another window before the
+            // update is serialized. The change itself is never sent.
+            if (aggregate != null && parent != null) {
+                parent.attributeHasChangedByEndpoint(new AttributeUpdate(this, aggregate));
+            }
+            return false;
+        }
+
         CloudioAttribute getExternalAttribute() {
             return CloudioAttribute.this;
         }
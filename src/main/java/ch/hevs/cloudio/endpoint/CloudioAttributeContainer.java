@@ -11,6 +11,13 @@ interface CloudioAttributeContainer extends UniqueIdentifiable {
      */
     void attributeHasChangedByEndpoint(final CloudioAttribute.InternalAttribute attribute);
 
+    /**
+     * An update captured by the attribute itself has to be sent, for example the aggregate of a completed window.
+     *
+     * @param update    Update to send.
+     */
+    void attributeHasChangedByEndpoint(final AttributeUpdate update);
+
     /**
      * The attribute has changed from the cloud.
      *
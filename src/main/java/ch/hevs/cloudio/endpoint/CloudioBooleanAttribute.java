@@ -0,0 +1,88 @@
+package ch.hevs.cloudio.endpoint;
+
+/**
+ * Attribute of type Boolean storing its value as a primitive boolean. Changing the value using
+ * {@link #setValue(boolean, long)} does not box the timestamp. The attribute can be used everywhere a
+ * CloudioAttribute&lt;Boolean&gt; can be used and is sent to the cloud exactly the same way.
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * class Switch extends ch.hevs.cloudio.endpoint.CloudioObject {
+ *    {@literal @}Status
+ *     public CloudioBooleanAttribute stateFeedback;
+ * }
+ * </pre>
+ */
+public class CloudioBooleanAttribute extends CloudioAttribute<Boolean> {
+    /*** Attributes ***************************************************************************************************/
+    private boolean value = false;
+    private boolean hasValue = false;
+
+    /*** Public API ***************************************************************************************************/
+    /**
+     * Returns the current value of the attribute without boxing it.
+     *
+     * @return  Attributes current value or false if the attribute does not have a value.
+     */
+    public boolean getBooleanValue() {
+        return value;
+    }
+
+    /**
+     * Tries to change the attribute to the given value using the endpoint's clock for the timestamp. This might fail
+     * if the attribute constraint is not suitable to change the value from the endpoint.
+     *
+     * @param value                                 The new value for the attribute.
+     * @throws CloudioAttributeConstraintException  If the endpoint can not change the attribute.
+     */
+    public void setValue(final boolean value) throws CloudioAttributeConstraintException {
+        setValue(value, internal.getClock().currentTimeMillis());
+    }
+
+    /**
+     * Tries to change the attribute to the given value and attributes the given timestamp to the new value. This might
+     * fail if the attribute constraint is not suitable to change the value from the endpoint.
+     *
+     * @param value                                 The new value for the attribute.
+     * @param timestamp                             The timestamp in milliseconds since epoch to link with the value.
+     * @throws CloudioAttributeConstraintException  If the endpoint can not change the attribute.
+     */
+    public void setValue(final boolean value, final long timestamp) throws CloudioAttributeConstraintException {
+        // Check constraint.
+        internal.getConstraint().endpointWillChange();
+
+        // Update value.
+        internal.setTimestamp(timestamp);
+        this.value = value;
+        hasValue = true;
+
+        // Send change to cloud if not filtered and inform all registered listeners.
+        AttributePublishFilter filter = internal.getFilterIfPresent();
+        internal.changedByEndpoint(filter == null || filter.accept(Boolean.valueOf(value), timestamp));
+    }
+
+    /*** Internal API *************************************************************************************************/
+    CloudioBooleanAttribute() {}
+
+    @Override
+    Boolean loadValue() {
+        return hasValue ? value : null;
+    }
+
+    @Override
+    void storeValue(final Boolean value) {
+        if (value != null) {
+            this.value = value;
+        }
+        hasValue = value != null;
+    }
+
+    /**
+     * Returns true if the attribute has a value.
+     *
+     * @return  True if a value has been set, false otherwise.
+     */
+    boolean hasValue() {
+        return hasValue;
+    }
+}
@@ -0,0 +1,26 @@
+package ch.hevs.cloudio.endpoint;
+
+/**
+ * Source of the timestamps an endpoint attributes to the values of its attributes whenever the application does not
+ * provide a timestamp itself. The clock of an endpoint is selected using the ch.hevs.cloudio.endpoint.clock property
+ * or set using {@link CloudioEndpoint#setClock(CloudioClock)}, which is useful for tests and benchmarks requiring
+ * deterministic timestamps.
+ *
+ * The following implementations are available:
+ * <ul>
+ *     <li>{@link CloudioWallClock}: The system's wall clock (default).</li>
+ *     <li>{@link CloudioCoarseClock}: Cached wall clock updated by a ticker thread at a configurable resolution.</li>
+ *     <li>{@link CloudioMicrosecondClock}: Monotonic clock with microsecond resolution.</li>
+ * </ul>
+ *
+ * Note that clocks are called from every thread changing attribute values, so implementations have to be thread
+ * safe.
+ */
+public interface CloudioClock {
+    /**
+     * Returns the actual time.
+     *
+     * @return  Milliseconds since epoch.
+     */
+    long currentTimeMillis();
+}
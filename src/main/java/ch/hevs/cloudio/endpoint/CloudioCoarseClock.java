@@ -0,0 +1,67 @@
+package ch.hevs.cloudio.endpoint;
+
+/**
+ * Clock caching the system's wall clock time. A daemon ticker thread refreshes the cached time at the given
+ * resolution, so reading the time is a single volatile read. Use this clock if attributes change at a very high rate
+ * and a timestamp resolution of a few milliseconds is sufficient.
+ */
+public class CloudioCoarseClock implements CloudioClock, Runnable {
+    /*** Attributes ***************************************************************************************************/
+    private final long resolution;
+    private final Thread thread;
+    private volatile long time;
+    private volatile boolean closed = false;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates a new coarse clock and starts its ticker thread.
+     *
+     * @param resolution    Interval in milliseconds at which the cached time is refreshed.
+     */
+    public CloudioCoarseClock(final long resolution) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("The resolution of the clock has to be positive!");
+        }
+        this.resolution = resolution;
+        time = System.currentTimeMillis();
+
+        thread = new Thread(this, "cloudio-clock-ticker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return time;
+    }
+
+    /**
+     * Returns the interval at which the cached time is refreshed.
+     *
+     * @return  Resolution in milliseconds.
+     */
+    public long getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Stops the ticker thread, the clock does not advance anymore afterwards.
+     */
+    public void close() {
+        closed = true;
+        thread.interrupt();
+    }
+
+    /*** Runnable implementation **************************************************************************************/
+    @Override
+    public void run() {
+        while (!closed) {
+            try {
+                Thread.sleep(resolution);
+            } catch (InterruptedException exception) {
+                // Interrupted by close().
+            }
+            time = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ch.hevs.cloudio.endpoint;
+
+/**
+ * Attribute of type Number storing its value as a primitive double. Changing the value using
+ * {@link #setValue(double, long)} does neither box the value nor the timestamp, which makes this class the best choice
+ * for measures changing at a high rate. The attribute can be used everywhere a CloudioAttribute&lt;Double&gt; can be
+ * used and is sent to the cloud exactly the same way.
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * class TemperatureSensor extends ch.hevs.cloudio.endpoint.CloudioObject {
+ *    {@literal @}Measure
+ *     public CloudioDoubleAttribute temperature;
+ * }
+ * </pre>
+ */
+public class CloudioDoubleAttribute extends CloudioAttribute<Double> {
+    /*** Attributes ***************************************************************************************************/
+    private double value = 0;
+    private boolean hasValue = false;
+
+    /*** Public API ***************************************************************************************************/
+    /**
+     * Returns the current value of the attribute without boxing it.
+     *
+     * @return  Attributes current value or 0 if the attribute does not have a value.
+     */
+    public double getDoubleValue() {
+        return value;
+    }
+
+    /**
+     * Tries to change the attribute to the given value using the endpoint's clock for the timestamp. This might fail
+     * if the attribute constraint is not suitable to change the value from the endpoint.
+     *
+     * @param value                                 The new value for the attribute.
+     * @throws CloudioAttributeConstraintException  If the endpoint can not change the attribute.
+     */
+    public void setValue(final double value) throws CloudioAttributeConstraintException {
+        setValue(value, internal.getClock().currentTimeMillis());
+    }
+
+    /**
+     * Tries to change the attribute to the given value and attributes the given timestamp to the new value. This might
+     * fail if the attribute constraint is not suitable to change the value from the endpoint.
+     *
+     * @param value                                 The new value for the attribute.
+     * @param timestamp                             The timestamp in milliseconds since epoch to link with the value.
+     * @throws CloudioAttributeConstraintException  If the endpoint can not change the attribute.
+     */
+    public void setValue(final double value, final long timestamp) throws CloudioAttributeConstraintException {
+        // Check constraint.
+        internal.getConstraint().endpointWillChange();
+
+        // Update value.
+        internal.setTimestamp(timestamp);
+        this.value = value;
+        hasValue = true;
+
+        // Send change to cloud if not filtered and inform all registered listeners.
+        internal.changedByEndpoint(internal.accept(value, timestamp));
+    }
+
+    /*** Internal API *************************************************************************************************/
+    CloudioDoubleAttribute() {}
+
+    @Override
+    Double loadValue() {
+        return hasValue ? value : null;
+    }
+
+    @Override
+    void storeValue(final Double value) {
+        if (value != null) {
+            this.value = value;
+        }
+        hasValue = value != null;
+    }
+
+    /**
+     * Returns true if the attribute has a value.
+     *
+     * @return  True if a value has been set, false otherwise.
+     */
+    boolean hasValue() {
+        return hasValue;
+    }
+}
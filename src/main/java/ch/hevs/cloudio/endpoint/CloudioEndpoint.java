@@ -7,13 +7,13 @@ import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.net.ssl.KeyManagerFactory;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.security.KeyStore;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * An Endpoint is the root object of any connection of a device or a gateway to cloud.io. The parameters of the
@@ -81,8 +81,13 @@ import java.util.*;
  *         still alive and in order to guarantee that NAT port mappings remain. Default is <b>60 seconds</b>.
  *     </li>
  *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.maxInFlight</b><br>
+ *         Maximal number of messages the MQTT client sends without having received their acknowledgement. The replay
+ *         of the updates saved while offline uses at most half of them. The default value is <b>1000</b>.
+ *     </li>
+ *     <li>
  *         <b>ch.hevs.cloudio.endpoint.persistence</b><br>
- *         This option configures which persistence to use in order to save temporary data. Three options are possible:
+ *         This option configures which persistence to use in order to save temporary data. Five options are possible:
  *         <br>
  *         <ul>
  *             <li>
@@ -98,6 +103,25 @@ import java.util.*;
  *                 ch.hevs.cloudio.endpoint.cleanSession.
  *             </li>
  *             <li>
+ *                 <b>journal</b><br>
+ *                 Updates that can not be sent are appended to a journal made of segment files on the file system and
+ *                 are sent in the order they were saved once the connection is established again. A segment file is
+ *                 deleted as soon as all its updates have been sent, so even a long outage only creates a few files.
+ *                 The journal is configured using the properties <b>ch.hevs.cloudio.endpoint.journalDirectory</b>,
+ *                 <b>ch.hevs.cloudio.endpoint.journalSegmentSize</b>, <b>ch.hevs.cloudio.endpoint.journalSync</b> and
+ *                 <b>ch.hevs.cloudio.endpoint.journalSyncInterval</b>. The messages in flight of the MQTT client are
+ *                 kept in memory.
+ *             </li>
+ *             <li>
+ *                 <b>ring</b><br>
+ *                 Updates that can not be sent are saved in a single file of fixed size which is mapped into memory
+ *                 and used as a circular buffer, so the space used never grows during an outage. What happens if the
+ *                 buffer is full is defined by <b>ch.hevs.cloudio.endpoint.ringOverflow</b>, the file and its size
+ *                 are configured using <b>ch.hevs.cloudio.endpoint.ringFile</b> and
+ *                 <b>ch.hevs.cloudio.endpoint.ringSize</b>. The messages in flight of the MQTT client are kept in
+ *                 memory.
+ *             </li>
+ *             <li>
  *                 <b>none</b><br>
  *                 No Persistence is used at all. Using this persistence, messages (data) will be almost certain be
  *                 lost, but if your application can handle such losses and you want to use as less as resources as
@@ -107,6 +131,77 @@ import java.util.*;
  *         This property is optional and the default is <b>file</b>.
  *     </li>
  *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.journalDirectory</b><br>
+ *         Directory containing the segment files of the journal. This property is only used if the persistence is
+ *         <b>journal</b> and the default is the directory "cloudio-journal-[uuid]" in the working directory.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.journalSegmentSize</b><br>
+ *         Maximal size of a segment file of the journal in bytes. This property is only used if the persistence is
+ *         <b>journal</b> and the default value is <b>1048576</b>.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.journalSync</b><br>
+ *         Defines when the journal forces the saved updates to the storage device. Three options are possible:
+ *         <ul>
+ *             <li>
+ *                 <b>always</b><br>
+ *                 After every update. No update is lost on a power failure, but every update waits for the device.
+ *             </li>
+ *             <li>
+ *                 <b>interval</b><br>
+ *                 All updates saved during the interval given by <b>ch.hevs.cloudio.endpoint.journalSyncInterval</b>
+ *                 are forced together. On a power failure, at most the updates of the last interval are lost.
+ *             </li>
+ *             <li>
+ *                 <b>never</b><br>
+ *                 The operating system decides when to write the data.
+ *             </li>
+ *         </ul>
+ *         This property is only used if the persistence is <b>journal</b> and the default is <b>interval</b>.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.journalSyncInterval</b><br>
+ *         Interval in milliseconds at which the journal forces the saved updates to the storage device. This property
+ *         is only used if the journal sync policy is <b>interval</b> and the default value is <b>1000</b>.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.ringFile</b><br>
+ *         File containing the circular buffer. This property is only used if the persistence is <b>ring</b> and the
+ *         default is the file "cloudio-ring-[uuid]" in the working directory.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.ringSize</b><br>
+ *         Size of the circular buffer in bytes. This property is only used if the persistence is <b>ring</b> and the
+ *         default value is <b>1048576</b>.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.ringOverflow</b><br>
+ *         Defines which updates are lost if the circular buffer is full. Three options are possible:
+ *         <ul>
+ *             <li>
+ *                 <b>overwrite</b><br>
+ *                 The oldest updates are overwritten by the new one.
+ *             </li>
+ *             <li>
+ *                 <b>drop</b><br>
+ *                 The new update is dropped.
+ *             </li>
+ *             <li>
+ *                 <b>status</b><br>
+ *                 Updates of Status attributes overwrite the oldest updates, all other updates are dropped.
+ *             </li>
+ *         </ul>
+ *         This property is only used if the persistence is <b>ring</b> and the default is <b>overwrite</b>.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.replayBatchSize</b><br>
+ *         Maximal number of messages saved while offline which are combined into a single "@updates" message when they
+ *         are sent after the connection has been established again. The cloud has to support "@updates" messages
+ *         (see <b>ch.hevs.cloudio.endpoint.updateBatchWindow</b>) for values greater than 1, so the default value is
+ *         <b>1</b>, which sends every saved message on its own.
+ *     </li>
+ *     <li>
  *         <b>ch.hevs.cloudio.endpoint.ssl.clientCert</b><br>
  *         Path to the client certificate file. The certificate file must be encoded in the PKCS12 key format and it
  *         needs to contain the client's certificate and the client's private key. The file has additionally to be
@@ -158,12 +253,159 @@ import java.util.*;
  *         <ul>
  *             <li>json: JSON Format.</li>
  *             <li>json+zip: Compressed JSON.</li>
+ *             <li>
+ *                 json+lean: JSON, but attribute updates only contain the timestamp and the value. The data model is
+ *                 still sent using the full JSON format.
+ *             </li>
+ *             <li>
+ *                 cbor: CBOR (RFC 7049) binary format with the same structure as the JSON format, numbers are encoded
+ *                 in binary form and timestamps as integer milliseconds since epoch.
+ *             </li>
+ *             <li>
+ *                 msgpack: MessagePack binary format with the same structure as the JSON format, well suited for
+ *                 constrained links as small integers only take a single byte.
+ *             </li>
  *         </ul>
  *         If this property is not set, the default "json" will be used.
+ *         Additional formats can be registered as services of the type {@link CloudioMessageCodec} (see
+ *         {@link java.util.ServiceLoader}) and are selected using their name.
  *         Note that it is important that all endpoints and applications in the same cloud.io installation use the very
  *         same message format, otherwise they will not be able to communicate with each other.
  *     </li>
  *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.updateBatchWindow</b><br>
+ *         Time window in milliseconds during which attribute updates are collected and then sent together in a single
+ *         "@updates" message instead of one "@update" message per attribute change. The window starts with the first
+ *         update after the previous batch has been sent. The default value is <b>0</b>, which disables batching and
+ *         sends every update immediately.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.updateBatchSize</b><br>
+ *         Maximal number of attribute updates in a single "@updates" message. If a batch reaches this size, it is sent
+ *         immediately even if the time window has not elapsed yet. This property is only used if batching is enabled
+ *         using the property <b>ch.hevs.cloudio.endpoint.updateBatchWindow</b>. The default value is <b>1000</b>.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.publishQueueSize</b><br>
+ *         Capacity of the queue between the threads changing attribute values and the sender thread. If the value is
+ *         greater than 0, changing an attribute only captures the new value and its timestamp into the queue and
+ *         returns immediately, serialization, transmission and persistence of the update are done by a dedicated
+ *         sender thread. The default value is <b>0</b>, which means that updates are sent by the thread changing the
+ *         attribute.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.publishQueueOverflow</b><br>
+ *         Defines what happens if an attribute changes while the publish queue is full. Three options are possible:
+ *         <ul>
+ *             <li>
+ *                 <b>block</b><br>
+ *                 The thread changing the attribute waits until the sender thread has made space in the queue.
+ *             </li>
+ *             <li>
+ *                 <b>dropOldest</b><br>
+ *                 The oldest update in the queue is discarded in order to make space for the new one.
+ *             </li>
+ *             <li>
+ *                 <b>conflate</b><br>
+ *                 Every attribute has at most one update in the queue, an update not yet sent is replaced by the
+ *                 newer value of the same attribute.
+ *             </li>
+ *         </ul>
+ *         This property is only used if the publish queue is enabled and the default is <b>block</b>.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.conflatedConstraints</b><br>
+ *         Comma separated list of attribute constraints (for example "Status,SetPoint") whose updates are conflated
+ *         by the publish queue: If such an attribute changes while its previous update has not been sent yet, the
+ *         waiting update is replaced by the new value. Conflated updates that can not be sent because too many
+ *         messages are in flight are retried with the latest value instead of being stored to the persistence.
+ *         Attributes can override this selection using the {@link Conflate} annotation or
+ *         {@link CloudioAttribute#setConflated(boolean)}. This property is only used if the publish queue is enabled
+ *         and the default is an empty list.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.compactedConstraints</b><br>
+ *         Comma separated list of attribute constraints (for example "Status,SetPoint") for which only the latest
+ *         update saved while offline is sent once the connection is established again, older updates of the same
+ *         attribute are skipped. This property is only used if a persistence is enabled and the default is an empty
+ *         list.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.downsampleInterval</b><br>
+ *         Interval in milliseconds at which the updates of Measure attributes are saved while offline. If the value is
+ *         greater than 0, only the latest update of every Measure attribute within the interval is saved, all others
+ *         are dropped. This property is only used if a persistence is enabled and the default value is <b>0</b>, which
+ *         saves all updates.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.offlineWriteQueueSize</b><br>
+ *         Maximal number of updates waiting to be saved while offline. If the value is greater than 0, the updates are
+ *         saved by a dedicated thread, so threads changing attribute values do not wait for the storage device unless
+ *         the queue is full. The writer saves all queued updates together and forces them to the storage device once
+ *         per batch, an update is durable within <b>ch.hevs.cloudio.endpoint.offlineWriteInterval</b> plus the time
+ *         needed to write one batch. The delay can be monitored using {@link #getOfflineWriteLag()}. With the
+ *         <b>journal</b> persistence, <b>ch.hevs.cloudio.endpoint.journalSync</b> should then be <b>never</b> or
+ *         <b>interval</b>. This property is only used if a persistence is enabled and the default value is <b>0</b>,
+ *         which saves the updates on the thread changing the attribute.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.offlineWriteInterval</b><br>
+ *         Maximal time in milliseconds an update saved while offline waits before it is written and forced to the
+ *         storage device. This property is only used if <b>ch.hevs.cloudio.endpoint.offlineWriteQueueSize</b> is
+ *         greater than 0 and the default value is <b>100</b>.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.dispatchThreads</b><br>
+ *         Number of threads processing the "@set" messages received from the cloud. If the value is greater than 0,
+ *         the messages are distributed onto that many threads, all messages for the same attribute are processed by
+ *         the same thread in the order they were received. This way slow attribute listeners neither block the
+ *         messages for other attributes nor the MQTT client. The default value is <b>0</b>, which means that messages
+ *         are processed by the MQTT client's thread. The number of messages waiting per thread can be monitored using
+ *         {@link #getDispatchQueueDepths()}.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.dispatchQueueSize</b><br>
+ *         Number of "@set" messages waiting per dispatch thread above which the messages are conflated. If the queue
+ *         of a thread is full, a new message replaces the newest waiting message for the same attribute, so the MQTT
+ *         client is never blocked and every attribute still gets its latest value in order. Replaced messages are
+ *         counted by {@link #getDispatchConflatedMessages()}. This property is only used if
+ *         <b>ch.hevs.cloudio.endpoint.dispatchThreads</b> is greater than 0 and the default value is <b>1000</b>.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.clock</b><br>
+ *         Clock used to timestamp attribute values set without an explicit timestamp. Three clocks are available:
+ *         <ul>
+ *             <li>
+ *                 <b>wall</b><br>
+ *                 The system's wall clock.
+ *             </li>
+ *             <li>
+ *                 <b>coarse</b><br>
+ *                 The wall clock cached and refreshed by a ticker thread at the resolution given by the property
+ *                 <b>ch.hevs.cloudio.endpoint.clockResolution</b>.
+ *             </li>
+ *             <li>
+ *                 <b>microsecond</b><br>
+ *                 A monotonic clock with microsecond resolution.
+ *             </li>
+ *         </ul>
+ *         The default is <b>wall</b>. A custom clock can be set using {@link #setClock(CloudioClock)}.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.clockResolution</b><br>
+ *         Interval in milliseconds at which the coarse clock is refreshed. This property is only used if the clock is
+ *         <b>coarse</b> and the default value is <b>10</b>.
+ *     </li>
+ *     <li>
+ *         <b>ch.hevs.cloudio.endpoint.attributeIds</b><br>
+ *         This property can be either "true" or "false". If it is "true", the endpoint assigns a numeric identifier to
+ *         every attribute when its node is added and announces the identifiers in the "@online" and "@nodeAdded"
+ *         messages. All updates are then sent on the endpoint's shared "@updates" topic and reference the attributes
+ *         by their identifier instead of the topic, which pairs well with
+ *         <b>ch.hevs.cloudio.endpoint.updateBatchWindow</b>. The cloud has to support identifiers for this to work,
+ *         so the default is <b>false</b>.
+ *     </li>
+ *     <li>
  *         <b>ch.hevs.cloudio.endpoint.cleanSession</b><br>
  *         This property can be either "true" or "false". If it is true, a clean MQTT session is established with the
  *         central broker. This means that pending messages from a previous session will be discarded. If it is "false"
@@ -210,7 +452,7 @@ public class CloudioEndpoint implements CloudioEndpointService {
     public CloudioEndpoint(String uuidOrAppName) throws InvalidUuidException, InvalidPropertyException,
         CloudioEndpointInitializationException {
         // Call internal designated constructor with empty properties reference.
-        internal = new InternalEndpoint(uuidOrAppName, null, null);
+        internal = new InternalEndpoint(uuidOrAppName, null, null, null);
     }
 
     /**
@@ -229,7 +471,7 @@ public class CloudioEndpoint implements CloudioEndpointService {
      */
     public CloudioEndpoint(String uuidOrAppName, Properties properties)
             throws InvalidUuidException, InvalidPropertyException, CloudioEndpointInitializationException {
-        internal = new InternalEndpoint(uuidOrAppName, new PropertiesEndpointConfiguration(properties), null);
+        internal = new InternalEndpoint(uuidOrAppName, new PropertiesEndpointConfiguration(properties), null, null);
     }
 
     /**
@@ -250,7 +492,35 @@ public class CloudioEndpoint implements CloudioEndpointService {
      */
     public CloudioEndpoint(String uuidOrAppName, Properties properties, CloudioEndpointListener listener)
             throws InvalidUuidException, InvalidPropertyException, CloudioEndpointInitializationException {
-        internal = new InternalEndpoint(uuidOrAppName, new PropertiesEndpointConfiguration(properties), listener);
+        internal = new InternalEndpoint(uuidOrAppName, new PropertiesEndpointConfiguration(properties), listener, null);
+    }
+
+    /**
+     * Constructs a new CloudioEndpoint object using the given UUID, properties and transport. Instead of connecting to
+     * the broker using MQTT, the endpoint uses the given transport to exchange messages with the cloud, so all
+     * properties configuring the MQTT client and its SSL connection are ignored. This allows to use another client or
+     * to run the endpoint without any broker using {@link CloudioLoopbackTransport}.
+     *
+     * @param uuidOrAppName                     Unique ID of the endpoint or an application name. In the case of an
+     *                                          application name, the properties must define the UUID using the
+     *                                          ch.hevs.cloudio.endpoint.uuid property.
+     * @param properties                        Properties containing the endpoint configuration parameters.
+     * @param listener                          Reference to the listener receiving status updates, can be null.
+     * @param transport                         Transport used to connect to the cloud.
+     * @throws InvalidUuidException             If the given UUID is invalid.
+     * @throws InvalidPropertyException         Either a mandatory property is missing or a property has an invalid
+     *                                          value.
+     * @throws CloudioEndpointInitializationException  The endpoint could not be initialized. This might be caused by invalid
+     *                                          parameters or any other runtime errors.
+     */
+    public CloudioEndpoint(String uuidOrAppName, Properties properties, CloudioEndpointListener listener,
+                           CloudioTransport transport)
+            throws InvalidUuidException, InvalidPropertyException, CloudioEndpointInitializationException {
+        if (transport == null) {
+            throw new CloudioEndpointInitializationException("Transport can not be null!");
+        }
+        internal = new InternalEndpoint(uuidOrAppName, new PropertiesEndpointConfiguration(properties), listener,
+            transport);
     }
 
     /**
@@ -269,7 +539,7 @@ public class CloudioEndpoint implements CloudioEndpointService {
      */
     CloudioEndpoint(String uuidOrAppName, CloudioEndpointConfiguration configuration) throws InvalidUuidException, InvalidPropertyException,
         CloudioEndpointInitializationException {
-        internal = new InternalEndpoint(uuidOrAppName, configuration, null);
+        internal = new InternalEndpoint(uuidOrAppName, configuration, null, null);
     }
 
     public void close() {
@@ -278,7 +548,7 @@ public class CloudioEndpoint implements CloudioEndpointService {
 
     @Override
     public boolean isOnline() {
-        return internal.mqtt.isConnected();
+        return internal.transport.isConnected();
     }
 
     @Override
@@ -299,14 +569,19 @@ public class CloudioEndpoint implements CloudioEndpointService {
             // Add node to endpoint.
             node.internal.setName(nodeName);
             node.internal.setParentNodeContainer(this.internal);
-            internal.nodes.addItem(node.internal);
+            synchronized (internal.nodes) {
+                internal.nodes.addItem(node.internal);
+
+                // Setup the clock and the topics of all the node's attributes and route their @set messages.
+                internal.attach(node.internal);
+            }
 
             // If the endpoint is online, send node add message.
             if (isOnline()) {
                 try {
                     byte[] data = internal.messageFormat.serializeNode(node.internal);
-                    internal.mqtt.publish("@nodeAdded/" + node.internal.getUuid(), data, 1, false);
-                } catch (MqttException exception) {
+                    internal.transport.publish("@nodeAdded/" + node.internal.getUuid(), data, 1, false, null);
+                } catch (CloudioTransportException exception) {
                     log.error("Exception: " + exception.getMessage());
                     exception.printStackTrace();
                 }
@@ -342,19 +617,22 @@ public class CloudioEndpoint implements CloudioEndpointService {
         if (node != null && internal.nodes.contains(node.internal)) {
             // Remove parent from node.
             node.internal.setParentNodeContainer(null);
+            internal.detach(node.internal);
 
             // If the endpoint is online, send the node remove message.
             if (isOnline()) {
                 try {
-                    internal.mqtt.publish("@nodeRemoved/" + node.internal.getUuid(), null, 1, false);
-                } catch (MqttException exception) {
+                    internal.transport.publish("@nodeRemoved/" + node.internal.getUuid(), null, 1, false, null);
+                } catch (CloudioTransportException exception) {
                     log.error("Exception: " + exception.getMessage());
                     exception.printStackTrace();
                 }
             }
 
             // Remove the node from the child nodes list.
-            internal.nodes.removeItem(node.internal);
+            synchronized (internal.nodes) {
+                internal.nodes.removeItem(node.internal);
+            }
         }
     }
 
@@ -365,12 +643,13 @@ public class CloudioEndpoint implements CloudioEndpointService {
             if (internalNode != null) {
                 // Remove parent from node.
                 internalNode.setParentNodeContainer(null);
+                internal.detach(internalNode);
 
                 // If the endpoint is online, send the node remove message.
                 if (isOnline()) {
                     try {
-                        internal.mqtt.publish("@nodeRemoved/" + internalNode.getUuid(), null, 1, false);
-                    } catch (MqttException exception) {
+                        internal.transport.publish("@nodeRemoved/" + internalNode.getUuid(), null, 1, false, null);
+                    } catch (CloudioTransportException exception) {
                         log.error("Exception: " + exception.getMessage());
                         exception.printStackTrace();
                     }
@@ -378,7 +657,9 @@ public class CloudioEndpoint implements CloudioEndpointService {
             }
 
             // Remove the node from the child nodes list.
-            internal.nodes.removeItem(internalNode);
+            synchronized (internal.nodes) {
+                internal.nodes.removeItem(internalNode);
+            }
         }
     }
 
@@ -388,43 +669,152 @@ public class CloudioEndpoint implements CloudioEndpointService {
         return (T)internal.nodes.getItem(nodeName).getExternalNode();
     }
 
+    /**
+     * Returns the number of "@set" messages waiting to be processed by every dispatch thread. The array is empty if
+     * the messages are processed by the MQTT client's thread (see <b>ch.hevs.cloudio.endpoint.dispatchThreads</b>).
+     *
+     * @return  Approximate queue depth per dispatch thread.
+     */
+    public int[] getDispatchQueueDepths() {
+        if (internal.dispatcher == null) {
+            return new int[0];
+        }
+        return internal.dispatcher.getQueueDepths();
+    }
+
+    /**
+     * Returns the number of "@set" messages dropped because they arrived while the endpoint was closed.
+     *
+     * @return  Number of dropped messages, 0 if the messages are processed by the MQTT client's thread.
+     */
+    public long getDispatchDroppedMessages() {
+        if (internal.dispatcher == null) {
+            return 0;
+        }
+        return internal.dispatcher.getDroppedMessages();
+    }
+
+    /**
+     * Returns the number of "@set" messages replaced by a newer message for the same attribute because the queue of
+     * their dispatch thread was full (see <b>ch.hevs.cloudio.endpoint.dispatchQueueSize</b>).
+     *
+     * @return  Number of conflated messages, 0 if the messages are processed by the MQTT client's thread.
+     */
+    public long getDispatchConflatedMessages() {
+        if (internal.dispatcher == null) {
+            return 0;
+        }
+        return internal.dispatcher.getConflatedMessages();
+    }
+
+    /**
+     * Returns the age of the oldest update saved while offline that has not been written to the storage device yet
+     * (see <b>ch.hevs.cloudio.endpoint.offlineWriteQueueSize</b>).
+     *
+     * @return  Writer lag in milliseconds, 0 if all updates are written or the updates are saved synchronously.
+     */
+    public long getOfflineWriteLag() {
+        if (internal.writer == null) {
+            return 0;
+        }
+        return internal.writer.getLag();
+    }
+
+    /**
+     * Returns the number of updates saved while offline that wait to be written to the storage device (see
+     * <b>ch.hevs.cloudio.endpoint.offlineWriteQueueSize</b>).
+     *
+     * @return  Number of queued updates, 0 if the updates are saved synchronously.
+     */
+    public int getOfflineWriteQueueDepth() {
+        if (internal.writer == null) {
+            return 0;
+        }
+        return internal.writer.getQueuedMessages();
+    }
+
+    /**
+     * Returns the clock used to timestamp attribute values set without an explicit timestamp.
+     *
+     * @return  Clock of the endpoint.
+     */
+    public CloudioClock getClock() {
+        return internal.clock;
+    }
+
+    /**
+     * Replaces the clock used to timestamp attribute values set without an explicit timestamp, for example by a
+     * deterministic clock in tests or benchmarks. The new clock is used by all nodes of the endpoint, including the
+     * nodes already added.
+     *
+     * @param clock Clock to use, null selects the system's wall clock.
+     */
+    public void setClock(CloudioClock clock) {
+        internal.clock = clock != null ? clock : new CloudioWallClock();
+        for (CloudioNode.InternalNode node: internal.nodes.toList()) {
+            for (CloudioAttribute.InternalAttribute attribute: internal.collectAttributes(node)) {
+                attribute.setClock(internal.clock);
+            }
+        }
+    }
+
     /*** Internal API *************************************************************************************************/
-    class InternalEndpoint implements CloudioNodeContainer, MqttCallback, Runnable {
+    class InternalEndpoint implements CloudioNodeContainer, CloudioTransport.Listener, Runnable {
         /*** Constants ************************************************************************************************/
         private static final String UUID_PROPERTY	                = "ch.hevs.cloudio.endpoint.uuid";
-        private static final String MQTT_HOST_URI_PROPERTY          = "ch.hevs.cloudio.endpoint.hostUri";
-        private static final String MQTT_CONNECTION_TIMEOUT_PROPERTY= "ch.hevs.cloudio.endpoint.connectTimeout";
-        private static final String MQTT_CONNECTION_TIMEOUT_DEFAULT = "5";
         private static final String MQTT_CONNECT_RETRY_PROPERTY     = "ch.hevs.cloudio.endpoint.connectRetryInterval";
         private static final String MQTT_CONNECT_RETRY_DEFAULT      = "10";
-        private static final String MQTT_KEEPALIVE_INTERVAL_PROPERTY= "ch.hevs.cloudio.endpoint.keepAliveInterval";
-        private static final String MQTT_KEEPALIVE_INTERVAL_DEFAULT = "60";
-        private static final String MQTT_MAXINFLIGHT_PROPERTY		= "ch.hevs.cloudio.endpoint.maxInFlight";
-        private static final String MQTT_MAXINFLIGHT_DEFAULT		= "1000";
         private static final String MQTT_PERSISTENCE_MEMORY         = "memory";
         private static final String MQTT_PERSISTENCE_FILE           = "file";
         private static final String MQTT_PERSISTENCE_NONE           = "none";
+        private static final String MQTT_PERSISTENCE_JOURNAL        = "journal";
+        private static final String JOURNAL_DIRECTORY_PROPERTY      = "ch.hevs.cloudio.endpoint.journalDirectory";
+        private static final String JOURNAL_SEGMENT_SIZE_PROPERTY   = "ch.hevs.cloudio.endpoint.journalSegmentSize";
+        private static final String JOURNAL_SEGMENT_SIZE_DEFAULT    = "1048576";
+        private static final String JOURNAL_SYNC_PROPERTY           = "ch.hevs.cloudio.endpoint.journalSync";
+        private static final String JOURNAL_SYNC_DEFAULT            = "interval";
+        private static final String JOURNAL_SYNC_INTERVAL_PROPERTY  = "ch.hevs.cloudio.endpoint.journalSyncInterval";
+        private static final String JOURNAL_SYNC_INTERVAL_DEFAULT   = "1000";
+        private static final String MQTT_PERSISTENCE_RING           = "ring";
+        private static final String RING_FILE_PROPERTY              = "ch.hevs.cloudio.endpoint.ringFile";
+        private static final String RING_SIZE_PROPERTY              = "ch.hevs.cloudio.endpoint.ringSize";
+        private static final String RING_SIZE_DEFAULT               = "1048576";
+        private static final String RING_OVERFLOW_PROPERTY          = "ch.hevs.cloudio.endpoint.ringOverflow";
+        private static final String RING_OVERFLOW_DEFAULT           = "overwrite";
         private static final String MQTT_PERSISTENCE_PROPERTY       = "ch.hevs.cloudio.endpoint.persistence";
         private static final String MQTT_PERSISTENCE_DEFAULT        = MQTT_PERSISTENCE_FILE;
-        private static final String ENDPOINT_IDENTITY_FILE_TYPE     = "PKCS12";
-        private static final String ENDPOINT_IDENTITY_MANAGER_TYPE  = "SunX509";
-        private static final String ENDPOINT_IDENTITY_FILE_PROPERTY = "ch.hevs.cloudio.endpoint.ssl.clientCert";
-        private static final String ENDPOINT_IDENTITY_PASS_PROPERTY = "ch.hevs.cloudio.endpoint.ssl.clientPassword";
-        private static final String ENDPOINT_IDENTITY_PASS_DEFAULT  = "";
-        private static final String CERT_AUTHORITY_FILE_TYPE        = "JKS";
-        private static final String CERT_AUTHORITY_MANAGER_TYPE     = "SunX509";
-        private static final String CERT_AUTHORITY_FILE_PROPERTY    = "ch.hevs.cloudio.endpoint.ssl.authorityCert";
-        private static final String CERT_AUTHORITY_FILE_DEFAULTNAME = "authority.jks";
-        private static final String CERT_AUTHORITY_PASS_PROPERTY    = "ch.hevs.cloudio.endpoint.ssl.authorityPassword";
-        private static final String CERT_AUTHORITY_PASS_DEFAULT     = "";
-        private static final String SSL_PROTOCOL_PROPERTY           = "ch.hevs.cloudio.endpoint.ssl.protocol";
-        private static final String SSL_PROTOCOL_DEFAULT            = "TLSv1.2";
         private static final String MESSAGE_FORMAT                  = "ch.hevs.cloudio.endpoint.messageFormat";
         private static final String MESSAGE_FORMAT_DEFAULT          = "json";
-        private static final String MQTT_CLEAN_SESSION_PROPERTY     = "ch.hevs.cloudio.endpoint.cleanSession";
-        private static final String MQTT_CLEAN_SESSION_DEFAULT      = "false";
-        private static final String SSL_VERIFY_HOSTNAME_PROPERTY    = "ch.hevs.cloudio.endpoint.ssl.verifyHostname";
-        private static final String SSL_VERIFY_HOSTNAME_DEFAULT     = "true";
+        private static final String UPDATE_BATCH_WINDOW_PROPERTY    = "ch.hevs.cloudio.endpoint.updateBatchWindow";
+        private static final String UPDATE_BATCH_WINDOW_DEFAULT     = "0";
+        private static final String UPDATE_BATCH_SIZE_PROPERTY      = "ch.hevs.cloudio.endpoint.updateBatchSize";
+        private static final String UPDATE_BATCH_SIZE_DEFAULT       = "1000";
+        private static final String REPLAY_BATCH_SIZE_PROPERTY      = "ch.hevs.cloudio.endpoint.replayBatchSize";
+        private static final String REPLAY_BATCH_SIZE_DEFAULT       = "1";
+        private static final String PUBLISH_QUEUE_SIZE_PROPERTY     = "ch.hevs.cloudio.endpoint.publishQueueSize";
+        private static final String PUBLISH_QUEUE_SIZE_DEFAULT      = "0";
+        private static final String PUBLISH_QUEUE_OVERFLOW_PROPERTY = "ch.hevs.cloudio.endpoint.publishQueueOverflow";
+        private static final String PUBLISH_QUEUE_OVERFLOW_DEFAULT  = "block";
+        private static final String CONFLATED_CONSTRAINTS_PROPERTY  = "ch.hevs.cloudio.endpoint.conflatedConstraints";
+        private static final String CONFLATED_CONSTRAINTS_DEFAULT   = "";
+        private static final String COMPACTED_CONSTRAINTS_PROPERTY  = "ch.hevs.cloudio.endpoint.compactedConstraints";
+        private static final String COMPACTED_CONSTRAINTS_DEFAULT   = "";
+        private static final String DOWNSAMPLE_INTERVAL_PROPERTY    = "ch.hevs.cloudio.endpoint.downsampleInterval";
+        private static final String DOWNSAMPLE_INTERVAL_DEFAULT     = "0";
+        private static final String OFFLINE_WRITE_QUEUE_PROPERTY    = "ch.hevs.cloudio.endpoint.offlineWriteQueueSize";
+        private static final String OFFLINE_WRITE_QUEUE_DEFAULT     = "0";
+        private static final String OFFLINE_WRITE_INTERVAL_PROPERTY = "ch.hevs.cloudio.endpoint.offlineWriteInterval";
+        private static final String OFFLINE_WRITE_INTERVAL_DEFAULT  = "100";
+        private static final String DISPATCH_THREADS_PROPERTY       = "ch.hevs.cloudio.endpoint.dispatchThreads";
+        private static final String DISPATCH_THREADS_DEFAULT        = "0";
+        private static final String DISPATCH_QUEUE_SIZE_PROPERTY    = "ch.hevs.cloudio.endpoint.dispatchQueueSize";
+        private static final String DISPATCH_QUEUE_SIZE_DEFAULT     = "1000";
+        private static final String CLOCK_PROPERTY                  = "ch.hevs.cloudio.endpoint.clock";
+        private static final String CLOCK_DEFAULT                   = "wall";
+        private static final String CLOCK_RESOLUTION_PROPERTY       = "ch.hevs.cloudio.endpoint.clockResolution";
+        private static final String CLOCK_RESOLUTION_DEFAULT        = "10";
+        private static final String ATTRIBUTE_IDS_PROPERTY          = "ch.hevs.cloudio.endpoint.attributeIds";
+        private static final String ATTRIBUTE_IDS_DEFAULT           = "false";
 
         /**
          * Characters prohibited in the UUID.
@@ -436,15 +826,33 @@ public class CloudioEndpoint implements CloudioEndpointService {
 
         /*** Attributes ***********************************************************************************************/
         private final String uuid;
+        private final TopicUuid topicUuid;
+        private final String updatesTopic;
         private final NamedItemSet<CloudioNode.InternalNode> nodes = new NamedItemSet<CloudioNode.InternalNode>();
-        private final MqttConnectOptions options;
+        private final Map<String, CloudioAttribute.InternalAttribute> setRoutes =
+            new ConcurrentHashMap<String, CloudioAttribute.InternalAttribute>();
         private int retryInterval;
-        private final MqttAsyncClient mqtt;
+        private final CloudioTransport transport;
         private final MqttClientPersistence persistence;
+        private final PendingUpdateStore pendingUpdates;
+        private final PendingUpdateWriter writer;
+        private final int replayWindow;
+        private final int replayBatchSize;
+        private PendingUpdateReplayer replayer = null;
+        private Thread replayThread = null;
         private final CloudioMessageFormat messageFormat;
+        private final AttributeUpdateBatcher batcher;
+        private final AttributeUpdatePublisher publisher;
+        private final AttributeSetDispatcher dispatcher;
+        private final ScheduledThreadPoolExecutor timer;
+        private final boolean attributeIds;
+        private int nextAttributeId = 0;
+        private volatile CloudioClock clock;
+        private final CloudioCoarseClock coarseClock;
         private final List<CloudioEndpointListener> listeners = new LinkedList<CloudioEndpointListener>();
 
-        public InternalEndpoint(String uuidOrAppName, CloudioEndpointConfiguration configuration, CloudioEndpointListener listener)
+        public InternalEndpoint(String uuidOrAppName, CloudioEndpointConfiguration configuration,
+                                CloudioEndpointListener listener, CloudioTransport transport)
                 throws InvalidUuidException, InvalidPropertyException, CloudioEndpointInitializationException {
 
             // The ID has to be a valid string!
@@ -482,6 +890,10 @@ public class CloudioEndpoint implements CloudioEndpointService {
             	}
             }
 
+            // The UUID never changes, so create the endpoint's topics only once.
+            topicUuid = new TopicUuid(this);
+            updatesTopic = "@updates/" + uuid;
+
             // Add the listener if present.
             if (listener != null) {
                 this.listeners.add(listener);
@@ -489,26 +901,12 @@ public class CloudioEndpoint implements CloudioEndpointService {
 
             // Create message format instance.
             String messageFormatId = configuration.getProperty(MESSAGE_FORMAT, MESSAGE_FORMAT_DEFAULT);
-            if ("json".equals(messageFormatId)) {
-                messageFormat = new JsonMessageFormat();
-            } else if ("json+zip".equals(messageFormatId)) {
-                messageFormat = new JsonZipMessageFormat();
-            } else {
+            messageFormat = CloudioMessageFormatFactory.messageFormat(messageFormatId);
+            if (messageFormat == null) {
                 throw new InvalidPropertyException("Unknown message format (ch.hevs.cloudio.endpoint.messageFormat): " +
                         "\"" + messageFormatId + "\"");
             }
 
-            // Create a SSL based MQTT option object.
-            options = new MqttConnectOptions();
-            try {
-                options.setSocketFactory(createSocketFactory(uuid, configuration));
-            } catch (Exception exception) {
-                throw new CloudioEndpointInitializationException(exception);
-            }
-
-            // Enable or disable HTTPS hostname verification.
-            options.setHttpsHostnameVerificationEnabled("true".equals(configuration.getProperty(SSL_VERIFY_HOSTNAME_PROPERTY, SSL_VERIFY_HOSTNAME_DEFAULT)));
-
             // Get retry interval.
             try {
                 retryInterval = Integer.parseInt(configuration.getProperty(MQTT_CONNECT_RETRY_PROPERTY,
@@ -524,77 +922,402 @@ public class CloudioEndpoint implements CloudioEndpointService {
                     "must be a valid integer number");
             }
 
-            // Do we start a clean session?
-            String cleanSession = configuration.getProperty(MQTT_CLEAN_SESSION_PROPERTY, MQTT_CLEAN_SESSION_DEFAULT)
-                    .toLowerCase();
-            if ("true".equals(cleanSession)) {
-                options.setCleanSession(true);
-            } else if ("false".equals(cleanSession)) {
-                options.setCleanSession(false);
+            // Create persistence object.
+            String persistenceProvider = configuration.getProperty(MQTT_PERSISTENCE_PROPERTY, MQTT_PERSISTENCE_DEFAULT);
+            if (persistenceProvider.equals(MQTT_PERSISTENCE_MEMORY)) {
+                persistence = new MemoryPersistence();
+            } else if (persistenceProvider.equals(MQTT_PERSISTENCE_FILE)) {
+                persistence = new MqttDefaultFilePersistence();
+            } else if (persistenceProvider.equals(MQTT_PERSISTENCE_JOURNAL) ||
+                persistenceProvider.equals(MQTT_PERSISTENCE_RING)) {
+                persistence = new MemoryPersistence();
+            } else if (persistenceProvider.equals(MQTT_PERSISTENCE_NONE)) {
+                persistence = null;
             } else {
-                throw new InvalidPropertyException("Clean session parameter (ch.hevs.cloudio.endpoint.cleanSession), " +
-                        "must either be \"true\" or \"false\"");
+                throw new InvalidPropertyException("Unknown persistence implementation " +
+                        "(ch.hevs.cloudio.endpoint.persistence): " +
+                        "\"" + persistenceProvider + "\"");
             }
 
-            // Get the connection timeout property.
+            // Get the journal properties if the journal is used.
+            File journalDirectory = new File(configuration.getProperty(JOURNAL_DIRECTORY_PROPERTY,
+                new File(System.getProperty("user.dir"), "cloudio-journal-" + uuid).getPath()));
+            long journalSegmentSize;
+            long journalSyncInterval;
+            PendingUpdateJournal.SyncPolicy journalSync = PendingUpdateJournal.SyncPolicy.fromString(
+                configuration.getProperty(JOURNAL_SYNC_PROPERTY, JOURNAL_SYNC_DEFAULT));
+            if (journalSync == null) {
+                throw new InvalidPropertyException("Unknown journal sync policy " +
+                    "(ch.hevs.cloudio.endpoint.journalSync): " +
+                    "\"" + configuration.getProperty(JOURNAL_SYNC_PROPERTY) + "\"");
+            }
             try {
-                options.setConnectionTimeout(Integer.parseInt(
-                    configuration.getProperty(MQTT_CONNECTION_TIMEOUT_PROPERTY, MQTT_CONNECTION_TIMEOUT_DEFAULT)));
-            } catch (NumberFormatException e) {
-                throw new InvalidPropertyException("Invalid connect timeout " +
-                        "(ch.hevs.cloudio.endpoint.connectTimeout), " +
-                        "must be a valid integer number");
+                journalSegmentSize = Long.parseLong(configuration.getProperty(JOURNAL_SEGMENT_SIZE_PROPERTY,
+                    JOURNAL_SEGMENT_SIZE_DEFAULT));
+                if (journalSegmentSize <= 0) {
+                    throw new InvalidPropertyException("Invalid journal segment size " +
+                        "(ch.hevs.cloudio.endpoint.journalSegmentSize), " +
+                        "must be greater than 0");
+                }
+            } catch (NumberFormatException exception) {
+                throw new InvalidPropertyException("Invalid journal segment size " +
+                    "(ch.hevs.cloudio.endpoint.journalSegmentSize), " +
+                    "must be a valid integer number");
+            }
+            try {
+                journalSyncInterval = Long.parseLong(configuration.getProperty(JOURNAL_SYNC_INTERVAL_PROPERTY,
+                    JOURNAL_SYNC_INTERVAL_DEFAULT));
+                if (journalSyncInterval <= 0) {
+                    throw new InvalidPropertyException("Invalid journal sync interval " +
+                        "(ch.hevs.cloudio.endpoint.journalSyncInterval), " +
+                        "must be greater than 0");
+                }
+            } catch (NumberFormatException exception) {
+                throw new InvalidPropertyException("Invalid journal sync interval " +
+                    "(ch.hevs.cloudio.endpoint.journalSyncInterval), " +
+                    "must be a valid integer number");
             }
 
-            // Get the keep alive interval property.
+            // Get the ring properties if the ring is used.
+            File ringFile = new File(configuration.getProperty(RING_FILE_PROPERTY,
+                new File(System.getProperty("user.dir"), "cloudio-ring-" + uuid).getPath()));
+            int ringSize;
+            PendingUpdateRing.OverflowPolicy ringOverflow = PendingUpdateRing.OverflowPolicy.fromString(
+                configuration.getProperty(RING_OVERFLOW_PROPERTY, RING_OVERFLOW_DEFAULT));
+            if (ringOverflow == null) {
+                throw new InvalidPropertyException("Unknown ring overflow policy " +
+                    "(ch.hevs.cloudio.endpoint.ringOverflow): " +
+                    "\"" + configuration.getProperty(RING_OVERFLOW_PROPERTY) + "\"");
+            }
             try {
-                options.setKeepAliveInterval(Integer.parseInt(
-                    configuration.getProperty(MQTT_KEEPALIVE_INTERVAL_PROPERTY, MQTT_KEEPALIVE_INTERVAL_DEFAULT)));
+                ringSize = Integer.parseInt(configuration.getProperty(RING_SIZE_PROPERTY, RING_SIZE_DEFAULT));
+                if (ringSize <= PendingUpdateRing.RECORD_OVERHEAD) {
+                    throw new InvalidPropertyException("Invalid ring size " +
+                        "(ch.hevs.cloudio.endpoint.ringSize), " +
+                        "must be greater than " + PendingUpdateRing.RECORD_OVERHEAD);
+                }
             } catch (NumberFormatException exception) {
-                throw new InvalidPropertyException("Invalid keep alive interval " +
-                        "(ch.hevs.cloudio.endpoint.keepAliveInterval), " +
-                        "must be a valid integer number");
+                throw new InvalidPropertyException("Invalid ring size " +
+                    "(ch.hevs.cloudio.endpoint.ringSize), " +
+                    "must be a valid integer number");
+            }
+
+            // Get the update batching properties, batching is only enabled if the window is greater than 0.
+            long batchWindow;
+            int batchSize;
+            try {
+                batchWindow = Long.parseLong(configuration.getProperty(UPDATE_BATCH_WINDOW_PROPERTY,
+                    UPDATE_BATCH_WINDOW_DEFAULT));
+                if (batchWindow < 0) {
+                    throw new InvalidPropertyException("Invalid update batch window " +
+                        "(ch.hevs.cloudio.endpoint.updateBatchWindow), " +
+                        "must be greater or equal to 0");
+                }
+            } catch (NumberFormatException exception) {
+                throw new InvalidPropertyException("Invalid update batch window " +
+                    "(ch.hevs.cloudio.endpoint.updateBatchWindow), " +
+                    "must be a valid integer number");
             }
-            
-            // Get the maxInFlight property.
             try {
-                options.setMaxInflight(Integer.parseInt(
-                    configuration.getProperty(MQTT_MAXINFLIGHT_PROPERTY, MQTT_MAXINFLIGHT_DEFAULT)));
+                batchSize = Integer.parseInt(configuration.getProperty(UPDATE_BATCH_SIZE_PROPERTY,
+                    UPDATE_BATCH_SIZE_DEFAULT));
+                if (batchSize <= 0) {
+                    throw new InvalidPropertyException("Invalid update batch size " +
+                        "(ch.hevs.cloudio.endpoint.updateBatchSize), " +
+                        "must be greater than 0");
+                }
             } catch (NumberFormatException exception) {
-                throw new InvalidPropertyException("Invalid max in flight messages" +
-                        "(ch.hevs.cloudio.endpoint.maxInFlight), " +
-                        "must be a valid integer number");
+                throw new InvalidPropertyException("Invalid update batch size " +
+                    "(ch.hevs.cloudio.endpoint.updateBatchSize), " +
+                    "must be a valid integer number");
             }
 
-            // Create persistence object.
-            String persistenceProvider = configuration.getProperty(MQTT_PERSISTENCE_PROPERTY, MQTT_PERSISTENCE_DEFAULT);
-            if (persistenceProvider.equals(MQTT_PERSISTENCE_MEMORY)) {
-                persistence = new MemoryPersistence();
-            } else if (persistenceProvider.equals(MQTT_PERSISTENCE_FILE)) {
-                persistence = new MqttDefaultFilePersistence();
-            } else if (persistenceProvider.equals(MQTT_PERSISTENCE_NONE)) {
-                persistence = null;
-            } else {
-                throw new InvalidPropertyException("Unknown persistence implementation " +
-                        "(ch.hevs.cloudio.endpoint.persistence): " +
-                        "\"" + persistenceProvider + "\"");
+            // Get the replay properties, the replay leaves half of the MQTT client's messages in flight to live
+            // updates.
+            replayWindow = Math.max(1, MqttTransport.maxInFlight(configuration) / 2);
+            try {
+                replayBatchSize = Integer.parseInt(configuration.getProperty(REPLAY_BATCH_SIZE_PROPERTY,
+                    REPLAY_BATCH_SIZE_DEFAULT));
+                if (replayBatchSize <= 0) {
+                    throw new InvalidPropertyException("Invalid replay batch size " +
+                        "(ch.hevs.cloudio.endpoint.replayBatchSize), " +
+                        "must be greater than 0");
+                }
+            } catch (NumberFormatException exception) {
+                throw new InvalidPropertyException("Invalid replay batch size " +
+                    "(ch.hevs.cloudio.endpoint.replayBatchSize), " +
+                    "must be a valid integer number");
+            }
+
+            // Get the publish queue properties, the queue is only used if its size is greater than 0.
+            int publishQueueSize;
+            try {
+                publishQueueSize = Integer.parseInt(configuration.getProperty(PUBLISH_QUEUE_SIZE_PROPERTY,
+                    PUBLISH_QUEUE_SIZE_DEFAULT));
+                if (publishQueueSize < 0) {
+                    throw new InvalidPropertyException("Invalid publish queue size " +
+                        "(ch.hevs.cloudio.endpoint.publishQueueSize), " +
+                        "must be greater or equal to 0");
+                }
+            } catch (NumberFormatException exception) {
+                throw new InvalidPropertyException("Invalid publish queue size " +
+                    "(ch.hevs.cloudio.endpoint.publishQueueSize), " +
+                    "must be a valid integer number");
+            }
+            String publishQueueOverflow = configuration.getProperty(PUBLISH_QUEUE_OVERFLOW_PROPERTY,
+                PUBLISH_QUEUE_OVERFLOW_DEFAULT);
+            AttributeUpdatePublisher.OverflowPolicy overflowPolicy =
+                AttributeUpdatePublisher.OverflowPolicy.fromString(publishQueueOverflow);
+            if (overflowPolicy == null) {
+                throw new InvalidPropertyException("Unknown publish queue overflow policy " +
+                    "(ch.hevs.cloudio.endpoint.publishQueueOverflow): " +
+                    "\"" + publishQueueOverflow + "\"");
             }
 
-            // Last will is a message with the UUID of the endpoint and no payload.
-            options.setWill("@offline/" + uuid, new byte[0], 1, false);
+            // Get the constraints of the attributes to conflate.
+            Set<CloudioAttributeConstraint> conflatedConstraints = EnumSet.noneOf(CloudioAttributeConstraint.class);
+            for (String constraint: configuration.getProperty(CONFLATED_CONSTRAINTS_PROPERTY,
+                CONFLATED_CONSTRAINTS_DEFAULT).split(",")) {
+                if (!constraint.trim().isEmpty()) {
+                    try {
+                        conflatedConstraints.add(CloudioAttributeConstraint.valueOf(constraint.trim()));
+                    } catch (IllegalArgumentException exception) {
+                        throw new InvalidPropertyException("Unknown attribute constraint " +
+                            "(ch.hevs.cloudio.endpoint.conflatedConstraints): " +
+                            "\"" + constraint.trim() + "\"");
+                    }
+                }
+            }
+
+            // Get the compaction properties of the updates saved while offline.
+            Set<CloudioAttributeConstraint> compactedConstraints = EnumSet.noneOf(CloudioAttributeConstraint.class);
+            for (String constraint: configuration.getProperty(COMPACTED_CONSTRAINTS_PROPERTY,
+                COMPACTED_CONSTRAINTS_DEFAULT).split(",")) {
+                if (!constraint.trim().isEmpty()) {
+                    try {
+                        compactedConstraints.add(CloudioAttributeConstraint.valueOf(constraint.trim()));
+                    } catch (IllegalArgumentException exception) {
+                        throw new InvalidPropertyException("Unknown attribute constraint " +
+                            "(ch.hevs.cloudio.endpoint.compactedConstraints): " +
+                            "\"" + constraint.trim() + "\"");
+                    }
+                }
+            }
+            long downsampleInterval;
+            try {
+                downsampleInterval = Long.parseLong(configuration.getProperty(DOWNSAMPLE_INTERVAL_PROPERTY,
+                    DOWNSAMPLE_INTERVAL_DEFAULT));
+                if (downsampleInterval < 0) {
+                    throw new InvalidPropertyException("Invalid downsample interval " +
+                        "(ch.hevs.cloudio.endpoint.downsampleInterval), " +
+                        "must be greater or equal to 0");
+                }
+            } catch (NumberFormatException exception) {
+                throw new InvalidPropertyException("Invalid downsample interval " +
+                    "(ch.hevs.cloudio.endpoint.downsampleInterval), " +
+                    "must be a valid integer number");
+            }
 
+            // Get the offline writer properties, updates are only saved asynchronously if the queue size is not 0.
+            int offlineWriteQueueSize;
+            long offlineWriteInterval;
+            try {
+                offlineWriteQueueSize = Integer.parseInt(configuration.getProperty(OFFLINE_WRITE_QUEUE_PROPERTY,
+                    OFFLINE_WRITE_QUEUE_DEFAULT));
+                if (offlineWriteQueueSize < 0) {
+                    throw new InvalidPropertyException("Invalid offline write queue size " +
+                        "(ch.hevs.cloudio.endpoint.offlineWriteQueueSize), " +
+                        "must be greater or equal to 0");
+                }
+            } catch (NumberFormatException exception) {
+                throw new InvalidPropertyException("Invalid offline write queue size " +
+                    "(ch.hevs.cloudio.endpoint.offlineWriteQueueSize), " +
+                    "must be a valid integer number");
+            }
+            try {
+                offlineWriteInterval = Long.parseLong(configuration.getProperty(OFFLINE_WRITE_INTERVAL_PROPERTY,
+                    OFFLINE_WRITE_INTERVAL_DEFAULT));
+                if (offlineWriteInterval <= 0) {
+                    throw new InvalidPropertyException("Invalid offline write interval " +
+                        "(ch.hevs.cloudio.endpoint.offlineWriteInterval), " +
+                        "must be greater than 0");
+                }
+            } catch (NumberFormatException exception) {
+                throw new InvalidPropertyException("Invalid offline write interval " +
+                    "(ch.hevs.cloudio.endpoint.offlineWriteInterval), " +
+                    "must be a valid integer number");
+            }
 
-            // Create the MQTT client.
+            // Get the dispatch properties, messages are only dispatched to other threads if their count is not 0.
+            int dispatchThreads;
+            int dispatchQueueSize;
             try {
-                String host = configuration.getProperty(MQTT_HOST_URI_PROPERTY);
-                if (host == null) {
-                    throw new InvalidPropertyException("Missing mandatory property \"" + MQTT_HOST_URI_PROPERTY + "\"");
+                dispatchThreads = Integer.parseInt(configuration.getProperty(DISPATCH_THREADS_PROPERTY,
+                    DISPATCH_THREADS_DEFAULT));
+                if (dispatchThreads < 0) {
+                    throw new InvalidPropertyException("Invalid dispatch thread count " +
+                        "(ch.hevs.cloudio.endpoint.dispatchThreads), " +
+                        "must be greater or equal to 0");
+                }
+            } catch (NumberFormatException exception) {
+                throw new InvalidPropertyException("Invalid dispatch thread count " +
+                    "(ch.hevs.cloudio.endpoint.dispatchThreads), " +
+                    "must be a valid integer number");
+            }
+            try {
+                dispatchQueueSize = Integer.parseInt(configuration.getProperty(DISPATCH_QUEUE_SIZE_PROPERTY,
+                    DISPATCH_QUEUE_SIZE_DEFAULT));
+                if (dispatchQueueSize <= 0) {
+                    throw new InvalidPropertyException("Invalid dispatch queue size " +
+                        "(ch.hevs.cloudio.endpoint.dispatchQueueSize), " +
+                        "must be greater than 0");
+                }
+            } catch (NumberFormatException exception) {
+                throw new InvalidPropertyException("Invalid dispatch queue size " +
+                    "(ch.hevs.cloudio.endpoint.dispatchQueueSize), " +
+                    "must be a valid integer number");
+            }
+
+            // Use numeric attribute identifiers instead of topics for updates if enabled.
+            attributeIds = "true".equals(configuration.getProperty(ATTRIBUTE_IDS_PROPERTY, ATTRIBUTE_IDS_DEFAULT));
+
+            // Create the clock.
+            String clockName = configuration.getProperty(CLOCK_PROPERTY, CLOCK_DEFAULT);
+            if ("wall".equals(clockName)) {
+                clock = new CloudioWallClock();
+                coarseClock = null;
+            } else if ("coarse".equals(clockName)) {
+                long clockResolution;
+                try {
+                    clockResolution = Long.parseLong(configuration.getProperty(CLOCK_RESOLUTION_PROPERTY,
+                        CLOCK_RESOLUTION_DEFAULT));
+                    if (clockResolution <= 0) {
+                        throw new InvalidPropertyException("Invalid clock resolution " +
+                            "(ch.hevs.cloudio.endpoint.clockResolution), " +
+                            "must be greater than 0");
+                    }
+                } catch (NumberFormatException exception) {
+                    throw new InvalidPropertyException("Invalid clock resolution " +
+                        "(ch.hevs.cloudio.endpoint.clockResolution), " +
+                        "must be a valid integer number");
+                }
+                coarseClock = new CloudioCoarseClock(clockResolution);
+                clock = coarseClock;
+            } else if ("microsecond".equals(clockName)) {
+                clock = new CloudioMicrosecondClock();
+                coarseClock = null;
+            } else {
+                throw new InvalidPropertyException("Unknown clock " +
+                    "(ch.hevs.cloudio.endpoint.clock): " +
+                    "\"" + clockName + "\"");
+            }
+
+            // Create the MQTT transport unless another transport is given. The MQTT client opens the persistence on
+            // its own, with any other transport the endpoint has to do so.
+            if (transport != null) {
+                this.transport = transport;
+                if (persistence != null) {
+                    try {
+                        persistence.open(uuid, "");
+                    } catch (MqttPersistenceException exception) {
+                        throw new CloudioEndpointInitializationException(exception);
+                    }
+                }
+            } else {
+                this.transport = new MqttTransport(uuid, configuration, persistence);
+            }
+
+            // Create the store for the updates that can not be sent while offline.
+            PendingUpdateStore store;
+            if (persistenceProvider.equals(MQTT_PERSISTENCE_JOURNAL)) {
+                try {
+                    store = new PendingUpdateJournal(journalDirectory, journalSegmentSize, journalSync,
+                        journalSyncInterval, updatesTopic);
+                } catch (IOException exception) {
+                    throw new CloudioEndpointInitializationException(exception);
+                }
+            } else if (persistenceProvider.equals(MQTT_PERSISTENCE_RING)) {
+                try {
+                    store = new PendingUpdateRing(ringFile, ringSize, ringOverflow, updatesTopic);
+                } catch (IOException exception) {
+                    throw new CloudioEndpointInitializationException(exception);
                 }
-                mqtt = new MqttAsyncClient(configuration.getProperty(MQTT_HOST_URI_PROPERTY), uuid, persistence);
-            } catch (MqttException exception) {
-                throw new CloudioEndpointInitializationException(exception);
+            } else if (persistence != null) {
+                // The keys follow the clock of the endpoint, even if it is replaced later.
+                store = new PersistencePendingUpdateStore(persistence, new CloudioClock() {
+                    @Override
+                    public long currentTimeMillis() {
+                        return clock.currentTimeMillis();
+                    }
+                }, updatesTopic);
+            } else {
+                store = null;
+            }
+
+            // Compact the saved updates if enabled.
+            if (store != null && (!compactedConstraints.isEmpty() || downsampleInterval > 0)) {
+                store = new CompactingPendingUpdateStore(store, compactedConstraints, downsampleInterval);
+            }
+
+            // Save the updates on the writer thread if enabled.
+            if (store != null && offlineWriteQueueSize > 0) {
+                writer = new PendingUpdateWriter(store, offlineWriteQueueSize, offlineWriteInterval);
+                pendingUpdates = writer;
+            } else {
+                writer = null;
+                pendingUpdates = store;
+            }
+
+            // Create the update batcher if batching is enabled.
+            if (batchWindow > 0) {
+                batcher = new AttributeUpdateBatcher(batchWindow, batchSize, new AttributeUpdateBatcher.Sink() {
+                    @Override
+                    public void updatesReady(List<AttributeUpdate> updates) {
+                        publishUpdates(updates, false);
+                    }
+                });
+            } else {
+                batcher = null;
+            }
+
+            // Create the publish queue and its sender thread if enabled.
+            if (publishQueueSize > 0) {
+                publisher = new AttributeUpdatePublisher(publishQueueSize, overflowPolicy,
+                    conflatedConstraints, new AttributeUpdatePublisher.Sink() {
+                        @Override
+                        public boolean updateReady(AttributeUpdate update, boolean mayDefer) {
+                            return sendUpdate(update, mayDefer);
+                        }
+                    });
+            } else {
+                publisher = null;
+            }
+
+            // Create the threads processing the @set messages if enabled.
+            if (dispatchThreads > 0) {
+                dispatcher = new AttributeSetDispatcher(dispatchThreads, dispatchQueueSize,
+                    new AttributeSetDispatcher.Handler() {
+                        @Override
+                        public void handle(CloudioAttribute.InternalAttribute attribute,
+                                           CloudioMessageFormat messageFormat, byte[] data) throws Exception {
+                            messageFormat.deserializeAttribute(data, attribute);
+                        }
+                    });
+            } else {
+                dispatcher = null;
             }
 
+            // Create the timer sending held changes and heartbeats of filtered attributes, its thread is only started
+            // once the first task is scheduled.
+            timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "cloudio-attribute-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
             // Start the connection process in a detached thread.
             new Thread(this).start();
         }
@@ -602,33 +1325,36 @@ public class CloudioEndpoint implements CloudioEndpointService {
         /*** NodeContainer Implementation *****************************************************************************/
         @Override
         public void attributeHasChangedByEndpoint(CloudioAttribute.InternalAttribute attribute) {
-            // Create the MQTT message using the given message format.
-            byte[] data = messageFormat.serializeAttribute(attribute);
+            // Without publish queue, batching and identifiers the attribute is serialized directly.
+            if (publisher == null && batcher == null && !attributeIds) {
+                publishUpdate(attribute, messageFormat.serializeAttribute(attribute), false);
+                return;
+            }
+            attributeHasChangedByEndpoint(new AttributeUpdate(attribute));
+        }
 
-            // Try to send the message if the MQTT client is connected.
-            boolean messageSend = false;
-            if (mqtt.isConnected()) {
-                try {
-                    mqtt.publish("@update/" + attribute.getUuid().toString(), data, 1, false);
-                    messageSend = true;
-                } catch (MqttException exception) {
-                    log.error("Exception :" + exception.getMessage());
-                    exception.printStackTrace();
-                }
+        @Override
+        public void attributeHasChangedByEndpoint(AttributeUpdate update) {
+            // If the publish queue is enabled, only capture the update and let the sender thread do the rest.
+            if (publisher != null) {
+                publisher.publish(update);
+                return;
             }
 
-            // If the message could not be send for any reason, add the message to the pending updates persistence if
-            // available.
-            if (!messageSend && persistence != null) {
-                try {
-                    persistence.put("PendingUpdate-" + attribute.getUuid().toString().replace("/", ";")
-                            + "-" + Calendar.getInstance().getTimeInMillis(),
-                        new PendingUpdate(data));
-                } catch (MqttPersistenceException exception) {
-                    log.error("Exception :" + exception.getMessage());
-                    exception.printStackTrace();
-                }
+            // If batching is enabled, capture the update and let the batcher send it later together with others.
+            if (batcher != null) {
+                batcher.add(update);
+                return;
             }
+
+            // Attributes referenced by their identifier are sent on the shared updates topic.
+            if (attributeIds) {
+                publishUpdates(Collections.singletonList(update), false);
+                return;
+            }
+
+            // Create the MQTT message using the given message format and send it.
+            publishUpdate(update.getAttribute(), messageFormat.serializeAttributeUpdate(update), false);
         }
 
         @Override
@@ -639,7 +1365,7 @@ public class CloudioEndpoint implements CloudioEndpointService {
         /*** UniqueIdentifiable Implementation ************************************************************************/
         @Override
         public Uuid getUuid() {
-            return new TopicUuid(this);
+            return topicUuid;
         }
 
         /*** NamedItem Implementation *********************************************************************************/
@@ -653,7 +1379,7 @@ public class CloudioEndpoint implements CloudioEndpointService {
             throw new CloudioModificationException("CloudioEndpoint name can not be changed!");
         }
 
-        /*** MqttCallback implementation ******************************************************************************/
+        /*** CloudioTransport.Listener implementation *****************************************************************/
         @Override
         public void connectionLost(Throwable throwable) {
             for (CloudioEndpointListener listener: listeners) {
@@ -667,14 +1393,23 @@ public class CloudioEndpoint implements CloudioEndpointService {
         }
 
         @Override
-        public void messageArrived(String topic, MqttMessage message) throws Exception {
+        public void messageArrived(String topic, byte[] data) {
             try {
-                byte[] data = message.getPayload();
-
                 // First determine the message format (first byte identifies the message format).
-                CloudioMessageFormat messageFormat = CloudioMessageFormatFactory.massageFormat(message.getPayload()[0]);
+                CloudioMessageFormat messageFormat = CloudioMessageFormatFactory.massageFormat(data[0]);
                 if (messageFormat == null) {
-                    log.error("Message-format " + (int)message.getPayload()[0] + " not supported!");
+                    log.error("Message-format " + (int)data[0] + " not supported!");
+                    return;
+                }
+
+                // Most messages target a registered attribute, resolve them directly using the topic.
+                CloudioAttribute.InternalAttribute attribute = setRoutes.get(topic);
+                if (attribute != null) {
+                    if (dispatcher != null) {
+                        dispatcher.dispatch(attribute, messageFormat, data);
+                    } else {
+                        messageFormat.deserializeAttribute(data, attribute);
+                    }
                     return;
                 }
 
@@ -699,97 +1434,34 @@ public class CloudioEndpoint implements CloudioEndpointService {
             }
         }
 
-        @Override
-        public void deliveryComplete(IMqttDeliveryToken iMqttDeliveryToken) {
-            // Does not matter.
-        }
-
         /*** Runnable implementation **********************************************************************************/
         @Override
         public void run() {
-            mqtt.setCallback(null);
+            transport.setListener(null);
 
             // As long as we are not connected, try to establish a connection to the broker.
-            while (!mqtt.isConnected()) {
+            while (!transport.isConnected()) {
                 try {
-                    // Try to connect to the broker.
-                    IMqttToken token = mqtt.connect(options, null, new IMqttActionListener() {
-                        @Override
-                        public void onSuccess(IMqttToken iMqttToken) {
-                            try {
-                                // Send birth message.
-                                mqtt.publish("@online/" + internal.uuid,
-                                    messageFormat.serializeEndpoint(InternalEndpoint.this), 1, true);
-
-                                // Subscribe to all set commands.
-                                mqtt.subscribe("@set/" + internal.uuid + "/#", 1);
-
-                                // Send all saved updates on update topic.
-                                if (persistence != null) {
-                                    new Thread(new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            try {
-                                                @SuppressWarnings("unchecked")
-                                                Enumeration<String> keyEnum = persistence.keys();
-                                                while (mqtt.isConnected() && keyEnum.hasMoreElements()) {
-                                                    String key = keyEnum.nextElement();
-
-                                                    // Is it a pending update?
-                                                    if (key.startsWith("PendingUpdate-")) {
-
-                                                        // Get the pending update persistent object from store.
-                                                        MqttPersistable pendingUpdate = persistence.get(key);
-                                                        String uuid = key.substring(14, key.lastIndexOf("-")).replace(";", "/");
-
-                                                        // Try to send the update to the broker and remove it from the storage.
-                                                        try {
-                                                            mqtt.publish("@update/" + uuid,
-                                                                pendingUpdate.getHeaderBytes(), 1, false);
-                                                            persistence.remove(key);
-                                                        } catch (MqttException exception) {
-                                                            log.error("Exception: " + exception.getMessage());
-                                                            exception.printStackTrace();
-                                                        }
-
-                                                        try {
-                                                            Thread.sleep(100);
-                                                        } catch (InterruptedException exception) {
-                                                            log.error("Exception: " + exception.getMessage());
-                                                            exception.printStackTrace();
-                                                        }
-                                                    }
-                                                }
-                                            } catch (MqttPersistenceException exception) {
-                                                log.error("Exception: " + exception.getMessage());
-                                                exception.printStackTrace();
-                                            }
-
-                                        }
-                                    }).start();
-                                }
-                            } catch (MqttException exception) {
-                                log.error("Exception: " + exception.getMessage());
-                                exception.printStackTrace();
-                            }
-                        }
+                    // Try to connect to the broker, the last will is a message with the UUID of the endpoint and no
+                    // payload.
+                    transport.connect("@offline/" + uuid, new byte[0]);
 
-                        @Override
-                        public void onFailure(IMqttToken iMqttToken, Throwable throwable) {
-                            log.error("Exception: " + throwable.getMessage());
-                            throwable.printStackTrace();
-                        }
-                    });
+                    // Send birth message.
+                    transport.publish("@online/" + uuid, messageFormat.serializeEndpoint(this), 1, true, null);
 
-                    // Wait for connect or error...
-                    token.waitForCompletion();
+                    // Subscribe to all set commands.
+                    transport.subscribe("@set/" + uuid + "/#", 1);
 
-                } catch (MqttException exception) {
+                    // Send all saved updates in the order they were saved.
+                    if (pendingUpdates != null) {
+                        replayPendingUpdates();
+                    }
+                } catch (CloudioTransportException exception) {
                     log.error("Exception during connect:", exception);
                 }
 
                 // If the connection could not be established, sleep a moment before the next try.
-                if (!mqtt.isConnected()) {
+                if (!transport.isConnected()) {
                     // If we should not retry, give up.
                     if (retryInterval == 0) return;
 
@@ -807,7 +1479,7 @@ public class CloudioEndpoint implements CloudioEndpointService {
             }
 
             // If we arrive here, we are online, so we can inform listeners about that and stop the connecting thread.
-            mqtt.setCallback(this);
+            transport.setListener(this);
             for (CloudioEndpointListener listener: listeners) {
                 listener.endpointIsOnline(CloudioEndpoint.this);
             }
@@ -819,56 +1491,162 @@ public class CloudioEndpoint implements CloudioEndpointService {
         }
 
         /*** Private methods ******************************************************************************************/
-        private SSLSocketFactory createSocketFactory(String endpointUuid, CloudioEndpointConfiguration properties)
-            throws Exception {
-            // Endpoint identity (Key & Certificate) in single PKCS #12 archive file named with the actual Endpoint ID.
-            KeyStore endpointKeyCertStore = KeyStore.getInstance(ENDPOINT_IDENTITY_FILE_TYPE);
+        private boolean sendUpdate(AttributeUpdate update, boolean mayDefer) {
+            if (batcher != null) {
+                batcher.add(update);
+                return true;
+            } else if (attributeIds) {
+                return publishUpdates(Collections.singletonList(update), mayDefer);
+            } else {
+                return publishUpdate(update.getAttribute(), messageFormat.serializeAttributeUpdate(update), mayDefer);
+            }
+        }
 
-            // If the key file is present in settings, use it to load the identity file.
-            if (properties.containsKey(ENDPOINT_IDENTITY_FILE_PROPERTY)) {
-                endpointKeyCertStore.load(ResourceLoader.getResource(
-                                properties.getProperty(ENDPOINT_IDENTITY_FILE_PROPERTY), this),
-                        properties.getProperty(ENDPOINT_IDENTITY_PASS_PROPERTY,
-                                ENDPOINT_IDENTITY_PASS_DEFAULT).toCharArray());
+        /**
+         * Prepares all attributes of the given node for the use within the endpoint and adds the @set topics of the
+         * attributes to the routing table. As the structure of a node can not be modified once it is part of the
+         * endpoint, the routing table only changes when nodes are added or removed.
+         *
+         * If numeric attribute identifiers are enabled, every attribute gets the next free identifier. Identifiers of
+         * removed attributes are not reused while the endpoint runs. They are not stable across runs, which is why
+         * the updates saved while offline always reference the attributes by UUID.
+         *
+         * @param node  Node which has been added to the endpoint.
+         */
+        void attach(CloudioNode.InternalNode node) {
+            for (CloudioAttribute.InternalAttribute attribute: collectAttributes(node)) {
+                attribute.attach(clock, timer);
+                if (attributeIds) {
+                    synchronized (nodes) {
+                        attribute.setId(nextAttributeId++);
+                    }
+                }
+                setRoutes.put(attribute.getSetTopic(), attribute);
+            }
+        }
 
-            // If the key file is not given, try to load from default locations.
-            } else {
-                endpointKeyCertStore.load(ResourceLoader.getResourceFromLocations(endpointUuid + ".p12", this,
-                                "home:" + "/.config/cloud.io/",
-                                "file:/etc/cloud.io/",
-                                "classpath:cloud.io/"),
-                        properties.getProperty(ENDPOINT_IDENTITY_PASS_PROPERTY,
-                                ENDPOINT_IDENTITY_PASS_DEFAULT).toCharArray());
+        /**
+         * Removes the @set topics of all attributes of the given node from the routing table and invalidates the
+         * attributes' cached topics.
+         *
+         * @param node  Node which is removed from the endpoint.
+         */
+        void detach(CloudioNode.InternalNode node) {
+            for (CloudioAttribute.InternalAttribute attribute: collectAttributes(node)) {
+                setRoutes.remove(attribute.getSetTopic());
+                attribute.detach();
+            }
+        }
+
+        /**
+         * Returns all attributes of the given node, including the attributes of all nested objects.
+         *
+         * @param node  Node to collect the attributes of.
+         * @return      List of attributes.
+         */
+        List<CloudioAttribute.InternalAttribute> collectAttributes(CloudioNode.InternalNode node) {
+            List<CloudioAttribute.InternalAttribute> attributes = new LinkedList<CloudioAttribute.InternalAttribute>();
+            for (CloudioObject.InternalObject object: node.getObjects().toList()) {
+                collectAttributes(object, attributes);
+            }
+            return attributes;
+        }
+
+        private void collectAttributes(CloudioObject.InternalObject object,
+                                       List<CloudioAttribute.InternalAttribute> attributes) {
+            attributes.addAll(object.getAttributes().toList());
+            for (CloudioObject.InternalObject child: object.getObjects().toList()) {
+                collectAttributes(child, attributes);
+            }
+        }
+
+        private boolean publishUpdate(CloudioAttribute.InternalAttribute attribute, byte[] data, boolean mayDefer) {
+            // Try to send the message if the MQTT client is connected.
+            boolean messageSend = false;
+            if (transport.isConnected()) {
+                try {
+                    transport.publish(attribute.getUpdateTopic(), data, 1, false, null);
+                    messageSend = true;
+                } catch (CloudioTransportException exception) {
+                    // If too many messages are in flight, the caller may prefer to retry later with a newer value.
+                    if (mayDefer && exception.isCongested()) {
+                        return false;
+                    }
+                    log.error("Exception :" + exception.getMessage());
+                    exception.printStackTrace();
+                }
             }
 
-            KeyManagerFactory endpointKeyCertManagerFactory =
-                    KeyManagerFactory.getInstance(ENDPOINT_IDENTITY_MANAGER_TYPE);
-            endpointKeyCertManagerFactory.init(endpointKeyCertStore, "".toCharArray());
+            // If the message could not be send for any reason, add the message to the pending updates store if
+            // available.
+            if (!messageSend && pendingUpdates != null) {
+                try {
+                    pendingUpdates.append(attribute, data);
+                } catch (IOException exception) {
+                    log.error("Exception :" + exception.getMessage());
+                    exception.printStackTrace();
+                }
+            }
 
-            // Authority certificate in JKS format.
-            KeyStore authorityKeyStore = KeyStore.getInstance(CERT_AUTHORITY_FILE_TYPE);
+            return true;
+        }
 
-            if (properties.containsKey(CERT_AUTHORITY_FILE_PROPERTY)) {
-                authorityKeyStore.load(ResourceLoader.getResource(properties.getProperty(CERT_AUTHORITY_FILE_PROPERTY),
-                        this), properties.getProperty(CERT_AUTHORITY_PASS_PROPERTY,
-                    CERT_AUTHORITY_PASS_DEFAULT).toCharArray());
-            } else {
-                authorityKeyStore.load(ResourceLoader.getResourceFromLocations(CERT_AUTHORITY_FILE_DEFAULTNAME, this,
-                    "home:" + "/.config/cloud.io/",
-                    "file:/etc/cloud.io/",
-                    "classpath:cloud.io/"), properties.getProperty(CERT_AUTHORITY_PASS_PROPERTY,
-                    CERT_AUTHORITY_PASS_DEFAULT).toCharArray());
+        private boolean publishUpdates(List<AttributeUpdate> updates, boolean mayDefer) {
+            // Create the MQTT message containing all updates using the given message format.
+            byte[] data = messageFormat.serializeAttributeUpdates(updates, attributeIds);
+
+            // Try to send the message if the MQTT client is connected.
+            boolean messageSend = false;
+            if (transport.isConnected()) {
+                try {
+                    transport.publish(updatesTopic, data, 1, false, null);
+                    messageSend = true;
+                } catch (CloudioTransportException exception) {
+                    // If too many messages are in flight, the caller may prefer to retry later with a newer value.
+                    if (mayDefer && exception.isCongested()) {
+                        return false;
+                    }
+                    log.error("Exception :" + exception.getMessage());
+                    exception.printStackTrace();
+                }
             }
 
-            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(CERT_AUTHORITY_MANAGER_TYPE);
-            trustManagerFactory.init(authorityKeyStore);
+            // If the message could not be send for any reason, add the message to the pending updates store if
+            // available.
+            if (!messageSend && pendingUpdates != null) {
+                try {
+                    // Identifiers are only valid for the actual @online message, the saved message uses the UUIDs as
+                    // it may be replayed by another run of the endpoint with different identifiers.
+                    if (attributeIds) {
+                        data = messageFormat.serializeAttributeUpdates(updates, false);
+                    }
+                    pendingUpdates.append(null, data);
+                } catch (IOException exception) {
+                    log.error("Exception :" + exception.getMessage());
+                    exception.printStackTrace();
+                }
+            }
 
-            // Create SSL Context.
-            SSLContext sslContext = SSLContext.getInstance(properties.getProperty(SSL_PROTOCOL_PROPERTY,
-                    SSL_PROTOCOL_DEFAULT));
-            sslContext.init(endpointKeyCertManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+            return true;
+        }
 
-            return sslContext.getSocketFactory();
+        private synchronized void replayPendingUpdates() {
+            // A replay still running from a previous connection is replaced, as the new one restarts with the oldest
+            // update not delivered. Wait until it has ended, as both would read from the store otherwise.
+            if (replayer != null) {
+                replayer.stop();
+                try {
+                    replayThread.join();
+                } catch (InterruptedException exception) {
+                    log.error("Exception: " + exception.getMessage());
+                    exception.printStackTrace();
+                }
+            }
+            replayer = new PendingUpdateReplayer(pendingUpdates, transport, updatesTopic, replayWindow,
+                replayBatchSize);
+            replayThread = new Thread(replayer, "cloudio-replay");
+            replayThread.setDaemon(true);
+            replayThread.start();
         }
 
         private void set(String topic, Stack<String> location, CloudioMessageFormat messageFormat, byte[] data)
@@ -902,26 +1680,76 @@ public class CloudioEndpoint implements CloudioEndpointService {
         void close() {
             // Disconnect.
             retryInterval = 0;
-            if (mqtt.isConnected()) {
+
+            // Send the changes held back by the attributes and stop the timer.
+            for (CloudioNode.InternalNode node: nodes) {
+                for (CloudioAttribute.InternalAttribute attribute: collectAttributes(node)) {
+                    attribute.flush();
+                }
+            }
+            timer.shutdownNow();
+
+            // Send all updates still waiting in the publish queue and in the actual batch.
+            if (publisher != null) {
+                publisher.close();
+            }
+            if (batcher != null) {
+                batcher.close();
+            }
+
+            // Stop replaying the updates saved while offline and wait for the replay to end, as it still uses the
+            // transport and the pending updates store closed below.
+            synchronized (this) {
+                if (replayer != null) {
+                    replayer.stop();
+                    try {
+                        replayThread.join();
+                    } catch (InterruptedException exception) {
+                        log.error("Exception: " + exception.getMessage());
+                        exception.printStackTrace();
+                    }
+                }
+            }
+
+            // Stop the clock's ticker thread if the endpoint has created one.
+            if (coarseClock != null) {
+                coarseClock.close();
+            }
+
+            if (transport.isConnected()) {
                 try {
-                    mqtt.disconnect();
-                } catch (MqttException exception) {
+                    transport.disconnect();
+                } catch (CloudioTransportException exception) {
                     exception.printStackTrace();
                 }
             }
 
-            // Close MQTT.
+            // Close the transport.
             try {
-                mqtt.close();
-            } catch (MqttException exception) {
+                transport.close();
+            } catch (CloudioTransportException exception) {
                 exception.printStackTrace();
             }
 
-            // Close persistence.
-            try {
-                persistence.close();
-            } catch (MqttPersistenceException exception) {
-                exception.printStackTrace();
+            // Process the @set messages received before the connection was closed.
+            if (dispatcher != null) {
+                dispatcher.close();
+            }
+
+            // Close the pending updates store and the persistence.
+            if (pendingUpdates != null) {
+                try {
+                    pendingUpdates.close();
+                } catch (IOException exception) {
+                    exception.printStackTrace();
+                }
+            }
+            if (persistence != null) {
+                try {
+                    persistence.close();
+                } catch (MqttPersistenceException exception) {
+                    exception.printStackTrace();
+                }
             }
 
             // Remove all nodes.
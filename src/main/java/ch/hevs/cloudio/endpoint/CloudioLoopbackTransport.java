@@ -0,0 +1,183 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process transport which does not need any broker. Messages published by the endpoint are handed to the cloud
+ * listener (see {@link #setCloudListener(CloudioTransport.Listener)}) on the publishing thread and acknowledged
+ * immediately, messages simulating the cloud are injected using {@link #inject(String, byte[])}. As no network is
+ * involved, the transport allows to measure the throughput and the latency of the endpoint itself, its data model,
+ * serialization and queueing on a single machine. The counters of published messages and bytes allow to compute the
+ * throughput without any cloud listener.
+ *
+ * The loss of the connection can be simulated using {@link #dropConnection()}, the endpoint then connects again after
+ * its retry interval.
+ */
+public class CloudioLoopbackTransport implements CloudioTransport {
+    /*** Attributes ***************************************************************************************************/
+    private final List<String> subscriptions = new CopyOnWriteArrayList<String>();
+    private final AtomicLong publishedMessages = new AtomicLong();
+    private final AtomicLong publishedBytes = new AtomicLong();
+    private volatile Listener listener = null;
+    private volatile Listener cloudListener = null;
+    private volatile boolean connected = false;
+    private volatile boolean closed = false;
+    private volatile String willTopic = null;
+    private volatile byte[] willPayload = null;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Sets the listener receiving all messages published by the endpoint, including the last will if the connection
+     * is dropped.
+     *
+     * @param cloudListener Listener or null to discard the messages.
+     */
+    public void setCloudListener(Listener cloudListener) {
+        this.cloudListener = cloudListener;
+    }
+
+    /**
+     * Delivers a message to the endpoint as if it was published by the cloud. The message is passed to the endpoint
+     * on the calling thread if it matches one of the endpoint's subscriptions.
+     *
+     * @param topic     Topic of the message.
+     * @param payload   Content of the message.
+     * @return          True if the message was delivered, false if not connected or no subscription matches.
+     */
+    public boolean inject(String topic, byte[] payload) {
+        Listener listener = this.listener;
+        if (!connected || listener == null) {
+            return false;
+        }
+        for (String subscription: subscriptions) {
+            if (matches(subscription, topic)) {
+                listener.messageArrived(topic, payload);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Simulates the loss of the connection: The last will is published to the cloud listener and the endpoint is
+     * informed about the lost connection.
+     */
+    public void dropConnection() {
+        if (!connected) {
+            return;
+        }
+        connected = false;
+        subscriptions.clear();
+
+        Listener cloudListener = this.cloudListener;
+        if (cloudListener != null && willTopic != null) {
+            cloudListener.messageArrived(willTopic, willPayload);
+        }
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.connectionLost(new CloudioTransportException("Connection dropped"));
+        }
+    }
+
+    /**
+     * Returns the number of messages published by the endpoint since the transport was created.
+     *
+     * @return  Number of messages.
+     */
+    public long getPublishedMessages() {
+        return publishedMessages.get();
+    }
+
+    /**
+     * Returns the total size of the messages published by the endpoint since the transport was created.
+     *
+     * @return  Number of bytes.
+     */
+    public long getPublishedBytes() {
+        return publishedBytes.get();
+    }
+
+    /*** CloudioTransport Implementation ******************************************************************************/
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void connect(String willTopic, byte[] willPayload) throws CloudioTransportException {
+        if (closed) {
+            throw new CloudioTransportException("Transport is closed");
+        }
+        this.willTopic = willTopic;
+        this.willPayload = willPayload;
+        connected = true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public void publish(String topic, byte[] payload, int qos, boolean retained, DeliveryListener delivery)
+        throws CloudioTransportException {
+        if (!connected) {
+            throw new CloudioTransportException("Not connected");
+        }
+
+        publishedMessages.incrementAndGet();
+        publishedBytes.addAndGet(payload != null ? payload.length : 0);
+
+        Listener cloudListener = this.cloudListener;
+        if (cloudListener != null) {
+            cloudListener.messageArrived(topic, payload != null ? payload : new byte[0]);
+        }
+        if (delivery != null) {
+            delivery.deliveryComplete(topic);
+        }
+    }
+
+    @Override
+    public void subscribe(String topicFilter, int qos) throws CloudioTransportException {
+        if (!connected) {
+            throw new CloudioTransportException("Not connected");
+        }
+        subscriptions.add(topicFilter);
+    }
+
+    @Override
+    public void disconnect() throws CloudioTransportException {
+        connected = false;
+        subscriptions.clear();
+    }
+
+    @Override
+    public void close() throws CloudioTransportException {
+        disconnect();
+        closed = true;
+    }
+
+    /*** Package private methods **************************************************************************************/
+    /**
+     * Returns true if the given topic matches the given MQTT topic filter.
+     *
+     * @param filter    Topic filter, can contain the wildcards '+' (one level) and '#' (all remaining levels).
+     * @param topic     Topic to match.
+     * @return          True if the topic matches the filter.
+     */
+    static boolean matches(String filter, String topic) {
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        for (int i = 0; i < filterLevels.length; ++i) {
+            if ("#".equals(filterLevels[i])) {
+                return true;
+            }
+            if (i >= topicLevels.length || !("+".equals(filterLevels[i]) || filterLevels[i].equals(topicLevels[i]))) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+}
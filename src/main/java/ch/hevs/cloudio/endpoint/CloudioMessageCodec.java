@@ -0,0 +1,50 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.io.IOException;
+
+/**
+ * Encoding of the messages exchanged with the cloud, used to plug in additional message formats. The endpoint builds
+ * every message as a tree of maps (with string keys), lists, strings, longs, doubles, booleans and nulls with the very
+ * same structure as the messages of the JSON format, a codec only converts these trees to bytes and back.
+ *
+ * Codecs are loaded using {@link java.util.ServiceLoader}: Implementations listed in
+ * META-INF/services/ch.hevs.cloudio.endpoint.CloudioMessageCodec are registered when the endpoint's message formats are
+ * initialized and can be selected using their name in the ch.hevs.cloudio.endpoint.messageFormat property. A codec can
+ * not replace a format already registered with the same leading byte or name.
+ *
+ * Note that codecs are called from every thread sending or receiving messages, so implementations have to be thread
+ * safe.
+ */
+public interface CloudioMessageCodec {
+    /**
+     * Returns the name used to select the codec using the ch.hevs.cloudio.endpoint.messageFormat property.
+     *
+     * @return  Name of the message format.
+     */
+    String getName();
+
+    /**
+     * Returns the bytes the messages encoded by the codec can start with. They are used to select the codec to decode
+     * received messages, so they must not be used by any other format.
+     *
+     * @return  Leading bytes of the messages, each in the range 0 to 255.
+     */
+    int[] getIdentifiers();
+
+    /**
+     * Encodes the given message.
+     *
+     * @param message   Message to encode, a Map, List, String, Long, Double, Boolean or null.
+     * @return          Encoded message starting with one of the identifiers of the codec.
+     */
+    byte[] encode(Object message);
+
+    /**
+     * Decodes the given received message.
+     *
+     * @param data          Message to decode.
+     * @return              Decoded message as a tree of Map, List, String, Long, Double, Boolean and null values.
+     * @throws IOException  If the data is not a valid message.
+     */
+    Object decode(byte[] data) throws IOException;
+}
@@ -1,10 +1,31 @@
 package ch.hevs.cloudio.endpoint;
 
+import java.util.List;
+
 /**
  * The CloudioMessageFormat interface declares the methods that are used by the {@link CloudioEndpoint} implementation in order to
  * encode and decode attribute changes into MQTT messages.
+ *
+ * The interface works on the endpoint's internal data model, additional formats implement the public
+ * {@link CloudioMessageCodec} instead.
  */
 interface CloudioMessageFormat {
+    /**
+     * Returns the identifier of the message format. All messages encoded using the format have to start with this
+     * byte, it is used to select the format to decode received messages. Built-in formats whose messages can start with
+     * several bytes are registered under the other leading bytes as well.
+     *
+     * @return  Identifier (first byte of every message) in the range 0 to 255.
+     */
+    int getIdentifier();
+
+    /**
+     * Returns the name used to select the message format using the ch.hevs.cloudio.endpoint.messageFormat property.
+     *
+     * @return  Name of the message format.
+     */
+    String getName();
+
     /**
      * A CloudioMessageFormat implementation should return the encoded payload of the serialization of the given endpoint.
      *
@@ -29,6 +50,42 @@ interface CloudioMessageFormat {
      */
     byte[] serializeAttribute(CloudioAttribute.InternalAttribute attribute);
 
+    /**
+     * A CloudioMessageFormat implementation should return the encoded payload of the serialization of the given
+     * attribute update. The payload has to be identical to the one {@link #serializeAttribute} would have produced at
+     * the moment the update was captured.
+     *
+     * @param update    Attribute update to serialize.
+     * @return          Raw data representation of the attribute update.
+     */
+    byte[] serializeAttributeUpdate(AttributeUpdate update);
+
+    /**
+     * A CloudioMessageFormat implementation should return the encoded payload of the serialization of all the given
+     * attribute updates in a single message. Every update has to contain the UUID of the attribute, or its numeric
+     * identifier if requested, as the message is not sent on the attribute's topic.
+     *
+     * @param updates   Attribute updates to serialize, in the order they should be applied.
+     * @param withIds   True to reference attributes having a numeric identifier by the identifier, false to always use
+     *                  the UUID. Identifiers are only valid for the actual connection, so messages which are saved
+     *                  while offline have to use the UUID.
+     * @return          Raw data representation of the attribute updates.
+     */
+    byte[] serializeAttributeUpdates(List<AttributeUpdate> updates, boolean withIds);
+
+    /**
+     * A CloudioMessageFormat implementation should combine the given messages into a single message with the same
+     * structure as the messages produced by {@link #serializeAttributeUpdates}. This is used to send the updates saved
+     * while the endpoint was offline using less messages.
+     *
+     * @param uuids     For every message the UUID of the attribute if the message was produced by
+     *                  {@link #serializeAttributeUpdate} or {@link #serializeAttribute}, null if the message was
+     *                  produced by {@link #serializeAttributeUpdates} and all its updates have to be taken over.
+     * @param messages  Messages to combine, all encoded using this message format.
+     * @return          Raw data representation of all updates or null if the messages can not be combined.
+     */
+    byte[] combineAttributeUpdates(List<String> uuids, List<byte[]> messages);
+
     /**
      * A CloudioMessageFormat implementation should parse the data payload and update the given attribute according to the
      * data.
@@ -1,31 +1,116 @@
 package ch.hevs.cloudio.endpoint;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
+/**
+ * Registry of all message formats known to the endpoint. Received messages are decoded using the format whose
+ * identifier matches the first byte of the message, messages to send are encoded using the format selected by name.
+ * Formats whose messages can start with different bytes, as MessagePack, are additionally registered under these
+ * leading bytes.
+ *
+ * Besides the built-in formats, additional formats are loaded using {@link ServiceLoader}: Implementations of the
+ * public {@link CloudioMessageCodec} interface listed in META-INF/services/ch.hevs.cloudio.endpoint.CloudioMessageCodec
+ * are registered under all their identifiers when the registry is initialized. A format can not replace a format
+ * already registered with the same identifier or name.
+ *
+ * The registry is complete once the class is initialized and never changes afterwards, so lookups are simple array and
+ * map reads without any locking.
+ */
 class CloudioMessageFormatFactory {
-    static CloudioMessageFormat massageFormat(int messageFormatId) {
-        if (formats.containsKey(messageFormatId)) {
-            return formats.get(messageFormatId);
-        } else {
-            CloudioMessageFormat format = null;
-            switch (messageFormatId) {
-                case '{':
-                    format = new JsonMessageFormat();
-                    formats.put((int)'{', format);
-                    break;
+    private static final Logger log = LoggerFactory.getLogger(CloudioMessageFormatFactory.class);
 
-                case 'z':
-                    format = new JsonZipMessageFormat();
-                    formats.put((int)'z', format);
-                    break;
+    /*** Attributes ***************************************************************************************************/
+    private static final CloudioMessageFormat[] formats = new CloudioMessageFormat[256];
+    private static final Map<String, CloudioMessageFormat> formatsByName = new HashMap<String, CloudioMessageFormat>();
+
+    static {
+        register(new JsonMessageFormat());
+        register(new JsonZipMessageFormat());
+        register(new JsonLeanMessageFormat());
+        register(new CborMessageFormat());
+        CloudioMessageFormat messagePack = new MessagePackMessageFormat();
+        register(messagePack);
 
-                default:
+        // MessagePack messages are plain maps, so any map header identifies the format.
+        for (int identifier = 0x81; identifier <= 0xFF; ++identifier) {
+            if (MessagePackMessageFormat.isMapHeader(identifier)) {
+                alias(messagePack, identifier);
+            }
+        }
+
+        Iterator<CloudioMessageCodec> codecs = ServiceLoader.load(CloudioMessageCodec.class,
+            CloudioMessageFormatFactory.class.getClassLoader()).iterator();
+        while (true) {
+            try {
+                if (!codecs.hasNext()) {
                     break;
+                }
+                register(new CodecMessageFormat(codecs.next()));
+            } catch (ServiceConfigurationError error) {
+                log.error("Exception: " + error.getMessage());
+                error.printStackTrace();
             }
+        }
+    }
 
-            return format;
+    /*** API **********************************************************************************************************/
+    /**
+     * Returns the message format with the given identifier.
+     *
+     * @param messageFormatId   Identifier of the format, usually the first byte of a received message.
+     * @return                  Message format or null if no format with the given identifier is registered.
+     */
+    static CloudioMessageFormat massageFormat(int messageFormatId) {
+        return formats[messageFormatId & 0xFF];
+    }
+
+    /**
+     * Returns the message format with the given name.
+     *
+     * @param name  Name of the format as used in the endpoint's configuration, for example "json".
+     * @return      Message format or null if no format with the given name is registered.
+     */
+    static CloudioMessageFormat messageFormat(String name) {
+        return formatsByName.get(name);
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private static void register(CloudioMessageFormat format) {
+        int identifier = format.getIdentifier();
+        if (identifier < 0 || identifier > 255) {
+            log.error("Message format \"" + format.getName() + "\" has an invalid identifier " + identifier + "!");
+        } else if (formats[identifier] != null) {
+            log.error("Message format \"" + format.getName() + "\" ignored, identifier " + identifier +
+                " is already used by \"" + formats[identifier].getName() + "\"!");
+        } else if (formatsByName.containsKey(format.getName())) {
+            log.error("Message format \"" + format.getName() + "\" ignored, name is already used!");
+        } else {
+            formats[identifier] = format;
+            formatsByName.put(format.getName(), format);
+            if (format instanceof CodecMessageFormat) {
+                int[] identifiers = ((CodecMessageFormat)format).getIdentifiers();
+                for (int i = 1; i < identifiers.length; ++i) {
+                    alias(format, identifiers[i]);
+                }
+            }
         }
     }
 
-    private static final HashMap<Integer,CloudioMessageFormat> formats = new HashMap<Integer,CloudioMessageFormat>();
+    private static void alias(CloudioMessageFormat format, int identifier) {
+        if (identifier < 0 || identifier > 255) {
+            log.error("Message format \"" + format.getName() + "\" has an invalid identifier " + identifier + "!");
+        } else if (formats[identifier] != null) {
+            log.error("Identifier " + identifier + " of message format \"" + format.getName() +
+                "\" ignored, it is already used by \"" + formats[identifier].getName() + "\"!");
+        } else {
+            formats[identifier] = format;
+        }
+    }
 }
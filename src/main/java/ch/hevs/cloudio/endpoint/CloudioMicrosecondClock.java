@@ -0,0 +1,34 @@
+package ch.hevs.cloudio.endpoint;
+
+/**
+ * Clock with microsecond resolution. The clock reads the wall clock once when it is created and advances using the
+ * system's high resolution monotonic timer, so consecutive timestamps never go backwards, even if the system's wall
+ * clock is adjusted. Attribute timestamps are sent in milliseconds, {@link #currentTimeMicros()} gives access to the
+ * full resolution.
+ */
+public class CloudioMicrosecondClock implements CloudioClock {
+    /*** Attributes ***************************************************************************************************/
+    private final long offsetNanos;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates a new microsecond clock anchored to the actual wall clock time.
+     */
+    public CloudioMicrosecondClock() {
+        offsetNanos = System.currentTimeMillis() * 1000000 - System.nanoTime();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return (System.nanoTime() + offsetNanos) / 1000000;
+    }
+
+    /**
+     * Returns the actual time with microsecond resolution.
+     *
+     * @return  Microseconds since epoch.
+     */
+    public long currentTimeMicros() {
+        return (System.nanoTime() + offsetNanos) / 1000;
+    }
+}
@@ -67,6 +67,13 @@ public abstract class CloudioNode {
             }
         }
 
+        @Override
+        public void attributeHasChangedByEndpoint(AttributeUpdate update) {
+            if (parent != null) {
+                parent.attributeHasChangedByEndpoint(update);
+            }
+        }
+
         @Override
         public void attributeHasChangedByCloud(CloudioAttribute.InternalAttribute attribute) {
             if (parent != null) {
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.Stack;
 
 /**
@@ -63,8 +64,10 @@ public class CloudioObject {
                         CloudioAttribute attribute = (CloudioAttribute)field.getType().newInstance();
 
                         // Set the name and the parent of the attribute.
-                        attribute.internal.setType(
-                                ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0]);
+                        // Primitive attributes (CloudioDoubleAttribute...) fix the type in their superclass.
+                        Type genericType = field.getGenericType() instanceof ParameterizedType ?
+                            field.getGenericType() : field.getType().getGenericSuperclass();
+                        attribute.internal.setType(((ParameterizedType) genericType).getActualTypeArguments()[0]);
                         attribute.internal.setName(field.getName());
                         attribute.internal.setParent(this);
 
@@ -83,6 +86,27 @@ public class CloudioObject {
                             throw new InvalidCloudioAttributeException("Attributes must be annotated with their constraint?");
                         }
 
+                        // Conflate the attribute's updates if requested.
+                        if (field.getAnnotation(Conflate.class) != null) {
+                            attribute.setConflated(true);
+                        }
+
+                        // Setup the publish filter if requested.
+                        Deadband deadband = field.getAnnotation(Deadband.class);
+                        if (deadband != null) {
+                            attribute.setDeadband(deadband.value(), deadband.percent());
+                        }
+                        PublishInterval publishInterval = field.getAnnotation(PublishInterval.class);
+                        if (publishInterval != null) {
+                            attribute.setPublishInterval(publishInterval.min(), publishInterval.heartbeat());
+                        }
+
+                        // Setup the aggregation if requested.
+                        Aggregation aggregation = field.getAnnotation(Aggregation.class);
+                        if (aggregation != null) {
+                            attribute.setAggregationWindow(aggregation.value());
+                        }
+
                         // Set the actual object's field to the new instance.
                         field.set(CloudioObject.this, attribute);
 
@@ -133,6 +157,13 @@ public class CloudioObject {
             }
         }
 
+        @Override
+        public void attributeHasChangedByEndpoint(final AttributeUpdate update) {
+            if (parent != null) {
+                parent.attributeHasChangedByEndpoint(update);
+            }
+        }
+
         @Override
         public void attributeHasChangedByCloud(final CloudioAttribute.InternalAttribute attribute) {
             if (parent != null) {
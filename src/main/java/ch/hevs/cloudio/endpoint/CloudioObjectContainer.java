@@ -13,6 +13,13 @@ interface CloudioObjectContainer extends UniqueIdentifiable {
      */
     void attributeHasChangedByEndpoint(final CloudioAttribute.InternalAttribute attribute);
 
+    /**
+     * An update captured by the attribute itself has to be sent, for example the aggregate of a completed window.
+     *
+     * @param update    Update to send.
+     */
+    void attributeHasChangedByEndpoint(final AttributeUpdate update);
+
     /**
      * The attribute has changed from the cloud.
      *
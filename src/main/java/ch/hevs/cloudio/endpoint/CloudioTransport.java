@@ -0,0 +1,113 @@
+package ch.hevs.cloudio.endpoint;
+
+/**
+ * Connection of an endpoint to the message broker. The endpoint only uses the few operations of this interface to
+ * exchange messages with the cloud, so the actual client can be replaced, for example by a faster MQTT client or by
+ * {@link CloudioLoopbackTransport} which allows to measure the throughput of the endpoint itself without any broker.
+ *
+ * By default the endpoint uses an MQTT v3 client configured using the endpoint's properties, another transport can be
+ * passed to {@link CloudioEndpoint#CloudioEndpoint(String, java.util.Properties, CloudioEndpointListener,
+ * CloudioTransport)}. The endpoint is the only user of a transport and establishes the connection again on its own if
+ * the connection is lost.
+ */
+public interface CloudioTransport {
+    /**
+     * Receives the messages and connection events of a transport.
+     */
+    interface Listener {
+        /**
+         * Called when the connection to the broker has been lost.
+         *
+         * @param cause Reason why the connection has been lost.
+         */
+        void connectionLost(Throwable cause);
+
+        /**
+         * Called for every message received on one of the subscribed topics.
+         *
+         * @param topic     Topic the message was published to.
+         * @param payload   Content of the message.
+         */
+        void messageArrived(String topic, byte[] payload);
+    }
+
+    /**
+     * Receives the acknowledgement of a single published message.
+     */
+    interface DeliveryListener {
+        /**
+         * Called once the message has been delivered with the quality of service requested.
+         *
+         * @param topic Topic the message was published to.
+         */
+        void deliveryComplete(String topic);
+
+        /**
+         * Called if the message could not be delivered.
+         *
+         * @param topic Topic the message was published to.
+         * @param cause Reason why the message could not be delivered.
+         */
+        void deliveryFailed(String topic, Throwable cause);
+    }
+
+    /**
+     * Sets the listener receiving the messages and connection events of the transport.
+     *
+     * @param listener  Listener or null if received messages should be ignored.
+     */
+    void setListener(Listener listener);
+
+    /**
+     * Connects to the broker and blocks until the connection is either established or failed.
+     *
+     * @param willTopic                     Topic of the message the broker publishes if the connection is lost.
+     * @param willPayload                   Content of that message.
+     * @throws CloudioTransportException    The connection could not be established.
+     */
+    void connect(String willTopic, byte[] willPayload) throws CloudioTransportException;
+
+    /**
+     * Returns true if the transport is connected to the broker.
+     *
+     * @return  True if connected, false otherwise.
+     */
+    boolean isConnected();
+
+    /**
+     * Publishes a message. The method does not wait for the message to be delivered.
+     *
+     * @param topic                         Topic to publish the message to.
+     * @param payload                       Content of the message, null for an empty message.
+     * @param qos                           MQTT quality of service (0, 1 or 2).
+     * @param retained                      True if the broker should retain the message.
+     * @param delivery                      Listener informed when the message has been delivered, can be null.
+     * @throws CloudioTransportException    The message could not be published, see
+     *                                      {@link CloudioTransportException#isCongested()}.
+     */
+    void publish(String topic, byte[] payload, int qos, boolean retained, DeliveryListener delivery)
+        throws CloudioTransportException;
+
+    /**
+     * Subscribes to all topics matching the given MQTT topic filter.
+     *
+     * @param topicFilter                   Topic filter, can contain the MQTT wildcards '+' and '#'.
+     * @param qos                           Maximal quality of service of the received messages.
+     * @throws CloudioTransportException    The subscription failed.
+     */
+    void subscribe(String topicFilter, int qos) throws CloudioTransportException;
+
+    /**
+     * Disconnects from the broker, the transport can be connected again afterwards.
+     *
+     * @throws CloudioTransportException    The transport could not disconnect cleanly.
+     */
+    void disconnect() throws CloudioTransportException;
+
+    /**
+     * Releases all resources of the transport, the transport can not be used anymore afterwards.
+     *
+     * @throws CloudioTransportException    The resources could not be released cleanly.
+     */
+    void close() throws CloudioTransportException;
+}
@@ -0,0 +1,37 @@
+package ch.hevs.cloudio.endpoint;
+
+/**
+ * This exception is thrown by a {@link CloudioTransport} if an operation failed. If the transport refuses to publish a
+ * message only because too many messages are waiting to be delivered, the exception is marked as congested: The
+ * endpoint may then decide to retry later with a newer value instead of storing the message to the persistence.
+ */
+public class CloudioTransportException extends Exception {
+    private final boolean congested;
+
+    public CloudioTransportException(final String message) {
+        this(message, false);
+    }
+
+    public CloudioTransportException(final String message, final boolean congested) {
+        super(message);
+        this.congested = congested;
+    }
+
+    public CloudioTransportException(final Throwable cause) {
+        this(cause, false);
+    }
+
+    public CloudioTransportException(final Throwable cause, final boolean congested) {
+        super(cause);
+        this.congested = congested;
+    }
+
+    /**
+     * Returns true if the operation failed because too many messages are waiting to be delivered.
+     *
+     * @return  True if the transport is congested.
+     */
+    public boolean isCongested() {
+        return congested;
+    }
+}
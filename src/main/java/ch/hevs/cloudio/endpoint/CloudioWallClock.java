@@ -0,0 +1,11 @@
+package ch.hevs.cloudio.endpoint;
+
+/**
+ * Clock returning the system's wall clock time. This is the default clock of an endpoint.
+ */
+public class CloudioWallClock implements CloudioClock {
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,168 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Message format using a {@link CloudioMessageCodec} provided by a third party. The messages have the same structure
+ * as the messages of the other binary formats, but the encoder builds the message as a tree of maps and lists which is
+ * handed to the codec, and the codec's decoded tree is used as is.
+ */
+class CodecMessageFormat extends BinaryMessageFormat {
+    /*** Attributes ***************************************************************************************************/
+    private final CloudioMessageCodec codec;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates a message format using the given codec.
+     *
+     * @param codec Codec encoding and decoding the messages.
+     */
+    CodecMessageFormat(CloudioMessageCodec codec) {
+        this.codec = codec;
+    }
+
+    /*** CloudioMessageFormat Implementation **************************************************************************/
+    @Override
+    public int getIdentifier() {
+        int[] identifiers = codec.getIdentifiers();
+        return identifiers != null && identifiers.length > 0 ? identifiers[0] : -1;
+    }
+
+    @Override
+    public String getName() {
+        return codec.getName();
+    }
+
+    /*** Package private methods **************************************************************************************/
+    /**
+     * Returns all leading bytes of the messages of the format.
+     *
+     * @return  Identifiers of the codec.
+     */
+    int[] getIdentifiers() {
+        return codec.getIdentifiers();
+    }
+
+    @Override
+    BinaryEncoder createEncoder() {
+        return new TreeEncoder();
+    }
+
+    @Override
+    BinaryDecoder createDecoder(final byte[] data) throws IOException {
+        final Object message = codec.decode(data);
+        return new BinaryDecoder(data, data.length) {
+            @Override
+            Object readValue() {
+                return message;
+            }
+        };
+    }
+
+    /*** Private classes **********************************************************************************************/
+    /**
+     * Encoder building the message tree, the tree is encoded by the codec when the message is complete.
+     */
+    private class TreeEncoder extends BinaryEncoder {
+        private final Deque<Container> containers = new ArrayDeque<Container>();
+        private Object message = null;
+
+        @Override
+        byte[] toByteArray() {
+            return codec.encode(message);
+        }
+
+        @Override
+        void writeMapHeader(int entries) {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            add(map);
+            if (entries > 0) {
+                containers.push(new Container(map, null, entries));
+            }
+        }
+
+        @Override
+        void writeArrayHeader(int elements) {
+            List<Object> list = new ArrayList<Object>(elements);
+            add(list);
+            if (elements > 0) {
+                containers.push(new Container(null, list, elements));
+            }
+        }
+
+        @Override
+        void writeLong(long value) {
+            add(value);
+        }
+
+        @Override
+        void writeDouble(double value) {
+            add(value);
+        }
+
+        @Override
+        void writeBoolean(boolean value) {
+            add(value);
+        }
+
+        @Override
+        void writeNull() {
+            add(null);
+        }
+
+        @Override
+        void writePrefix() {
+            // Called by begin(), starts a new message.
+            containers.clear();
+            message = null;
+        }
+
+        @Override
+        void writeText(String value) {
+            add(value);
+        }
+
+        private void add(Object value) {
+            Container container = containers.peek();
+            if (container == null) {
+                message = value;
+                return;
+            }
+
+            if (container.map != null) {
+                if (!container.hasKey) {
+                    container.key = (String)value;
+                    container.hasKey = true;
+                    return;
+                }
+                container.map.put(container.key, value);
+                container.hasKey = false;
+            } else {
+                container.list.add(value);
+            }
+            if (--container.remaining == 0) {
+                containers.pop();
+            }
+        }
+    }
+
+    private static class Container {
+        final Map<String, Object> map;
+        final List<Object> list;
+        int remaining;
+        String key = null;
+        boolean hasKey = false;
+
+        Container(Map<String, Object> map, List<Object> list, int remaining) {
+            this.map = map;
+            this.list = list;
+            this.remaining = remaining;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compacts the updates saved while offline according to the constraint of their attribute before they are replayed,
+ * so the amount of data sent after an outage depends on the number of attributes rather than on the duration of the
+ * outage. The compaction is applied on top of any other store:
+ * <ul>
+ *     <li>
+ *         <b>Keep last</b>: For attributes whose constraint is in the set of compacted constraints, only the latest
+ *         saved update is replayed. Older updates remain in the underlying store until a later message is
+ *         acknowledged, but they are skipped when reading. Which update is the latest is decided when reading: the
+ *         first read after a rewind scans the underlying store for the highest sequence number of every attribute,
+ *         so updates the underlying store has evicted or dropped never hide the update that is actually kept.
+ *         Updates saved after the scan are not compacted.
+ *     </li>
+ *     <li>
+ *         <b>Downsample</b>: If a downsample interval is set, updates of {@link CloudioAttributeConstraint#Measure}
+ *         attributes are held back and only the latest update of every attribute is saved once per interval by a
+ *         background thread, or as soon as all other saved updates have been read. Without an interval, all measures
+ *         are kept.
+ *     </li>
+ * </ul>
+ * Messages containing the updates of several attributes are never compacted.
+ */
+class CompactingPendingUpdateStore implements PendingUpdateStore, Runnable {
+    private static final Logger log = LoggerFactory.getLogger(CompactingPendingUpdateStore.class);
+
+    /*** Attributes ***************************************************************************************************/
+    private final PendingUpdateStore store;
+    private final Set<CloudioAttributeConstraint> keepLastConstraints;
+    private final long downsampleInterval;
+    private final Thread thread;
+    private final Set<String> keepLastTopics = new HashSet<String>();
+    private final Map<String, Long> latestSequences = new HashMap<String, Long>();
+    private long scanEnd = -1;
+    private boolean scanned = false;
+    private final Deque<PendingUpdateStore.Entry> unacknowledged = new ArrayDeque<PendingUpdateStore.Entry>();
+    private Map<CloudioAttribute.InternalAttribute, byte[]> downsampled =
+        new LinkedHashMap<CloudioAttribute.InternalAttribute, byte[]>();
+    private long skippedMessages = 0;
+    private boolean closed = false;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates a compacting store on top of the given store and starts the downsampling thread if needed.
+     *
+     * @param store                 Store saving the compacted updates.
+     * @param keepLastConstraints   Constraints of the attributes for which only the latest update is replayed.
+     * @param downsampleInterval    Interval in milliseconds at which measures are saved, 0 saves all measures.
+     */
+    CompactingPendingUpdateStore(PendingUpdateStore store, Set<CloudioAttributeConstraint> keepLastConstraints,
+                                 long downsampleInterval) {
+        this.store = store;
+        this.keepLastConstraints = keepLastConstraints;
+        this.downsampleInterval = downsampleInterval;
+
+        if (downsampleInterval > 0) {
+            thread = new Thread(this, "cloudio-offline-compaction");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            thread = null;
+        }
+    }
+
+    /**
+     * Returns the number of updates that have not been replayed or saved because they were superseded.
+     *
+     * @return  Number of compacted updates.
+     */
+    synchronized long getSkippedMessages() {
+        return skippedMessages;
+    }
+
+    /*** PendingUpdateStore Implementation ****************************************************************************/
+    @Override
+    public void append(CloudioAttribute.InternalAttribute attribute, byte[] data) throws IOException {
+        if (attribute != null) {
+            CloudioAttributeConstraint constraint = attribute.getConstraint();
+            synchronized (this) {
+                if (downsampleInterval > 0 && constraint == CloudioAttributeConstraint.Measure && !closed) {
+                    // The latest measure of the interval replaces the one held back.
+                    if (downsampled.put(attribute, data) != null) {
+                        skippedMessages++;
+                    }
+                    return;
+                }
+
+                if (keepLastConstraints.contains(constraint)) {
+                    keepLastTopics.add(attribute.getUpdateTopic());
+                }
+            }
+        }
+        store.append(attribute, data);
+    }
+
+    @Override
+    public synchronized Entry next() throws IOException {
+        if (!scanned) {
+            scan();
+        }
+        Entry entry = nextCompacted();
+
+        // Save the measures held back once everything else has been read, so they are replayed now and in order
+        // rather than after newer values at the end of the next outage.
+        if (entry == null && !downsampled.isEmpty()) {
+            flush();
+            entry = nextCompacted();
+        }
+        return entry;
+    }
+
+    @Override
+    public synchronized void acknowledge(long sequence) throws IOException {
+        while (!unacknowledged.isEmpty() && unacknowledged.peekFirst().sequence <= sequence) {
+            unacknowledged.pollFirst();
+        }
+        store.acknowledge(sequence);
+    }
+
+    @Override
+    public synchronized void rewind() {
+        // The messages read but not acknowledged are read again, the underlying store may have changed meanwhile.
+        unacknowledged.clear();
+        scanned = false;
+        store.rewind();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        store.sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException exception) {
+                log.error("Exception: " + exception.getMessage());
+                exception.printStackTrace();
+            }
+        }
+        flush();
+        store.close();
+    }
+
+    /*** Runnable Implementation **************************************************************************************/
+    @Override
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    wait(downsampleInterval);
+                } catch (InterruptedException exception) {
+                    log.error("Exception: " + exception.getMessage());
+                    exception.printStackTrace();
+                }
+                if (closed) {
+                    return;
+                }
+            }
+
+            try {
+                flush();
+            } catch (IOException exception) {
+                log.error("Exception: " + exception.getMessage());
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private Entry nextCompacted() throws IOException {
+        Entry entry;
+        while ((entry = store.next()) != null) {
+            unacknowledged.addLast(entry);
+            if (!keepLastTopics.contains(entry.topic)) {
+                return entry;
+            }
+
+            // Skip the update if a more recent update of the same attribute has been found by the scan.
+            Long latest = latestSequences.get(entry.topic);
+            if (entry.sequence > scanEnd || latest == null || entry.sequence >= latest) {
+                return entry;
+            }
+            skippedMessages++;
+        }
+        return null;
+    }
+
+    private void scan() throws IOException {
+        scanned = true;
+        latestSequences.clear();
+        scanEnd = -1;
+        if (keepLastTopics.isEmpty()) {
+            return;
+        }
+
+        // Read the messages still to replay once in order to find the latest update of every attribute.
+        Entry entry;
+        while ((entry = store.next()) != null) {
+            scanEnd = Math.max(scanEnd, entry.sequence);
+            if (keepLastTopics.contains(entry.topic)) {
+                latestSequences.put(entry.topic, entry.sequence);
+            }
+        }
+        store.rewind();
+    }
+
+    private void flush() throws IOException {
+        Map<CloudioAttribute.InternalAttribute, byte[]> measures;
+        synchronized (this) {
+            if (downsampled.isEmpty()) {
+                return;
+            }
+            measures = downsampled;
+            downsampled = new LinkedHashMap<CloudioAttribute.InternalAttribute, byte[]>();
+        }
+
+        for (Map.Entry<CloudioAttribute.InternalAttribute, byte[]> measure: measures.entrySet()) {
+            store.append(measure.getKey(), measure.getValue());
+        }
+    }
+}
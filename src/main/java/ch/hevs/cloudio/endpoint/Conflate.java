@@ -0,0 +1,28 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation used to mark an attribute whose updates should be conflated. If such an attribute changes while its
+ * previous update is still waiting to be sent, the waiting update is replaced by the new value instead of queuing
+ * both. Only the latest value is sent to the cloud after congestion, which is what most status attributes need.
+ * Conflation is applied by the endpoint's publish queue, so the queue has to be enabled using the property
+ * ch.hevs.cloudio.endpoint.publishQueueSize.
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * class Motor extends ch.hevs.cloudio.endpoint.CloudioObject {
+ *    {@literal @}Status
+ *    {@literal @}Conflate
+ *     public CloudioAttribute&lt;String&gt; state;
+ * }
+ * </pre>
+ *
+ * @see CloudioAttribute#setConflated(boolean)
+ */
+@Retention(value = RetentionPolicy.RUNTIME)
+@Target(value = ElementType.FIELD)
+public @interface Conflate {}
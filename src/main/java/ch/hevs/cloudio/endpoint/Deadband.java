@@ -0,0 +1,46 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation used to define a deadband for a numeric attribute (Integers or Numbers). Changes of the attribute that
+ * stay inside the deadband around the last value sent to the cloud update the local value and notify the attribute's
+ * listeners, but they are not sent to the cloud. The deadband is either absolute (in the unit of the attribute) or
+ * relative to the last value sent in percent.
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * class TemperatureSensor extends ch.hevs.cloudio.endpoint.CloudioObject {
+ *    {@literal @}Measure
+ *    {@literal @}Deadband(0.5)
+ *     public CloudioAttribute&lt;Double&gt; temperature;
+ *
+ *    {@literal @}Measure
+ *    {@literal @}Deadband(value = 2, percent = true)
+ *     public CloudioAttribute&lt;Double&gt; humidity;
+ * }
+ * </pre>
+ *
+ * @see CloudioAttribute#setDeadband(double, boolean)
+ * @see PublishInterval
+ */
+@Retention(value = RetentionPolicy.RUNTIME)
+@Target(value = ElementType.FIELD)
+public @interface Deadband {
+    /**
+     * The width of the deadband on either side of the last value sent to the cloud.
+     *
+     * @return Deadband, absolute or in percent.
+     */
+    double value();
+
+    /**
+     * If true, the deadband is given in percent of the last value sent to the cloud, otherwise it is absolute.
+     *
+     * @return True for a relative deadband, false for an absolute one.
+     */
+    boolean percent() default false;
+}
@@ -0,0 +1,198 @@
+package ch.hevs.cloudio.endpoint;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Encodes attribute updates using a lean JSON array which only carries the timestamp and the value of the attribute,
+ * as the type and the constraint of every attribute are already known by the cloud from the endpoint's data model.
+ * All lean messages have to start with the identifier for this format 0x5B ('[' character):
+ * <ul>
+ *     <li>Update: [timestamp, value]</li>
+ *     <li>Updates: [[uuid, timestamp, value], ...]</li>
+ * </ul>
+ * Updates of aggregated attributes carry the aggregate object as an additional element after the value. If the
+ * endpoint assigns numeric identifiers to its attributes, the entries of update lists start with the identifier of
+ * the attribute instead of its UUID.
+ * The data model of the endpoint and its nodes is still sent using the full JSON format ('{' character), so endpoints
+ * using the lean format stay compatible with clouds supporting only the full format for everything except updates.
+ */
+class JsonLeanMessageFormat extends JsonMessageFormat {
+    private static final Logger log = LoggerFactory.getLogger(JsonLeanMessageFormat.class);
+
+    @Override
+    public int getIdentifier() {
+        return '[';
+    }
+
+    @Override
+    public String getName() {
+        return "json+lean";
+    }
+
+    @Override
+    public byte[] serializeAttribute(CloudioAttribute.InternalAttribute attribute) {
+        SerializerContext context = acquireContext();
+        try {
+            JsonGenerator generator = context.generator;
+            generator.writeStartArray();
+            if (attribute.hasTimestamp()) {
+                generator.writeNumber(attribute.getTimestampMillis() / 1000.0);
+            } else {
+                generator.writeNull();
+            }
+            writeAttributeValue(attribute, null, generator);
+            generator.writeEndArray();
+            return context.complete();
+        } catch (IOException exception) {
+            log.error("Exception: " + exception.getMessage());
+            exception.printStackTrace();
+            return context.toByteArray();
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    @Override
+    public byte[] serializeAttributeUpdate(AttributeUpdate update) {
+        SerializerContext context = acquireContext();
+        try {
+            JsonGenerator generator = context.generator;
+            generator.writeStartArray();
+            serializeUpdateElements(update, generator);
+            generator.writeEndArray();
+            return context.complete();
+        } catch (IOException exception) {
+            log.error("Exception: " + exception.getMessage());
+            exception.printStackTrace();
+            return context.toByteArray();
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    @Override
+    public byte[] serializeAttributeUpdates(List<AttributeUpdate> updates, boolean withIds) {
+        SerializerContext context = acquireContext();
+        try {
+            JsonGenerator generator = context.generator;
+            generator.writeStartArray();
+            for (AttributeUpdate update: updates) {
+                generator.writeStartArray();
+                CloudioAttribute.InternalAttribute attribute = update.getAttribute();
+                if (withIds && attribute.getId() != CloudioAttribute.InternalAttribute.NO_ID) {
+                    generator.writeNumber(attribute.getId());
+                } else {
+                    generator.writeString(attribute.getUuid().toString());
+                }
+                serializeUpdateElements(update, generator);
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+            return context.complete();
+        } catch (IOException exception) {
+            log.error("Exception: " + exception.getMessage());
+            exception.printStackTrace();
+            return context.toByteArray();
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    @Override
+    public byte[] combineAttributeUpdates(List<String> uuids, List<byte[]> messages) {
+        SerializerContext context = acquireContext();
+        try {
+            JsonGenerator generator = context.generator;
+            generator.writeStartArray();
+            for (int i = 0; i < messages.size(); ++i) {
+                JsonParser parser = factory.createParser(messages.get(i));
+                try {
+                    if (parser.nextToken() != JsonToken.START_ARRAY) {
+                        return null;
+                    }
+                    String uuid = uuids.get(i);
+                    if (uuid != null) {
+                        // Copy the elements of the update behind the UUID.
+                        generator.writeStartArray();
+                        generator.writeString(uuid);
+                        if (!copyElements(parser, generator)) {
+                            return null;
+                        }
+                        generator.writeEndArray();
+                    } else {
+                        // Copy the entries of the update list.
+                        if (!copyElements(parser, generator)) {
+                            return null;
+                        }
+                    }
+
+                    // Anything following the message means that it is not a message of this format.
+                    if (parser.nextToken() != null) {
+                        return null;
+                    }
+                } finally {
+                    parser.close();
+                }
+            }
+            generator.writeEndArray();
+            return context.complete();
+        } catch (IOException exception) {
+            log.error("Exception: " + exception.getMessage());
+            exception.printStackTrace();
+            return null;
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void deserializeAttribute(byte[] data, CloudioAttribute.InternalAttribute attribute)
+        throws CloudioAttributeConstraintException, NumberFormatException, IOException {
+
+        JsonParser parser = factory.createParser(data);
+        try {
+            if (parser.nextToken() == JsonToken.START_ARRAY) {
+                long timestamp = 0;
+                Object value = null;
+
+                if (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.getCurrentToken() != JsonToken.VALUE_NULL) {
+                        timestamp = (long)(parser.getDoubleValue() * 1000);
+                    }
+                    if (parser.nextToken() != JsonToken.END_ARRAY &&
+                        parser.getCurrentToken() != JsonToken.VALUE_NULL) {
+                        value = readValue(attribute, parser);
+                    }
+                }
+
+                if (timestamp != 0 && value != null) {
+                    attribute.setValueFromCloud(value, timestamp);
+                }
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private void serializeUpdateElements(AttributeUpdate update, JsonGenerator generator) throws IOException {
+        Long timestamp = update.getTimestamp();
+        if (timestamp != null) {
+            generator.writeNumber(timestamp / 1000.0);
+        } else {
+            generator.writeNull();
+        }
+        writeValue(update.getValue(), null, generator);
+        if (update.getAggregate() != null) {
+            writeAggregate(update.getAggregate(), generator);
+        }
+    }
+}
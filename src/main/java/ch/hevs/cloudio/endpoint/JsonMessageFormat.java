@@ -1,21 +1,67 @@
 package ch.hevs.cloudio.endpoint;
 
 import com.fasterxml.jackson.core.*;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.core.util.ByteArrayBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Set;
 
 /**
  * Encodes messages using JSON (JavaScript Object Notation). All messages have to start with the identifier for this
  * format 0x7B ('{' character).
+ *
+ * Attribute updates are serialized by every thread using its own buffer and generator which are reused for all
+ * messages, the field names and the type and constraint values are pre-encoded, so serializing an update allocates
+ * little more than the resulting byte array.
+ *
+ * If the endpoint assigns numeric identifiers to its attributes, the data model carries the identifier of every
+ * attribute in the field "id" and the entries of update lists reference the attribute by that identifier instead of
+ * the UUID. As the cloud already knows the type and the constraint of the attribute from the data model, these are
+ * omitted from the entries too.
  */
 class JsonMessageFormat implements CloudioMessageFormat {
     private static final Logger log = LoggerFactory.getLogger(JsonMessageFormat.class);
-    private final JsonFactory factory = new JsonFactory();
+
+    private static final SerializedString NODES = new SerializedString("nodes");
+    private static final SerializedString IMPLEMENTS = new SerializedString("implements");
+    private static final SerializedString OBJECTS = new SerializedString("objects");
+    private static final SerializedString CONFORMS = new SerializedString("conforms");
+    private static final SerializedString ATTRIBUTES = new SerializedString("attributes");
+    private static final SerializedString UPDATES = new SerializedString("updates");
+    private static final SerializedString UUID = new SerializedString("uuid");
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString TYPE = new SerializedString("type");
+    private static final SerializedString CONSTRAINT = new SerializedString("constraint");
+    private static final SerializedString TIMESTAMP = new SerializedString("timestamp");
+    private static final SerializedString VALUE = new SerializedString("value");
+    private static final SerializedString AGGREGATE = new SerializedString("aggregate");
+    private static final SerializedString START = new SerializedString("start");
+    private static final SerializedString END = new SerializedString("end");
+    private static final SerializedString COUNT = new SerializedString("count");
+    private static final SerializedString MIN = new SerializedString("min");
+    private static final SerializedString MAX = new SerializedString("max");
+    private static final SerializedString MEAN = new SerializedString("mean");
+    private static final SerializedString[] TYPES = encode(CloudioAttributeType.values());
+    private static final SerializedString[] CONSTRAINTS = encode(CloudioAttributeConstraint.values());
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    final JsonFactory factory = new JsonFactory();
+    private final ThreadLocal<SerializerContext> contexts = new ThreadLocal<SerializerContext>();
+
+    @Override
+    public int getIdentifier() {
+        return '{';
+    }
+
+    @Override
+    public String getName() {
+        return "json";
+    }
 
     @Override
     public byte[] serializeEndpoint(CloudioEndpoint.InternalEndpoint endpoint) {
@@ -26,7 +72,8 @@ class JsonMessageFormat implements CloudioMessageFormat {
             generator.writeStartObject();
 
             List<CloudioNode.InternalNode> nodes = endpoint.getNodes();
-            generator.writeObjectFieldStart("nodes");
+            generator.writeFieldName(NODES);
+            generator.writeStartObject();
             for (CloudioNode.InternalNode node: nodes) {
                 generator.writeFieldName(node.getName());
                 serializeNode(node, generator);
@@ -59,16 +106,143 @@ class JsonMessageFormat implements CloudioMessageFormat {
 
     @Override
     public byte[] serializeAttribute(CloudioAttribute.InternalAttribute attribute) {
-        ByteArrayBuilder outputStream = new ByteArrayBuilder();
+        SerializerContext context = acquireContext();
         try {
-            JsonGenerator generator = factory.createGenerator(outputStream, JsonEncoding.UTF8);
-            serializeAttribute(attribute, generator);
-            generator.flush();
+            serializeAttribute(attribute, context.generator);
+            return context.complete();
         } catch (IOException exception) {
             log.error("Exception: " + exception.getMessage());
             exception.printStackTrace();
+            return context.toByteArray();
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    @Override
+    public byte[] serializeAttributeUpdate(AttributeUpdate update) {
+        SerializerContext context = acquireContext();
+        try {
+            JsonGenerator generator = context.generator;
+            generator.writeStartObject();
+            serializeAttributeFields(update.getAttribute(), update.getTimestamp(), update.getValue(),
+                update.getAggregate(), generator);
+            generator.writeEndObject();
+            return context.complete();
+        } catch (IOException exception) {
+            log.error("Exception: " + exception.getMessage());
+            exception.printStackTrace();
+            return context.toByteArray();
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    @Override
+    public byte[] serializeAttributeUpdates(List<AttributeUpdate> updates, boolean withIds) {
+        SerializerContext context = acquireContext();
+        try {
+            JsonGenerator generator = context.generator;
+
+            generator.writeStartObject();
+
+            generator.writeFieldName(UPDATES);
+            generator.writeStartArray();
+            for (AttributeUpdate update: updates) {
+                CloudioAttribute.InternalAttribute attribute = update.getAttribute();
+                generator.writeStartObject();
+                if (withIds && attribute.getId() != CloudioAttribute.InternalAttribute.NO_ID) {
+                    generator.writeFieldName(ID);
+                    generator.writeNumber(attribute.getId());
+                    serializeUpdateFields(attribute.getConstraint(), update.getTimestamp(), update.getValue(),
+                        update.getAggregate(), generator);
+                } else {
+                    generator.writeFieldName(UUID);
+                    generator.writeString(attribute.getUuid().toString());
+                    serializeAttributeFields(attribute, update.getTimestamp(), update.getValue(),
+                        update.getAggregate(), generator);
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            generator.writeEndObject();
+
+            return context.complete();
+        } catch (IOException exception) {
+            log.error("Exception: " + exception.getMessage());
+            exception.printStackTrace();
+            return context.toByteArray();
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    @Override
+    public byte[] combineAttributeUpdates(List<String> uuids, List<byte[]> messages) {
+        SerializerContext context = acquireContext();
+        try {
+            JsonGenerator generator = context.generator;
+
+            generator.writeStartObject();
+
+            generator.writeFieldName(UPDATES);
+            generator.writeStartArray();
+            for (int i = 0; i < messages.size(); ++i) {
+                JsonParser parser = factory.createParser(messages.get(i));
+                try {
+                    String uuid = uuids.get(i);
+                    if (uuid != null) {
+                        // Copy the fields of the update behind the UUID, an identifier or UUID of its own is dropped.
+                        if (parser.nextToken() != JsonToken.START_OBJECT) {
+                            return null;
+                        }
+                        generator.writeStartObject();
+                        generator.writeFieldName(UUID);
+                        generator.writeString(uuid);
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String fieldName = parser.getCurrentName();
+                            parser.nextToken();
+                            if (UUID.getValue().equals(fieldName) || ID.getValue().equals(fieldName)) {
+                                parser.skipChildren();
+                            } else {
+                                generator.writeFieldName(fieldName);
+                                generator.copyCurrentStructure(parser);
+                            }
+                        }
+                        generator.writeEndObject();
+                    } else {
+                        // Copy the entries of the update list, the list has to be the only field of the message.
+                        if (parser.nextToken() != JsonToken.START_OBJECT ||
+                            parser.nextToken() != JsonToken.FIELD_NAME ||
+                            !UPDATES.getValue().equals(parser.getCurrentName()) ||
+                            parser.nextToken() != JsonToken.START_ARRAY ||
+                            !copyElements(parser, generator) ||
+                            parser.nextToken() != JsonToken.END_OBJECT) {
+                            return null;
+                        }
+                    }
+
+                    // Anything following the message means that it is not a message of this format.
+                    if (parser.nextToken() != null) {
+                        return null;
+                    }
+                } finally {
+                    parser.close();
+                }
+            }
+            generator.writeEndArray();
+
+            generator.writeEndObject();
+
+            return context.complete();
+        } catch (IOException exception) {
+            log.error("Exception: " + exception.getMessage());
+            exception.printStackTrace();
+            return null;
+        } finally {
+            releaseContext(context);
         }
-        return outputStream.toByteArray();
     }
 
     @SuppressWarnings("unchecked")
@@ -76,60 +250,211 @@ class JsonMessageFormat implements CloudioMessageFormat {
     public void deserializeAttribute(byte[] data, CloudioAttribute.InternalAttribute attribute)
         throws CloudioAttributeConstraintException, NumberFormatException, IOException {
 
-        JsonParser parser = new JsonFactory().createParser(data);
-        if (parser.nextToken() == JsonToken.START_OBJECT) {
-            long timestamp = 0;
-            String value = null;
-
-            while (parser.nextToken() != JsonToken.END_OBJECT) {
-                String fieldName = parser.getCurrentName();
-                parser.nextToken();
-                if ("timestamp".equals(fieldName)) {
-                    timestamp = (long)(parser.getDoubleValue() * 1000);
-                } else if ("value".equals(fieldName)) {
-                    value = parser.getText();
+        JsonParser parser = factory.createParser(data);
+        try {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                long timestamp = 0;
+                java.lang.Object value = null;
+
+                while (parser.nextToken() != JsonToken.END_OBJECT) {
+                    String fieldName = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("timestamp".equals(fieldName)) {
+                        timestamp = (long)(parser.getDoubleValue() * 1000);
+                    } else if ("value".equals(fieldName)) {
+                        value = readValue(attribute, parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+
+                if (timestamp != 0 && value != null) {
+                    attribute.setValueFromCloud(value, timestamp);
                 }
             }
+        } finally {
+            parser.close();
+        }
+    }
 
-            if (timestamp != 0 && value != null) {
-                switch (attribute.getType()) {
-                    case Invalid:
-                        break;
-                    case Boolean:
-                        attribute.setValueFromCloud(Boolean.parseBoolean(value), timestamp);
-                        break;
+    /*** Package private methods **************************************************************************************/
+    /**
+     * Reads the value at the parser's current token using the codec of the attribute.
+     *
+     * @param attribute                 Attribute the value is for.
+     * @param parser                    Parser positioned on the value.
+     * @return                          Value of the attribute's type.
+     * @throws NumberFormatException    If the value can not be parsed.
+     * @throws IOException              If the value can not be read or the attribute has no supported type.
+     */
+    java.lang.Object readValue(CloudioAttribute.InternalAttribute attribute, JsonParser parser)
+        throws NumberFormatException, IOException {
+        JsonValueCodec codec = attribute.getValueCodec();
+        if (codec == null) {
+            throw new IOException("Attribute type not supported!");
+        }
+        return codec.read(parser);
+    }
 
-                    case Integer:
-                        attribute.setValueFromCloud(Long.decode(value), timestamp);
-                        break;
+    /**
+     * Writes the actual value of the given attribute, primitive attributes are written without boxing their value.
+     * If the name is null, the value is written as an array element and null is written if the attribute does not have
+     * a value, otherwise the field is omitted if the attribute does not have a value.
+     *
+     * @param attribute     Attribute to write the value of.
+     * @param name          Field name or null to write an array element.
+     * @param generator     Generator to write to.
+     * @throws IOException  If the value can not be written.
+     */
+    void writeAttributeValue(CloudioAttribute.InternalAttribute attribute, SerializedString name,
+                             JsonGenerator generator) throws IOException {
+        CloudioAttribute external = attribute.getExternalAttribute();
+        if (external instanceof CloudioDoubleAttribute && ((CloudioDoubleAttribute)external).hasValue()) {
+            writeName(name, generator);
+            generator.writeNumber(((CloudioDoubleAttribute)external).getDoubleValue());
+        } else if (external instanceof CloudioLongAttribute && ((CloudioLongAttribute)external).hasValue()) {
+            writeName(name, generator);
+            generator.writeNumber(((CloudioLongAttribute)external).getLongValue());
+        } else if (external instanceof CloudioBooleanAttribute && ((CloudioBooleanAttribute)external).hasValue()) {
+            writeName(name, generator);
+            generator.writeBoolean(((CloudioBooleanAttribute)external).getBooleanValue());
+        } else {
+            writeValue(attribute.getValue(), name, generator);
+        }
+    }
 
-                    case Number:
-                        attribute.setValueFromCloud(Double.parseDouble(value), timestamp);
-                        break;
+    /**
+     * Writes the given value. If the name is null, the value is written as an array element and null values are
+     * written as null, otherwise the field is omitted if the value is null.
+     *
+     * @param value         Value to write.
+     * @param name          Field name or null to write an array element.
+     * @param generator     Generator to write to.
+     * @throws IOException  If the value can not be written.
+     */
+    void writeValue(java.lang.Object value, SerializedString name, JsonGenerator generator) throws IOException {
+        if (value == null) {
+            if (name == null) {
+                generator.writeNull();
+            }
+            return;
+        }
 
-                    case String:
-                        attribute.setValueFromCloud(value, timestamp);
-                        break;
+        writeName(name, generator);
+        if (value instanceof Double) {
+            generator.writeNumber((Double)value);
+        } else if (value instanceof Long) {
+            generator.writeNumber((Long)value);
+        } else if (value instanceof Integer) {
+            generator.writeNumber((Integer)value);
+        } else if (value instanceof Float) {
+            generator.writeNumber((Float)value);
+        } else if (value instanceof Short) {
+            generator.writeNumber((Short)value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean)value);
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
 
-                    default:
-                        throw new IOException("Attribute type not supported!");
+    /**
+     * Writes the fields of the given aggregate as a JSON object.
+     *
+     * @param aggregate     Aggregate to write.
+     * @param generator     Generator to write to.
+     * @throws IOException  If the aggregate can not be written.
+     */
+    void writeAggregate(AttributeAggregate aggregate, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(START);
+        generator.writeNumber(aggregate.getStart() / 1000.0);
+        generator.writeFieldName(END);
+        generator.writeNumber(aggregate.getEnd() / 1000.0);
+        generator.writeFieldName(COUNT);
+        generator.writeNumber(aggregate.getCount());
+        generator.writeFieldName(MIN);
+        generator.writeNumber(aggregate.getMin());
+        generator.writeFieldName(MAX);
+        generator.writeNumber(aggregate.getMax());
+        generator.writeFieldName(MEAN);
+        generator.writeNumber(aggregate.getMean());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Copies the elements of the array the parser is positioned on to the generator, the parser is left on the end of
+     * the array.
+     *
+     * @param parser        Parser positioned on the start of an array.
+     * @param generator     Generator to write the elements to.
+     * @return              True if all elements have been copied, false if the message ends before the array.
+     * @throws IOException  If the message is not valid JSON.
+     */
+    static boolean copyElements(JsonParser parser, JsonGenerator generator) throws IOException {
+        JsonToken token = parser.nextToken();
+        while (token != JsonToken.END_ARRAY) {
+            if (token == null) {
+                return false;
+            }
+            generator.copyCurrentStructure(parser);
+            token = parser.nextToken();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the serializer context of the calling thread, the context has to be released after use.
+     *
+     * @return  Serializer context with an empty buffer.
+     */
+    SerializerContext acquireContext() throws IllegalStateException {
+        SerializerContext context = contexts.get();
+        if (context == null || context.busy) {
+            try {
+                // No context yet or the thread is already serializing another message, use a new context.
+                SerializerContext newContext = new SerializerContext(factory);
+                if (context == null) {
+                    contexts.set(newContext);
                 }
+                context = newContext;
+            } catch (IOException exception) {
+                throw new IllegalStateException(exception);
             }
         }
+        context.busy = true;
+        return context;
+    }
+
+    /**
+     * Releases the given serializer context.
+     *
+     * @param context   Context acquired using {@link #acquireContext()}.
+     */
+    void releaseContext(SerializerContext context) {
+        context.busy = false;
+
+        // If the message was not completed, the generator's state is unknown and the context can not be reused.
+        if (!context.completed && contexts.get() == context) {
+            contexts.remove();
+        }
+        context.completed = false;
     }
 
     private void serializeNode(CloudioNode.InternalNode node, JsonGenerator generator) throws IOException {
         generator.writeStartObject();
 
         Set<String> interfaces = node.getInterfaces();
-        generator.writeArrayFieldStart("implements");
+        generator.writeFieldName(IMPLEMENTS);
+        generator.writeStartArray();
         for (String interface_ : node.getInterfaces()) {
             generator.writeString(interface_);
         }
         generator.writeEndArray();
 
         List<CloudioObject.InternalObject> objects = node.getObjects().toList();
-        generator.writeObjectFieldStart("objects");
+        generator.writeFieldName(OBJECTS);
+        generator.writeStartObject();
         for (CloudioObject.InternalObject object: objects) {
             serializeObject(object, generator);
         }
@@ -143,18 +468,21 @@ class JsonMessageFormat implements CloudioMessageFormat {
 
         String conforms = object.getConforms();
         if (conforms != null) {
-            generator.writeStringField("conforms", conforms);
+            generator.writeFieldName(CONFORMS);
+            generator.writeString(conforms);
         }
 
         List<CloudioObject.InternalObject> objects = object.getObjects().toList();
-        generator.writeObjectFieldStart("objects");
+        generator.writeFieldName(OBJECTS);
+        generator.writeStartObject();
         for (CloudioObject.InternalObject childObject: objects) {
             serializeObject(childObject, generator);
         }
         generator.writeEndObject();
 
         List<CloudioAttribute.InternalAttribute> attributes = object.getAttributes().toList();
-        generator.writeObjectFieldStart("attributes");
+        generator.writeFieldName(ATTRIBUTES);
+        generator.writeStartObject();
         for (CloudioAttribute.InternalAttribute attribute: attributes) {
             generator.writeFieldName(attribute.getName());
             serializeAttribute(attribute, generator);
@@ -167,22 +495,92 @@ class JsonMessageFormat implements CloudioMessageFormat {
     private void serializeAttribute(CloudioAttribute.InternalAttribute attribute, JsonGenerator generator) throws IOException {
         generator.writeStartObject();
 
-        generator.writeStringField("type", attribute.getType().toString());
+        if (attribute.getId() != CloudioAttribute.InternalAttribute.NO_ID) {
+            generator.writeFieldName(ID);
+            generator.writeNumber(attribute.getId());
+        }
+
+        serializeAttributeFields(attribute, null, null, null, generator);
+        if (attribute.getConstraint() != CloudioAttributeConstraint.Static && attribute.hasTimestamp()) {
+            generator.writeFieldName(TIMESTAMP);
+            generator.writeNumber(attribute.getTimestampMillis() / 1000.0);
+        }
+
+        writeAttributeValue(attribute, VALUE, generator);
+
+        generator.writeEndObject();
+    }
 
-        generator.writeStringField("constraint", attribute.getConstraint().toString());
+    private void serializeAttributeFields(CloudioAttribute.InternalAttribute attribute, Long timestamp,
+                                          java.lang.Object value, AttributeAggregate aggregate,
+                                          JsonGenerator generator) throws IOException {
+        generator.writeFieldName(TYPE);
+        generator.writeString(TYPES[attribute.getType().ordinal()]);
 
-        if (attribute.getConstraint() != CloudioAttributeConstraint.Static) {
-            Long timestamp = attribute.getTimestamp();
+        CloudioAttributeConstraint constraint = attribute.getConstraint();
+        generator.writeFieldName(CONSTRAINT);
+        generator.writeString(CONSTRAINTS[constraint.ordinal()]);
+
+        serializeUpdateFields(constraint, timestamp, value, aggregate, generator);
+    }
+
+    private void serializeUpdateFields(CloudioAttributeConstraint constraint, Long timestamp, java.lang.Object value,
+                                       AttributeAggregate aggregate, JsonGenerator generator) throws IOException {
+        if (constraint != CloudioAttributeConstraint.Static) {
             if (timestamp != null) {
-                generator.writeNumberField("timestamp", attribute.getTimestamp() / 1000.0);
+                generator.writeFieldName(TIMESTAMP);
+                generator.writeNumber(timestamp / 1000.0);
             }
         }
 
-        java.lang.Object value = attribute.getValue();
-        if (value != null) {
-            generator.writeObjectField("value", attribute.getValue());
+        writeValue(value, VALUE, generator);
+
+        if (aggregate != null) {
+            generator.writeFieldName(AGGREGATE);
+            writeAggregate(aggregate, generator);
         }
+    }
 
-        generator.writeEndObject();
+    private static void writeName(SerializedString name, JsonGenerator generator) throws IOException {
+        if (name != null) {
+            generator.writeFieldName(name);
+        }
+    }
+
+    private static SerializedString[] encode(Enum[] values) {
+        SerializedString[] tokens = new SerializedString[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            tokens[i] = new SerializedString(values[i].toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Buffer and generator reused by a single thread for all the messages it serializes.
+     */
+    static class SerializerContext {
+        final JsonGenerator generator;
+        private final ByteArrayBuilder buffer = new ByteArrayBuilder();
+        private boolean busy = false;
+        private boolean completed = false;
+
+        SerializerContext(JsonFactory factory) throws IOException {
+            generator = factory.createGenerator(buffer, JsonEncoding.UTF8);
+
+            // Messages are independent JSON documents, do not separate them by a space.
+            generator.setRootValueSeparator(null);
+        }
+
+        byte[] complete() throws IOException {
+            generator.flush();
+            byte[] data = buffer.toByteArray();
+            buffer.reset();
+            completed = true;
+            return data;
+        }
+
+        byte[] toByteArray() {
+            return buffer.toByteArray();
+        }
     }
 }
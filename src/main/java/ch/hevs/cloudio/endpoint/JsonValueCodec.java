@@ -0,0 +1,122 @@
+package ch.hevs.cloudio.endpoint;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Reads the value of an attribute from the current token of a JSON parser. There is one codec per Java type an
+ * attribute can have, the codec of an attribute is selected once when the type of the attribute is set. Numbers and
+ * booleans are read directly from the parser's input without creating a string first, only if the token does not
+ * match the type of the attribute (for example a number sent as a JSON string), the text of the token is parsed.
+ */
+enum JsonValueCodec {
+    Boolean {
+        @Override
+        Object read(JsonParser parser) throws IOException {
+            switch (parser.getCurrentToken()) {
+                case VALUE_TRUE:
+                    return java.lang.Boolean.TRUE;
+                case VALUE_FALSE:
+                    return java.lang.Boolean.FALSE;
+                default:
+                    return java.lang.Boolean.parseBoolean(parser.getText());
+            }
+        }
+    },
+
+    Short {
+        @Override
+        Object read(JsonParser parser) throws IOException {
+            if (parser.getCurrentToken() == JsonToken.VALUE_NUMBER_INT) {
+                return parser.getShortValue();
+            }
+            return java.lang.Short.decode(parser.getText());
+        }
+    },
+
+    Integer {
+        @Override
+        Object read(JsonParser parser) throws IOException {
+            if (parser.getCurrentToken() == JsonToken.VALUE_NUMBER_INT) {
+                return parser.getIntValue();
+            }
+            return java.lang.Integer.decode(parser.getText());
+        }
+    },
+
+    Long {
+        @Override
+        Object read(JsonParser parser) throws IOException {
+            if (parser.getCurrentToken() == JsonToken.VALUE_NUMBER_INT) {
+                return parser.getLongValue();
+            }
+            return java.lang.Long.decode(parser.getText());
+        }
+    },
+
+    Float {
+        @Override
+        Object read(JsonParser parser) throws IOException {
+            if (parser.getCurrentToken().isNumeric()) {
+                return parser.getFloatValue();
+            }
+            return java.lang.Float.parseFloat(parser.getText());
+        }
+    },
+
+    Double {
+        @Override
+        Object read(JsonParser parser) throws IOException {
+            if (parser.getCurrentToken().isNumeric()) {
+                return parser.getDoubleValue();
+            }
+            return java.lang.Double.parseDouble(parser.getText());
+        }
+    },
+
+    String {
+        @Override
+        Object read(JsonParser parser) throws IOException {
+            return parser.getText();
+        }
+    };
+
+    /**
+     * Reads the value of the parser's current token.
+     *
+     * @param parser                    Parser positioned on the value.
+     * @return                          Value matching the Java type of the attribute.
+     * @throws IOException              If the token can not be read.
+     * @throws NumberFormatException    If the value is not a valid number.
+     */
+    abstract Object read(JsonParser parser) throws IOException;
+
+    /**
+     * Returns the codec for the given Java type.
+     *
+     * @param type  Java type of an attribute.
+     * @return      Codec or null if the type is not supported.
+     */
+    static JsonValueCodec forRawType(Type type) {
+        if (type == java.lang.Boolean.class) {
+            return Boolean;
+        } else if (type == java.lang.Short.class) {
+            return Short;
+        } else if (type == java.lang.Integer.class) {
+            return Integer;
+        } else if (type == java.lang.Long.class) {
+            return Long;
+        } else if (type == java.lang.Float.class) {
+            return Float;
+        } else if (type == java.lang.Double.class) {
+            return Double;
+        } else if (type == java.lang.String.class) {
+            return String;
+        } else {
+            return null;
+        }
+    }
+}
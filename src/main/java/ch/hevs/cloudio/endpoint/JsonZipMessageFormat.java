@@ -4,7 +4,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -16,6 +18,16 @@ import java.util.zip.Inflater;
 class JsonZipMessageFormat extends JsonMessageFormat {
     private static final Logger log = LoggerFactory.getLogger(JsonZipMessageFormat.class);
 
+    @Override
+    public int getIdentifier() {
+        return 'z';
+    }
+
+    @Override
+    public String getName() {
+        return "json+zip";
+    }
+
     @Override
     public byte[] serializeEndpoint(CloudioEndpoint.InternalEndpoint endpoint) {
         return compress(super.serializeEndpoint(endpoint));
@@ -31,6 +43,32 @@ class JsonZipMessageFormat extends JsonMessageFormat {
         return compress(super.serializeAttribute(attribute));
     }
 
+    @Override
+    public byte[] serializeAttributeUpdate(AttributeUpdate update) {
+        return compress(super.serializeAttributeUpdate(update));
+    }
+
+    @Override
+    public byte[] serializeAttributeUpdates(List<AttributeUpdate> updates, boolean withIds) {
+        return compress(super.serializeAttributeUpdates(updates, withIds));
+    }
+
+    @Override
+    public byte[] combineAttributeUpdates(List<String> uuids, List<byte[]> messages) {
+        List<byte[]> uncompressed = new ArrayList<byte[]>(messages.size());
+        try {
+            for (byte[] message: messages) {
+                uncompressed.add(decompress(message));
+            }
+        } catch (DataFormatException exception) {
+            log.error("Exception: " + exception.getMessage());
+            exception.printStackTrace();
+            return null;
+        }
+        byte[] combined = super.combineAttributeUpdates(uuids, uncompressed);
+        return combined != null ? compress(combined) : null;
+    }
+
     @Override
     public void deserializeAttribute(byte[] data, CloudioAttribute.InternalAttribute attribute)
         throws CloudioAttributeConstraintException, NumberFormatException, IOException {
@@ -0,0 +1,102 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes values encoded using MessagePack. Binary and extension types are not used by cloud.iO and rejected.
+ */
+class MessagePackDecoder extends BinaryDecoder {
+    MessagePackDecoder(byte[] data, int offset) {
+        super(data, offset);
+    }
+
+    @Override
+    Object readValue() throws IOException {
+        int type = readByte();
+
+        // Fixed size types carrying their value or length in the type byte.
+        if (type < 0x80) {
+            return (long)type;
+        } else if (type < 0x90) {
+            return readMap(type & 0x0F);
+        } else if (type < 0xA0) {
+            return readArray(type & 0x0F);
+        } else if (type < 0xC0) {
+            return readUtf8(type & 0x1F);
+        } else if (type >= 0xE0) {
+            return (long)(byte)type;
+        }
+
+        switch (type) {
+            case 0xC0:
+                return null;
+            case 0xC2:
+                return Boolean.FALSE;
+            case 0xC3:
+                return Boolean.TRUE;
+            case 0xCA:
+                return (double)Float.intBitsToFloat(readInt());
+            case 0xCB:
+                return Double.longBitsToDouble(readLong64());
+            case 0xCC:
+                return (long)readByte();
+            case 0xCD:
+                return (long)readShort();
+            case 0xCE:
+                return readInt() & 0xFFFFFFFFL;
+            case 0xCF: {
+                long value = readLong64();
+                if (value < 0) {
+                    throw new IOException("MessagePack integer out of range");
+                }
+                return value;
+            }
+            case 0xD0:
+                return (long)(byte)readByte();
+            case 0xD1:
+                return (long)(short)readShort();
+            case 0xD2:
+                return (long)readInt();
+            case 0xD3:
+                return readLong64();
+            case 0xD9:
+                return readUtf8(readByte());
+            case 0xDA:
+                return readUtf8(readShort());
+            case 0xDB:
+                return readUtf8(readInt() & 0xFFFFFFFFL);
+            case 0xDC:
+                return readArray(readShort());
+            case 0xDD:
+                return readArray(readInt() & 0xFFFFFFFFL);
+            case 0xDE:
+                return readMap(readShort());
+            case 0xDF:
+                return readMap(readInt() & 0xFFFFFFFFL);
+            default:
+                throw new IOException("Unsupported MessagePack type " + type);
+        }
+    }
+
+    private List<Object> readArray(long length) throws IOException {
+        int elements = checkLength(length);
+        List<Object> list = new ArrayList<Object>(elements);
+        for (int i = 0; i < elements; ++i) {
+            list.add(readValue());
+        }
+        return list;
+    }
+
+    private Map<String, Object> readMap(long length) throws IOException {
+        int entries = checkLength(length);
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < entries; ++i) {
+            map.put(String.valueOf(readValue()), readValue());
+        }
+        return map;
+    }
+}
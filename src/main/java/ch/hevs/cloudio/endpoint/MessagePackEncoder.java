@@ -0,0 +1,116 @@
+package ch.hevs.cloudio.endpoint;
+
+/**
+ * Encodes values using MessagePack. Integers always use the smallest representation, so small counters take a single
+ * byte. Messages are plain MessagePack without any framing, as every message is a map its first byte is a map header.
+ */
+class MessagePackEncoder extends BinaryEncoder {
+    @Override
+    void writePrefix() {
+        // MessagePack has no self-describing marker, the format is identified by the map header of the message.
+    }
+
+    @Override
+    void writeMapHeader(int entries) {
+        if (entries < 16) {
+            writeByte(0x80 | entries);
+        } else if (entries <= 0xFFFF) {
+            writeByte(0xDE);
+            writeShort(entries);
+        } else {
+            writeByte(0xDF);
+            writeInt(entries);
+        }
+    }
+
+    @Override
+    void writeArrayHeader(int elements) {
+        if (elements < 16) {
+            writeByte(0x90 | elements);
+        } else if (elements <= 0xFFFF) {
+            writeByte(0xDC);
+            writeShort(elements);
+        } else {
+            writeByte(0xDD);
+            writeInt(elements);
+        }
+    }
+
+    @Override
+    void writeText(String value) {
+        int length = utf8Length(value);
+        if (length < 32) {
+            writeByte(0xA0 | length);
+        } else if (length <= 0xFF) {
+            writeByte(0xD9);
+            writeByte(length);
+        } else if (length <= 0xFFFF) {
+            writeByte(0xDA);
+            writeShort(length);
+        } else {
+            writeByte(0xDB);
+            writeInt(length);
+        }
+        writeUtf8(value);
+    }
+
+    @Override
+    void writeLong(long value) {
+        if (value >= 0) {
+            if (value < 128) {
+                writeByte((int)value);
+            } else if (value <= 0xFF) {
+                writeByte(0xCC);
+                writeByte((int)value);
+            } else if (value <= 0xFFFF) {
+                writeByte(0xCD);
+                writeShort((int)value);
+            } else if (value <= 0xFFFFFFFFL) {
+                writeByte(0xCE);
+                writeInt((int)value);
+            } else {
+                writeByte(0xCF);
+                writeLong64(value);
+            }
+        } else {
+            if (value >= -32) {
+                writeByte((int)value);
+            } else if (value >= Byte.MIN_VALUE) {
+                writeByte(0xD0);
+                writeByte((int)value);
+            } else if (value >= Short.MIN_VALUE) {
+                writeByte(0xD1);
+                writeShort((int)value);
+            } else if (value >= Integer.MIN_VALUE) {
+                writeByte(0xD2);
+                writeInt((int)value);
+            } else {
+                writeByte(0xD3);
+                writeLong64(value);
+            }
+        }
+    }
+
+    @Override
+    void writeDouble(double value) {
+        // Use single precision whenever it represents the value exactly.
+        float single = (float)value;
+        if (single == value || Double.isNaN(value)) {
+            writeByte(0xCA);
+            writeInt(Float.floatToIntBits(single));
+        } else {
+            writeByte(0xCB);
+            writeLong64(Double.doubleToLongBits(value));
+        }
+    }
+
+    @Override
+    void writeBoolean(boolean value) {
+        writeByte(value ? 0xC3 : 0xC2);
+    }
+
+    @Override
+    void writeNull() {
+        writeByte(0xC0);
+    }
+}
@@ -0,0 +1,44 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.io.IOException;
+
+/**
+ * Encodes messages using MessagePack. The messages have the same structure as the JSON messages, but numbers are sent
+ * in binary form (small integers in a single byte) and timestamps as integer milliseconds since epoch. The messages are
+ * plain MessagePack maps, so they start with a fixmap (0x80 to 0x8F), map 16 (0xDE) or map 32 (0xDF) header. The
+ * registry registers the format under all these leading bytes, {@link #getIdentifier()} returns the empty fixmap.
+ */
+class MessagePackMessageFormat extends BinaryMessageFormat {
+    @Override
+    public int getIdentifier() {
+        return 0x80;
+    }
+
+    @Override
+    public String getName() {
+        return "msgpack";
+    }
+
+    @Override
+    BinaryEncoder createEncoder() {
+        return new MessagePackEncoder();
+    }
+
+    @Override
+    BinaryDecoder createDecoder(byte[] data) throws IOException {
+        if (data.length < 1 || !isMapHeader(data[0] & 0xFF)) {
+            throw new IOException("Message does not start with a MessagePack map header");
+        }
+        return new MessagePackDecoder(data, 0);
+    }
+
+    /**
+     * Returns true if the given byte starts a MessagePack map, which is the first byte of every message of the format.
+     *
+     * @param leadingByte   First byte of a message.
+     * @return              True if the byte is a fixmap, map 16 or map 32 header.
+     */
+    static boolean isMapHeader(int leadingByte) {
+        return (leadingByte & 0xF0) == 0x80 || leadingByte == 0xDE || leadingByte == 0xDF;
+    }
+}
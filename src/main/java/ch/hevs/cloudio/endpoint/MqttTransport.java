@@ -0,0 +1,293 @@
+package ch.hevs.cloudio.endpoint;
+
+import ch.hevs.utils.ResourceLoader;
+import org.eclipse.paho.client.mqttv3.*;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+import java.security.KeyStore;
+
+/**
+ * Default transport of the endpoint, connects to the broker using the Paho MQTT v3 client over SSL. The client and its
+ * connection options are configured using the endpoint's properties (see {@link CloudioEndpoint}).
+ */
+class MqttTransport implements CloudioTransport, MqttCallback {
+    /*** Constants ****************************************************************************************************/
+    private static final String MQTT_HOST_URI_PROPERTY          = "ch.hevs.cloudio.endpoint.hostUri";
+    private static final String MQTT_CONNECTION_TIMEOUT_PROPERTY= "ch.hevs.cloudio.endpoint.connectTimeout";
+    private static final String MQTT_CONNECTION_TIMEOUT_DEFAULT = "5";
+    private static final String MQTT_KEEPALIVE_INTERVAL_PROPERTY= "ch.hevs.cloudio.endpoint.keepAliveInterval";
+    private static final String MQTT_KEEPALIVE_INTERVAL_DEFAULT = "60";
+    private static final String MQTT_MAXINFLIGHT_PROPERTY       = "ch.hevs.cloudio.endpoint.maxInFlight";
+    private static final String MQTT_MAXINFLIGHT_DEFAULT        = "1000";
+    private static final String MQTT_CLEAN_SESSION_PROPERTY     = "ch.hevs.cloudio.endpoint.cleanSession";
+    private static final String MQTT_CLEAN_SESSION_DEFAULT      = "false";
+    private static final String ENDPOINT_IDENTITY_FILE_TYPE     = "PKCS12";
+    private static final String ENDPOINT_IDENTITY_MANAGER_TYPE  = "SunX509";
+    private static final String ENDPOINT_IDENTITY_FILE_PROPERTY = "ch.hevs.cloudio.endpoint.ssl.clientCert";
+    private static final String ENDPOINT_IDENTITY_PASS_PROPERTY = "ch.hevs.cloudio.endpoint.ssl.clientPassword";
+    private static final String ENDPOINT_IDENTITY_PASS_DEFAULT  = "";
+    private static final String CERT_AUTHORITY_FILE_TYPE        = "JKS";
+    private static final String CERT_AUTHORITY_MANAGER_TYPE     = "SunX509";
+    private static final String CERT_AUTHORITY_FILE_PROPERTY    = "ch.hevs.cloudio.endpoint.ssl.authorityCert";
+    private static final String CERT_AUTHORITY_FILE_DEFAULTNAME = "authority.jks";
+    private static final String CERT_AUTHORITY_PASS_PROPERTY    = "ch.hevs.cloudio.endpoint.ssl.authorityPassword";
+    private static final String CERT_AUTHORITY_PASS_DEFAULT     = "";
+    private static final String SSL_PROTOCOL_PROPERTY           = "ch.hevs.cloudio.endpoint.ssl.protocol";
+    private static final String SSL_PROTOCOL_DEFAULT            = "TLSv1.2";
+    private static final String SSL_VERIFY_HOSTNAME_PROPERTY    = "ch.hevs.cloudio.endpoint.ssl.verifyHostname";
+    private static final String SSL_VERIFY_HOSTNAME_DEFAULT     = "true";
+
+    /*** Attributes ***************************************************************************************************/
+    private final MqttConnectOptions options;
+    private final MqttAsyncClient mqtt;
+    private volatile Listener listener = null;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates the MQTT client and its connection options according to the endpoint's configuration.
+     *
+     * @param uuid                                      UUID of the endpoint, used as the MQTT client ID.
+     * @param configuration                             Configuration of the endpoint.
+     * @param persistence                               Persistence used by the MQTT client, can be null.
+     * @throws InvalidPropertyException                 A mandatory property is missing or a property is invalid.
+     * @throws CloudioEndpointInitializationException   The SSL context or the MQTT client could not be created.
+     */
+    MqttTransport(String uuid, CloudioEndpointConfiguration configuration, MqttClientPersistence persistence)
+        throws InvalidPropertyException, CloudioEndpointInitializationException {
+        // Create a SSL based MQTT option object.
+        options = new MqttConnectOptions();
+        try {
+            options.setSocketFactory(createSocketFactory(uuid, configuration));
+        } catch (Exception exception) {
+            throw new CloudioEndpointInitializationException(exception);
+        }
+
+        // Enable or disable HTTPS hostname verification.
+        options.setHttpsHostnameVerificationEnabled("true".equals(configuration.getProperty(
+            SSL_VERIFY_HOSTNAME_PROPERTY, SSL_VERIFY_HOSTNAME_DEFAULT)));
+
+        // Do we start a clean session?
+        String cleanSession = configuration.getProperty(MQTT_CLEAN_SESSION_PROPERTY, MQTT_CLEAN_SESSION_DEFAULT)
+                .toLowerCase();
+        if ("true".equals(cleanSession)) {
+            options.setCleanSession(true);
+        } else if ("false".equals(cleanSession)) {
+            options.setCleanSession(false);
+        } else {
+            throw new InvalidPropertyException("Clean session parameter (ch.hevs.cloudio.endpoint.cleanSession), " +
+                    "must either be \"true\" or \"false\"");
+        }
+
+        // Get the connection timeout property.
+        try {
+            options.setConnectionTimeout(Integer.parseInt(
+                configuration.getProperty(MQTT_CONNECTION_TIMEOUT_PROPERTY, MQTT_CONNECTION_TIMEOUT_DEFAULT)));
+        } catch (NumberFormatException e) {
+            throw new InvalidPropertyException("Invalid connect timeout " +
+                    "(ch.hevs.cloudio.endpoint.connectTimeout), " +
+                    "must be a valid integer number");
+        }
+
+        // Get the keep alive interval property.
+        try {
+            options.setKeepAliveInterval(Integer.parseInt(
+                configuration.getProperty(MQTT_KEEPALIVE_INTERVAL_PROPERTY, MQTT_KEEPALIVE_INTERVAL_DEFAULT)));
+        } catch (NumberFormatException exception) {
+            throw new InvalidPropertyException("Invalid keep alive interval " +
+                    "(ch.hevs.cloudio.endpoint.keepAliveInterval), " +
+                    "must be a valid integer number");
+        }
+
+        // Get the maxInFlight property.
+        options.setMaxInflight(maxInFlight(configuration));
+
+        // Create the MQTT client.
+        try {
+            String host = configuration.getProperty(MQTT_HOST_URI_PROPERTY);
+            if (host == null) {
+                throw new InvalidPropertyException("Missing mandatory property \"" + MQTT_HOST_URI_PROPERTY + "\"");
+            }
+            mqtt = new MqttAsyncClient(host, uuid, persistence);
+        } catch (MqttException exception) {
+            throw new CloudioEndpointInitializationException(exception);
+        }
+        mqtt.setCallback(this);
+    }
+
+    /**
+     * Returns the maximal number of messages the MQTT client keeps in flight according to the endpoint's
+     * configuration.
+     *
+     * @param configuration                 Configuration of the endpoint.
+     * @return                              Maximal number of messages in flight.
+     * @throws InvalidPropertyException     The property ch.hevs.cloudio.endpoint.maxInFlight is invalid.
+     */
+    static int maxInFlight(CloudioEndpointConfiguration configuration) throws InvalidPropertyException {
+        try {
+            int maxInFlight = Integer.parseInt(
+                configuration.getProperty(MQTT_MAXINFLIGHT_PROPERTY, MQTT_MAXINFLIGHT_DEFAULT));
+            if (maxInFlight <= 0) {
+                throw new InvalidPropertyException("Invalid max in flight messages " +
+                    "(ch.hevs.cloudio.endpoint.maxInFlight), " +
+                    "must be greater than 0");
+            }
+            return maxInFlight;
+        } catch (NumberFormatException exception) {
+            throw new InvalidPropertyException("Invalid max in flight messages " +
+                    "(ch.hevs.cloudio.endpoint.maxInFlight), " +
+                    "must be a valid integer number");
+        }
+    }
+
+    /*** CloudioTransport Implementation ******************************************************************************/
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void connect(String willTopic, byte[] willPayload) throws CloudioTransportException {
+        options.setWill(willTopic, willPayload, 1, false);
+        try {
+            mqtt.connect(options).waitForCompletion();
+        } catch (MqttException exception) {
+            throw new CloudioTransportException(exception);
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mqtt.isConnected();
+    }
+
+    @Override
+    public void publish(final String topic, byte[] payload, int qos, boolean retained, final DeliveryListener delivery)
+        throws CloudioTransportException {
+        try {
+            if (delivery != null) {
+                mqtt.publish(topic, payload != null ? payload : new byte[0], qos, retained, null,
+                    new IMqttActionListener() {
+                        @Override
+                        public void onSuccess(IMqttToken token) {
+                            delivery.deliveryComplete(topic);
+                        }
+
+                        @Override
+                        public void onFailure(IMqttToken token, Throwable throwable) {
+                            delivery.deliveryFailed(topic, throwable);
+                        }
+                    });
+            } else {
+                mqtt.publish(topic, payload != null ? payload : new byte[0], qos, retained);
+            }
+        } catch (MqttException exception) {
+            throw new CloudioTransportException(exception,
+                exception.getReasonCode() == MqttException.REASON_CODE_MAX_INFLIGHT);
+        }
+    }
+
+    @Override
+    public void subscribe(String topicFilter, int qos) throws CloudioTransportException {
+        try {
+            mqtt.subscribe(topicFilter, qos);
+        } catch (MqttException exception) {
+            throw new CloudioTransportException(exception);
+        }
+    }
+
+    @Override
+    public void disconnect() throws CloudioTransportException {
+        try {
+            mqtt.disconnect();
+        } catch (MqttException exception) {
+            throw new CloudioTransportException(exception);
+        }
+    }
+
+    @Override
+    public void close() throws CloudioTransportException {
+        try {
+            mqtt.close();
+        } catch (MqttException exception) {
+            throw new CloudioTransportException(exception);
+        }
+    }
+
+    /*** MqttCallback Implementation **********************************************************************************/
+    @Override
+    public void connectionLost(Throwable throwable) {
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.connectionLost(throwable);
+        }
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) {
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.messageArrived(topic, message.getPayload());
+        }
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token) {
+        // Acknowledgements are reported to the delivery listener of the individual messages.
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private SSLSocketFactory createSocketFactory(String endpointUuid, CloudioEndpointConfiguration properties)
+        throws Exception {
+        // Endpoint identity (Key & Certificate) in single PKCS #12 archive file named with the actual Endpoint ID.
+        KeyStore endpointKeyCertStore = KeyStore.getInstance(ENDPOINT_IDENTITY_FILE_TYPE);
+
+        // If the key file is present in settings, use it to load the identity file.
+        if (properties.containsKey(ENDPOINT_IDENTITY_FILE_PROPERTY)) {
+            endpointKeyCertStore.load(ResourceLoader.getResource(
+                            properties.getProperty(ENDPOINT_IDENTITY_FILE_PROPERTY), this),
+                    properties.getProperty(ENDPOINT_IDENTITY_PASS_PROPERTY,
+                            ENDPOINT_IDENTITY_PASS_DEFAULT).toCharArray());
+
+        // If the key file is not given, try to load from default locations.
+        } else {
+            endpointKeyCertStore.load(ResourceLoader.getResourceFromLocations(endpointUuid + ".p12", this,
+                            "home:" + "/.config/cloud.io/",
+                            "file:/etc/cloud.io/",
+                            "classpath:cloud.io/"),
+                    properties.getProperty(ENDPOINT_IDENTITY_PASS_PROPERTY,
+                            ENDPOINT_IDENTITY_PASS_DEFAULT).toCharArray());
+        }
+
+        KeyManagerFactory endpointKeyCertManagerFactory =
+                KeyManagerFactory.getInstance(ENDPOINT_IDENTITY_MANAGER_TYPE);
+        endpointKeyCertManagerFactory.init(endpointKeyCertStore, "".toCharArray());
+
+        // Authority certificate in JKS format.
+        KeyStore authorityKeyStore = KeyStore.getInstance(CERT_AUTHORITY_FILE_TYPE);
+
+        if (properties.containsKey(CERT_AUTHORITY_FILE_PROPERTY)) {
+            authorityKeyStore.load(ResourceLoader.getResource(properties.getProperty(CERT_AUTHORITY_FILE_PROPERTY),
+                    this), properties.getProperty(CERT_AUTHORITY_PASS_PROPERTY,
+                CERT_AUTHORITY_PASS_DEFAULT).toCharArray());
+        } else {
+            authorityKeyStore.load(ResourceLoader.getResourceFromLocations(CERT_AUTHORITY_FILE_DEFAULTNAME, this,
+                "home:" + "/.config/cloud.io/",
+                "file:/etc/cloud.io/",
+                "classpath:cloud.io/"), properties.getProperty(CERT_AUTHORITY_PASS_PROPERTY,
+                CERT_AUTHORITY_PASS_DEFAULT).toCharArray());
+        }
+
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(CERT_AUTHORITY_MANAGER_TYPE);
+        trustManagerFactory.init(authorityKeyStore);
+
+        // Create SSL Context.
+        SSLContext sslContext = SSLContext.getInstance(properties.getProperty(SSL_PROTOCOL_PROPERTY,
+                SSL_PROTOCOL_DEFAULT));
+        sslContext.init(endpointKeyCertManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+
+        return sslContext.getSocketFactory();
+    }
+}
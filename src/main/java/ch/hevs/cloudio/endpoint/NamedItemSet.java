@@ -1,16 +1,35 @@
 package ch.hevs.cloudio.endpoint;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * A NamedItemSet can contain a set of objects that implement the {@link NamedItem} interface. It guarantees that the
  * names of all members are unique within the set.
+ *
+ * The items are kept in an array in the order they were added, a compact open addressing hash table maps the names
+ * of the items to their position in that array. Looking up, adding and checking items takes constant time, removing
+ * an item takes linear time as the order of the remaining items has to be preserved. Note that items can not be
+ * renamed while they are part of the set.
  */
 class NamedItemSet<T extends NamedItem> implements Iterable<T> {
-    private final List<T> items = new LinkedList<T>();
+    private static final int INITIAL_CAPACITY = 4;
 
+    /*** Attributes ***************************************************************************************************/
+    // Items in insertion order, only the first size elements are used.
+    private Object[] items = new Object[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // Hash table holding the position of the item plus one, 0 marks an empty slot. Its length is a power of two and at
+    // least twice the length of the items array, so the table is never more than half full.
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+    private final ItemList list = new ItemList();
+
+    /*** API **********************************************************************************************************/
     /**
      * Returns the item with the given name or null if no such item is in the set.
      *
@@ -18,11 +37,8 @@ class NamedItemSet<T extends NamedItem> implements Iterable<T> {
      * @return          Item or null if no item with the given name is part of the set.
      */
     public T getItem(String itemName) {
-        for (T item: items) {
-            if (item.getName().equals(itemName))
-                return item;
-        }
-        return null;
+        int index = indexOf(itemName);
+        return index >= 0 ? item(index) : null;
     }
 
     /**
@@ -34,8 +50,17 @@ class NamedItemSet<T extends NamedItem> implements Iterable<T> {
      */
     public void addItem(T item) throws DuplicateNamedItemException {
         if (item != null) {
-            if (getItem(item.getName()) == null) {
-                items.add(item);
+            if (indexOf(item.getName()) < 0) {
+                if (size == items.length) {
+                    items = Arrays.copyOf(items, size * 2);
+                    slots = new int[items.length * 2];
+                    for (int i = 0; i < size; ++i) {
+                        insertSlot(i);
+                    }
+                }
+                items[size] = item;
+                insertSlot(size++);
+                list.changed();
             } else {
                 throw new DuplicateNamedItemException(item.getName());
             }
@@ -49,7 +74,10 @@ class NamedItemSet<T extends NamedItem> implements Iterable<T> {
      */
     public void removeItem(T item) {
         if (item != null) {
-            items.remove(item);
+            int index = indexOf(item.getName());
+            if (index >= 0 && items[index].equals(item)) {
+                remove(index);
+            }
         }
     }
 
@@ -59,10 +87,9 @@ class NamedItemSet<T extends NamedItem> implements Iterable<T> {
      * @param name  Name of the item to remove.
      */
     public void removeItem(String name) {
-        for (T item: items) {
-            if (item.getName().equals(name)) {
-                removeItem(item);
-            }
+        int index = indexOf(name);
+        if (index >= 0) {
+            remove(index);
         }
     }
 
@@ -70,7 +97,10 @@ class NamedItemSet<T extends NamedItem> implements Iterable<T> {
      * Removes all items from the set.
      */
     public void clear() {
-        items.clear();
+        Arrays.fill(items, 0, size, null);
+        Arrays.fill(slots, 0);
+        size = 0;
+        list.changed();
     }
 
     /**
@@ -79,7 +109,7 @@ class NamedItemSet<T extends NamedItem> implements Iterable<T> {
      * @return  True if empty, false otherwise.
      */
     public boolean isEmpty() {
-        return items.isEmpty();
+        return size == 0;
     }
 
     /**
@@ -89,26 +119,107 @@ class NamedItemSet<T extends NamedItem> implements Iterable<T> {
      * @return      True if the given object is part of the set, false otherwise.
      */
     public boolean contains(T item) {
-        for (T actualItem : items) {
-            if (actualItem.equals(item)) {
-                return true;
-            }
+        if (item == null) {
+            return false;
         }
-        return false;
+        int index = indexOf(item.getName());
+        return index >= 0 && items[index].equals(item);
     }
 
     /**
-     * Returns the list of objects inside the set. Note that the reference to the list used by the implementation is
-     * returned, so do not modify it.
+     * Returns the list of objects inside the set in the order they were added. Note that the list is a read-only view
+     * of the set, it reflects later modifications of the set.
      *
      * @return  List of items in the set.
      */
     public List<T> toList() {
-        return items;
+        return list;
     }
 
     @Override
     public Iterator<T> iterator() {
-        return items.iterator();
+        return list.iterator();
+    }
+
+    /*** Private methods **********************************************************************************************/
+    @SuppressWarnings("unchecked")
+    private T item(int index) {
+        return (T)items[index];
+    }
+
+    private static int hash(String name) {
+        if (name == null) {
+            return 0;
+        }
+
+        // Spread the bits of the hash code, as only the lowest bits are used to select the slot.
+        int hash = name.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean sameName(String name, String other) {
+        return name == null ? other == null : name.equals(other);
+    }
+
+    private int indexOf(String name) {
+        int mask = slots.length - 1;
+        for (int slot = hash(name) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int index = slots[slot] - 1;
+            if (sameName(name, item(index).getName())) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private void insertSlot(int index) {
+        int mask = slots.length - 1;
+        int slot = hash(item(index).getName()) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = index + 1;
+    }
+
+    private void remove(int index) {
+        // Close the gap in the items array and rebuild the table, as the positions of all following items change.
+        System.arraycopy(items, index + 1, items, index, size - index - 1);
+        items[--size] = null;
+        Arrays.fill(slots, 0);
+        for (int i = 0; i < size; ++i) {
+            insertSlot(i);
+        }
+        list.changed();
+    }
+
+    /**
+     * Read-only list view of the items. Iterators of the view fail fast if the set is modified during iteration.
+     */
+    private class ItemList extends AbstractList<T> implements RandomAccess {
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return item(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object object) {
+            if (!(object instanceof NamedItem)) {
+                return false;
+            }
+            int index = indexOf(((NamedItem)object).getName());
+            return index >= 0 && items[index].equals(object);
+        }
+
+        void changed() {
+            ++modCount;
+        }
     }
 }
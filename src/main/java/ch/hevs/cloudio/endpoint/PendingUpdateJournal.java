@@ -0,0 +1,464 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal storing the pending updates in segment files of a fixed maximal size. Messages are appended to
+ * the actual segment until it is full, then a new segment is started. Every message gets a sequence number which is
+ * one greater than the one of the previous message, segment files are named after the sequence number of their first
+ * message. Once all messages of a segment have been acknowledged, the segment file is deleted. This way an outage
+ * creates a few large files instead of one file per update.
+ *
+ * Each record consists of its length, its sequence number, the topic and the content of the message followed by a
+ * CRC32 checksum. When the journal is opened, the segments are scanned and a segment is truncated at the first
+ * incomplete or corrupt record, so a record torn by a power loss is dropped together with all records after it.
+ *
+ * Writing to the file system does not mean the data has reached the storage device. The sync policy defines when the
+ * journal forces the data to the device:
+ * <ul>
+ *     <li><b>always</b>: After every message, no message is lost but every message waits for the device.</li>
+ *     <li>
+ *         <b>interval</b>: A background thread forces all messages appended during the sync interval together, at
+ *         most the messages of the last interval are lost.
+ *     </li>
+ *     <li><b>never</b>: The operating system decides when to write the data.</li>
+ * </ul>
+ * The sequence number of the last acknowledged message is saved in the file "acknowledged", so acknowledged messages
+ * are not read again after a restart and sequence numbers keep increasing even if all segments have been deleted.
+ */
+class PendingUpdateJournal implements PendingUpdateStore, Runnable {
+    private static final Logger log = LoggerFactory.getLogger(PendingUpdateJournal.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String ACKNOWLEDGED_FILE = "acknowledged";
+
+    /**
+     * Length of the record header (length, sequence number and topic length) and trailer (checksum).
+     */
+    private static final int RECORD_OVERHEAD = 4 + 8 + 2 + 4;
+
+    /**
+     * Defines when the journal forces the appended messages to the storage device.
+     */
+    enum SyncPolicy {
+        ALWAYS,
+        INTERVAL,
+        NEVER;
+
+        static SyncPolicy fromString(String policy) {
+            if ("always".equals(policy)) {
+                return ALWAYS;
+            } else if ("interval".equals(policy)) {
+                return INTERVAL;
+            } else if ("never".equals(policy)) {
+                return NEVER;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    private static class Segment {
+        final long firstSequence;
+        final File file;
+        long lastSequence;
+        long size;
+
+        Segment(long firstSequence, File file) {
+            this.firstSequence = firstSequence;
+            this.file = file;
+            this.lastSequence = firstSequence - 1;
+        }
+    }
+
+    /*** Attributes ***************************************************************************************************/
+    private final File directory;
+    private final long segmentSize;
+    private final SyncPolicy syncPolicy;
+    private final long syncInterval;
+    private final String updatesTopic;
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private final Thread syncThread;
+    private FileChannel writeChannel = null;
+    private FileChannel readChannel = null;
+    private int readSegment = 0;
+    private long readOffset = 0;
+    private long nextSequence;
+    private long acknowledged;
+    private boolean dirty = false;
+    private boolean closed = false;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Opens the journal in the given directory, the directory is created if it does not exist. Messages found in
+     * existing segments and not yet acknowledged are read first.
+     *
+     * @param directory     Directory containing the segment files.
+     * @param segmentSize   Maximal size of a segment file in bytes. A message larger than that gets its own segment.
+     * @param syncPolicy    Defines when the messages are forced to the storage device.
+     * @param syncInterval  Interval in milliseconds for the {@link SyncPolicy#INTERVAL} policy.
+     * @param updatesTopic  Topic used to send messages containing several updates.
+     * @throws IOException  The directory or the existing segments could not be read.
+     */
+    PendingUpdateJournal(File directory, long segmentSize, SyncPolicy syncPolicy, long syncInterval,
+                         String updatesTopic) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncPolicy = syncPolicy;
+        this.syncInterval = syncInterval;
+        this.updatesTopic = updatesTopic;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create journal directory \"" + directory + "\"");
+        }
+        acknowledged = readAcknowledged();
+        nextSequence = acknowledged + 1;
+        recover();
+
+        if (syncPolicy == SyncPolicy.INTERVAL) {
+            syncThread = new Thread(this, "cloudio-journal-sync");
+            syncThread.setDaemon(true);
+            syncThread.start();
+        } else {
+            syncThread = null;
+        }
+    }
+
+    /**
+     * Returns the number of segment files of the journal.
+     *
+     * @return  Number of segments.
+     */
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /*** PendingUpdateStore Implementation ****************************************************************************/
+    @Override
+    public synchronized void append(CloudioAttribute.InternalAttribute attribute, byte[] data) throws IOException {
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+
+        // Messages containing several updates are stored with an empty topic.
+        byte[] topic = attribute != null ? attribute.getUpdateTopic().getBytes(UTF8) : new byte[0];
+        int length = RECORD_OVERHEAD + topic.length + data.length;
+
+        // Start a new segment if the record does not fit into the actual one.
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || writeChannel == null ||
+            (segment.size > 0 && segment.size + length > segmentSize)) {
+            segment = startSegment();
+        }
+
+        long sequence = nextSequence;
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(length - 4);
+        buffer.putLong(sequence);
+        buffer.putShort((short)topic.length);
+        buffer.put(topic);
+        buffer.put(data);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, length - 8);
+        buffer.putInt((int)crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            writeChannel.write(buffer, segment.size + buffer.position());
+        }
+
+        segment.size += length;
+        segment.lastSequence = sequence;
+        nextSequence++;
+
+        if (syncPolicy == SyncPolicy.ALWAYS) {
+            writeChannel.force(false);
+        } else {
+            dirty = true;
+        }
+    }
+
+    @Override
+    public synchronized Entry next() throws IOException {
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+
+        while (readSegment < segments.size()) {
+            Segment segment = segments.get(readSegment);
+            if (readChannel == null) {
+                readChannel = new RandomAccessFile(segment.file, "r").getChannel();
+            }
+
+            while (readOffset < segment.size) {
+                Record record = readRecord(readChannel, readOffset, segment.size);
+                if (record == null) {
+                    throw new IOException("Corrupt record in journal segment \"" + segment.file + "\"");
+                }
+                readOffset += record.length;
+                if (record.entry.sequence > acknowledged) {
+                    return record.entry;
+                }
+            }
+
+            // Continue with the next segment if there is one, the last segment might still grow.
+            if (readSegment + 1 < segments.size()) {
+                readChannel.close();
+                readChannel = null;
+                readSegment++;
+                readOffset = 0;
+            } else {
+                break;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void acknowledge(long sequence) throws IOException {
+        if (closed || sequence <= acknowledged) {
+            return;
+        }
+        acknowledged = Math.min(sequence, nextSequence - 1);
+        writeAcknowledged();
+
+        // Delete all segments whose messages have been acknowledged.
+        while (!segments.isEmpty() && segments.get(0).lastSequence <= acknowledged &&
+            (segments.size() > 1 || segments.get(0).lastSequence >= segments.get(0).firstSequence)) {
+            Segment segment = segments.remove(0);
+            if (segments.isEmpty() && writeChannel != null) {
+                writeChannel.close();
+                writeChannel = null;
+            }
+            if (readSegment == 0) {
+                if (readChannel != null) {
+                    readChannel.close();
+                    readChannel = null;
+                }
+                readOffset = 0;
+            } else {
+                readSegment--;
+            }
+            if (!segment.file.delete()) {
+                log.error("Can not delete journal segment \"" + segment.file + "\"");
+            }
+        }
+    }
+
+    @Override
+    public synchronized void rewind() {
+        if (readChannel != null) {
+            try {
+                readChannel.close();
+            } catch (IOException exception) {
+                log.error("Exception: " + exception.getMessage());
+                exception.printStackTrace();
+            }
+            readChannel = null;
+        }
+        readSegment = 0;
+        readOffset = 0;
+    }
+
+    @Override
+    public synchronized void sync() throws IOException {
+        if (dirty && writeChannel != null) {
+            writeChannel.force(false);
+        }
+        dirty = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (syncThread != null) {
+            try {
+                syncThread.join();
+            } catch (InterruptedException exception) {
+                log.error("Exception: " + exception.getMessage());
+                exception.printStackTrace();
+            }
+        }
+        synchronized (this) {
+            if (syncPolicy != SyncPolicy.NEVER) {
+                sync();
+            }
+            rewind();
+            if (writeChannel != null) {
+                writeChannel.close();
+                writeChannel = null;
+            }
+        }
+    }
+
+    /*** Runnable Implementation **************************************************************************************/
+    @Override
+    public void run() {
+        synchronized (this) {
+            while (!closed) {
+                try {
+                    wait(syncInterval);
+                    sync();
+                } catch (InterruptedException exception) {
+                    log.error("Exception: " + exception.getMessage());
+                    exception.printStackTrace();
+                } catch (IOException exception) {
+                    log.error("Exception: " + exception.getMessage());
+                    exception.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private static class Record {
+        final Entry entry;
+        final int length;
+
+        Record(Entry entry, int length) {
+            this.entry = entry;
+            this.length = length;
+        }
+    }
+
+    private Record readRecord(FileChannel channel, long offset, long end) throws IOException {
+        if (end - offset < RECORD_OVERHEAD) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(channel, header, offset);
+        int length = header.getInt(0) + 4;
+        if (length < RECORD_OVERHEAD || length > end - offset) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length - 4);
+        readFully(channel, buffer, offset + 4);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, length - 8);
+        if ((int)crc.getValue() != buffer.getInt(length - 8)) {
+            return null;
+        }
+
+        long sequence = buffer.getLong(0);
+        int topicLength = buffer.getShort(8) & 0xFFFF;
+        if (10 + topicLength > length - 8) {
+            return null;
+        }
+        String topic = topicLength > 0 ? new String(buffer.array(), 10, topicLength, UTF8) : updatesTopic;
+        byte[] data = Arrays.copyOfRange(buffer.array(), 10 + topicLength, length - 8);
+        return new Record(new Entry(sequence, topic, data), length);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of journal segment");
+            }
+        }
+    }
+
+    private Segment startSegment() throws IOException {
+        if (writeChannel != null) {
+            if (syncPolicy != SyncPolicy.NEVER) {
+                writeChannel.force(false);
+            }
+            writeChannel.close();
+        }
+        Segment segment = new Segment(nextSequence, new File(directory,
+            String.format("%020d", nextSequence) + SEGMENT_SUFFIX));
+        writeChannel = new RandomAccessFile(segment.file, "rw").getChannel();
+        writeChannel.truncate(0);
+        segments.add(segment);
+        dirty = false;
+        return segment;
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles();
+        List<Long> sequences = new ArrayList<Long>();
+        if (files != null) {
+            for (File file: files) {
+                String name = file.getName();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        sequences.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException exception) {
+                        log.error("Ignoring unknown file \"" + file + "\" in journal directory");
+                    }
+                }
+            }
+        }
+        Collections.sort(sequences);
+
+        for (Long firstSequence: sequences) {
+            Segment segment = new Segment(firstSequence, new File(directory,
+                String.format("%020d", firstSequence) + SEGMENT_SUFFIX));
+            FileChannel channel = new RandomAccessFile(segment.file, "rw").getChannel();
+            try {
+                long fileSize = channel.size();
+                Record record;
+                while ((record = readRecord(channel, segment.size, fileSize)) != null) {
+                    segment.size += record.length;
+                    segment.lastSequence = record.entry.sequence;
+                }
+                if (segment.size < fileSize) {
+                    log.error("Truncating journal segment \"" + segment.file + "\" at offset " + segment.size);
+                    channel.truncate(segment.size);
+                }
+            } finally {
+                channel.close();
+            }
+
+            if (segment.size == 0 || segment.lastSequence <= acknowledged) {
+                // The segment is empty or all its messages have been delivered but it could not be deleted before.
+                if (!segment.file.delete()) {
+                    log.error("Can not delete journal segment \"" + segment.file + "\"");
+                }
+            } else {
+                segments.add(segment);
+                nextSequence = Math.max(nextSequence, segment.lastSequence + 1);
+            }
+        }
+    }
+
+    private long readAcknowledged() throws IOException {
+        File file = new File(directory, ACKNOWLEDGED_FILE);
+        if (!file.exists()) {
+            return -1;
+        }
+        RandomAccessFile acknowledgedFile = new RandomAccessFile(file, "r");
+        try {
+            return acknowledgedFile.length() >= 8 ? acknowledgedFile.readLong() : -1;
+        } finally {
+            acknowledgedFile.close();
+        }
+    }
+
+    private void writeAcknowledged() throws IOException {
+        RandomAccessFile acknowledgedFile = new RandomAccessFile(new File(directory, ACKNOWLEDGED_FILE), "rw");
+        try {
+            acknowledgedFile.writeLong(acknowledged);
+            if (syncPolicy == SyncPolicy.ALWAYS) {
+                acknowledgedFile.getFD().sync();
+            }
+        } finally {
+            acknowledgedFile.close();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Sends the messages of a {@link PendingUpdateStore} once the endpoint is connected again. The messages are read in the
+ * order they were stored and several consecutive messages are combined into a single "@updates" message whenever the
+ * message format supports it. Instead of waiting a fixed time between messages, up to a given number of messages are
+ * kept in flight and messages are only acknowledged to the store once the transport confirms their delivery. As
+ * deliveries can be confirmed out of order, the store is always acknowledged up to the last message for which all
+ * preceding messages have been delivered too.
+ *
+ * The replay ends as soon as the store is empty, a message could not be published or {@link #stop()} is called. All
+ * messages not acknowledged at that time remain in the store and are sent again by the next replay.
+ */
+class PendingUpdateReplayer implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(PendingUpdateReplayer.class);
+    private static final String UPDATE_TOPIC_PREFIX = "@update/";
+    private static final int MAX_COMBINED_SIZE = 65536;
+
+    /**
+     * Published message covering one or more consecutive messages of the store up to the given sequence number.
+     */
+    private static class Message {
+        final long lastSequence;
+        boolean delivered = false;
+
+        Message(long lastSequence) {
+            this.lastSequence = lastSequence;
+        }
+    }
+
+    /*** Attributes ***************************************************************************************************/
+    private final PendingUpdateStore store;
+    private final CloudioTransport transport;
+    private final String updatesTopic;
+    private final int window;
+    private final int maxCombined;
+    private final Deque<Message> unacknowledged = new ArrayDeque<Message>();
+    private int inFlight = 0;
+    private PendingUpdateStore.Entry lookahead = null;
+    private boolean stopped = false;
+    private long replayedMessages = 0;
+    private long publishedMessages = 0;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates a replayer for the given store, {@link #run()} has to be called by a dedicated thread.
+     *
+     * @param store         Store to replay.
+     * @param transport     Transport used to publish the messages, has to be connected.
+     * @param updatesTopic  Topic used to send messages containing several updates.
+     * @param window        Maximal number of published messages waiting for their delivery confirmation.
+     * @param maxCombined   Maximal number of stored messages combined into a single message, 1 disables combining.
+     */
+    PendingUpdateReplayer(PendingUpdateStore store, CloudioTransport transport, String updatesTopic, int window,
+                          int maxCombined) {
+        this.store = store;
+        this.transport = transport;
+        this.updatesTopic = updatesTopic;
+        this.window = window;
+        this.maxCombined = maxCombined;
+    }
+
+    /**
+     * Stops the replay, messages already published are still acknowledged to the store once delivered.
+     */
+    synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+
+    /**
+     * Returns the number of messages read from the store so far.
+     *
+     * @return  Number of stored messages replayed.
+     */
+    synchronized long getReplayedMessages() {
+        return replayedMessages;
+    }
+
+    /**
+     * Returns the number of messages published so far, lower than the number of replayed messages if messages have
+     * been combined.
+     *
+     * @return  Number of messages published.
+     */
+    synchronized long getPublishedMessages() {
+        return publishedMessages;
+    }
+
+    /*** Runnable Implementation **************************************************************************************/
+    @Override
+    public void run() {
+        try {
+            store.rewind();
+            while (awaitWindow()) {
+                List<PendingUpdateStore.Entry> entries = nextEntries();
+                if (entries.isEmpty()) {
+                    return;
+                }
+
+                byte[] combined = entries.size() > 1 ? combine(entries) : null;
+                if (combined != null) {
+                    if (!publish(updatesTopic, combined, entries.get(entries.size() - 1).sequence)) {
+                        return;
+                    }
+                } else {
+                    // Single message or the messages can not be combined, send them one by one.
+                    for (PendingUpdateStore.Entry entry: entries) {
+                        if (!awaitWindow() || !publish(entry.topic, entry.data, entry.sequence)) {
+                            return;
+                        }
+                    }
+                }
+            }
+        } catch (IOException exception) {
+            log.error("Exception: " + exception.getMessage());
+            exception.printStackTrace();
+        }
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private synchronized boolean awaitWindow() {
+        while (!stopped && inFlight >= window && transport.isConnected()) {
+            try {
+                wait(1000);
+            } catch (InterruptedException exception) {
+                stopped = true;
+            }
+        }
+        return !stopped && transport.isConnected();
+    }
+
+    private List<PendingUpdateStore.Entry> nextEntries() throws IOException {
+        List<PendingUpdateStore.Entry> entries = new ArrayList<PendingUpdateStore.Entry>();
+        PendingUpdateStore.Entry entry = lookahead != null ? lookahead : store.next();
+        lookahead = null;
+        if (entry == null) {
+            return entries;
+        }
+        entries.add(entry);
+
+        // Collect following messages of the same format until the limits are reached.
+        int size = entry.data.length;
+        while (entries.size() < maxCombined && combinable(entry)) {
+            PendingUpdateStore.Entry next = store.next();
+            if (next == null) {
+                break;
+            }
+            if (!combinable(next) || size + next.data.length > MAX_COMBINED_SIZE ||
+                CloudioMessageFormatFactory.massageFormat(next.data[0]) !=
+                    CloudioMessageFormatFactory.massageFormat(entry.data[0])) {
+                lookahead = next;
+                break;
+            }
+            entries.add(next);
+            size += next.data.length;
+        }
+
+        synchronized (this) {
+            replayedMessages += entries.size();
+        }
+        return entries;
+    }
+
+    private boolean combinable(PendingUpdateStore.Entry entry) {
+        return entry.data.length > 0 && (entry.topic.equals(updatesTopic) ||
+            entry.topic.startsWith(UPDATE_TOPIC_PREFIX));
+    }
+
+    private byte[] combine(List<PendingUpdateStore.Entry> entries) {
+        CloudioMessageFormat messageFormat = CloudioMessageFormatFactory.massageFormat(entries.get(0).data[0]);
+        if (messageFormat == null) {
+            return null;
+        }
+
+        List<String> uuids = new ArrayList<String>(entries.size());
+        List<byte[]> messages = new ArrayList<byte[]>(entries.size());
+        for (PendingUpdateStore.Entry entry: entries) {
+            uuids.add(entry.topic.equals(updatesTopic) ? null : entry.topic.substring(UPDATE_TOPIC_PREFIX.length()));
+            messages.add(entry.data);
+        }
+        return messageFormat.combineAttributeUpdates(uuids, messages);
+    }
+
+    private boolean publish(String topic, byte[] data, long lastSequence) {
+        final Message message = new Message(lastSequence);
+        synchronized (this) {
+            unacknowledged.addLast(message);
+            ++inFlight;
+            ++publishedMessages;
+        }
+
+        while (true) {
+            try {
+                transport.publish(topic, data, 1, false, new CloudioTransport.DeliveryListener() {
+                    @Override
+                    public void deliveryComplete(String topic) {
+                        delivered(message);
+                    }
+
+                    @Override
+                    public void deliveryFailed(String topic, Throwable cause) {
+                        log.error("Exception: " + cause.getMessage());
+                        stop();
+                    }
+                });
+                return true;
+            } catch (CloudioTransportException exception) {
+                if (!exception.isCongested() || !awaitCongestion()) {
+                    log.error("Exception: " + exception.getMessage());
+                    exception.printStackTrace();
+                    stop();
+                    return false;
+                }
+            }
+        }
+    }
+
+    private synchronized boolean awaitCongestion() {
+        // The client's in flight messages are shared with the live updates, retry once a delivery has been confirmed.
+        try {
+            wait(100);
+        } catch (InterruptedException exception) {
+            stopped = true;
+        }
+        return !stopped && transport.isConnected();
+    }
+
+    private synchronized void delivered(Message message) {
+        message.delivered = true;
+        --inFlight;
+        long acknowledge = -1;
+        while (!unacknowledged.isEmpty() && unacknowledged.peekFirst().delivered) {
+            acknowledge = unacknowledged.pollFirst().lastSequence;
+        }
+        notifyAll();
+
+        if (acknowledge >= 0) {
+            try {
+                store.acknowledge(acknowledge);
+            } catch (IOException exception) {
+                log.error("Exception: " + exception.getMessage());
+                exception.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * Stores the pending updates in a single pre-allocated file of fixed size which is mapped into memory and used as a
+ * circular buffer, so the space used on the storage device never grows no matter how long the endpoint is offline.
+ * Appending and removing a message takes constant time and does not need any system call, the operating system writes
+ * the modified pages back to the file. The file is only forced to the storage device on {@link #sync()} and when the
+ * ring is closed.
+ *
+ * The file starts with a header containing the capacity, the positions of the oldest message and of the end of the
+ * newest message and the next sequence number. Positions increase monotonically, the offset inside the ring is the
+ * position modulo the capacity. Each record consists of its length, its sequence number, the topic and the content of
+ * the message followed by a CRC32 checksum. A record never wraps around the end of the ring, if it does not fit into
+ * the remaining space, the space is skipped and the record is written at the start of the ring. When the ring is
+ * opened, the records are scanned from the oldest one and the ring is truncated at the first incomplete or corrupt
+ * record, so pages lost by a power failure only drop the records written after them.
+ *
+ * If a message does not fit into the free space, the overflow policy decides which message is lost:
+ * <ul>
+ *     <li><b>overwrite</b>: The oldest messages are removed until the new message fits.</li>
+ *     <li><b>drop</b>: The new message is dropped.</li>
+ *     <li>
+ *         <b>status</b>: Updates of attributes with the constraint {@link CloudioAttributeConstraint#Status} remove the
+ *         oldest messages, all other messages are dropped.
+ *     </li>
+ * </ul>
+ */
+class PendingUpdateRing implements PendingUpdateStore {
+    private static final Logger log = LoggerFactory.getLogger(PendingUpdateRing.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x636C5243;
+    private static final int WRAP = -1;
+
+    /**
+     * Length of the file header (magic, capacity, oldest position, end position and next sequence number).
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8;
+
+    /**
+     * Length of the record header (length, sequence number and topic length) and trailer (checksum).
+     */
+    static final int RECORD_OVERHEAD = 4 + 8 + 2 + 4;
+
+    /**
+     * Defines which message is lost if the ring is full.
+     */
+    enum OverflowPolicy {
+        OVERWRITE_OLDEST,
+        DROP_NEWEST,
+        PREFER_STATUS;
+
+        static OverflowPolicy fromString(String policy) {
+            if ("overwrite".equals(policy)) {
+                return OVERWRITE_OLDEST;
+            } else if ("drop".equals(policy)) {
+                return DROP_NEWEST;
+            } else if ("status".equals(policy)) {
+                return PREFER_STATUS;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /*** Attributes ***************************************************************************************************/
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final String updatesTopic;
+    private long head;
+    private long tail;
+    private long read;
+    private long nextSequence;
+    private long droppedMessages = 0;
+    private boolean closed = false;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Opens the ring in the given file, the file is created if it does not exist. Messages found in an existing file
+     * with the same capacity are read first, a file with a different capacity is cleared.
+     *
+     * @param file              File containing the ring.
+     * @param capacity          Size of the ring in bytes, the file is slightly larger because of its header.
+     * @param overflowPolicy    Defines which message is lost if the ring is full.
+     * @param updatesTopic      Topic used to send messages containing several updates.
+     * @throws IOException      The file could not be created or mapped.
+     */
+    PendingUpdateRing(File file, int capacity, OverflowPolicy overflowPolicy, String updatesTopic)
+        throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.updatesTopic = updatesTopic;
+
+        try {
+            buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)capacity);
+        } catch (IOException exception) {
+            this.file.close();
+            throw exception;
+        }
+
+        head = buffer.getLong(8);
+        tail = buffer.getLong(16);
+        nextSequence = buffer.getLong(24);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != capacity || head < 0 || tail < head ||
+            tail - head > capacity || nextSequence < 0) {
+            head = 0;
+            tail = 0;
+            nextSequence = 0;
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, capacity);
+            writeHeader();
+        } else {
+            recover();
+        }
+        read = head;
+    }
+
+    /**
+     * Returns the number of messages lost because the ring was full.
+     *
+     * @return  Number of messages dropped or overwritten.
+     */
+    synchronized long getDroppedMessages() {
+        return droppedMessages;
+    }
+
+    /*** PendingUpdateStore Implementation ****************************************************************************/
+    @Override
+    public synchronized void append(CloudioAttribute.InternalAttribute attribute, byte[] data) throws IOException {
+        if (closed) {
+            throw new IOException("Ring is closed");
+        }
+
+        // An empty topic stands for the updates topic.
+        byte[] topic = attribute != null ? attribute.getUpdateTopic().getBytes(UTF8) : new byte[0];
+        int length = RECORD_OVERHEAD + topic.length + data.length;
+        if (length > capacity) {
+            throw new IOException("Message of " + length + " bytes does not fit into the ring");
+        }
+
+        // Make room for the message according to the overflow policy.
+        long position = writePosition(length);
+        while (position + length - head > capacity) {
+            if (head == tail) {
+                // The ring is empty, but the message does not fit at the end, restart at the beginning.
+                head = read = tail = position;
+                break;
+            }
+            if (overflowPolicy == OverflowPolicy.DROP_NEWEST || (overflowPolicy == OverflowPolicy.PREFER_STATUS &&
+                (attribute == null || attribute.getConstraint() != CloudioAttributeConstraint.Status))) {
+                droppedMessages++;
+                return;
+            }
+            removeOldest();
+        }
+
+        if (position != tail && capacity - offset(tail) >= 4) {
+            buffer.putInt(HEADER_SIZE + offset(tail), WRAP);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(length);
+        record.putLong(nextSequence++);
+        record.putShort((short)topic.length);
+        record.put(topic);
+        record.put(data);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, length - 8);
+        record.putInt((int)crc.getValue());
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(HEADER_SIZE + offset(position));
+        view.put(record.array());
+
+        tail = position + length;
+        writeHeader();
+    }
+
+    @Override
+    public synchronized Entry next() throws IOException {
+        if (closed) {
+            throw new IOException("Ring is closed");
+        }
+
+        read = skipWrap(Math.max(read, head));
+        if (read >= tail) {
+            return null;
+        }
+
+        ByteBuffer record = readRecord(read);
+        if (record == null) {
+            throw new IOException("Corrupt record at position " + read + " of the ring");
+        }
+        long sequence = record.getLong(4);
+        int topicLength = record.getShort(12) & 0xFFFF;
+        byte[] topic = new byte[topicLength];
+        byte[] data = new byte[record.capacity() - RECORD_OVERHEAD - topicLength];
+        record.position(14);
+        record.get(topic);
+        record.get(data);
+        read += record.capacity();
+
+        return new Entry(sequence, topicLength == 0 ? updatesTopic : new String(topic, UTF8), data);
+    }
+
+    @Override
+    public synchronized void acknowledge(long sequence) throws IOException {
+        if (closed) {
+            return;
+        }
+
+        head = skipWrap(head);
+        while (head < tail && buffer.getLong(HEADER_SIZE + offset(head) + 4) <= sequence) {
+            head = skipWrap(head + buffer.getInt(HEADER_SIZE + offset(head)));
+        }
+        read = Math.max(read, head);
+        writeHeader();
+    }
+
+    @Override
+    public synchronized void rewind() {
+        read = head;
+    }
+
+    @Override
+    public synchronized void sync() throws IOException {
+        if (!closed) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            buffer.force();
+            file.close();
+        }
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private int offset(long position) {
+        return (int)(position % capacity);
+    }
+
+    private long writePosition(int length) {
+        // A record does not wrap around, if it does not fit at the end it is written at the beginning of the ring.
+        int offset = offset(tail);
+        return offset + length > capacity ? tail + capacity - offset : tail;
+    }
+
+    private long skipWrap(long position) {
+        if (position >= tail) {
+            return position;
+        }
+        int offset = offset(position);
+        if (capacity - offset < 4 || buffer.getInt(HEADER_SIZE + offset) == WRAP) {
+            return position + capacity - offset;
+        }
+        return position;
+    }
+
+    /**
+     * Reads the record at the given position and verifies its bounds and checksum.
+     *
+     * @param position  Position of the record.
+     * @return          The whole record or null if the record is incomplete or corrupt.
+     */
+    private ByteBuffer readRecord(long position) {
+        int offset = offset(position);
+        if (capacity - offset < RECORD_OVERHEAD) {
+            return null;
+        }
+        int length = buffer.getInt(HEADER_SIZE + offset);
+        if (length < RECORD_OVERHEAD || length > capacity - offset || length > tail - position) {
+            return null;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(length);
+        ByteBuffer view = buffer.duplicate();
+        view.position(HEADER_SIZE + offset);
+        view.limit(HEADER_SIZE + offset + length);
+        record.put(view);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, length - 8);
+        if ((int)crc.getValue() != record.getInt(length - 4) ||
+            (record.getShort(12) & 0xFFFF) > length - RECORD_OVERHEAD) {
+            return null;
+        }
+        return record;
+    }
+
+    private void recover() {
+        // Truncate the ring at the first record that has not been completely written to the storage device.
+        long position = skipWrap(head);
+        while (position < tail) {
+            ByteBuffer record = readRecord(position);
+            if (record == null) {
+                log.error("Ring truncated at corrupt record, position " + position);
+                tail = position;
+                break;
+            }
+            nextSequence = Math.max(nextSequence, record.getLong(4) + 1);
+            position = skipWrap(position + record.capacity());
+        }
+        head = Math.min(head, tail);
+        writeHeader();
+    }
+
+    private void removeOldest() {
+        head = skipWrap(head);
+        head = skipWrap(head + buffer.getInt(HEADER_SIZE + offset(head)));
+        read = Math.max(read, head);
+        droppedMessages++;
+    }
+
+    private void writeHeader() {
+        buffer.putLong(8, head);
+        buffer.putLong(16, tail);
+        buffer.putLong(24, nextSequence);
+    }
+}
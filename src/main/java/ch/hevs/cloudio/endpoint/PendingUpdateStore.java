@@ -0,0 +1,74 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.io.IOException;
+
+/**
+ * Store-and-forward buffer for the update messages which could not be sent because the endpoint was offline. Messages
+ * are appended while offline and read back in the order they were appended once the endpoint is connected again.
+ * Every message has a sequence number and remains in the store until it is acknowledged, so messages which have been
+ * read but not delivered when the connection is lost again are read again after {@link #rewind()}.
+ *
+ * Implementations have to be thread safe, messages are appended by the threads changing attributes while the replay
+ * thread reads and acknowledges them.
+ */
+interface PendingUpdateStore {
+    /**
+     * Message read from the store.
+     */
+    class Entry {
+        final long sequence;
+        final String topic;
+        final byte[] data;
+
+        Entry(long sequence, String topic, byte[] data) {
+            this.sequence = sequence;
+            this.topic = topic;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Appends a message to the store.
+     *
+     * @param attribute     Attribute the message is an update of or null if the message contains updates of several
+     *                      attributes and has to be sent on the endpoint's updates topic.
+     * @param data          Content of the message.
+     * @throws IOException  The message could not be stored.
+     */
+    void append(CloudioAttribute.InternalAttribute attribute, byte[] data) throws IOException;
+
+    /**
+     * Returns the oldest message which has not been read since the last call to {@link #rewind()}.
+     *
+     * @return              Message or null if all messages have been read.
+     * @throws IOException  The message could not be read.
+     */
+    Entry next() throws IOException;
+
+    /**
+     * Removes all messages with a sequence number up to and including the given sequence number from the store.
+     *
+     * @param sequence      Sequence number of the last message delivered.
+     * @throws IOException  The messages could not be removed.
+     */
+    void acknowledge(long sequence) throws IOException;
+
+    /**
+     * Restarts reading with the oldest message which has not been acknowledged.
+     */
+    void rewind();
+
+    /**
+     * Forces all appended messages to the storage device, so they survive a power failure.
+     *
+     * @throws IOException  The messages could not be written.
+     */
+    void sync() throws IOException;
+
+    /**
+     * Writes all data to the storage device and releases the resources of the store.
+     *
+     * @throws IOException  The store could not be closed cleanly.
+     */
+    void close() throws IOException;
+}
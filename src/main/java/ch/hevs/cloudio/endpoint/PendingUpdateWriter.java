@@ -0,0 +1,272 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Saves the updates that can not be sent while offline on a dedicated thread, so the threads changing attribute values
+ * never wait for the storage device. Updates are handed to the writer thread through a bounded queue, if the queue is
+ * full the caller waits until the writer has made space.
+ *
+ * The writer uses group commit: it waits until the oldest queued update is as old as the commit interval (or the queue
+ * is full), appends all queued updates to the underlying store and forces them to the storage device with a single
+ * {@link PendingUpdateStore#sync()}. An update is therefore durable at the latest after the commit interval plus the
+ * time needed to write one batch, the current and maximal delay can be monitored using {@link #getLag()} and
+ * {@link #getMaxLag()}.
+ *
+ * Reading the store returns queued updates as well, the writer commits them first if the underlying store is empty.
+ */
+class PendingUpdateWriter implements PendingUpdateStore, Runnable {
+    private static final Logger log = LoggerFactory.getLogger(PendingUpdateWriter.class);
+
+    private static class Pending {
+        final CloudioAttribute.InternalAttribute attribute;
+        final byte[] data;
+        final long time;
+
+        Pending(CloudioAttribute.InternalAttribute attribute, byte[] data, long time) {
+            this.attribute = attribute;
+            this.data = data;
+            this.time = time;
+        }
+    }
+
+    /*** Attributes ***************************************************************************************************/
+    private final PendingUpdateStore store;
+    private final int queueSize;
+    private final long commitInterval;
+    private final Thread thread;
+    private final Deque<Pending> queue = new ArrayDeque<Pending>();
+    private long appended = 0;
+    private long committed = 0;
+    private long writingSince = 0;
+    private long commits = 0;
+    private long maxLag = 0;
+    private boolean flushRequested = false;
+    private boolean closed = false;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates a writer on top of the given store and starts the writer thread.
+     *
+     * @param store             Store saving the updates.
+     * @param queueSize         Maximal number of updates waiting to be written.
+     * @param commitInterval    Maximal time in milliseconds an update waits before it is written and forced.
+     */
+    PendingUpdateWriter(PendingUpdateStore store, int queueSize, long commitInterval) {
+        this.store = store;
+        this.queueSize = queueSize;
+        this.commitInterval = commitInterval;
+
+        thread = new Thread(this, "cloudio-offline-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the number of updates waiting to be written.
+     *
+     * @return  Number of queued updates, including the updates currently written.
+     */
+    synchronized int getQueuedMessages() {
+        return (int)(appended - committed);
+    }
+
+    /**
+     * Returns the age of the oldest update that has not been written and forced to the storage device yet.
+     *
+     * @return  Writer lag in milliseconds, 0 if all updates are durable.
+     */
+    synchronized long getLag() {
+        long oldest = writingSince != 0 ? writingSince : (!queue.isEmpty() ? queue.peekFirst().time : 0);
+        return oldest != 0 ? Math.max(0, System.currentTimeMillis() - oldest) : 0;
+    }
+
+    /**
+     * Returns the longest time an update has waited until it was durable.
+     *
+     * @return  Maximal writer lag in milliseconds.
+     */
+    synchronized long getMaxLag() {
+        return maxLag;
+    }
+
+    /**
+     * Returns the number of batches written and forced to the storage device.
+     *
+     * @return  Number of group commits.
+     */
+    synchronized long getCommits() {
+        return commits;
+    }
+
+    /*** PendingUpdateStore Implementation ****************************************************************************/
+    @Override
+    public synchronized void append(CloudioAttribute.InternalAttribute attribute, byte[] data) throws IOException {
+        while (queue.size() >= queueSize && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the offline writer");
+            }
+        }
+        if (closed) {
+            throw new IOException("Writer is closed");
+        }
+
+        queue.addLast(new Pending(attribute, data, System.currentTimeMillis()));
+        appended++;
+
+        // Wake up the writer to start the commit interval or to write a full queue.
+        if (queue.size() == 1 || queue.size() >= queueSize) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public Entry next() throws IOException {
+        Entry entry = store.next();
+        if (entry != null) {
+            return entry;
+        }
+
+        // The store is empty, but updates may still be waiting to be written.
+        synchronized (this) {
+            long target = appended;
+            if (committed >= target) {
+                return null;
+            }
+            flushRequested = true;
+            notifyAll();
+            while (committed < target && thread.isAlive()) {
+                try {
+                    wait(commitInterval);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+        return store.next();
+    }
+
+    @Override
+    public void acknowledge(long sequence) throws IOException {
+        store.acknowledge(sequence);
+    }
+
+    @Override
+    public void rewind() {
+        store.rewind();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        // Write all queued updates before forcing them to the storage device.
+        synchronized (this) {
+            long target = appended;
+            flushRequested = true;
+            notifyAll();
+            while (committed < target && thread.isAlive()) {
+                try {
+                    wait(commitInterval);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the offline writer");
+                }
+            }
+        }
+        store.sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+
+        // The writer thread writes all remaining updates before it ends.
+        try {
+            thread.join();
+        } catch (InterruptedException exception) {
+            log.error("Exception: " + exception.getMessage());
+            exception.printStackTrace();
+        }
+        store.close();
+    }
+
+    /*** Runnable Implementation **************************************************************************************/
+    @Override
+    public void run() {
+        while (true) {
+            List<Pending> batch;
+            synchronized (this) {
+                while (true) {
+                    if (queue.isEmpty()) {
+                        flushRequested = false;
+                        if (closed) {
+                            return;
+                        }
+                        waitForUpdates(0);
+                        continue;
+                    }
+
+                    long age = System.currentTimeMillis() - queue.peekFirst().time;
+                    if (closed || flushRequested || queue.size() >= queueSize || age >= commitInterval) {
+                        break;
+                    }
+                    waitForUpdates(commitInterval - age);
+                }
+
+                batch = new ArrayList<Pending>(queue);
+                queue.clear();
+                writingSince = batch.get(0).time;
+                flushRequested = false;
+
+                // Producers waiting for space can continue while the batch is written.
+                notifyAll();
+            }
+
+            for (Pending pending: batch) {
+                try {
+                    store.append(pending.attribute, pending.data);
+                } catch (IOException exception) {
+                    log.error("Exception: " + exception.getMessage());
+                    exception.printStackTrace();
+                }
+            }
+            try {
+                store.sync();
+            } catch (IOException exception) {
+                log.error("Exception: " + exception.getMessage());
+                exception.printStackTrace();
+            }
+
+            synchronized (this) {
+                committed += batch.size();
+                commits++;
+                maxLag = Math.max(maxLag, System.currentTimeMillis() - writingSince);
+                writingSince = 0;
+                notifyAll();
+            }
+        }
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private void waitForUpdates(long timeout) {
+        try {
+            wait(timeout);
+        } catch (InterruptedException exception) {
+            log.error("Exception: " + exception.getMessage());
+            exception.printStackTrace();
+        }
+    }
+}
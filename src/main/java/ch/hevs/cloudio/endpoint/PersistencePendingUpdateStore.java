@@ -0,0 +1,168 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Stores the pending updates as individual entries of the MQTT client's persistence, used with the <b>memory</b> and
+ * <b>file</b> persistence options. Every message is saved using the key "PendingUpdate-[topic]-[time]" or, for
+ * messages containing several updates, "PendingUpdates-[time]", where time is the time of the endpoint's clock in
+ * milliseconds when the message was stored. Times are kept unique and increasing, so two messages stored during the
+ * same millisecond do not overwrite each other.
+ *
+ * As the persistence does not keep any order, the keys are sorted by their time when reading starts. The time of a
+ * message is also its sequence number, so acknowledging a message removes exactly the messages stored before it, even
+ * if the keys have been read again in the meantime.
+ */
+class PersistencePendingUpdateStore implements PendingUpdateStore {
+    private static final String PENDING_UPDATE_PREFIX = "PendingUpdate-";
+    private static final String PENDING_UPDATES_PREFIX = "PendingUpdates-";
+
+    /*** Attributes ***************************************************************************************************/
+    private final MqttClientPersistence persistence;
+    private final CloudioClock clock;
+    private final String updatesTopic;
+    private Long lastTime = null;
+    private List<String> keys = null;
+    private int readPosition = 0;
+    private int acknowledged = 0;
+
+    /*** API **********************************************************************************************************/
+    /**
+     * Creates a store saving the messages into the given persistence.
+     *
+     * @param persistence   Persistence of the MQTT client, has to be opened.
+     * @param clock         Clock of the endpoint used for the time in the keys.
+     * @param updatesTopic  Topic used to send messages containing several updates.
+     */
+    PersistencePendingUpdateStore(MqttClientPersistence persistence, CloudioClock clock, String updatesTopic) {
+        this.persistence = persistence;
+        this.clock = clock;
+        this.updatesTopic = updatesTopic;
+    }
+
+    /*** PendingUpdateStore Implementation ****************************************************************************/
+    @Override
+    public synchronized void append(CloudioAttribute.InternalAttribute attribute, byte[] data) throws IOException {
+        // Continue after the messages saved before a restart, even if the clock has gone backwards.
+        if (lastTime == null) {
+            List<String> saved = sortedKeys();
+            lastTime = saved.isEmpty() ? 0 : time(saved.get(saved.size() - 1));
+        }
+        lastTime = Math.max(clock.currentTimeMillis(), lastTime + 1);
+        String key = attribute != null ? attribute.getPendingUpdateKeyPrefix() + lastTime :
+            PENDING_UPDATES_PREFIX + lastTime;
+        try {
+            persistence.put(key, new PendingUpdate(data));
+        } catch (MqttPersistenceException exception) {
+            throw new IOException(exception);
+        }
+    }
+
+    @Override
+    public synchronized Entry next() throws IOException {
+        if (keys == null) {
+            keys = sortedKeys();
+            readPosition = 0;
+            acknowledged = 0;
+        }
+
+        try {
+            while (readPosition < keys.size()) {
+                String key = keys.get(readPosition++);
+                long sequence = time(key);
+                MqttPersistable pendingUpdate = persistence.get(key);
+                if (pendingUpdate == null) {
+                    continue;
+                }
+                if (key.startsWith(PENDING_UPDATES_PREFIX)) {
+                    return new Entry(sequence, updatesTopic, pendingUpdate.getHeaderBytes());
+                } else {
+                    String uuid = key.substring(PENDING_UPDATE_PREFIX.length(), key.lastIndexOf("-"))
+                        .replace(";", "/");
+                    return new Entry(sequence, "@update/" + uuid, pendingUpdate.getHeaderBytes());
+                }
+            }
+        } catch (MqttPersistenceException exception) {
+            throw new IOException(exception);
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void acknowledge(long sequence) throws IOException {
+        if (keys == null) {
+            keys = sortedKeys();
+            readPosition = 0;
+            acknowledged = 0;
+        }
+
+        // Keys are sorted by time, messages stored later than the key list was read have a greater time anyway.
+        try {
+            while (acknowledged < keys.size() && time(keys.get(acknowledged)) <= sequence) {
+                persistence.remove(keys.get(acknowledged++));
+            }
+        } catch (MqttPersistenceException exception) {
+            throw new IOException(exception);
+        }
+    }
+
+    @Override
+    public synchronized void rewind() {
+        // Read the keys again, as messages may have been added in the meantime.
+        keys = null;
+    }
+
+    @Override
+    public void sync() {
+        // The persistence writes every message on its own.
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The persistence is closed by the endpoint.
+    }
+
+    /*** Private methods **********************************************************************************************/
+    private List<String> sortedKeys() throws IOException {
+        List<String> keys = new ArrayList<String>();
+        try {
+            @SuppressWarnings("unchecked")
+            Enumeration<String> keyEnum = persistence.keys();
+            while (keyEnum.hasMoreElements()) {
+                String key = keyEnum.nextElement();
+                if (key.startsWith(PENDING_UPDATE_PREFIX) || key.startsWith(PENDING_UPDATES_PREFIX)) {
+                    keys.add(key);
+                }
+            }
+        } catch (MqttPersistenceException exception) {
+            throw new IOException(exception);
+        }
+
+        Collections.sort(keys, new Comparator<String>() {
+            @Override
+            public int compare(String key1, String key2) {
+                long time1 = time(key1);
+                long time2 = time(key2);
+                return time1 < time2 ? -1 : (time1 == time2 ? 0 : 1);
+            }
+        });
+        return keys;
+    }
+
+    private static long time(String key) {
+        try {
+            return Long.parseLong(key.substring(key.lastIndexOf("-") + 1));
+        } catch (NumberFormatException exception) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ch.hevs.cloudio.endpoint;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation used to limit how often changes of an attribute are sent to the cloud. Changes that happen less than the
+ * minimal interval after the last value sent update the local value and notify the attribute's listeners, but only the
+ * latest of them is sent to the cloud once the interval has expired. The heartbeat sends the actual value again once
+ * the last value sent to the cloud is older than the heartbeat interval, even if the value has not changed or only
+ * changed inside the attribute's {@link Deadband}. Both intervals are measured using the timestamps of the values.
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * class PowerMeter extends ch.hevs.cloudio.endpoint.CloudioObject {
+ *    {@literal @}Measure
+ *    {@literal @}Deadband(10)
+ *    {@literal @}PublishInterval(min = 1000, heartbeat = 60000)
+ *     public CloudioAttribute&lt;Double&gt; power;
+ * }
+ * </pre>
+ *
+ * @see CloudioAttribute#setPublishInterval(long, long)
+ * @see Deadband
+ */
+@Retention(value = RetentionPolicy.RUNTIME)
+@Target(value = ElementType.FIELD)
+public @interface PublishInterval {
+    /**
+     * Minimal interval in milliseconds between two values sent to the cloud, 0 means no limitation.
+     *
+     * @return Minimal interval in milliseconds.
+     */
+    long min() default 0;
+
+    /**
+     * Maximal age in milliseconds of the last value sent to the cloud before the actual value is sent again regardless
+     * of the deadband, 0 disables the heartbeat.
+     *
+     * @return Heartbeat interval in milliseconds.
+     */
+    long heartbeat() default 0;
+}
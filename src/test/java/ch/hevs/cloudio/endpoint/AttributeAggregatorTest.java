@@ -0,0 +1,253 @@
+package ch.hevs.cloudio.endpoint;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+public class AttributeAggregatorTest {
+    @Test
+    public void testWindowAggregate() {
+        AttributeAggregator aggregator = new AttributeAggregator(1000, false);
+
+        Assert.assertNull(aggregator.add(2.0, 10500));
+        Assert.assertNull(aggregator.add(-1.0, 10600));
+        Assert.assertNull(aggregator.add(5.0, 10999));
+
+        AttributeAggregate aggregate = aggregator.add(7.0, 11000);
+        Assert.assertNotNull(aggregate);
+        Assert.assertEquals(10000, aggregate.getStart());
+        Assert.assertEquals(11000, aggregate.getEnd());
+        Assert.assertEquals(3, aggregate.getCount());
+        Assert.assertEquals(-1.0, aggregate.getMin(), 0.0);
+        Assert.assertEquals(5.0, aggregate.getMax(), 0.0);
+        Assert.assertEquals(2.0, aggregate.getMean(), 0.0);
+        Assert.assertEquals(5.0, aggregate.getLast());
+
+        // Gaps of several windows complete the actual window only once.
+        aggregate = aggregator.add(1.0, 15200);
+        Assert.assertEquals(11000, aggregate.getStart());
+        Assert.assertEquals(1, aggregate.getCount());
+        Assert.assertEquals(7.0, aggregate.getLast());
+        Assert.assertNull(aggregator.add(3.0, 15300));
+    }
+
+    /**
+     * Sink collecting the windows completed by the timer.
+     */
+    static class CollectingSink implements AttributeAggregator.Sink {
+        final List<AttributeAggregate> aggregates = new ArrayList<AttributeAggregate>();
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public synchronized void windowCompleted(AttributeAggregate aggregate) {
+            aggregates.add(aggregate);
+            notifyAll();
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (aggregates.size() < count && System.currentTimeMillis() < deadline) {
+                wait(10);
+            }
+            Assert.assertEquals(count, aggregates.size());
+        }
+    }
+
+    /**
+     * Container recording the updates of completed windows.
+     */
+    static class RecordingContainer implements CloudioObjectContainer, CloudioAttributeContainer {
+        final List<AttributeUpdate> updates = new ArrayList<AttributeUpdate>();
+
+        @Override
+        public void attributeHasChangedByEndpoint(CloudioAttribute.InternalAttribute attribute) {}
+
+        @Override
+        public synchronized void attributeHasChangedByEndpoint(AttributeUpdate update) {
+            updates.add(update);
+        }
+
+        @Override
+        public void attributeHasChangedByCloud(CloudioAttribute.InternalAttribute attribute) {}
+
+        @Override
+        public boolean isNodeRegisteredWithinEndpoint() {
+            return false;
+        }
+
+        @Override
+        public NamedItemSet<CloudioAttribute.InternalAttribute> getAttributes() {
+            return null;
+        }
+
+        @Override
+        public NamedItemSet<CloudioObject.InternalObject> getObjects() {
+            return null;
+        }
+
+        @Override
+        public CloudioNodeContainer getParentNodeContainer() {
+            return null;
+        }
+
+        @Override
+        public void setParentNodeContainer(CloudioNodeContainer nodeContainer) {}
+
+        @Override
+        public CloudioAttribute.InternalAttribute findAttribute(Stack<String> location) {
+            return null;
+        }
+
+        @Override
+        public CloudioObjectContainer getParentObjectContainer() {
+            return null;
+        }
+
+        @Override
+        public void setParentObjectContainer(CloudioObjectContainer objectContainer) {}
+
+        @Override
+        public Uuid getUuid() {
+            return null;
+        }
+
+        @Override
+        public String getName() {
+            return "TEST";
+        }
+
+        @Override
+        public void setName(String name) {}
+    }
+
+    @Test
+    public void testEveryWindowHasItsOwnUpdate() throws Exception {
+        CloudioAttribute<Double> attribute = new CloudioAttribute<Double>();
+        attribute.internal.setType(Double.class);
+        attribute.internal.setConstraint(CloudioAttributeConstraint.Measure);
+        attribute.internal.setName("acceleration");
+        RecordingContainer container = new RecordingContainer();
+        attribute.internal.setParent(container);
+        attribute.setAggregationWindow(1000);
+
+        // Every completed window is sent with its own aggregate, even if the next window completes before the
+        // update of the previous one has been serialized.
+        attribute.setValue(1.0, 1000L);
+        attribute.setValue(2.0, 2000L);
+        attribute.setValue(3.0, 3000L);
+        Assert.assertEquals(2, container.updates.size());
+        Assert.assertEquals(1000, container.updates.get(0).getAggregate().getStart());
+        Assert.assertEquals(1.0, container.updates.get(0).getValue());
+        Assert.assertEquals(2000, container.updates.get(1).getAggregate().getStart());
+        Assert.assertEquals(2.0, container.updates.get(1).getValue());
+    }
+
+    @Test
+    public void testExpiredWindowWithoutFurtherSample() throws Exception {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+        CollectingSink sink = new CollectingSink();
+        AttributeAggregator aggregator = new AttributeAggregator(50, false);
+        aggregator.start(timer, sink);
+
+        // A burst followed by silence is completed once the window has expired.
+        long now = System.currentTimeMillis();
+        Assert.assertNull(aggregator.add(1.0, now));
+        Assert.assertNull(aggregator.add(3.0, now));
+        sink.await(1);
+        AttributeAggregate aggregate = sink.aggregates.get(0);
+        Assert.assertEquals(2, aggregate.getCount());
+        Assert.assertEquals(2.0, aggregate.getMean(), 0.0);
+        Assert.assertEquals(3.0, aggregate.getLast());
+        Assert.assertTrue(aggregate.getEnd() <= System.currentTimeMillis());
+
+        // The window is not sent a second time by the next sample.
+        Assert.assertNull(aggregator.add(5.0, System.currentTimeMillis()));
+        aggregator.stop();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void testFlushSendsActualWindow() throws Exception {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+        CollectingSink sink = new CollectingSink();
+        AttributeAggregator aggregator = new AttributeAggregator(3600000, true);
+        aggregator.start(timer, sink);
+
+        aggregator.add(4L, System.currentTimeMillis());
+        aggregator.flush();
+        Assert.assertEquals(1, sink.aggregates.size());
+        Assert.assertEquals(4L, sink.aggregates.get(0).getLast());
+        aggregator.flush();
+        Assert.assertEquals(1, sink.aggregates.size());
+        aggregator.stop();
+        timer.shutdownNow();
+    }
+
+    @Test(expected = InvalidCloudioAttributeException.class)
+    public void testOnlyMeasuresCanBeAggregated() throws Exception {
+        CloudioAttribute<Double> attribute = new CloudioAttribute<Double>();
+        attribute.internal.setType(Double.class);
+        attribute.internal.setConstraint(CloudioAttributeConstraint.Status);
+        attribute.setAggregationWindow(1000);
+    }
+
+    @Test
+    public void testAggregateSerialization() throws Exception {
+        CloudioAdLibObject object = new CloudioAdLibObject.Builder()
+            .attribute("acceleration", Double.class, CloudioAttributeConstraint.Measure)
+            .aggregation("acceleration", 1000)
+            .build();
+        RecordingContainer container = new RecordingContainer();
+        object.internal.setParentObjectContainer(container);
+
+        CloudioAttribute<Double> attribute = object.getAttribute("acceleration");
+        attribute.setValue(1.0, 1000L);
+        attribute.setValue(3.0, 1500L);
+        Assert.assertEquals(0, container.updates.size());
+        attribute.setValue(2.0, 2000L);
+        Assert.assertEquals(1, container.updates.size());
+        Assert.assertEquals(2.0, attribute.getValue(), 0.0);
+
+        AttributeUpdate update = container.updates.get(0);
+        Assert.assertEquals(Long.valueOf(2000L), update.getTimestamp());
+        Assert.assertEquals(3.0, update.getValue());
+
+        Map<String, String> fields = new HashMap<String, String>();
+        JsonParser parser = new JsonFactory().createParser(new JsonMessageFormat().serializeAttributeUpdate(update));
+        Assert.assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+        while (parser.nextToken() != JsonToken.END_OBJECT) {
+            String name = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() != JsonToken.END_OBJECT) {
+                    String aggregateName = parser.getCurrentName();
+                    parser.nextToken();
+                    fields.put(name + "." + aggregateName, parser.getText());
+                }
+            } else {
+                fields.put(name, parser.getText());
+            }
+        }
+        Assert.assertEquals("Measure", fields.get("constraint"));
+        Assert.assertEquals("2.0", fields.get("timestamp"));
+        Assert.assertEquals("3.0", fields.get("value"));
+        Assert.assertEquals("1.0", fields.get("aggregate.start"));
+        Assert.assertEquals("2.0", fields.get("aggregate.end"));
+        Assert.assertEquals("2", fields.get("aggregate.count"));
+        Assert.assertEquals("1.0", fields.get("aggregate.min"));
+        Assert.assertEquals("3.0", fields.get("aggregate.max"));
+        Assert.assertEquals("2.0", fields.get("aggregate.mean"));
+    }
+}
@@ -0,0 +1,248 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+public class AttributePublishFilterTest {
+    @Test
+    public void testAbsoluteDeadband() {
+        AttributePublishFilter filter = new AttributePublishFilter();
+        filter.setDeadband(0.5, false);
+
+        Assert.assertTrue(filter.accept(10.0, 0));
+        Assert.assertFalse(filter.accept(10.4, 1));
+        Assert.assertFalse(filter.accept(9.5, 2));
+        Assert.assertTrue(filter.accept(10.6, 3));
+        Assert.assertFalse(filter.accept(10.2, 4));
+        Assert.assertTrue(filter.accept(10.0, 5));
+    }
+
+    @Test
+    public void testPercentDeadband() {
+        AttributePublishFilter filter = new AttributePublishFilter();
+        filter.setDeadband(10, true);
+
+        Assert.assertTrue(filter.accept(200, 0));
+        Assert.assertFalse(filter.accept(219, 1));
+        Assert.assertTrue(filter.accept(221, 2));
+        Assert.assertFalse(filter.accept(200, 3));
+    }
+
+    @Test
+    public void testMinIntervalAndHeartbeat() {
+        AttributePublishFilter filter = new AttributePublishFilter();
+        filter.setDeadband(100, false);
+        filter.setIntervals(1000, 5000);
+
+        Assert.assertTrue(filter.accept(0, 0));
+        Assert.assertFalse(filter.accept(500, 999));
+        Assert.assertTrue(filter.accept(500, 1000));
+        Assert.assertFalse(filter.accept(501, 5999));
+        Assert.assertTrue(filter.accept(501, 6000));
+        Assert.assertTrue(filter.accept("text", 12000));
+        Assert.assertFalse(filter.accept("text", 12500));
+    }
+
+    /**
+     * Sink counting the values the filter sends on its own and recording the timestamps of the heartbeats.
+     */
+    static class CountingSink implements AttributePublishFilter.Sink {
+        int republished = 0;
+        final List<Long> heartbeats = new ArrayList<Long>();
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public synchronized void republish() {
+            republished++;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void heartbeat(long timestamp) {
+            heartbeats.add(timestamp);
+            republish();
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (republished < count && System.currentTimeMillis() < deadline) {
+                wait(10);
+            }
+            Assert.assertEquals(count, republished);
+        }
+    }
+
+    @Test
+    public void testHeldChangeIsSentAfterMinInterval() throws Exception {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+        CountingSink sink = new CountingSink();
+        AttributePublishFilter filter = new AttributePublishFilter();
+        filter.setIntervals(100, 0);
+        filter.start(timer, sink);
+
+        // The last change inside the interval is sent once the interval has expired.
+        long now = System.currentTimeMillis();
+        Assert.assertTrue(filter.accept(false, now));
+        Assert.assertFalse(filter.accept(true, now + 10));
+        Assert.assertEquals(0, sink.republished);
+        sink.await(1);
+
+        // The next change is limited by the interval of the change sent by the timer.
+        Assert.assertFalse(filter.accept(false, now + 150));
+        Assert.assertTrue(filter.accept(true, now + 200));
+        filter.stop();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void testHeartbeatIsSentWithoutChange() throws Exception {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+        CountingSink sink = new CountingSink();
+        AttributePublishFilter filter = new AttributePublishFilter();
+        filter.setIntervals(0, 50);
+        filter.start(timer, sink);
+
+        // The value is sent again on every heartbeat, even if the attribute does not change anymore.
+        long start = System.currentTimeMillis();
+        Assert.assertTrue(filter.accept(1.0, 1000L));
+        sink.await(2);
+        filter.stop();
+        timer.shutdownNow();
+
+        // The heartbeats are stamped with the actual time, not with the timestamp of the unchanged value.
+        synchronized (sink) {
+            Assert.assertTrue(sink.heartbeats.size() >= 2);
+            Assert.assertTrue(sink.heartbeats.get(0) >= start);
+            Assert.assertTrue(sink.heartbeats.get(1) >= sink.heartbeats.get(0) + 50);
+        }
+    }
+
+    @Test
+    public void testFlushSendsHeldChange() throws Exception {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+        CountingSink sink = new CountingSink();
+        AttributePublishFilter filter = new AttributePublishFilter();
+        filter.setDeadband(1, false);
+        filter.setIntervals(3600000, 0);
+        filter.start(timer, sink);
+
+        // A held change that returned into the deadband is not sent.
+        Assert.assertTrue(filter.accept(10.0, 0));
+        Assert.assertFalse(filter.accept(20.0, 1));
+        Assert.assertFalse(filter.accept(10.5, 2));
+        filter.flush();
+        Assert.assertEquals(0, sink.republished);
+
+        Assert.assertFalse(filter.accept(12.0, 3));
+        filter.flush();
+        Assert.assertEquals(1, sink.republished);
+        filter.flush();
+        Assert.assertEquals(1, sink.republished);
+        filter.stop();
+        timer.shutdownNow();
+    }
+
+    @Test(expected = InvalidCloudioAttributeException.class)
+    public void testDeadbandOnlyForNumericAttributes() throws Exception {
+        CloudioAttribute<String> attribute = new CloudioAttribute<String>();
+        attribute.internal.setType(String.class);
+        attribute.setDeadband(1, false);
+    }
+
+    @Test
+    public void testSuppressedChangesInformListeners() throws Exception {
+        final List<Object> published = new ArrayList<Object>();
+        CloudioAttribute<Double> temperature = new CloudioAttribute<Double>();
+        temperature.internal.setType(Double.class);
+        temperature.internal.setConstraint(CloudioAttributeConstraint.Measure);
+        temperature.internal.setName("temperature");
+        temperature.internal.setParent(new CloudioAttributeContainer() {
+            @Override
+            public void attributeHasChangedByEndpoint(CloudioAttribute.InternalAttribute attribute) {
+                published.add(attribute.getValue());
+            }
+
+            @Override
+            public void attributeHasChangedByEndpoint(AttributeUpdate update) {
+                published.add(update.getValue());
+            }
+
+            @Override
+            public void attributeHasChangedByCloud(CloudioAttribute.InternalAttribute attribute) {}
+
+            @Override
+            public boolean isNodeRegisteredWithinEndpoint() {
+                return false;
+            }
+
+            @Override
+            public NamedItemSet<CloudioAttribute.InternalAttribute> getAttributes() {
+                return null;
+            }
+
+            @Override
+            public CloudioObjectContainer getParentObjectContainer() {
+                return null;
+            }
+
+            @Override
+            public void setParentObjectContainer(CloudioObjectContainer objectContainer) {}
+
+            @Override
+            public Uuid getUuid() {
+                return null;
+            }
+
+            @Override
+            public String getName() {
+                return "TEST";
+            }
+
+            @Override
+            public void setName(String name) {}
+        });
+        temperature.setDeadband(0.5, false);
+
+        final List<Object> changes = new ArrayList<Object>();
+        temperature.addListener(new CloudioAttributeListener<Double>() {
+            @Override
+            public void attributeHasChanged(CloudioAttribute<Double> attribute) {
+                changes.add(attribute.getValue());
+            }
+        });
+
+        long timestamp = 0;
+        for (double value: new double[] {20.0, 20.2, 20.4, 21.0}) {
+            temperature.setValue(value, ++timestamp);
+        }
+
+        Assert.assertEquals(4, changes.size());
+        Assert.assertEquals(2, published.size());
+        Assert.assertEquals(20.0, published.get(0));
+        Assert.assertEquals(21.0, published.get(1));
+    }
+
+    @Test
+    public void testBuilderConfiguresFilter() throws Exception {
+        CloudioAdLibObject object = new CloudioAdLibObject.Builder()
+            .attribute("power", Double.class, CloudioAttributeConstraint.Measure)
+            .deadband("power", 10, false)
+            .publishInterval("power", 1000, 60000)
+            .build();
+
+        AttributePublishFilter filter = object.getAttribute("power").internal.getFilter();
+        Assert.assertTrue(filter.hasDeadband());
+        Assert.assertTrue(filter.accept(100.0, 0));
+        Assert.assertFalse(filter.accept(200.0, 500));
+        Assert.assertFalse(filter.accept(105.0, 2000));
+        Assert.assertTrue(filter.accept(105.0, 60000));
+    }
+}
@@ -0,0 +1,132 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AttributeSetDispatcherTest {
+    private CloudioAttribute<Long> createAttribute(String name) throws Exception {
+        CloudioAttribute<Long> attribute = new CloudioAttribute<Long>();
+        attribute.internal.setType(Long.class);
+        attribute.internal.setConstraint(CloudioAttributeConstraint.SetPoint);
+        attribute.internal.setName(name);
+        return attribute;
+    }
+
+    @Test
+    public void testMessagesOfSameAttributeStayOrdered() throws Exception {
+        final Map<CloudioAttribute.InternalAttribute, List<Integer>> received =
+            Collections.synchronizedMap(new HashMap<CloudioAttribute.InternalAttribute, List<Integer>>());
+        AttributeSetDispatcher dispatcher = new AttributeSetDispatcher(4, 1000, new AttributeSetDispatcher.Handler() {
+            @Override
+            public void handle(CloudioAttribute.InternalAttribute attribute, CloudioMessageFormat messageFormat,
+                               byte[] data) {
+                received.get(attribute).add((int)data[0]);
+            }
+        });
+
+        List<CloudioAttribute.InternalAttribute> attributes = new ArrayList<CloudioAttribute.InternalAttribute>();
+        for (int i = 0; i < 8; ++i) {
+            CloudioAttribute.InternalAttribute attribute = createAttribute("attribute" + i).internal;
+            attributes.add(attribute);
+            received.put(attribute, new ArrayList<Integer>());
+        }
+        for (int value = 0; value < 100; ++value) {
+            for (CloudioAttribute.InternalAttribute attribute: attributes) {
+                dispatcher.dispatch(attribute, null, new byte[] {(byte)value});
+            }
+        }
+        dispatcher.close();
+
+        for (CloudioAttribute.InternalAttribute attribute: attributes) {
+            List<Integer> values = received.get(attribute);
+            Assert.assertEquals(100, values.size());
+            for (int value = 0; value < 100; ++value) {
+                Assert.assertEquals(value, (int)values.get(value));
+            }
+        }
+        Assert.assertArrayEquals(new int[4], dispatcher.getQueueDepths());
+    }
+
+    @Test
+    public void testSlowAttributeDoesNotBlockOthers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch othersProcessed = new CountDownLatch(1);
+        final CloudioAttribute.InternalAttribute slow = createAttribute("slow").internal;
+        AttributeSetDispatcher dispatcher = new AttributeSetDispatcher(2, 16, new AttributeSetDispatcher.Handler() {
+            @Override
+            public void handle(CloudioAttribute.InternalAttribute attribute, CloudioMessageFormat messageFormat,
+                               byte[] data) throws Exception {
+                if (attribute == slow) {
+                    release.await();
+                } else {
+                    othersProcessed.countDown();
+                }
+            }
+        });
+
+        dispatcher.dispatch(slow, null, new byte[0]);
+        dispatcher.dispatch(slow, null, new byte[0]);
+
+        // Find an attribute assigned to the other stripe.
+        for (int i = 0; othersProcessed.getCount() > 0 && i < 100; ++i) {
+            dispatcher.dispatch(createAttribute("other" + i).internal, null, new byte[0]);
+            othersProcessed.await(10, TimeUnit.MILLISECONDS);
+        }
+        Assert.assertEquals(0, othersProcessed.getCount());
+
+        release.countDown();
+        dispatcher.close();
+    }
+
+    @Test
+    public void testFullQueueConflatesWithoutBlocking() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        CloudioAttribute.InternalAttribute first = createAttribute("first").internal;
+        CloudioAttribute.InternalAttribute second = createAttribute("second").internal;
+        AttributeSetDispatcher dispatcher = new AttributeSetDispatcher(1, 2, new AttributeSetDispatcher.Handler() {
+            @Override
+            public void handle(CloudioAttribute.InternalAttribute attribute, CloudioMessageFormat messageFormat,
+                               byte[] data) throws Exception {
+                started.countDown();
+                release.await();
+                received.add(attribute.getName() + data[0]);
+            }
+        });
+
+        // One message is processed and two are queued, further messages replace the newest one of their attribute.
+        Assert.assertTrue(dispatcher.dispatch(first, null, new byte[] {0}));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(dispatcher.dispatch(first, null, new byte[] {1}));
+        Assert.assertTrue(dispatcher.dispatch(first, null, new byte[] {2}));
+        Assert.assertTrue(dispatcher.dispatch(first, null, new byte[] {3}));
+        Assert.assertTrue(dispatcher.dispatch(first, null, new byte[] {4}));
+        Assert.assertEquals(2, dispatcher.getConflatedMessages());
+        Assert.assertArrayEquals(new int[] {2}, dispatcher.getQueueDepths());
+
+        // An attribute without a waiting message is queued anyway, so its value is not lost.
+        Assert.assertTrue(dispatcher.dispatch(second, null, new byte[] {5}));
+        Assert.assertTrue(dispatcher.dispatch(second, null, new byte[] {6}));
+        Assert.assertEquals(3, dispatcher.getConflatedMessages());
+        Assert.assertArrayEquals(new int[] {3}, dispatcher.getQueueDepths());
+        Assert.assertEquals(0, dispatcher.getDroppedMessages());
+
+        release.countDown();
+        dispatcher.close();
+        Assert.assertEquals(Arrays.asList("first0", "first1", "first4", "second6"), received);
+
+        // Messages arriving after the dispatcher has been closed are dropped.
+        Assert.assertFalse(dispatcher.dispatch(first, null, new byte[] {7}));
+        Assert.assertEquals(1, dispatcher.getDroppedMessages());
+    }
+}
@@ -0,0 +1,226 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AttributeUpdateBatcherTest {
+    /**
+     * Sink collecting the batches and the threads they were handed over by.
+     */
+    static class CollectingSink implements AttributeUpdateBatcher.Sink {
+        final List<List<AttributeUpdate>> batches =
+            Collections.synchronizedList(new ArrayList<List<AttributeUpdate>>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        final CountDownLatch firstBatch = new CountDownLatch(1);
+
+        @Override
+        public void updatesReady(List<AttributeUpdate> updates) {
+            batches.add(updates);
+            threads.add(Thread.currentThread());
+            firstBatch.countDown();
+        }
+    }
+
+    static class Sensor extends CloudioObject {
+        @Measure
+        public CloudioAttribute<Double> temperature;
+    }
+
+    @Implements("Sensors")
+    static class SensorNode extends CloudioNode {
+        public Sensor sensor;
+    }
+
+    private CloudioAttribute<Long> createAttribute(String name) throws Exception {
+        CloudioAttribute<Long> attribute = new CloudioAttribute<Long>();
+        attribute.internal.setType(Long.class);
+        attribute.internal.setConstraint(CloudioAttributeConstraint.Measure);
+        attribute.internal.setName(name);
+        return attribute;
+    }
+
+    private AttributeUpdate update(CloudioAttribute<Long> attribute, long value) throws Exception {
+        attribute.setValue(value, value + 1);
+        return new AttributeUpdate(attribute.internal);
+    }
+
+    @Test
+    public void testBatchSentWhenWindowExpires() throws Exception {
+        CloudioAttribute<Long> attribute = createAttribute("toto");
+        CollectingSink sink = new CollectingSink();
+        AttributeUpdateBatcher batcher = new AttributeUpdateBatcher(50, 100, sink);
+        try {
+            long start = System.currentTimeMillis();
+            batcher.add(update(attribute, 1));
+            batcher.add(update(attribute, 2));
+
+            // Without further updates, the batch is sent by the batcher's thread once the window has elapsed.
+            Assert.assertTrue(sink.firstBatch.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue(System.currentTimeMillis() - start >= 40);
+            Assert.assertEquals(1, sink.batches.size());
+            Assert.assertEquals(2, sink.batches.get(0).size());
+            Assert.assertEquals(1L, sink.batches.get(0).get(0).getValue());
+            Assert.assertEquals(2L, sink.batches.get(0).get(1).getValue());
+            Assert.assertNotSame(Thread.currentThread(), sink.threads.get(0));
+        } finally {
+            batcher.close();
+        }
+        Assert.assertEquals(1, sink.batches.size());
+    }
+
+    @Test
+    public void testFullBatchSentImmediately() throws Exception {
+        CloudioAttribute<Long> attribute = createAttribute("toto");
+        CollectingSink sink = new CollectingSink();
+        AttributeUpdateBatcher batcher = new AttributeUpdateBatcher(3600000, 3, sink);
+        for (long i = 0; i < 7; ++i) {
+            batcher.add(update(attribute, i));
+        }
+
+        // Full batches are handed over by the thread adding the last update, without waiting for the window.
+        Assert.assertEquals(2, sink.batches.size());
+        for (int i = 0; i < 2; ++i) {
+            Assert.assertEquals(3, sink.batches.get(i).size());
+            Assert.assertSame(Thread.currentThread(), sink.threads.get(i));
+        }
+        Assert.assertEquals(3L, sink.batches.get(1).get(0).getValue());
+
+        batcher.close();
+        Assert.assertEquals(3, sink.batches.size());
+        Assert.assertEquals(6L, sink.batches.get(2).get(0).getValue());
+    }
+
+    @Test
+    public void testPendingBatchSentOnClose() throws Exception {
+        CloudioAttribute<Long> attribute = createAttribute("toto");
+        CollectingSink sink = new CollectingSink();
+        AttributeUpdateBatcher batcher = new AttributeUpdateBatcher(3600000, 100, sink);
+        batcher.add(update(attribute, 1));
+        batcher.add(update(attribute, 2));
+        Assert.assertEquals(0, sink.batches.size());
+
+        batcher.close();
+        Assert.assertEquals(1, sink.batches.size());
+        Assert.assertEquals(2, sink.batches.get(0).size());
+
+        // Updates added after close are not held back anymore.
+        batcher.add(update(attribute, 3));
+        Assert.assertEquals(2, sink.batches.size());
+        Assert.assertEquals(3L, sink.batches.get(1).get(0).getValue());
+    }
+
+    @Test
+    public void testBatchSavedWhileOffline() throws Exception {
+        CloudioLoopbackTransport transport = new CloudioLoopbackTransport();
+        final Map<String, byte[]> messages = new ConcurrentHashMap<String, byte[]>();
+        transport.setCloudListener(new CloudioTransport.Listener() {
+            @Override
+            public void connectionLost(Throwable cause) {}
+
+            @Override
+            public void messageArrived(String topic, byte[] payload) {
+                messages.put(topic, payload);
+            }
+        });
+
+        Properties properties = new Properties();
+        properties.setProperty("ch.hevs.cloudio.endpoint.persistence", "memory");
+        properties.setProperty("ch.hevs.cloudio.endpoint.updateBatchWindow", "3600000");
+        properties.setProperty("ch.hevs.cloudio.endpoint.updateBatchSize", "2");
+        final CountDownLatch online = new CountDownLatch(1);
+        CloudioEndpoint endpoint = new CloudioEndpoint("loopback", properties, new CloudioEndpointListener() {
+            @Override
+            public void endpointIsOnline(CloudioEndpoint endpoint) {
+                online.countDown();
+            }
+
+            @Override
+            public void endpointIsOffline(CloudioEndpoint endpoint) {}
+        }, transport);
+        try {
+            Assert.assertTrue(online.await(5, TimeUnit.SECONDS));
+            SensorNode node = endpoint.addNode("node", SensorNode.class);
+
+            // The batch completed while offline is saved instead of being sent.
+            transport.disconnect();
+            node.sensor.temperature.setValue(21.5, 1000L);
+            node.sensor.temperature.setValue(22.5, 2000L);
+            Assert.assertNull(messages.get("@updates/loopback"));
+
+            // Once the connection is established again, the saved batch is sent as a single message.
+            transport.connect(null, null);
+            transport.dropConnection();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (messages.get("@updates/loopback") == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            String batch = new String(messages.get("@updates/loopback"), "UTF-8");
+            Assert.assertTrue(batch, batch.indexOf("21.5") > 0 && batch.indexOf("22.5") > batch.indexOf("21.5"));
+        } finally {
+            endpoint.close();
+        }
+    }
+
+    @Test
+    public void testUpdatesSavedWithUuidWhileOffline() throws Exception {
+        CloudioLoopbackTransport transport = new CloudioLoopbackTransport();
+        final Map<String, byte[]> messages = new ConcurrentHashMap<String, byte[]>();
+        transport.setCloudListener(new CloudioTransport.Listener() {
+            @Override
+            public void connectionLost(Throwable cause) {}
+
+            @Override
+            public void messageArrived(String topic, byte[] payload) {
+                messages.put(topic, payload);
+            }
+        });
+
+        Properties properties = new Properties();
+        properties.setProperty("ch.hevs.cloudio.endpoint.persistence", "memory");
+        properties.setProperty("ch.hevs.cloudio.endpoint.attributeIds", "true");
+        final CountDownLatch online = new CountDownLatch(1);
+        CloudioEndpoint endpoint = new CloudioEndpoint("loopback", properties, new CloudioEndpointListener() {
+            @Override
+            public void endpointIsOnline(CloudioEndpoint endpoint) {
+                online.countDown();
+            }
+
+            @Override
+            public void endpointIsOffline(CloudioEndpoint endpoint) {}
+        }, transport);
+        try {
+            Assert.assertTrue(online.await(5, TimeUnit.SECONDS));
+            SensorNode node = endpoint.addNode("node", SensorNode.class);
+
+            // Updates sent while online use the identifier of the attribute.
+            node.sensor.temperature.setValue(20.5, 1000L);
+            String update = new String(messages.get("@updates/loopback"), "UTF-8");
+            Assert.assertTrue(update, update.contains("\"id\":0"));
+            messages.clear();
+
+            // The update saved while offline uses the UUID, as the identifiers may differ when it is replayed.
+            transport.disconnect();
+            node.sensor.temperature.setValue(21.5, 2000L);
+            transport.connect(null, null);
+            transport.dropConnection();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (messages.get("@updates/loopback") == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            String saved = new String(messages.get("@updates/loopback"), "UTF-8");
+            Assert.assertTrue(saved, saved.contains("\"uuid\":\"" + node.sensor.temperature.internal.getUuid() + "\""));
+            Assert.assertFalse(saved, saved.contains("\"id\""));
+        } finally {
+            endpoint.close();
+        }
+    }
+}
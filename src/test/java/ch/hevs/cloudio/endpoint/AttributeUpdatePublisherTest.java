@@ -0,0 +1,239 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AttributeUpdatePublisherTest {
+    private CloudioAttribute<Long> createAttribute(String name) throws Exception {
+        CloudioAttribute<Long> attribute = new CloudioAttribute<Long>();
+        attribute.internal.setType(Long.class);
+        attribute.internal.setConstraint(CloudioAttributeConstraint.Measure);
+        attribute.internal.setName(name);
+        return attribute;
+    }
+
+    @Test
+    public void testQueueOrderAndCapacity() throws Exception {
+        CloudioAttribute<Long> attribute = createAttribute("toto");
+        AttributeUpdateQueue queue = new AttributeUpdateQueue(3);
+        Assert.assertEquals(4, queue.capacity());
+        Assert.assertTrue(queue.isEmpty());
+
+        List<AttributeUpdate> updates = new ArrayList<AttributeUpdate>();
+        for (long i = 0; i < 4; ++i) {
+            attribute.setValue(i, i);
+            AttributeUpdate update = new AttributeUpdate(attribute.internal);
+            updates.add(update);
+            Assert.assertTrue(queue.offer(update));
+        }
+        Assert.assertFalse(queue.offer(new AttributeUpdate(attribute.internal)));
+        Assert.assertEquals(4, queue.size());
+
+        for (AttributeUpdate update: updates) {
+            Assert.assertSame(update, queue.poll());
+        }
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testAllUpdatesDeliveredWithBlockPolicy() throws Exception {
+        final int producers = 4;
+        final int updatesPerProducer = 10000;
+        final List<AttributeUpdate> received = Collections.synchronizedList(new ArrayList<AttributeUpdate>());
+        final AttributeUpdatePublisher publisher = new AttributeUpdatePublisher(16,
+            AttributeUpdatePublisher.OverflowPolicy.Block, EnumSet.noneOf(CloudioAttributeConstraint.class),
+            new AttributeUpdatePublisher.Sink() {
+                @Override
+                public boolean updateReady(AttributeUpdate update, boolean mayDefer) {
+                    received.add(update);
+                    return true;
+                }
+            });
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; ++p) {
+            final CloudioAttribute<Long> attribute = createAttribute("attribute" + p);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (long i = 0; i < updatesPerProducer; ++i) {
+                        try {
+                            attribute.setValue(i, i + 1);
+                        } catch (CloudioAttributeConstraintException exception) {
+                            throw new RuntimeException(exception);
+                        }
+                        publisher.publish(attribute.internal);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        publisher.close();
+
+        Assert.assertEquals(producers * updatesPerProducer, received.size());
+
+        // Updates of the same attribute have to be delivered in order.
+        for (int p = 0; p < producers; ++p) {
+            long expected = 0;
+            for (AttributeUpdate update: received) {
+                if (update.getAttribute().getName().equals("attribute" + p)) {
+                    Assert.assertEquals(expected++, update.getValue());
+                }
+            }
+            Assert.assertEquals(updatesPerProducer, expected);
+        }
+    }
+
+    @Test
+    public void testConflatePolicyKeepsLatestValue() throws Exception {
+        final CountDownLatch firstUpdateReceived = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<AttributeUpdate> received = Collections.synchronizedList(new ArrayList<AttributeUpdate>());
+        AttributeUpdatePublisher publisher = new AttributeUpdatePublisher(16,
+            AttributeUpdatePublisher.OverflowPolicy.Conflate, EnumSet.noneOf(CloudioAttributeConstraint.class),
+            new AttributeUpdatePublisher.Sink() {
+                @Override
+                public boolean updateReady(AttributeUpdate update, boolean mayDefer) {
+                    received.add(update);
+                    firstUpdateReceived.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException exception) {
+                        throw new RuntimeException(exception);
+                    }
+                    return true;
+                }
+            });
+
+        CloudioAttribute<Long> attribute = createAttribute("toto");
+        attribute.setValue(0L, 1L);
+        publisher.publish(attribute.internal);
+        Assert.assertTrue(firstUpdateReceived.await(5, TimeUnit.SECONDS));
+
+        // The sender is busy, all these updates should be conflated into a single one.
+        for (long i = 1; i <= 100; ++i) {
+            attribute.setValue(i, i + 1);
+            publisher.publish(attribute.internal);
+        }
+        Assert.assertTrue(publisher.getQueueSize() <= 1);
+
+        release.countDown();
+        publisher.close();
+
+        Assert.assertEquals(2, received.size());
+        Assert.assertEquals(0L, received.get(0).getValue());
+        Assert.assertEquals(100L, received.get(1).getValue());
+        Assert.assertEquals(Long.valueOf(101L), received.get(1).getTimestamp());
+    }
+
+    @Test
+    public void testConflatedConstraintRetriesLatestValueWhileCongested() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<AttributeUpdate> received = Collections.synchronizedList(new ArrayList<AttributeUpdate>());
+        AttributeUpdatePublisher publisher = new AttributeUpdatePublisher(16,
+            AttributeUpdatePublisher.OverflowPolicy.Block, EnumSet.of(CloudioAttributeConstraint.Measure),
+            new AttributeUpdatePublisher.Sink() {
+                @Override
+                public boolean updateReady(AttributeUpdate update, boolean mayDefer) {
+                    attempts.incrementAndGet();
+                    if (mayDefer && release.getCount() > 0) {
+                        return false;
+                    }
+                    received.add(update);
+                    return true;
+                }
+            });
+
+        CloudioAttribute<Long> conflated = createAttribute("conflated");
+        conflated.setValue(0L, 1L);
+        publisher.publish(conflated.internal);
+
+        for (long i = 1; i <= 10; ++i) {
+            conflated.setValue(i, i + 1);
+            publisher.publish(conflated.internal);
+        }
+
+        // Ensure the sender has retried at least once after the last update before the congestion ends.
+        int attemptsAfterUpdates = attempts.get();
+        while (attempts.get() < attemptsAfterUpdates + 2) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        publisher.close();
+
+        Assert.assertEquals(1, received.size());
+        Assert.assertEquals(10L, received.get(0).getValue());
+    }
+
+    @Test
+    public void testAttributeOverridesConflatedConstraints() throws Exception {
+        CloudioAttribute<Long> attribute = createAttribute("toto");
+        attribute.setConflated(false);
+        Assert.assertEquals(Boolean.FALSE, attribute.internal.getConflated());
+
+        final List<AttributeUpdate> received = Collections.synchronizedList(new ArrayList<AttributeUpdate>());
+        AttributeUpdatePublisher publisher = new AttributeUpdatePublisher(16,
+            AttributeUpdatePublisher.OverflowPolicy.Block, EnumSet.of(CloudioAttributeConstraint.Measure),
+            new AttributeUpdatePublisher.Sink() {
+                @Override
+                public boolean updateReady(AttributeUpdate update, boolean mayDefer) {
+                    if (mayDefer) {
+                        return false;
+                    }
+                    received.add(update);
+                    return true;
+                }
+            });
+        for (long i = 0; i < 10; ++i) {
+            attribute.setValue(i, i + 1);
+            publisher.publish(attribute.internal);
+        }
+        publisher.close();
+
+        Assert.assertEquals(10, received.size());
+    }
+
+    @Test
+    public void testPublishAfterClose() throws Exception {
+        CloudioAttribute<Long> attribute = createAttribute("toto");
+        attribute.setConflated(true);
+        CloudioAttribute<Long> other = createAttribute("tata");
+
+        final List<AttributeUpdate> received = Collections.synchronizedList(new ArrayList<AttributeUpdate>());
+        AttributeUpdatePublisher publisher = new AttributeUpdatePublisher(16,
+            AttributeUpdatePublisher.OverflowPolicy.Block, EnumSet.noneOf(CloudioAttributeConstraint.class),
+            new AttributeUpdatePublisher.Sink() {
+                @Override
+                public boolean updateReady(AttributeUpdate update, boolean mayDefer) {
+                    received.add(update);
+                    return true;
+                }
+            });
+        publisher.close();
+
+        // Updates published after close are delivered by the calling thread, conflated ones are not left pending.
+        for (long i = 0; i < 3; ++i) {
+            attribute.setValue(i, i + 1);
+            publisher.publish(attribute.internal);
+            other.setValue(i, i + 1);
+            publisher.publish(other.internal);
+        }
+        Assert.assertEquals(6, received.size());
+        Assert.assertNull(attribute.internal.getPendingUpdate().get());
+        Assert.assertEquals(0, publisher.getQueueSize());
+    }
+}
@@ -428,6 +428,25 @@ public class AttributesTest implements CloudioAttributeContainer, CloudioAttribu
         attribute.setInitialValue(222.65);
     }
 
+    @Test
+    public void testTopicsCachedWhileAttached() throws Exception {
+        CloudioAttribute<Double> attribute = createAttribute(Double.class, CloudioAttributeConstraint.Measure);
+
+        attribute.internal.attach(null, null);
+        Assert.assertEquals("@update/TEST/nodes/TEST/objects/TEST/attributes/toto",
+            attribute.internal.getUpdateTopic());
+        Assert.assertSame(attribute.internal.getUpdateTopic(), attribute.internal.getUpdateTopic());
+        Assert.assertEquals("@set/TEST/nodes/TEST/objects/TEST/attributes/toto", attribute.internal.getSetTopic());
+        Assert.assertSame(attribute.internal.getSetTopic(), attribute.internal.getSetTopic());
+        Assert.assertEquals("PendingUpdate-TEST;nodes;TEST;objects;TEST;attributes;toto-",
+            attribute.internal.getPendingUpdateKeyPrefix());
+
+        attribute.internal.detach();
+        Assert.assertNotSame(attribute.internal.getUpdateTopic(), attribute.internal.getUpdateTopic());
+        Assert.assertEquals("@update/TEST/nodes/TEST/objects/TEST/attributes/toto",
+            attribute.internal.getUpdateTopic());
+    }
+
     @Override
     public void attributeHasChanged(CloudioAttribute attribute) {
         wasListenerBeNotified = true;
@@ -456,6 +475,11 @@ public class AttributesTest implements CloudioAttributeContainer, CloudioAttribu
         }
     }
 
+    @Override
+    public void attributeHasChangedByEndpoint(AttributeUpdate update) {
+        attributeHasChangedByEndpoint(update.getAttribute());
+    }
+
     @Override
     public void attributeHasChangedByCloud(CloudioAttribute.InternalAttribute attribute) {
         wasContainerBeNotifiedCloud = true;
@@ -514,6 +538,9 @@ public class AttributesTest implements CloudioAttributeContainer, CloudioAttribu
             @Override
             public void attributeHasChangedByEndpoint(CloudioAttribute.InternalAttribute attribute) {}
 
+            @Override
+            public void attributeHasChangedByEndpoint(AttributeUpdate update) {}
+
             @Override
             public void attributeHasChangedByCloud(CloudioAttribute.InternalAttribute attribute) {}
 
@@ -543,6 +570,9 @@ public class AttributesTest implements CloudioAttributeContainer, CloudioAttribu
                     @Override
                     public void attributeHasChangedByEndpoint(CloudioAttribute.InternalAttribute attribute) {}
 
+                    @Override
+                    public void attributeHasChangedByEndpoint(AttributeUpdate update) {}
+
                     @Override
                     public void attributeHasChangedByCloud(CloudioAttribute.InternalAttribute attribute) {}
 
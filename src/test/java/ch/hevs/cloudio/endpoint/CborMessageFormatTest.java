@@ -0,0 +1,122 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class CborMessageFormatTest {
+    static class Sensor extends CloudioObject {
+        @Measure
+        public CloudioAttribute<Double> temperature;
+
+        @Measure
+        public CloudioLongAttribute counter;
+
+        @Status
+        public CloudioAttribute<String> state;
+
+        @SetPoint
+        public CloudioAttribute<Integer> target;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> decode(byte[] data) throws Exception {
+        Assert.assertSame(CloudioMessageFormatFactory.massageFormat(data[0]),
+            CloudioMessageFormatFactory.messageFormat("cbor"));
+        return (Map<String, Object>)new CborDecoder(data, 3).readValue();
+    }
+
+    @Test
+    public void testAttributeRoundTrip() throws Exception {
+        Sensor sensor = new Sensor();
+        sensor.temperature.setValue(21.3, 1500000000123L);
+        sensor.counter.setValue(-70000L, 1500000000124L);
+        sensor.state.setValue("\u00e9t\u00e9 \ud83d\ude00", 1500000000125L);
+
+        CborMessageFormat format = new CborMessageFormat();
+        Map<String, Object> temperature = decode(format.serializeAttribute(sensor.temperature.internal));
+        Assert.assertEquals("Number", temperature.get("type"));
+        Assert.assertEquals("Measure", temperature.get("constraint"));
+        Assert.assertEquals(1500000000123L, temperature.get("timestamp"));
+        Assert.assertEquals(21.3, temperature.get("value"));
+
+        Map<String, Object> counter = decode(format.serializeAttributeUpdate(
+            new AttributeUpdate(sensor.counter.internal)));
+        Assert.assertEquals(-70000L, counter.get("value"));
+        Assert.assertEquals(1500000000124L, counter.get("timestamp"));
+
+        Map<String, Object> state = decode(format.serializeAttribute(sensor.state.internal));
+        Assert.assertEquals("\u00e9t\u00e9 \ud83d\ude00", state.get("value"));
+
+        // Attributes without a value do not have a value entry.
+        Map<String, Object> target = decode(format.serializeAttribute(sensor.target.internal));
+        Assert.assertEquals(Arrays.asList("type", "constraint"), Arrays.asList(target.keySet().toArray()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUpdatesAndSize() throws Exception {
+        Sensor sensor = new Sensor();
+        sensor.temperature.setValue(21.5, 1500000000000L);
+        sensor.counter.setValue(12L, 1500000000000L);
+
+        CborMessageFormat format = new CborMessageFormat();
+        List<AttributeUpdate> updates = Arrays.asList(new AttributeUpdate(sensor.temperature.internal),
+            new AttributeUpdate(sensor.counter.internal));
+        List<Object> decoded = (List<Object>)decode(format.serializeAttributeUpdates(updates, true)).get("updates");
+        Assert.assertEquals(2, decoded.size());
+        Assert.assertEquals(sensor.counter.internal.getUuid().toString(),
+            ((Map<String, Object>)decoded.get(1)).get("uuid"));
+        Assert.assertEquals(12L, ((Map<String, Object>)decoded.get(1)).get("value"));
+
+        Assert.assertTrue(format.serializeAttributeUpdates(updates, true).length <
+            new JsonMessageFormat().serializeAttributeUpdates(updates, true).length);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCombineUpdates() throws Exception {
+        Sensor sensor = new Sensor();
+        sensor.temperature.setValue(21.5, 1500000000000L);
+        sensor.counter.setValue(12L, 1500000000000L);
+
+        CborMessageFormat format = new CborMessageFormat();
+        byte[] single = format.serializeAttributeUpdate(new AttributeUpdate(sensor.temperature.internal));
+        byte[] list = format.serializeAttributeUpdates(
+            Arrays.asList(new AttributeUpdate(sensor.counter.internal)), true);
+        List<Object> decoded = (List<Object>)decode(format.combineAttributeUpdates(Arrays.asList("t", null),
+            Arrays.asList(single, list))).get("updates");
+        Assert.assertEquals(2, decoded.size());
+        Map<String, Object> temperature = (Map<String, Object>)decoded.get(0);
+        Assert.assertEquals(Arrays.asList("uuid", "type", "constraint", "timestamp", "value"),
+            Arrays.asList(temperature.keySet().toArray()));
+        Assert.assertEquals("t", temperature.get("uuid"));
+        Assert.assertEquals(21.5, temperature.get("value"));
+        Assert.assertEquals(sensor.counter.internal.getUuid().toString(),
+            ((Map<String, Object>)decoded.get(1)).get("uuid"));
+    }
+
+    @Test
+    public void testDeserialization() throws Exception {
+        Sensor sensor = new Sensor();
+        CborMessageFormat format = new CborMessageFormat();
+
+        // {"timestamp": 1000, "value": 42}
+        format.deserializeAttribute(new byte[] {(byte)0xD9, (byte)0xD9, (byte)0xF7, (byte)0xA2,
+            0x69, 't', 'i', 'm', 'e', 's', 't', 'a', 'm', 'p', 0x19, 0x03, (byte)0xE8,
+            0x65, 'v', 'a', 'l', 'u', 'e', 0x18, 42}, sensor.target.internal);
+        Assert.assertEquals(Integer.valueOf(42), sensor.target.getValue());
+        Assert.assertEquals(Long.valueOf(1000), sensor.target.internal.getTimestamp());
+
+        // Indefinite length map: {"value": 1.0 (half precision), "timestamp": 2000}
+        format.deserializeAttribute(new byte[] {(byte)0xD9, (byte)0xD9, (byte)0xF7, (byte)0xBF,
+            0x65, 'v', 'a', 'l', 'u', 'e', (byte)0xF9, 0x3C, 0x00,
+            0x69, 't', 'i', 'm', 'e', 's', 't', 'a', 'm', 'p', 0x19, 0x07, (byte)0xD0, (byte)0xFF},
+            sensor.target.internal);
+        Assert.assertEquals(Long.valueOf(2000), sensor.target.internal.getTimestamp());
+        Assert.assertEquals(Integer.valueOf(1), sensor.target.getValue());
+    }
+}
@@ -0,0 +1,71 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CloudioClockTest {
+    static class Sensor extends CloudioObject {
+        @Measure
+        public CloudioAttribute<Double> temperature;
+
+        @Measure
+        public CloudioDoubleAttribute humidity;
+    }
+
+    @Test
+    public void testInjectedClock() throws Exception {
+        CloudioClock clock = new CloudioClock() {
+            private long time = 1000;
+
+            @Override
+            public long currentTimeMillis() {
+                return time++;
+            }
+        };
+
+        Sensor sensor = new Sensor();
+        sensor.temperature.internal.setClock(clock);
+        sensor.humidity.internal.setClock(clock);
+
+        sensor.temperature.setValue(20.0);
+        Assert.assertEquals(Long.valueOf(1000), sensor.temperature.internal.getTimestamp());
+        sensor.temperature.setStringValue("21.0");
+        Assert.assertEquals(Long.valueOf(1001), sensor.temperature.internal.getTimestamp());
+        sensor.humidity.setValue(40.0);
+        Assert.assertEquals(1002, sensor.humidity.internal.getTimestampMillis());
+
+        // Resetting the clock selects the wall clock again.
+        sensor.temperature.internal.setClock(null);
+        Assert.assertTrue(sensor.temperature.internal.getClock() instanceof CloudioWallClock);
+    }
+
+    @Test
+    public void testCoarseClockAdvances() throws Exception {
+        CloudioCoarseClock clock = new CloudioCoarseClock(1);
+        try {
+            long start = clock.currentTimeMillis();
+            Assert.assertTrue(Math.abs(System.currentTimeMillis() - start) < 1000);
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (clock.currentTimeMillis() == start && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            Assert.assertTrue(clock.currentTimeMillis() > start);
+        } finally {
+            clock.close();
+        }
+    }
+
+    @Test
+    public void testMicrosecondClockIsMonotonic() {
+        CloudioMicrosecondClock clock = new CloudioMicrosecondClock();
+        Assert.assertTrue(Math.abs(System.currentTimeMillis() - clock.currentTimeMillis()) < 1000);
+
+        long previous = clock.currentTimeMicros();
+        for (int i = 0; i < 1000; ++i) {
+            long now = clock.currentTimeMicros();
+            Assert.assertTrue(now >= previous);
+            previous = now;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class CloudioLoopbackTransportTest {
+    static class Sensor extends CloudioObject {
+        @Measure
+        public CloudioAttribute<Double> temperature;
+
+        @SetPoint
+        public CloudioAttribute<Integer> target;
+    }
+
+    @Implements("Sensors")
+    static class SensorNode extends CloudioNode {
+        public Sensor sensor;
+    }
+
+    static class Cloud implements CloudioTransport.Listener {
+        final Map<String, byte[]> messages = new ConcurrentHashMap<String, byte[]>();
+
+        @Override
+        public void connectionLost(Throwable cause) {}
+
+        @Override
+        public void messageArrived(String topic, byte[] payload) {
+            messages.put(topic, payload);
+        }
+    }
+
+    private static CloudioEndpoint createEndpoint(CloudioLoopbackTransport transport) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("ch.hevs.cloudio.endpoint.persistence", "memory");
+        final CountDownLatch online = new CountDownLatch(1);
+        CloudioEndpoint endpoint = new CloudioEndpoint("loopback", properties, new CloudioEndpointListener() {
+            @Override
+            public void endpointIsOnline(CloudioEndpoint endpoint) {
+                online.countDown();
+            }
+
+            @Override
+            public void endpointIsOffline(CloudioEndpoint endpoint) {}
+        }, transport);
+        Assert.assertTrue(online.await(5, TimeUnit.SECONDS));
+        return endpoint;
+    }
+
+    @Test
+    public void testTopicFilters() {
+        Assert.assertTrue(CloudioLoopbackTransport.matches("@set/e/#", "@set/e/nodes/n/objects/o/attributes/a"));
+        Assert.assertTrue(CloudioLoopbackTransport.matches("@set/+/nodes", "@set/e/nodes"));
+        Assert.assertFalse(CloudioLoopbackTransport.matches("@set/+/nodes", "@set/e/nodes/n"));
+        Assert.assertFalse(CloudioLoopbackTransport.matches("@set/e/#", "@update/e/nodes"));
+        Assert.assertTrue(CloudioLoopbackTransport.matches("@online/e", "@online/e"));
+    }
+
+    @Test
+    public void testEndpointWithoutBroker() throws Exception {
+        CloudioLoopbackTransport transport = new CloudioLoopbackTransport();
+        Cloud cloud = new Cloud();
+        transport.setCloudListener(cloud);
+        CloudioEndpoint endpoint = createEndpoint(transport);
+        try {
+            Assert.assertNotNull(cloud.messages.get("@online/loopback"));
+
+            SensorNode node = endpoint.addNode("node", SensorNode.class);
+            Assert.assertNotNull(cloud.messages.get("@nodeAdded/loopback/nodes/node"));
+
+            node.sensor.temperature.setValue(21.5, 1000L);
+            Assert.assertEquals("{\"type\":\"Number\",\"constraint\":\"Measure\",\"timestamp\":1.0,\"value\":21.5}",
+                new String(cloud.messages.get("@update/loopback/nodes/node/objects/sensor/attributes/temperature"),
+                    "UTF-8"));
+            Assert.assertEquals(3, transport.getPublishedMessages());
+
+            // Messages from the cloud are routed to the attribute.
+            Assert.assertTrue(transport.inject("@set/loopback/nodes/node/objects/sensor/attributes/target",
+                "{\"timestamp\":2.0,\"value\":42}".getBytes("UTF-8")));
+            Assert.assertEquals(Integer.valueOf(42), node.sensor.target.getValue());
+            Assert.assertFalse(transport.inject("@other/loopback", "{}".getBytes("UTF-8")));
+
+            // If the connection is lost, the broker announces the death of the endpoint using the last will.
+            transport.dropConnection();
+            Assert.assertNotNull(cloud.messages.get("@offline/loopback"));
+        } finally {
+            endpoint.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class CodecMessageFormatTest {
+    /**
+     * Codec using Java serialization, whose streams start with 0xAC 0xED.
+     */
+    static class SerializationCodec implements CloudioMessageCodec {
+        @Override
+        public String getName() {
+            return "java";
+        }
+
+        @Override
+        public int[] getIdentifiers() {
+            return new int[] {0xAC};
+        }
+
+        @Override
+        public byte[] encode(Object message) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream stream = new ObjectOutputStream(bytes);
+                stream.writeObject(message);
+                stream.close();
+                return bytes.toByteArray();
+            } catch (IOException exception) {
+                throw new IllegalStateException(exception);
+            }
+        }
+
+        @Override
+        public Object decode(byte[] data) throws IOException {
+            try {
+                return new ObjectInputStream(new ByteArrayInputStream(data)).readObject();
+            } catch (ClassNotFoundException exception) {
+                throw new IOException(exception);
+            }
+        }
+    }
+
+    static class Sensor extends CloudioObject {
+        @Measure
+        public CloudioLongAttribute counter;
+
+        @SetPoint
+        public CloudioAttribute<Double> target;
+    }
+
+    @Implements("Sensors")
+    static class SensorNode extends CloudioNode {
+        public Sensor sensor;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNodeRoundTrip() throws Exception {
+        SensorNode node = new SensorNode();
+        node.sensor.counter.setValue(3, 1500000000000L);
+        node.sensor.target.internal.setValueFromCloud(0.1, 1500000000001L);
+
+        CodecMessageFormat format = new CodecMessageFormat(new SerializationCodec());
+        Assert.assertEquals(0xAC, format.getIdentifier());
+        Assert.assertEquals("java", format.getName());
+        byte[] data = format.serializeNode(node.internal);
+        Assert.assertEquals(0xAC, data[0] & 0xFF);
+
+        Map<String, Object> decoded = (Map<String, Object>)new SerializationCodec().decode(data);
+        Assert.assertEquals(Arrays.<Object>asList("Sensors"), decoded.get("implements"));
+        Map<String, Object> sensor = (Map<String, Object>)((Map<String, Object>)decoded.get("objects")).get("sensor");
+        Map<String, Object> attributes = (Map<String, Object>)sensor.get("attributes");
+        Map<String, Object> counter = (Map<String, Object>)attributes.get("counter");
+        Assert.assertEquals("Integer", counter.get("type"));
+        Assert.assertEquals(3L, counter.get("value"));
+        Assert.assertEquals(1500000000000L, counter.get("timestamp"));
+        Assert.assertEquals(0.1, ((Map<String, Object>)attributes.get("target")).get("value"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCombineAndDeserialize() throws Exception {
+        Sensor sensor = new Sensor();
+        CodecMessageFormat format = new CodecMessageFormat(new SerializationCodec());
+        sensor.counter.setValue(1, 1000L);
+        byte[] first = format.serializeAttribute(sensor.counter.internal);
+        sensor.counter.setValue(2, 2000L);
+        byte[] second = format.serializeAttribute(sensor.counter.internal);
+
+        byte[] combined = format.combineAttributeUpdates(Arrays.asList("a", "b"), Arrays.asList(first, second));
+        List<Object> updates = (List<Object>)((Map<String, Object>)new SerializationCodec().decode(combined))
+            .get("updates");
+        Assert.assertEquals(2, updates.size());
+        Assert.assertEquals("b", ((Map<String, Object>)updates.get(1)).get("uuid"));
+        Assert.assertEquals(2L, ((Map<String, Object>)updates.get(1)).get("value"));
+
+        format.deserializeAttribute(first, sensor.target.internal);
+        Assert.assertEquals(Double.valueOf(1), sensor.target.getValue());
+        Assert.assertEquals(Long.valueOf(1000), sensor.target.internal.getTimestamp());
+    }
+}
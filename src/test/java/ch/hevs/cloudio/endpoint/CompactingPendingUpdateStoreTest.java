@@ -0,0 +1,128 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.Properties;
+
+public class CompactingPendingUpdateStoreTest {
+    static class Sensor extends CloudioObject {
+        @Measure
+        public CloudioAttribute<Double> temperature;
+
+        @Status
+        public CloudioAttribute<String> state;
+    }
+
+    @Implements("Sensors")
+    static class SensorNode extends CloudioNode {
+        public Sensor sensor;
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PendingUpdateRing open(File file) throws Exception {
+        return new PendingUpdateRing(file, 4096, PendingUpdateRing.OverflowPolicy.DROP_NEWEST, "@updates/e");
+    }
+
+    @Test
+    public void testKeepLast() throws Exception {
+        // The attributes need to be part of an endpoint in order to have distinct topics.
+        Properties properties = new Properties();
+        properties.setProperty("ch.hevs.cloudio.endpoint.persistence", "none");
+        CloudioEndpoint endpoint = new CloudioEndpoint("compaction", properties, null, new CloudioLoopbackTransport());
+        Sensor sensor = endpoint.addNode("node", SensorNode.class).sensor;
+        endpoint.close();
+
+        CompactingPendingUpdateStore store = new CompactingPendingUpdateStore(open(folder.newFile()),
+            EnumSet.of(CloudioAttributeConstraint.Status), 0);
+        store.append(sensor.state.internal, new byte[] {0});
+        store.append(sensor.temperature.internal, new byte[] {1});
+        store.append(sensor.state.internal, new byte[] {2});
+        store.append(sensor.temperature.internal, new byte[] {3});
+        store.append(null, new byte[] {4});
+        store.append(sensor.state.internal, new byte[] {5});
+
+        // Only the latest state is read, all measures are kept.
+        for (int i = 0; i < 2; ++i) {
+            Assert.assertEquals(1, store.next().data[0]);
+            Assert.assertEquals(3, store.next().data[0]);
+            Assert.assertEquals(4, store.next().data[0]);
+            Assert.assertEquals(5, store.next().data[0]);
+            Assert.assertNull(store.next());
+            store.rewind();
+        }
+        Assert.assertEquals(4, store.getSkippedMessages());
+
+        // Skipped updates are removed together with the following messages.
+        store.next();
+        PendingUpdateStore.Entry entry = store.next();
+        store.acknowledge(entry.sequence);
+        store.rewind();
+        Assert.assertEquals(4, store.next().data[0]);
+        Assert.assertEquals(5, store.next().data[0]);
+        Assert.assertNull(store.next());
+        store.close();
+    }
+
+    @Test
+    public void testKeepLastWithOverflowingRing() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("ch.hevs.cloudio.endpoint.persistence", "none");
+        CloudioEndpoint endpoint = new CloudioEndpoint("compaction", properties, null, new CloudioLoopbackTransport());
+        Sensor sensor = endpoint.addNode("node", SensorNode.class).sensor;
+        endpoint.close();
+
+        // The ring only holds the newest updates, the older ones are overwritten or dropped.
+        for (PendingUpdateRing.OverflowPolicy policy: PendingUpdateRing.OverflowPolicy.values()) {
+            PendingUpdateRing ring = new PendingUpdateRing(folder.newFile(), 200, policy, "@updates/e");
+            CompactingPendingUpdateStore store = new CompactingPendingUpdateStore(ring,
+                EnumSet.of(CloudioAttributeConstraint.Status), 0);
+            for (int i = 0; i < 10; ++i) {
+                store.append(sensor.state.internal, new byte[] {(byte)i});
+            }
+
+            // The update the ring has kept is read, whichever it is.
+            PendingUpdateStore.Entry entry = store.next();
+            Assert.assertNotNull(policy.toString(), entry);
+            Assert.assertEquals(sensor.state.internal.getUpdateTopic(), entry.topic);
+            Assert.assertNull(store.next());
+            store.close();
+        }
+    }
+
+    @Test
+    public void testDownsample() throws Exception {
+        Sensor sensor = new Sensor();
+        File file = folder.newFile();
+        CompactingPendingUpdateStore store = new CompactingPendingUpdateStore(open(file),
+            EnumSet.noneOf(CloudioAttributeConstraint.class), 3600000);
+        for (int i = 0; i < 5; ++i) {
+            store.append(sensor.temperature.internal, new byte[] {(byte)i});
+        }
+        store.append(sensor.state.internal, new byte[] {10});
+
+        // Measures are held back until the end of the interval, other updates are saved immediately.
+        Assert.assertEquals(4, store.getSkippedMessages());
+        Assert.assertEquals(10, store.next().data[0]);
+
+        // Once everything else has been read, the held back measures are saved and read in order.
+        Assert.assertEquals(4, store.next().data[0]);
+        Assert.assertNull(store.next());
+
+        // The latest measure is saved on close.
+        store.append(sensor.temperature.internal, new byte[] {5});
+        store.close();
+        PendingUpdateRing ring = open(file);
+        ring.next();
+        ring.next();
+        Assert.assertEquals(5, ring.next().data[0]);
+        Assert.assertNull(ring.next());
+        ring.close();
+    }
+}
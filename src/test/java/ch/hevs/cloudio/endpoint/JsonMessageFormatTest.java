@@ -0,0 +1,199 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class JsonMessageFormatTest {
+    static class Sensor extends CloudioObject {
+        @Measure
+        public CloudioAttribute<Double> temperature;
+
+        @Status
+        public CloudioAttribute<String> state;
+
+        @Parameter
+        public CloudioAttribute<Integer> count;
+
+        @SetPoint
+        public CloudioDoubleAttribute target;
+    }
+
+    @Test
+    public void testReusedContextProducesIndependentMessages() throws Exception {
+        Sensor sensor = new Sensor();
+        sensor.temperature.setValue(21.5, 1500L);
+        sensor.state.setValue("ok", 2000L);
+        sensor.count.setInitialValue(3);
+
+        JsonMessageFormat format = new JsonMessageFormat();
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertEquals("{\"type\":\"Number\",\"constraint\":\"Measure\",\"timestamp\":1.5,\"value\":21.5}",
+                new String(format.serializeAttribute(sensor.temperature.internal), "UTF-8"));
+            Assert.assertEquals("{\"type\":\"String\",\"constraint\":\"Status\",\"timestamp\":2.0,\"value\":\"ok\"}",
+                new String(format.serializeAttributeUpdate(new AttributeUpdate(sensor.state.internal)), "UTF-8"));
+            Assert.assertEquals("{\"type\":\"Integer\",\"constraint\":\"Parameter\",\"value\":3}",
+                new String(format.serializeAttribute(sensor.count.internal), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void testConcurrentSerialization() throws Exception {
+        final Sensor sensor = new Sensor();
+        sensor.temperature.setValue(21.5, 1500L);
+        final JsonMessageFormat format = new JsonMessageFormat();
+        final String expected = new String(format.serializeAttribute(sensor.temperature.internal), "UTF-8");
+        final boolean[] failed = new boolean[1];
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 10000; ++i) {
+                            if (!expected.equals(new String(format.serializeAttribute(sensor.temperature.internal),
+                                "UTF-8"))) {
+                                failed[0] = true;
+                            }
+                        }
+                    } catch (Exception exception) {
+                        failed[0] = true;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        Assert.assertFalse(failed[0]);
+    }
+
+    @Test
+    public void testLeanFormat() throws Exception {
+        Sensor sensor = new Sensor();
+        sensor.temperature.setValue(21.5, 1500L);
+        sensor.state.setValue("ok", 2000L);
+
+        JsonLeanMessageFormat format = new JsonLeanMessageFormat();
+        Assert.assertEquals("[1.5,21.5]", new String(format.serializeAttribute(sensor.temperature.internal), "UTF-8"));
+        Assert.assertEquals("[2.0,\"ok\"]",
+            new String(format.serializeAttributeUpdate(new AttributeUpdate(sensor.state.internal)), "UTF-8"));
+        Assert.assertEquals("[null,null]", new String(format.serializeAttribute(sensor.count.internal), "UTF-8"));
+
+        // The data model still uses the full format.
+        Assert.assertEquals('{', format.serializeNode(new CloudioNode() {}.internal)[0]);
+    }
+
+    @Test
+    public void testLeanFormatDeserialization() throws Exception {
+        Sensor sensor = new Sensor();
+        CloudioMessageFormat format = CloudioMessageFormatFactory.massageFormat('[');
+        Assert.assertTrue(format instanceof JsonLeanMessageFormat);
+
+        format.deserializeAttribute("[3.25,42.5]".getBytes("UTF-8"), sensor.target.internal);
+        Assert.assertEquals(42.5, sensor.target.getDoubleValue(), 0.0);
+        Assert.assertEquals(3250, sensor.target.internal.getTimestampMillis());
+
+        // Older values are ignored.
+        format.deserializeAttribute("[3.0,1.0]".getBytes("UTF-8"), sensor.target.internal);
+        Assert.assertEquals(42.5, sensor.target.getDoubleValue(), 0.0);
+    }
+
+    @Test
+    public void testDeserializationUsesTypedCodecs() throws Exception {
+        Sensor sensor = new Sensor();
+        JsonMessageFormat format = new JsonMessageFormat();
+
+        // Integer attributes receive Integer values, not Long.
+        format.deserializeAttribute("{\"timestamp\":1.0,\"value\":7}".getBytes("UTF-8"), sensor.count.internal);
+        Assert.assertEquals(Integer.valueOf(7), sensor.count.getValue());
+
+        // Values sent as strings are still parsed, unknown fields are skipped.
+        format.deserializeAttribute("{\"value\":\"0x10\",\"meta\":{\"a\":[1]},\"timestamp\":2.0}".getBytes("UTF-8"),
+            sensor.count.internal);
+        Assert.assertEquals(Integer.valueOf(16), sensor.count.getValue());
+        Assert.assertEquals(Long.valueOf(2000), sensor.count.internal.getTimestamp());
+
+        format.deserializeAttribute("{\"timestamp\":3.5,\"value\":12}".getBytes("UTF-8"), sensor.target.internal);
+        Assert.assertEquals(12.0, sensor.target.getDoubleValue(), 0.0);
+    }
+
+    @Test
+    public void testCombineUpdates() throws Exception {
+        JsonMessageFormat format = new JsonMessageFormat();
+        JsonLeanMessageFormat leanFormat = new JsonLeanMessageFormat();
+
+        // The messages are parsed, so brackets inside strings and identifiers of other runs do not matter.
+        byte[] single = "{\"id\":3,\"timestamp\":1.0,\"value\":\"]}\"}".getBytes("UTF-8");
+        byte[] list = " {\"updates\":[{\"uuid\":\"b\",\"value\":[1,{\"c\":2}]}]}\n".getBytes("UTF-8");
+        Assert.assertEquals("{\"updates\":[{\"uuid\":\"a\",\"timestamp\":1.0,\"value\":\"]}\"}," +
+            "{\"uuid\":\"b\",\"value\":[1,{\"c\":2}]}]}", new String(format.combineAttributeUpdates(
+                Arrays.asList("a", null), Arrays.asList(single, list)), "UTF-8"));
+        Assert.assertEquals("[[\"a\",1.0,\"[x]\"],[\"b\",2.0,3]]", new String(leanFormat.combineAttributeUpdates(
+            Arrays.asList("a", null), Arrays.asList("[1.0,\"[x]\"]".getBytes("UTF-8"),
+                "[[\"b\",2.0,3]]".getBytes("UTF-8"))), "UTF-8"));
+
+        // Messages which are not the format's own output are not combined.
+        Assert.assertNull(format.combineAttributeUpdates(Arrays.asList("a", null),
+            Arrays.asList("{\"value\":1}".getBytes("UTF-8"), "{\"other\":[],\"updates\":[]}".getBytes("UTF-8"))));
+        Assert.assertNull(format.combineAttributeUpdates(Arrays.asList("a", "b"),
+            Arrays.asList("{\"value\":1}".getBytes("UTF-8"), "{\"value\":2}{}".getBytes("UTF-8"))));
+        Assert.assertNull(leanFormat.combineAttributeUpdates(Arrays.asList("a", "b"),
+            Arrays.asList("[1.0,2]".getBytes("UTF-8"), "{\"value\":2}".getBytes("UTF-8"))));
+    }
+
+    @Test(expected = IOException.class)
+    public void testDeserializationFailsWithoutType() throws Exception {
+        CloudioAttribute<Long> attribute = new CloudioAttribute<Long>();
+        new JsonMessageFormat().deserializeAttribute("{\"timestamp\":1.0,\"value\":7}".getBytes("UTF-8"),
+            attribute.internal);
+    }
+
+    @Test
+    public void testFormatRegistry() throws Exception {
+        Assert.assertTrue(CloudioMessageFormatFactory.massageFormat('{') instanceof JsonMessageFormat);
+        Assert.assertTrue(CloudioMessageFormatFactory.massageFormat('z') instanceof JsonZipMessageFormat);
+        Assert.assertSame(CloudioMessageFormatFactory.massageFormat('['),
+            CloudioMessageFormatFactory.messageFormat("json+lean"));
+        Assert.assertSame(CloudioMessageFormatFactory.massageFormat('{'),
+            CloudioMessageFormatFactory.messageFormat("json"));
+        Assert.assertNull(CloudioMessageFormatFactory.massageFormat((byte)0xA5));
+        Assert.assertNull(CloudioMessageFormatFactory.messageFormat("xml"));
+    }
+
+    @Test
+    public void testAttributeIds() throws Exception {
+        Sensor sensor = new Sensor();
+        sensor.temperature.setValue(21.5, 1500L);
+        sensor.state.setValue("ok", 2000L);
+        List<AttributeUpdate> updates = Arrays.asList(new AttributeUpdate(sensor.temperature.internal),
+            new AttributeUpdate(sensor.state.internal));
+        JsonMessageFormat format = new JsonMessageFormat();
+        JsonLeanMessageFormat leanFormat = new JsonLeanMessageFormat();
+        int size = format.serializeAttributeUpdates(updates, true).length;
+
+        sensor.temperature.internal.setId(0);
+        sensor.state.internal.setId(1);
+        Assert.assertEquals("{\"id\":0,\"type\":\"Number\",\"constraint\":\"Measure\",\"timestamp\":1.5," +
+            "\"value\":21.5}", new String(format.serializeAttribute(sensor.temperature.internal), "UTF-8"));
+        Assert.assertEquals("{\"updates\":[{\"id\":0,\"timestamp\":1.5,\"value\":21.5}," +
+            "{\"id\":1,\"timestamp\":2.0,\"value\":\"ok\"}]}",
+            new String(format.serializeAttributeUpdates(updates, true), "UTF-8"));
+        Assert.assertTrue(format.serializeAttributeUpdates(updates, true).length < size);
+        Assert.assertEquals("[[0,1.5,21.5],[1,2.0,\"ok\"]]",
+            new String(leanFormat.serializeAttributeUpdates(updates, true), "UTF-8"));
+
+        // Messages saved while offline reference the attributes by UUID, as the identifiers change between runs.
+        Assert.assertEquals(size, format.serializeAttributeUpdates(updates, false).length);
+        Assert.assertFalse(new String(leanFormat.serializeAttributeUpdates(updates, false), "UTF-8").contains("[0,"));
+
+        // Detached attributes do not have an identifier anymore.
+        sensor.temperature.internal.detach();
+        Assert.assertEquals(CloudioAttribute.InternalAttribute.NO_ID, sensor.temperature.internal.getId());
+    }
+}
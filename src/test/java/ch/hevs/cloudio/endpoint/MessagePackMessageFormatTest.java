@@ -0,0 +1,114 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+public class MessagePackMessageFormatTest {
+    static class Sensor extends CloudioObject {
+        @Measure
+        public CloudioLongAttribute counter;
+
+        @SetPoint
+        public CloudioAttribute<Double> target;
+    }
+
+    @Implements("Sensors")
+    static class SensorNode extends CloudioNode {
+        public Sensor sensor;
+    }
+
+    @Test
+    public void testIntegerEncoding() throws Exception {
+        long[] values = {0, 1, 127, 128, 255, 256, 65535, 65536, 0xFFFFFFFFL, 0x100000000L, Long.MAX_VALUE,
+            -1, -32, -33, -128, -129, -32768, -32769, Integer.MIN_VALUE, Integer.MIN_VALUE - 1L, Long.MIN_VALUE};
+        int[] sizes = {1, 1, 1, 2, 2, 3, 3, 5, 5, 9, 9, 1, 1, 2, 2, 3, 3, 5, 5, 9, 9};
+        for (int i = 0; i < values.length; ++i) {
+            MessagePackEncoder encoder = new MessagePackEncoder();
+            encoder.begin();
+            encoder.writeLong(values[i]);
+            byte[] data = encoder.toByteArray();
+            Assert.assertEquals("Size of " + values[i], sizes[i], data.length);
+            Assert.assertEquals(values[i], new MessagePackDecoder(data, 0).readValue());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNodeRoundTrip() throws Exception {
+        SensorNode node = new SensorNode();
+        node.sensor.counter.setValue(3, 1500000000000L);
+        node.sensor.target.internal.setValueFromCloud(0.1, 1500000000001L);
+
+        MessagePackMessageFormat format = new MessagePackMessageFormat();
+        byte[] data = format.serializeNode(node.internal);
+        Assert.assertEquals(0x82, data[0] & 0xFF);
+        Assert.assertSame(format.getClass(), CloudioMessageFormatFactory.massageFormat(data[0]).getClass());
+        Assert.assertSame(CloudioMessageFormatFactory.massageFormat(data[0]),
+            CloudioMessageFormatFactory.messageFormat("msgpack"));
+
+        Map<String, Object> decoded = (Map<String, Object>)new MessagePackDecoder(data, 0).readValue();
+        Assert.assertEquals(Arrays.<Object>asList("Sensors"), decoded.get("implements"));
+        Map<String, Object> sensor = (Map<String, Object>)((Map<String, Object>)decoded.get("objects")).get("sensor");
+        Map<String, Object> attributes = (Map<String, Object>)sensor.get("attributes");
+        Map<String, Object> counter = (Map<String, Object>)attributes.get("counter");
+        Assert.assertEquals("Integer", counter.get("type"));
+        Assert.assertEquals(3L, counter.get("value"));
+        Assert.assertEquals(1500000000000L, counter.get("timestamp"));
+        Assert.assertEquals(0.1, ((Map<String, Object>)attributes.get("target")).get("value"));
+
+        // A small counter update fits into a few bytes compared to JSON.
+        AttributeUpdate update = new AttributeUpdate(node.sensor.counter.internal);
+        Assert.assertTrue(format.serializeAttributeUpdate(update).length <
+            new JsonMessageFormat().serializeAttributeUpdate(update).length);
+    }
+
+    @Test
+    public void testRegisteredForAllMapHeaders() throws Exception {
+        CloudioMessageFormat format = CloudioMessageFormatFactory.messageFormat("msgpack");
+        for (int identifier = 0x80; identifier <= 0x8F; ++identifier) {
+            Assert.assertSame(format, CloudioMessageFormatFactory.massageFormat(identifier));
+        }
+        Assert.assertSame(format, CloudioMessageFormatFactory.massageFormat(0xDE));
+        Assert.assertSame(format, CloudioMessageFormatFactory.massageFormat(0xDF));
+        Assert.assertNull(CloudioMessageFormatFactory.massageFormat(0xC1));
+
+        // A large update message uses a map 16 header and is still decoded as MessagePack.
+        MessagePackEncoder encoder = new MessagePackEncoder();
+        encoder.begin();
+        encoder.writeMapHeader(16);
+        for (int i = 0; i < 16; ++i) {
+            encoder.writeString("k" + i);
+            encoder.writeLong(i);
+        }
+        byte[] data = encoder.toByteArray();
+        Assert.assertEquals(0xDE, data[0] & 0xFF);
+        Assert.assertSame(format, CloudioMessageFormatFactory.massageFormat(data[0]));
+    }
+
+    @Test
+    public void testDeserialization() throws Exception {
+        Sensor sensor = new Sensor();
+        MessagePackMessageFormat format = new MessagePackMessageFormat();
+        MessagePackEncoder encoder = new MessagePackEncoder();
+        encoder.begin();
+        encoder.writeMapHeader(2);
+        encoder.writeString("timestamp");
+        encoder.writeLong(1000);
+        encoder.writeString("value");
+        encoder.writeLong(21);
+        format.deserializeAttribute(encoder.toByteArray(), sensor.target.internal);
+        Assert.assertEquals(Double.valueOf(21), sensor.target.getValue());
+        Assert.assertEquals(Long.valueOf(1000), sensor.target.internal.getTimestamp());
+
+        try {
+            format.deserializeAttribute(new byte[] {(byte)0xC1}, sensor.target.internal);
+            Assert.fail();
+        } catch (IOException exception) {
+            // Expected, the message does not start with a map header.
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+public class NamedItemSetTest {
+    static class Item implements NamedItem {
+        private String name;
+
+        Item(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    @Test
+    public void testInsertionOrderAndLookup() throws Exception {
+        NamedItemSet<Item> set = new NamedItemSet<Item>();
+        Assert.assertTrue(set.isEmpty());
+
+        List<Item> items = new ArrayList<Item>();
+        for (int i = 0; i < 100; ++i) {
+            Item item = new Item("item" + (99 - i));
+            items.add(item);
+            set.addItem(item);
+        }
+
+        Assert.assertFalse(set.isEmpty());
+        Assert.assertEquals(items, set.toList());
+        int i = 0;
+        for (Item item: set) {
+            Assert.assertSame(items.get(i++), item);
+        }
+        for (Item item: items) {
+            Assert.assertSame(item, set.getItem(item.getName()));
+            Assert.assertTrue(set.contains(item));
+        }
+        Assert.assertNull(set.getItem("missing"));
+        Assert.assertFalse(set.contains(new Item("item0")));
+    }
+
+    @Test(expected = DuplicateNamedItemException.class)
+    public void testDuplicateName() throws Exception {
+        NamedItemSet<Item> set = new NamedItemSet<Item>();
+        set.addItem(new Item("toto"));
+        set.addItem(new Item("toto"));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        NamedItemSet<Item> set = new NamedItemSet<Item>();
+        Item a = new Item("a");
+        Item b = new Item("b");
+        Item c = new Item("c");
+        set.addItem(a);
+        set.addItem(b);
+        set.addItem(c);
+        List<Item> view = set.toList();
+
+        set.removeItem(b);
+        Assert.assertNull(set.getItem("b"));
+        Assert.assertSame(c, set.getItem("c"));
+        Assert.assertEquals(2, view.size());
+        Assert.assertSame(a, view.get(0));
+        Assert.assertSame(c, view.get(1));
+
+        // Removing an other item with the same name must not remove the item of the set.
+        set.removeItem(new Item("a"));
+        Assert.assertSame(a, set.getItem("a"));
+
+        set.removeItem("a");
+        Assert.assertFalse(set.contains(a));
+        set.addItem(new Item("a"));
+        Assert.assertEquals("a", view.get(1).getName());
+
+        set.clear();
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertNull(set.getItem("c"));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testIteratorFailsFast() throws Exception {
+        NamedItemSet<Item> set = new NamedItemSet<Item>();
+        set.addItem(new Item("a"));
+        set.addItem(new Item("b"));
+        Iterator<Item> iterator = set.iterator();
+        iterator.next();
+        set.addItem(new Item("c"));
+        iterator.next();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testListIsReadOnly() throws Exception {
+        NamedItemSet<Item> set = new NamedItemSet<Item>();
+        set.toList().add(new Item("a"));
+    }
+
+    @Test(timeout = 10000)
+    public void testLargeSet() throws Exception {
+        // With a linear search, adding and looking up these items would take several minutes.
+        final int count = 200000;
+        NamedItemSet<Item> set = new NamedItemSet<Item>();
+        for (int i = 0; i < count; ++i) {
+            set.addItem(new Item("attribute" + i));
+        }
+        for (int round = 0; round < 10; ++round) {
+            for (int i = 0; i < count; ++i) {
+                Assert.assertNotNull(set.getItem("attribute" + i));
+            }
+        }
+        Assert.assertEquals(count, set.toList().size());
+    }
+}
@@ -0,0 +1,121 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class PendingUpdateJournalTest {
+    static class Sensor extends CloudioObject {
+        @Measure
+        public CloudioAttribute<Double> temperature;
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PendingUpdateJournal open(File directory) throws Exception {
+        return new PendingUpdateJournal(directory, 64, PendingUpdateJournal.SyncPolicy.NEVER, 1000, "@updates/e");
+    }
+
+    private static File[] segmentFiles(File directory) {
+        return directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File directory, String name) {
+                return name.endsWith(".segment");
+            }
+        });
+    }
+
+    @Test
+    public void testOrderAndSegmentDeletion() throws Exception {
+        File directory = folder.newFolder();
+        Sensor sensor = new Sensor();
+        PendingUpdateJournal journal = open(directory);
+        for (int i = 0; i < 10; ++i) {
+            journal.append(i == 0 ? sensor.temperature.internal : null, new byte[] {(byte)i, 1, 2, 3, 4, 5, 6, 7});
+        }
+        Assert.assertEquals(5, journal.getSegmentCount());
+
+        PendingUpdateStore.Entry entry = journal.next();
+        Assert.assertEquals(0, entry.sequence);
+        Assert.assertEquals(sensor.temperature.internal.getUpdateTopic(), entry.topic);
+        for (int i = 1; i < 10; ++i) {
+            entry = journal.next();
+            Assert.assertEquals(i, entry.sequence);
+            Assert.assertEquals("@updates/e", entry.topic);
+            Assert.assertEquals(i, entry.data[0]);
+        }
+        Assert.assertNull(journal.next());
+
+        // Segments are deleted once all their messages have been acknowledged.
+        journal.acknowledge(4);
+        Assert.assertEquals(3, journal.getSegmentCount());
+        Assert.assertEquals(3, segmentFiles(directory).length);
+
+        // Messages not acknowledged are read again after a rewind.
+        journal.rewind();
+        Assert.assertEquals(5, journal.next().sequence);
+
+        journal.acknowledge(9);
+        Assert.assertEquals(0, journal.getSegmentCount());
+        Assert.assertNull(journal.next());
+        journal.close();
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        File directory = folder.newFolder();
+        PendingUpdateJournal journal = open(directory);
+        for (int i = 0; i < 4; ++i) {
+            journal.append(null, new byte[] {(byte)i});
+        }
+        journal.acknowledge(0);
+        journal.close();
+
+        // Simulate a record torn by a power loss at the end of the last segment.
+        File[] segments = segmentFiles(directory);
+        File last = segments[0];
+        for (File segment: segments) {
+            if (segment.getName().compareTo(last.getName()) > 0) {
+                last = segment;
+            }
+        }
+        RandomAccessFile file = new RandomAccessFile(last, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+
+        journal = open(directory);
+        Assert.assertEquals(1, journal.next().sequence);
+        Assert.assertEquals(2, journal.next().sequence);
+        Assert.assertNull(journal.next());
+
+        // Sequence numbers continue after the last message found.
+        journal.append(null, new byte[] {42});
+        PendingUpdateStore.Entry entry = journal.next();
+        Assert.assertEquals(3, entry.sequence);
+        Assert.assertEquals(42, entry.data[0]);
+        journal.acknowledge(3);
+        journal.close();
+
+        // Sequence numbers keep increasing even if all segments have been deleted.
+        journal = open(directory);
+        Assert.assertNull(journal.next());
+        journal.append(null, new byte[] {43});
+        Assert.assertEquals(4, journal.next().sequence);
+        journal.close();
+
+        // A closed journal does not reopen its segments for reading.
+        try {
+            journal.next();
+            Assert.fail();
+        } catch (IOException exception) {
+            Assert.assertEquals("Journal is closed", exception.getMessage());
+        }
+    }
+}
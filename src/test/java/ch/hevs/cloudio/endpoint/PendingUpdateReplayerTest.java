@@ -0,0 +1,162 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PendingUpdateReplayerTest {
+    static class Sensor extends CloudioObject {
+        @Measure
+        public CloudioAttribute<Double> temperature;
+    }
+
+    static class Cloud implements CloudioTransport.Listener {
+        final List<String> topics = new ArrayList<String>();
+        final List<String> messages = new ArrayList<String>();
+
+        @Override
+        public void connectionLost(Throwable cause) {}
+
+        @Override
+        public synchronized void messageArrived(String topic, byte[] payload) {
+            topics.add(topic);
+            messages.add(new String(payload, JsonMessageFormat.UTF8));
+        }
+    }
+
+    /**
+     * Transport confirming the deliveries only when the test says so.
+     */
+    static class DeferredTransport extends CloudioLoopbackTransport {
+        final List<DeliveryListener> deliveries = new ArrayList<DeliveryListener>();
+
+        @Override
+        public synchronized void publish(String topic, byte[] payload, int qos, boolean retained,
+                                         DeliveryListener delivery) {
+            deliveries.add(delivery);
+            notifyAll();
+        }
+
+        synchronized void awaitPublished(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (deliveries.size() < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            Assert.assertEquals(count, deliveries.size());
+        }
+    }
+
+    /**
+     * Store keeping the messages in a list.
+     */
+    static class ListStore implements PendingUpdateStore {
+        final List<byte[]> messages = new ArrayList<byte[]>();
+        volatile long acknowledged = -1;
+        int position = 0;
+
+        @Override
+        public synchronized void append(CloudioAttribute.InternalAttribute attribute, byte[] data) {
+            messages.add(data);
+        }
+
+        @Override
+        public synchronized Entry next() {
+            return position < messages.size() ? new Entry(position, "@updates/e", messages.get(position++)) : null;
+        }
+
+        @Override
+        public synchronized void acknowledge(long sequence) {
+            acknowledged = Math.max(acknowledged, sequence);
+        }
+
+        @Override
+        public synchronized void rewind() {
+            position = (int)acknowledged + 1;
+        }
+
+        @Override
+        public void sync() {}
+
+        @Override
+        public void close() {}
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PendingUpdateJournal open() throws Exception {
+        return new PendingUpdateJournal(folder.newFolder(), 1024, PendingUpdateJournal.SyncPolicy.NEVER, 1000,
+            "@updates/e");
+    }
+
+    @Test
+    public void testCombinesInOrder() throws Exception {
+        Sensor sensor = new Sensor();
+        JsonMessageFormat format = new JsonMessageFormat();
+        PendingUpdateJournal journal = open();
+        for (int i = 0; i < 3; ++i) {
+            sensor.temperature.setValue((double)i, 1000L * (i + 1));
+            journal.append(sensor.temperature.internal,
+                format.serializeAttributeUpdate(new AttributeUpdate(sensor.temperature.internal)));
+        }
+        journal.append(null, "{\"updates\":[{\"uuid\":\"a\",\"value\":3},{\"uuid\":\"b\",\"value\":4}]}"
+            .getBytes("UTF-8"));
+
+        CloudioLoopbackTransport transport = new CloudioLoopbackTransport();
+        Cloud cloud = new Cloud();
+        transport.setCloudListener(cloud);
+        transport.connect("@offline/e", new byte[0]);
+        new PendingUpdateReplayer(journal, transport, "@updates/e", 10, 100).run();
+
+        String prefix = "{\"uuid\":\"" + sensor.temperature.internal.getUuid().toString() +
+            "\",\"type\":\"Number\",\"constraint\":\"Measure\",";
+        Assert.assertEquals(1, cloud.messages.size());
+        Assert.assertEquals("@updates/e", cloud.topics.get(0));
+        Assert.assertEquals("{\"updates\":[" +
+            prefix + "\"timestamp\":1.0,\"value\":0.0}," +
+            prefix + "\"timestamp\":2.0,\"value\":1.0}," +
+            prefix + "\"timestamp\":3.0,\"value\":2.0}," +
+            "{\"uuid\":\"a\",\"value\":3},{\"uuid\":\"b\",\"value\":4}]}", cloud.messages.get(0));
+
+        // All messages have been acknowledged.
+        journal.rewind();
+        Assert.assertNull(journal.next());
+        journal.close();
+    }
+
+    @Test
+    public void testWindowAndAcknowledgements() throws Exception {
+        ListStore store = new ListStore();
+        for (int i = 0; i < 5; ++i) {
+            store.append(null, ("{\"updates\":[{\"uuid\":\"a\",\"value\":" + i + "}]}").getBytes("UTF-8"));
+        }
+
+        DeferredTransport transport = new DeferredTransport();
+        transport.connect("@offline/e", new byte[0]);
+        PendingUpdateReplayer replayer = new PendingUpdateReplayer(store, transport, "@updates/e", 2, 1);
+        Thread thread = new Thread(replayer);
+        thread.start();
+
+        // Only two messages are in flight at any time.
+        transport.awaitPublished(2);
+        Thread.sleep(100);
+        Assert.assertEquals(2, transport.deliveries.size());
+
+        // The store is only acknowledged once all preceding messages have been delivered.
+        transport.deliveries.get(1).deliveryComplete("@updates/e");
+        transport.awaitPublished(3);
+        Assert.assertEquals(-1, store.acknowledged);
+        transport.deliveries.get(0).deliveryComplete("@updates/e");
+        Assert.assertEquals(1, store.acknowledged);
+        transport.awaitPublished(4);
+
+        replayer.stop();
+        thread.join(5000);
+        Assert.assertFalse(thread.isAlive());
+        Assert.assertEquals(4, replayer.getPublishedMessages());
+    }
+}
@@ -0,0 +1,143 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+public class PendingUpdateRingTest {
+    static class Sensor extends CloudioObject {
+        @Measure
+        public CloudioAttribute<Double> temperature;
+
+        @Status
+        public CloudioAttribute<String> state;
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Every record takes 28 bytes, so the ring holds four of them.
+    private PendingUpdateRing open(File file, PendingUpdateRing.OverflowPolicy overflowPolicy) throws Exception {
+        return new PendingUpdateRing(file, 116, overflowPolicy, "@updates/e");
+    }
+
+    private static byte[] message(int value) {
+        return new byte[] {(byte)value, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+    }
+
+    @Test
+    public void testWrapAndOverwriteOldest() throws Exception {
+        File file = folder.newFile();
+        PendingUpdateRing ring = open(file, PendingUpdateRing.OverflowPolicy.OVERWRITE_OLDEST);
+        for (int i = 0; i < 10; ++i) {
+            ring.append(null, message(i));
+        }
+        Assert.assertEquals(6, ring.getDroppedMessages());
+        Assert.assertEquals(116 + 32, file.length());
+
+        for (int i = 6; i < 10; ++i) {
+            PendingUpdateStore.Entry entry = ring.next();
+            Assert.assertEquals(i, entry.sequence);
+            Assert.assertEquals("@updates/e", entry.topic);
+            Assert.assertEquals(i, entry.data[0]);
+        }
+        Assert.assertNull(ring.next());
+
+        // Messages not acknowledged are read again after a rewind and survive a restart.
+        ring.acknowledge(7);
+        ring.rewind();
+        Assert.assertEquals(8, ring.next().sequence);
+        ring.close();
+
+        ring = open(file, PendingUpdateRing.OverflowPolicy.OVERWRITE_OLDEST);
+        Assert.assertEquals(8, ring.next().sequence);
+        Assert.assertEquals(9, ring.next().sequence);
+        Assert.assertNull(ring.next());
+        ring.append(null, message(10));
+        Assert.assertEquals(10, ring.next().sequence);
+        ring.close();
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        PendingUpdateRing ring = open(folder.newFile(), PendingUpdateRing.OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 6; ++i) {
+            ring.append(null, message(i));
+        }
+        Assert.assertEquals(2, ring.getDroppedMessages());
+        Assert.assertEquals(0, ring.next().sequence);
+
+        // Space is available again once messages have been acknowledged.
+        ring.acknowledge(1);
+        ring.append(null, message(6));
+        ring.rewind();
+        for (int i = 2; i < 4; ++i) {
+            Assert.assertEquals(i, ring.next().data[0]);
+        }
+        Assert.assertEquals(6, ring.next().data[0]);
+        Assert.assertNull(ring.next());
+        ring.close();
+    }
+
+    @Test
+    public void testPreferStatus() throws Exception {
+        Sensor sensor = new Sensor();
+        PendingUpdateRing ring = new PendingUpdateRing(folder.newFile(), 200,
+            PendingUpdateRing.OverflowPolicy.PREFER_STATUS, "@updates/e");
+        String measureTopic = sensor.temperature.internal.getUpdateTopic();
+        String statusTopic = sensor.state.internal.getUpdateTopic();
+        int recordSize = PendingUpdateRing.RECORD_OVERHEAD + measureTopic.length() + 10;
+        int capacity = 200 / recordSize;
+        for (int i = 0; i < capacity; ++i) {
+            ring.append(sensor.temperature.internal, message(i));
+        }
+
+        // Measures are dropped if the ring is full, while status updates replace the oldest message.
+        ring.append(sensor.temperature.internal, message(100));
+        ring.append(sensor.state.internal, message(101));
+        Assert.assertEquals(2, ring.getDroppedMessages());
+
+        PendingUpdateStore.Entry entry = null;
+        for (int i = 0; i < capacity; ++i) {
+            entry = ring.next();
+            Assert.assertEquals(i < capacity - 1 ? measureTopic : statusTopic, entry.topic);
+        }
+        Assert.assertEquals(101, entry.data[0]);
+        Assert.assertNull(ring.next());
+        ring.close();
+    }
+
+    @Test
+    public void testTruncatedAtCorruptRecord() throws Exception {
+        File file = folder.newFile();
+        PendingUpdateRing ring = open(file, PendingUpdateRing.OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 4; ++i) {
+            ring.append(null, message(i));
+        }
+        ring.close();
+
+        // Damage the content of the third record and the length of the fourth, as a power failure could.
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.seek(32 + 2 * 28 + 20);
+        raw.write(0x55);
+        raw.seek(32 + 3 * 28);
+        raw.writeInt(5);
+        raw.close();
+
+        // The ring ends before the first corrupt record and continues after the last valid one.
+        ring = open(file, PendingUpdateRing.OverflowPolicy.DROP_NEWEST);
+        Assert.assertEquals(0, ring.next().sequence);
+        Assert.assertEquals(1, ring.next().sequence);
+        Assert.assertNull(ring.next());
+        ring.append(null, message(10));
+        PendingUpdateStore.Entry entry = ring.next();
+        Assert.assertEquals(10, entry.data[0]);
+        Assert.assertEquals(4, entry.sequence);
+        Assert.assertNull(ring.next());
+        ring.close();
+    }
+}
@@ -0,0 +1,86 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class PendingUpdateWriterTest {
+    /**
+     * Store counting the number of times it has been forced.
+     */
+    static class SyncCountingStore extends PendingUpdateReplayerTest.ListStore {
+        int syncs = 0;
+
+        @Override
+        public synchronized void sync() {
+            syncs++;
+        }
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        SyncCountingStore store = new SyncCountingStore();
+        PendingUpdateWriter writer = new PendingUpdateWriter(store, 100, 3600000);
+        for (int i = 0; i < 10; ++i) {
+            writer.append(null, new byte[] {(byte)i});
+        }
+
+        // The updates wait for the end of the commit interval, but are readable nevertheless.
+        Assert.assertEquals(10, writer.getQueuedMessages());
+        Assert.assertEquals(0, store.messages.size());
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertEquals(i, writer.next().data[0]);
+        }
+        Assert.assertNull(writer.next());
+
+        // All updates have been written in order and forced once.
+        Assert.assertEquals(10, store.messages.size());
+        Assert.assertEquals(1, writer.getCommits());
+        Assert.assertEquals(1, store.syncs);
+        Assert.assertEquals(0, writer.getQueuedMessages());
+        Assert.assertEquals(0, writer.getLag());
+        writer.close();
+    }
+
+    @Test
+    public void testCommitInterval() throws Exception {
+        SyncCountingStore store = new SyncCountingStore();
+        PendingUpdateWriter writer = new PendingUpdateWriter(store, 100, 50);
+        writer.append(null, new byte[] {0});
+        writer.append(null, new byte[] {1});
+
+        // The updates are durable once the commit interval has elapsed.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getQueuedMessages() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, store.messages.size());
+        Assert.assertEquals(1, store.syncs);
+        Assert.assertTrue(writer.getMaxLag() >= 50);
+        writer.close();
+    }
+
+    @Test
+    public void testFullQueueAndClose() throws Exception {
+        SyncCountingStore store = new SyncCountingStore();
+        PendingUpdateWriter writer = new PendingUpdateWriter(store, 2, 3600000);
+
+        // A full queue is written without waiting for the commit interval.
+        for (int i = 0; i < 5; ++i) {
+            writer.append(null, new byte[] {(byte)i});
+        }
+        writer.close();
+        Assert.assertEquals(5, store.messages.size());
+        for (int i = 0; i < 5; ++i) {
+            Assert.assertEquals(i, store.messages.get(i)[0]);
+        }
+
+        try {
+            writer.append(null, new byte[] {5});
+            Assert.fail();
+        } catch (IOException exception) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PersistencePendingUpdateStoreTest {
+    private static final CloudioClock FIXED_CLOCK = new CloudioClock() {
+        @Override
+        public long currentTimeMillis() {
+            return 1000;
+        }
+    };
+
+    @Test
+    public void testKeysFollowEndpointClock() throws Exception {
+        MemoryPersistence persistence = new MemoryPersistence();
+        persistence.open("test", "tcp://localhost");
+        PersistencePendingUpdateStore store = new PersistencePendingUpdateStore(persistence, FIXED_CLOCK, "@updates/e");
+        store.append(null, new byte[] {0});
+        store.append(null, new byte[] {1});
+
+        // Times stay unique, so the sequence numbers are the clock's time.
+        Assert.assertTrue(persistence.containsKey("PendingUpdates-1000"));
+        Assert.assertTrue(persistence.containsKey("PendingUpdates-1001"));
+        Assert.assertEquals(1000, store.next().sequence);
+        Assert.assertEquals(1001, store.next().sequence);
+        Assert.assertNull(store.next());
+    }
+
+    @Test
+    public void testAcknowledgeAfterRewind() throws Exception {
+        MemoryPersistence persistence = new MemoryPersistence();
+        persistence.open("test", "tcp://localhost");
+        PersistencePendingUpdateStore store = new PersistencePendingUpdateStore(persistence, FIXED_CLOCK, "@updates/e");
+        for (int i = 0; i < 3; ++i) {
+            store.append(null, new byte[] {(byte)i});
+        }
+        PendingUpdateStore.Entry first = store.next();
+        store.next();
+
+        // An acknowledgement of a replay started before the rewind only removes the message it was sent for.
+        store.rewind();
+        store.append(null, new byte[] {3});
+        store.acknowledge(first.sequence);
+        for (int i = 1; i < 4; ++i) {
+            Assert.assertEquals(i, store.next().data[0]);
+        }
+        Assert.assertNull(store.next());
+
+        store.rewind();
+        Assert.assertEquals(1, store.next().data[0]);
+        store.close();
+    }
+}
@@ -0,0 +1,71 @@
+package ch.hevs.cloudio.endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PrimitiveAttributesTest {
+    static class Sensor extends CloudioObject {
+        @Measure
+        public CloudioDoubleAttribute temperature;
+
+        @Measure
+        public CloudioLongAttribute pulses;
+
+        @Status
+        public CloudioBooleanAttribute alarm;
+
+        @Measure
+        public CloudioAttribute<Double> reference;
+    }
+
+    @Test
+    public void testReflectiveBinding() {
+        Sensor sensor = new Sensor();
+        Assert.assertNotNull(sensor.temperature);
+        Assert.assertSame(CloudioAttributeType.Number, sensor.temperature.internal.getType());
+        Assert.assertSame(CloudioAttributeType.Integer, sensor.pulses.internal.getType());
+        Assert.assertSame(CloudioAttributeType.Boolean, sensor.alarm.internal.getType());
+        Assert.assertSame(CloudioAttributeConstraint.Measure, sensor.temperature.internal.getConstraint());
+        Assert.assertNull(sensor.temperature.getValue());
+        Assert.assertFalse(sensor.temperature.internal.hasTimestamp());
+    }
+
+    @Test
+    public void testPrimitiveAndGenericApi() throws Exception {
+        Sensor sensor = new Sensor();
+
+        sensor.temperature.setValue(21.5, 1000);
+        Assert.assertEquals(21.5, sensor.temperature.getDoubleValue(), 0.0);
+        Assert.assertEquals(Double.valueOf(21.5), sensor.temperature.getValue());
+        Assert.assertEquals(Long.valueOf(1000), sensor.temperature.internal.getTimestamp());
+
+        sensor.temperature.setValue(22.0, 2000L);
+        Assert.assertEquals(22.0, sensor.temperature.getDoubleValue(), 0.0);
+
+        sensor.pulses.setStringValue("42", 3000);
+        Assert.assertEquals(42, sensor.pulses.getLongValue());
+
+        sensor.alarm.setValue(true, 4000);
+        Assert.assertTrue(sensor.alarm.getBooleanValue());
+        Assert.assertEquals(Boolean.TRUE, sensor.alarm.getValue());
+    }
+
+    @Test
+    public void testWireCompatibility() throws Exception {
+        Sensor sensor = new Sensor();
+        sensor.temperature.setValue(21.5, 1234);
+        sensor.reference.setValue(21.5, 1234L);
+
+        JsonMessageFormat format = new JsonMessageFormat();
+        Assert.assertEquals(new String(format.serializeAttribute(sensor.reference.internal), "UTF-8"),
+            new String(format.serializeAttribute(sensor.temperature.internal), "UTF-8"));
+        Assert.assertEquals(new String(format.serializeAttribute(sensor.reference.internal), "UTF-8"),
+            new String(format.serializeAttributeUpdate(new AttributeUpdate(sensor.temperature.internal)), "UTF-8"));
+    }
+
+    @Test(expected = CloudioAttributeConstraintException.class)
+    public void testConstraintChecked() throws Exception {
+        Sensor sensor = new Sensor();
+        sensor.temperature.internal.setValueFromCloud(1.0, 1000);
+    }
+}